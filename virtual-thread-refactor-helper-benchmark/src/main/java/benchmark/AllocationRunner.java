@@ -0,0 +1,29 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link PipelineBenchmark} and {@link EngineComparisonBenchmark} with the GC profiler, which adds the
+ * allocation rate and the bytes allocated per operation to the results. Other JMH command line options, such as
+ * {@code -p fileCount=1000} or {@code -rf json}, are passed through.
+ */
+public final class AllocationRunner {
+
+    private AllocationRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PipelineBenchmark.class.getSimpleName())
+                .include(EngineComparisonBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,57 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Recipe;
+import org.openrewrite.SourceFile;
+import org.openrewrite.internal.InMemoryLargeSourceSet;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refactors the same generated projects with both engines, from the source files to refactored trees in memory and
+ * on one thread: the JavaParser engine's {@code refactorUnits}, and the OpenRewrite
+ * {@code ReplaceSyncBlockWithReentrantLockRecipe}. Both include parsing, which dominates either engine. The recipe
+ * does less work than the JavaParser engine as long as it only handles part of the sites.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EngineComparisonBenchmark {
+
+    @Benchmark
+    public Object javaParser(SyntheticCorpus corpus) {
+        var javaParser = RefactorHelper.createJavaParser();
+        return RefactorHelper.refactorUnits(javaParser, RefactorHelper.parseJavaFiles(javaParser, corpus.root().toString()), 1);
+    }
+
+    @Benchmark
+    public Object openRewrite(SyntheticCorpus corpus) {
+        ExecutionContext context = new InMemoryExecutionContext(Throwable::printStackTrace);
+        List<SourceFile> sourceFiles = org.openrewrite.java.JavaParser.fromJavaVersion().build()
+                .parse(corpus.files(), corpus.root(), context)
+                .toList();
+        return createRecipe().run(new InMemoryLargeSourceSet(sourceFiles), context);
+    }
+
+    /**
+     * The recipe lives in the unnamed package, like the JavaParser engine, see {@link RefactorHelper}.
+     */
+    private static Recipe createRecipe() {
+        try {
+            return (Recipe) Class.forName("ReplaceSyncBlockWithReentrantLockRecipe").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
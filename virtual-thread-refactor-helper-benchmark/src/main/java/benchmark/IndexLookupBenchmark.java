@@ -0,0 +1,110 @@
+package benchmark;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the type of a {@code synchronized(Foo.class)} monitor and one of its fields, once through
+ * {@code ProjectIndex} and once with the linear scan the refactor phase used before the index existed. The indexed
+ * lookup should stay flat as {@code fileCount} grows while the scan grows with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexLookupBenchmark {
+
+    private static final int LOOKUPS = 256;
+    private static final String FIELD_NAME = "mutex";
+
+    @Param({"100", "1000", "5000"})
+    public int fileCount;
+
+    private List<CompilationUnit> unitList;
+    private Object index;
+    private final CompilationUnit[] contexts = new CompilationUnit[LOOKUPS];
+    private final ClassOrInterfaceType[] monitorTypes = new ClassOrInterfaceType[LOOKUPS];
+
+    @Setup(Level.Trial)
+    public void buildIndex() throws IOException {
+        Path projectRoot = SyntheticProject.generate(fileCount);
+        try {
+            unitList = RefactorHelper.parseJavaFiles(RefactorHelper::createJavaParser, projectRoot.toString(),
+                    Runtime.getRuntime().availableProcessors());
+        } finally {
+            SyntheticProject.delete(projectRoot);
+        }
+        index = RefactorHelper.buildIndex(unitList);
+
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            CompilationUnit context = unitList.get(random.nextInt(unitList.size()));
+            contexts[i] = context;
+            monitorTypes[i] = context.findAll(SynchronizedStmt.class).stream()
+                    .map(SynchronizedStmt::getExpression)
+                    .filter(ClassExpr.class::isInstance)
+                    .map(expression -> (ClassOrInterfaceType) ((ClassExpr) expression).getType())
+                    .findFirst()
+                    .orElseThrow();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void indexedLookup(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            TypeDeclaration<?> type = RefactorHelper.findType(index, contexts[i], monitorTypes[i]).orElseThrow();
+            blackhole.consume(RefactorHelper.getField(index, type, FIELD_NAME));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void linearScan(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            ClassOrInterfaceType monitorType = monitorTypes[i];
+            CompilationUnit unit = unitList.stream()
+                    .filter(cu -> cu.getTypes().stream().anyMatch(type -> type.getName().equals(monitorType.getName())))
+                    .findFirst()
+                    .orElseThrow();
+            TypeDeclaration<?> type = unit.getTypes().stream()
+                    .filter(typeDeclaration -> typeDeclaration.getName().equals(monitorType.getName()))
+                    .findFirst()
+                    .orElseThrow();
+            Optional<FieldDeclaration> field = type.getMembers().stream()
+                    .filter(FieldDeclaration.class::isInstance)
+                    .map(FieldDeclaration.class::cast)
+                    .filter(member -> member.getVariables().stream()
+                            .anyMatch(variable -> FIELD_NAME.equals(variable.getNameAsString())))
+                    .findFirst();
+            blackhole.consume(field);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks one of {@code monitorCount} objects, picked at random by each of 8 threads, through the {@code MonitorLocks}
+ * class generated for dynamic monitors, and through a single lock shared by all the objects, the only other way to
+ * give them a lock without a field. The striped table should scale with its stripes until distinct objects rarely
+ * share one, and the weak table pays for its map lookup but never makes distinct objects contend.
+ * <pre>
+ * java -jar benchmarks.jar LockTableBenchmark -p lockTable=shared,striped-8,striped-64,weak
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+public class LockTableBenchmark {
+
+    private static final int CRITICAL_SECTION_TOKENS = 64;
+
+    @Param({"shared", "striped-8", "striped-64", "weak"})
+    public String lockTable;
+
+    @Param({"1024"})
+    public int monitorCount;
+
+    private Object[] monitors;
+    private long[] counters;
+    private final ReentrantLock sharedLock = new ReentrantLock();
+    private MethodHandle lockFor;
+    private URLClassLoader loader;
+    private Path classes;
+
+    @Setup(Level.Trial)
+    public void compileLockTable() throws Exception {
+        monitors = new Object[monitorCount];
+        for (int i = 0; i < monitorCount; i++) {
+            monitors[i] = new Object();
+        }
+        counters = new long[monitorCount];
+        if (lockTable.equals("shared")) {
+            return;
+        }
+        String source = lockTable.equals("weak") ? RefactorHelper.lockTableSource("WEAK", 0)
+                : RefactorHelper.lockTableSource("STRIPED", Integer.parseInt(lockTable.substring("striped-".length())));
+        classes = compile(source);
+        loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, LockTableBenchmark.class.getClassLoader());
+        lockFor = MethodHandles.publicLookup().findStatic(loader.loadClass("MonitorLocks"), "lockFor",
+                MethodType.methodType(ReentrantLock.class, Object.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLockTable() throws IOException {
+        if (loader != null) {
+            loader.close();
+            SyntheticProject.delete(classes);
+        }
+    }
+
+    @Benchmark
+    public long lockAndIncrement() throws Throwable {
+        int i = ThreadLocalRandom.current().nextInt(monitorCount);
+        ReentrantLock lock = lockFor == null ? sharedLock : (ReentrantLock) lockFor.invokeExact(monitors[i]);
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(CRITICAL_SECTION_TOKENS);
+            return ++counters[i];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Path compile(String source) throws IOException {
+        Path directory = Files.createTempDirectory("lock-table");
+        Path file = Files.writeString(directory.resolve("MonitorLocks.java"), source);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        if (compiler.run(null, null, errors, "-proc:none", "-nowarn", "-d", directory.toString(), file.toString()) != 0) {
+            throw new IllegalStateException("Failed to compile the lock table:\n" + errors.toString(StandardCharsets.UTF_8));
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,403 @@
+package benchmark;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.StaticJavaParser;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Runs a source set before and after the refactoring and proves that the refactored sites no longer pin virtual
+ * threads. Every synchronized method, and every method with a synchronized block, is a site. The harness
+ * <ol>
+ *     <li>copies the sources and adds simulated blocking I/O, a {@code LockSupport.parkNanos}, at the start of every
+ *     critical section,</li>
+ *     <li>refactors a second copy of the instrumented sources with every site selected,</li>
+ *     <li>compiles both copies, and</li>
+ *     <li>calls every site from {@code --threads} virtual threads on one shared instance, {@code --calls} times each,
+ *     while recording {@code jdk.VirtualThreadPinned} events.</li>
+ * </ol>
+ * It reports throughput, p99 latency and pinned events for both versions, and exits with 1 if a site that no longer
+ * synchronizes after the refactoring still pinned. Sites are called with default arguments ({@code 0}, {@code ""},
+ * empty collections, otherwise {@code null}), so a call may fail; failed calls count as errors, and are left out of
+ * the completed calls, the throughput and the p99 latency.
+ * Needs a JDK with virtual threads and the {@code jdk.VirtualThreadPinned} event, i.e. 21 or later.
+ * <pre>
+ * java -cp benchmarks.jar benchmark.PinningHarness SOURCE_DIR [--threads=N] [--calls=N] [--io-micros=N]
+ *         [--timeout-seconds=N] [--work=DIR]
+ * </pre>
+ */
+public final class PinningHarness {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    /**
+     * A method of a class that can be instantiated, i.e. a top-level or static nested class, that synchronizes.
+     */
+    private record Site(String className, String methodName, int parameterCount) {
+
+        @Override
+        public String toString() {
+            return className + "#" + methodName + "/" + parameterCount;
+        }
+    }
+
+    private record Settings(int threads, int calls, long ioNanos, long timeoutSeconds) {
+    }
+
+    /**
+     * The outcome of calling one site, with the latencies of the calls that completed.
+     */
+    private record SiteRun(int completed, int errors, boolean timedOut, long[] latencies, long elapsedNanos,
+                           Instant start, Instant end, String skipped) {
+
+        int pinned(List<RecordedEvent> pinnedEvents) {
+            return (int) pinnedEvents.stream()
+                    .filter(event -> !event.getStartTime().isBefore(start) && event.getStartTime().isBefore(end))
+                    .count();
+        }
+    }
+
+    private record VersionRun(Map<Site, SiteRun> siteRuns, List<RecordedEvent> pinnedEvents) {
+
+        int completed() {
+            return siteRuns.values().stream().mapToInt(SiteRun::completed).sum();
+        }
+
+        long elapsedNanos() {
+            return siteRuns.values().stream().mapToLong(SiteRun::elapsedNanos).sum();
+        }
+
+        long[] latencies() {
+            return siteRuns.values().stream().flatMapToLong(run -> Arrays.stream(run.latencies())).toArray();
+        }
+    }
+
+    private PinningHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int separator = arg.indexOf('=');
+                options.put(separator < 0 ? arg.substring(2) : arg.substring(2, separator), separator < 0 ? "" : arg.substring(separator + 1));
+            } else {
+                arguments.add(arg);
+            }
+        }
+        if (arguments.size() != 1) {
+            System.err.println("Usage: PinningHarness SOURCE_DIR [--threads=N] [--calls=N] [--io-micros=N] [--timeout-seconds=N] [--work=DIR]");
+            System.exit(2);
+        }
+        Settings settings = new Settings(
+                Integer.parseInt(options.getOrDefault("threads", "2000")),
+                Integer.parseInt(options.getOrDefault("calls", "2")),
+                TimeUnit.MICROSECONDS.toNanos(Long.parseLong(options.getOrDefault("io-micros", "100"))),
+                Long.parseLong(options.getOrDefault("timeout-seconds", "30")));
+        Path work = options.containsKey("work") ? Paths.get(options.get("work")) : Files.createTempDirectory("pinning-harness");
+        System.exit(run(Paths.get(arguments.get(0)), work, settings));
+    }
+
+    private static int run(Path sources, Path work, Settings settings) throws Exception {
+        newVirtualThreadExecutor().shutdown();
+
+        Path original = work.resolve("original");
+        Path refactored = work.resolve("refactored");
+        copy(sources, original);
+        List<CompilationUnit> originalUnits = RefactorHelper.parseJavaFiles(RefactorHelper.createJavaParser(), original.toString());
+        List<Site> sites = new ArrayList<>();
+        for (CompilationUnit cu : originalUnits) {
+            sites.addAll(instrument(cu, settings.ioNanos()));
+            Files.writeString(cu.getStorage().orElseThrow().getPath(), cu.toString());
+        }
+        copy(original, refactored);
+        List<CompilationUnit> refactoredUnits = RefactorHelper.parseJavaFiles(RefactorHelper.createJavaParser(), refactored.toString());
+        RefactorHelper.refactorProject(RefactorHelper.createJavaParser(), refactoredUnits, Runtime.getRuntime().availableProcessors());
+        Set<Site> keptSites = new HashSet<>();
+        refactoredUnits.forEach(cu -> keptSites.addAll(sitesOf(cu)));
+
+        Path originalClasses = compile(original, work.resolve("original-classes"));
+        Path refactoredClasses = compile(refactored, work.resolve("refactored-classes"));
+        System.out.println("Calling " + sites.size() + " sites from " + settings.threads() + " virtual threads, "
+                + settings.calls() + " calls each, sources in " + work);
+        VersionRun before = runVersion(originalClasses, sites, settings);
+        VersionRun after = runVersion(refactoredClasses, sites, settings);
+        return report(sites, keptSites, before, after);
+    }
+
+    /**
+     * Adds the simulated I/O to the sites of {@code cu} and returns them. The body of a synchronized block becomes a
+     * single nested block, so that the refactoring keeps all of it.
+     */
+    private static List<Site> instrument(CompilationUnit cu, long ioNanos) {
+        Statement io = StaticJavaParser.parseStatement("java.util.concurrent.locks.LockSupport.parkNanos(" + ioNanos + "L);");
+        for (MethodDeclaration method : cu.findAll(MethodDeclaration.class)) {
+            if (method.isSynchronized() && method.getBody().isPresent()) {
+                method.getBody().orElseThrow().addStatement(0, io.clone());
+            }
+        }
+        for (SynchronizedStmt statement : cu.findAll(SynchronizedStmt.class)) {
+            BlockStmt body = statement.getBody().clone();
+            body.addStatement(0, io.clone());
+            statement.setBody(new BlockStmt().addStatement(body));
+        }
+        return sitesOf(cu);
+    }
+
+    private static List<Site> sitesOf(CompilationUnit cu) {
+        List<Site> sites = new ArrayList<>();
+        for (MethodDeclaration method : cu.findAll(MethodDeclaration.class)) {
+            if (method.getBody().isEmpty() || !method.isSynchronized() && method.findAll(SynchronizedStmt.class).isEmpty()) {
+                continue;
+            }
+            Node parent = method.getParentNode().orElseThrow();
+            if (parent instanceof ClassOrInterfaceDeclaration type && isInstantiable(type)) {
+                sites.add(new Site(binaryName(type), method.getNameAsString(), method.getParameters().size()));
+            }
+        }
+        return sites;
+    }
+
+    private static boolean isInstantiable(ClassOrInterfaceDeclaration type) {
+        if (type.isInterface() || type.isAbstract() || type.isLocalClassDeclaration()) {
+            return false;
+        }
+        Node parent = type.getParentNode().orElseThrow();
+        return parent instanceof CompilationUnit || type.isStatic() && parent instanceof ClassOrInterfaceDeclaration outer && isInstantiable(outer);
+    }
+
+    private static String binaryName(TypeDeclaration<?> type) {
+        if (type.getParentNode().orElseThrow() instanceof TypeDeclaration<?> outer) {
+            return binaryName(outer) + "$" + type.getNameAsString();
+        }
+        return type.getFullyQualifiedName().orElseThrow();
+    }
+
+    private static Path compile(Path sources, Path classes) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> arguments = new ArrayList<>(List.of("-proc:none", "-nowarn", "-d", classes.toString()));
+        try (Stream<Path> paths = Files.walk(sources)) {
+            paths.filter(path -> path.toString().endsWith(".java")).forEach(path -> arguments.add(path.toString()));
+        }
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        if (compiler.run(null, null, errors, arguments.toArray(String[]::new)) != 0) {
+            throw new IllegalStateException("Failed to compile " + sources + ":\n" + errors.toString(StandardCharsets.UTF_8));
+        }
+        return classes;
+    }
+
+    private static VersionRun runVersion(Path classes, List<Site> sites, Settings settings) throws Exception {
+        Map<Site, SiteRun> siteRuns = new LinkedHashMap<>();
+        Path dump = Files.createTempFile("pinning-harness", ".jfr");
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, PinningHarness.class.getClassLoader());
+             Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withoutThreshold().withStackTrace();
+            recording.start();
+            for (Site site : sites) {
+                siteRuns.put(site, runSite(loader, site, settings));
+            }
+            recording.stop();
+            recording.dump(dump);
+            List<RecordedEvent> pinnedEvents = RecordingFile.readAllEvents(dump).stream()
+                    .filter(event -> event.getEventType().getName().equals(PINNED_EVENT))
+                    .toList();
+            return new VersionRun(siteRuns, pinnedEvents);
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    private static SiteRun runSite(ClassLoader loader, Site site, Settings settings) throws Exception {
+        Class<?> type = Class.forName(site.className(), true, loader);
+        Method method = Arrays.stream(type.getDeclaredMethods())
+                .filter(candidate -> candidate.getName().equals(site.methodName()) && candidate.getParameterCount() == site.parameterCount())
+                .findFirst()
+                .orElseThrow();
+        method.setAccessible(true);
+        Object target = null;
+        if (!Modifier.isStatic(method.getModifiers())) {
+            Constructor<?> constructor;
+            try {
+                constructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                return new SiteRun(0, 0, false, new long[0], 0, Instant.now(), Instant.now(), "no constructor without parameters");
+            }
+            constructor.setAccessible(true);
+            target = constructor.newInstance();
+        }
+        Object[] arguments = Arrays.stream(method.getParameterTypes()).map(PinningHarness::defaultValue).toArray();
+
+        Object instance = target;
+        long[] latencies = new long[settings.threads() * settings.calls()];
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Instant start = Instant.now();
+        long startNanos = System.nanoTime();
+        ExecutorService executor = newVirtualThreadExecutor();
+        for (int thread = 0; thread < settings.threads(); thread++) {
+            executor.execute(() -> {
+                for (int call = 0; call < settings.calls() && !Thread.currentThread().isInterrupted(); call++) {
+                    long callStart = System.nanoTime();
+                    try {
+                        method.invoke(instance, arguments);
+                    } catch (InvocationTargetException | IllegalAccessException e) {
+                        errors.incrementAndGet();
+                        if (e.getCause() instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                        }
+                        continue;
+                    }
+                    latencies[completed.getAndIncrement()] = System.nanoTime() - callStart;
+                }
+            });
+        }
+        executor.shutdown();
+        boolean timedOut = !executor.awaitTermination(settings.timeoutSeconds(), TimeUnit.SECONDS);
+        if (timedOut) {
+            // Calls waiting for a notification that never comes.
+            executor.shutdownNow();
+            executor.awaitTermination(settings.timeoutSeconds(), TimeUnit.SECONDS);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        int count = Math.min(completed.get(), latencies.length);
+        return new SiteRun(count, errors.get(), timedOut, Arrays.copyOf(latencies, count), elapsedNanos, start, Instant.now(), null);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type.isPrimitive()) {
+            return Array.get(Array.newInstance(type, 1), 0);
+        } else if (type == String.class) {
+            return "";
+        } else if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        } else if (type.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
+        } else if (type.isAssignableFrom(HashSet.class)) {
+            return new HashSet<>();
+        } else if (type.isAssignableFrom(HashMap.class)) {
+            return new HashMap<>();
+        }
+        return null;
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, which this module, built for Java 17, cannot call directly.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("PinningHarness needs virtual threads, i.e. Java 21 or later, running on " + Runtime.version());
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int report(List<Site> sites, Set<Site> keptSites, VersionRun before, VersionRun after) {
+        System.out.printf("%-70s %8s %8s %12s %12s %8s %8s%n", "site", "calls", "errors", "p99 before", "p99 after",
+                "pinned", "pinned");
+        List<Site> stillPinning = new ArrayList<>();
+        for (Site site : sites) {
+            SiteRun beforeRun = before.siteRuns().get(site);
+            SiteRun afterRun = after.siteRuns().get(site);
+            if (beforeRun.skipped() != null) {
+                System.out.printf("%-70s skipped, %s%n", site, beforeRun.skipped());
+                continue;
+            }
+            int pinnedAfter = afterRun.pinned(after.pinnedEvents());
+            String status = keptSites.contains(site) ? " (kept synchronized)"
+                    : pinnedAfter > 0 ? " STILL PINS"
+                    : afterRun.timedOut() ? " (timed out)"
+                    : "";
+            if (!keptSites.contains(site) && pinnedAfter > 0) {
+                stillPinning.add(site);
+            }
+            System.out.printf("%-70s %8d %8d %12s %12s %8d %8d%s%n", site, afterRun.completed(), afterRun.errors(),
+                    millis(p99(beforeRun.latencies())), millis(p99(afterRun.latencies())),
+                    beforeRun.pinned(before.pinnedEvents()), pinnedAfter, status);
+        }
+        printVersion("before", before);
+        printVersion("after", after);
+        if (!stillPinning.isEmpty()) {
+            System.out.println("FAILED: " + stillPinning.size() + " refactored sites still pin: " + stillPinning);
+            return 1;
+        }
+        return 0;
+    }
+
+    private static void printVersion(String name, VersionRun run) {
+        double seconds = run.elapsedNanos() / 1e9;
+        System.out.printf("%-7s %d calls in %.2f s, %.0f calls/s, p99 %s, %d pinned events%n", name, run.completed(),
+                seconds, run.completed() / seconds, millis(p99(run.latencies())), run.pinnedEvents().size());
+    }
+
+    private static long p99(long[] latencies) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            paths.forEach(path -> {
+                try {
+                    Path copy = target.resolve(source.relativize(path).toString());
+                    if (Files.isDirectory(path)) {
+                        Files.createDirectories(copy);
+                    } else {
+                        Files.copy(path, copy);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package benchmark;
+
+import com.github.javaparser.ast.CompilationUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the phases of a serial run separately on projects of different shapes: parsing, refactoring unit by unit
+ * with {@code refactorToSupportVirtualThreads}, and the full path of {@code refactorProject}, which refactors the
+ * project and writes the modified files back. Run with {@code -prof gc}, or through {@link AllocationRunner}, for
+ * the allocation rate of every phase.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    /**
+     * Freshly parsed units, as the refactoring modifies them.
+     */
+    @State(Scope.Thread)
+    public static class ParsedUnits {
+
+        List<CompilationUnit> unitList;
+        Object index;
+        Object dirtyUnits;
+
+        @Setup(Level.Invocation)
+        public void parse(SyntheticCorpus corpus) {
+            unitList = RefactorHelper.parseJavaFiles(RefactorHelper.createJavaParser(), corpus.root().toString());
+            index = RefactorHelper.buildIndex(unitList);
+            dirtyUnits = RefactorHelper.newDirtyUnitTracker();
+        }
+    }
+
+    /**
+     * Units parsed from freshly written sources, as the write-back overwrites them.
+     */
+    @State(Scope.Thread)
+    public static class RestoredUnits {
+
+        List<CompilationUnit> unitList;
+
+        @Setup(Level.Invocation)
+        public void restoreAndParse(SyntheticCorpus corpus) throws IOException {
+            corpus.restore();
+            unitList = RefactorHelper.parseJavaFiles(RefactorHelper.createJavaParser(), corpus.root().toString());
+        }
+    }
+
+    @Benchmark
+    public List<CompilationUnit> parseJavaFiles(SyntheticCorpus corpus) {
+        return RefactorHelper.parseJavaFiles(RefactorHelper.createJavaParser(), corpus.root().toString());
+    }
+
+    @Benchmark
+    public void refactorToSupportVirtualThreads(ParsedUnits units, Blackhole blackhole) {
+        var javaParser = RefactorHelper.createJavaParser();
+        for (CompilationUnit cu : units.unitList) {
+            blackhole.consume(RefactorHelper.refactorToSupportVirtualThreads(javaParser, units.index, units.dirtyUnits, cu));
+        }
+    }
+
+    @Benchmark
+    public Object refactorProject(RestoredUnits units) {
+        return RefactorHelper.refactorProject(RefactorHelper.createJavaParser(), units.unitList, 1);
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import com.github.javaparser.ast.CompilationUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the in-memory refactor phase (plan and apply) at different parallelism levels. Every invocation works on
+ * freshly parsed units, because the refactoring modifies them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RefactorBenchmark {
+
+    @Param({"1000"})
+    public int fileCount;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private Path projectRoot;
+    private List<CompilationUnit> unitList;
+
+    @Setup(Level.Trial)
+    public void generateProject() throws IOException {
+        projectRoot = SyntheticProject.generate(fileCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void parseProject() {
+        unitList = RefactorHelper.parseJavaFiles(RefactorHelper::createJavaParser, projectRoot.toString(),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProject() throws IOException {
+        SyntheticProject.delete(projectRoot);
+    }
+
+    @Benchmark
+    public Object refactorUnits() {
+        return RefactorHelper.refactorUnits(RefactorHelper.createJavaParser(), unitList, parallelism);
+    }
+}
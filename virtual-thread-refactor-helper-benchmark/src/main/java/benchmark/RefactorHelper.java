@@ -0,0 +1,224 @@
+package benchmark;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The refactor helper lives in the unnamed package, which cannot be imported from a named package, while JMH refuses
+ * benchmarks in the unnamed package. Its entry points are therefore bound here once through method handles.
+ */
+final class RefactorHelper {
+
+    private static final MethodHandle CREATE_JAVA_PARSER;
+    private static final MethodHandle PARSE_SERIAL;
+    private static final MethodHandle PARSE_PARALLEL;
+    private static final MethodHandle REFACTOR_UNITS;
+    private static final MethodHandle REFACTOR_UNIT;
+    private static final MethodHandle REFACTOR_PROJECT;
+    private static final MethodHandle ALL_SITES;
+    private static final MethodHandle NEW_DIRTY_UNIT_TRACKER;
+    private static final MethodHandle BUILD_INDEX;
+    private static final MethodHandle FIND_TYPE;
+    private static final MethodHandle GET_FIELD;
+    private static final MethodHandle LOCK_TABLE_CLASS;
+    private static final MethodHandle GENERATED_SOURCE;
+    private static final MethodHandle GENERATED_IMPORTS;
+    private static final Class<?> DYNAMIC_MONITOR_MODE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> helper = Class.forName("VirtualThreadRefactorHelper");
+            CREATE_JAVA_PARSER = lookup.findStatic(helper, "createJavaParser", MethodType.methodType(JavaParser.class));
+            PARSE_SERIAL = lookup.findStatic(helper, "parseJavaFiles",
+                    MethodType.methodType(List.class, JavaParser.class, String.class));
+            PARSE_PARALLEL = lookup.findStatic(helper, "parseJavaFiles",
+                    MethodType.methodType(List.class, Supplier.class, String.class, int.class));
+            REFACTOR_UNITS = lookup.findStatic(helper, "refactorUnits",
+                            MethodType.methodType(Class.forName("DirtyUnitTracker"), JavaParser.class, List.class, int.class))
+                    .asType(MethodType.methodType(Object.class, JavaParser.class, List.class, int.class));
+
+            Class<?> index = Class.forName("ProjectIndex");
+            Class<?> dirtyUnitTracker = Class.forName("DirtyUnitTracker");
+            Class<?> options = Class.forName("RefactorOptions");
+            REFACTOR_UNIT = lookup.findStatic(helper, "refactorToSupportVirtualThreads",
+                            MethodType.methodType(boolean.class, JavaParser.class, index, dirtyUnitTracker, CompilationUnit.class))
+                    .asType(MethodType.methodType(boolean.class, JavaParser.class, Object.class, Object.class, CompilationUnit.class));
+            REFACTOR_PROJECT = lookup.findStatic(helper, "refactorProject",
+                            MethodType.methodType(Class.forName("DirtyUnitTracker$FlushResult"), JavaParser.class, List.class, boolean.class, options))
+                    .asType(MethodType.methodType(Object.class, JavaParser.class, List.class, boolean.class, Object.class));
+            ALL_SITES = lookup.findStatic(options, "allSites", MethodType.methodType(options, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class));
+            NEW_DIRTY_UNIT_TRACKER = lookup.findConstructor(dirtyUnitTracker, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+
+            BUILD_INDEX = lookup.findStatic(index, "build", MethodType.methodType(index, List.class))
+                    .asType(MethodType.methodType(Object.class, List.class));
+            FIND_TYPE = lookup.findVirtual(index, "findType",
+                            MethodType.methodType(Optional.class, CompilationUnit.class, ClassOrInterfaceType.class))
+                    .asType(MethodType.methodType(Optional.class, Object.class, CompilationUnit.class, ClassOrInterfaceType.class));
+            GET_FIELD = lookup.findVirtual(index, "getField",
+                            MethodType.methodType(Optional.class, TypeDeclaration.class, String.class))
+                    .asType(MethodType.methodType(Optional.class, Object.class, TypeDeclaration.class, String.class));
+
+            Class<?> dynamicMonitors = Class.forName("DynamicMonitors");
+            Class<?> generatedClass = Class.forName("GeneratedClass");
+            DYNAMIC_MONITOR_MODE = Class.forName("DynamicMonitors$Mode");
+            LOCK_TABLE_CLASS = lookup.findStatic(dynamicMonitors, "tableClass", MethodType.methodType(generatedClass, DYNAMIC_MONITOR_MODE, int.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, int.class));
+            GENERATED_SOURCE = lookup.findVirtual(generatedClass, "source", MethodType.methodType(String.class))
+                    .asType(MethodType.methodType(String.class, Object.class));
+            GENERATED_IMPORTS = lookup.findVirtual(generatedClass, "imports", MethodType.methodType(List.class))
+                    .asType(MethodType.methodType(List.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private RefactorHelper() {
+    }
+
+    static JavaParser createJavaParser() {
+        try {
+            return (JavaParser) CREATE_JAVA_PARSER.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<CompilationUnit> parseJavaFiles(JavaParser javaParser, String projectPath) {
+        try {
+            return (List<CompilationUnit>) PARSE_SERIAL.invokeExact(javaParser, projectPath);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<CompilationUnit> parseJavaFiles(Supplier<JavaParser> parserFactory, String projectPath, int parallelism) {
+        try {
+            return (List<CompilationUnit>) PARSE_PARALLEL.invokeExact(parserFactory, projectPath, parallelism);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Refactors {@code unitsToRefactor} in memory and returns the {@code DirtyUnitTracker} holding the modified units.
+     */
+    static Object refactorUnits(JavaParser javaParser, List<CompilationUnit> unitList, int parallelism) {
+        try {
+            return (Object) REFACTOR_UNITS.invokeExact(javaParser, unitList, parallelism);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Refactors the single unit {@code cu} in memory, marking the units it modifies in {@code dirtyUnits}.
+     */
+    static boolean refactorToSupportVirtualThreads(JavaParser javaParser, Object index, Object dirtyUnits, CompilationUnit cu) {
+        try {
+            return (boolean) REFACTOR_UNIT.invokeExact(javaParser, index, dirtyUnits, cu);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Refactors every site of {@code unitList} and writes the modified units back to their files. Returns the
+     * {@code DirtyUnitTracker.FlushResult}.
+     */
+    static Object refactorProject(JavaParser javaParser, List<CompilationUnit> unitList, int parallelism) {
+        try {
+            Object options = (Object) ALL_SITES.invokeExact(parallelism);
+            return (Object) REFACTOR_PROJECT.invokeExact(javaParser, unitList, true, options);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Returns an empty {@code DirtyUnitTracker}.
+     */
+    static Object newDirtyUnitTracker() {
+        try {
+            return (Object) NEW_DIRTY_UNIT_TRACKER.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Returns a {@code ProjectIndex}, typed as {@link Object} because the class is not accessible from here.
+     */
+    static Object buildIndex(List<CompilationUnit> unitList) {
+        try {
+            return (Object) BUILD_INDEX.invokeExact(unitList);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Optional<TypeDeclaration<?>> findType(Object index, CompilationUnit context, ClassOrInterfaceType type) {
+        try {
+            return (Optional<TypeDeclaration<?>>) FIND_TYPE.invokeExact(index, context, type);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Optional<FieldDeclaration> getField(Object index, TypeDeclaration<?> type, String fieldName) {
+        try {
+            return (Optional<FieldDeclaration>) GET_FIELD.invokeExact(index, type, fieldName);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Returns the source of the {@code MonitorLocks} class generated for the dynamic monitor mode {@code mode}, such as
+     * {@code STRIPED}, in the unnamed package.
+     */
+    @SuppressWarnings("unchecked")
+    static String lockTableSource(String mode, int stripes) {
+        try {
+            Object modeConstant = Arrays.stream(DYNAMIC_MONITOR_MODE.getEnumConstants())
+                    .filter(constant -> ((Enum<?>) constant).name().equals(mode))
+                    .findFirst()
+                    .orElseThrow();
+            Object generated = (Object) LOCK_TABLE_CLASS.invokeExact(modeConstant, stripes);
+            StringBuilder source = new StringBuilder();
+            for (String imported : (List<String>) GENERATED_IMPORTS.invokeExact(generated)) {
+                source.append("import ").append(imported).append(";\n");
+            }
+            return source.append((String) GENERATED_SOURCE.invokeExact(generated)).toString();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(e);
+    }
+}
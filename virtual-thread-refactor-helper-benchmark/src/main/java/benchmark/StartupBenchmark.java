@@ -0,0 +1,153 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compares the time to the first refactoring of a fresh CLI process before and after the {@code fast-startup}
+ * packaging: the jar with dependencies on the JDK running the harness, and the same jar on the jlink-trimmed runtime
+ * with the dynamic CDS archive of the training run. Every run refactors a new copy of {@code SOURCE_DIR}, such as a
+ * small change checked by a pre-commit hook, and is timed from the start of the process until the CLI reports the
+ * files it wrote, and until it exits. The runs of both versions alternate, after {@code --warmup} runs of each that
+ * are not counted, so that both see the same file system caches. The archive is mapped with {@code -Xshare:on}, so a
+ * run fails instead of silently starting without it.
+ * <pre>
+ * java -cp benchmarks.jar benchmark.StartupBenchmark SOURCE_DIR [--dist=DIR] [--runs=N] [--warmup=N] [--work=DIR]
+ *         [-- CLI_OPTIONS...]
+ * </pre>
+ * {@code --dist} defaults to {@code virtual-thread-refactor-helper-javaParser/target/fast-startup}.
+ */
+public final class StartupBenchmark {
+
+    private static final String FIRST_REFACTOR_LINE = "INFO: Wrote ";
+
+    private record Version(String name, List<String> command) {
+    }
+
+    /**
+     * The wall times of one run, from the start of the process to the report of the written files and to its exit.
+     */
+    private record Run(long firstRefactorNanos, long exitNanos) {
+    }
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        List<String> cliOptions = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--")) {
+                cliOptions.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            } else if (arg.startsWith("--")) {
+                int separator = arg.indexOf('=');
+                options.put(separator < 0 ? arg.substring(2) : arg.substring(2, separator), separator < 0 ? "" : arg.substring(separator + 1));
+            } else {
+                arguments.add(arg);
+            }
+        }
+        if (arguments.size() != 1) {
+            System.err.println("Usage: StartupBenchmark SOURCE_DIR [--dist=DIR] [--runs=N] [--warmup=N] [--work=DIR] [-- CLI_OPTIONS...]");
+            System.exit(2);
+        }
+        Path dist = Paths.get(options.getOrDefault("dist", "virtual-thread-refactor-helper-javaParser/target/fast-startup")).toAbsolutePath();
+        Path jar = dist.resolve("virtual-thread-refactor-helper.jar");
+        Path javaHome = Paths.get(System.getProperty("java.home"));
+        List<String> before = new ArrayList<>(List.of(javaHome.resolve("bin/java").toString(), "-jar", jar.toString()));
+        List<String> after = new ArrayList<>(List.of(dist.resolve("runtime/bin/java").toString(), "-Xshare:on",
+                "-XX:SharedArchiveFile=" + dist.resolve("virtual-thread-refactor-helper.jsa"), "-jar", jar.toString()));
+        before.addAll(cliOptions);
+        after.addAll(cliOptions);
+        Path work = options.containsKey("work") ? Paths.get(options.get("work")) : Files.createTempDirectory("startup-benchmark");
+        run(Paths.get(arguments.get(0)), work, List.of(new Version("before", before), new Version("after", after)),
+                Integer.parseInt(options.getOrDefault("runs", "10")), Integer.parseInt(options.getOrDefault("warmup", "2")));
+    }
+
+    private static void run(Path sources, Path work, List<Version> versions, int runs, int warmup) throws Exception {
+        Map<Version, List<Run>> results = new HashMap<>();
+        for (int i = 0; i < warmup + runs; i++) {
+            for (Version version : versions) {
+                Run run = runOnce(version, sources, work.resolve(version.name() + "-" + i));
+                if (i >= warmup) {
+                    results.computeIfAbsent(version, key -> new ArrayList<>()).add(run);
+                }
+            }
+        }
+
+        System.out.printf("%-8s %6s %22s %22s%n", "version", "runs", "first refactor (ms)", "exit (ms)");
+        System.out.printf("%-8s %6s %11s %10s %11s %10s%n", "", "", "median", "min", "median", "min");
+        for (Version version : versions) {
+            long[] firstRefactors = results.get(version).stream().mapToLong(Run::firstRefactorNanos).sorted().toArray();
+            long[] exits = results.get(version).stream().mapToLong(Run::exitNanos).sorted().toArray();
+            System.out.printf("%-8s %6d %11.1f %10.1f %11.1f %10.1f%n", version.name(), firstRefactors.length,
+                    median(firstRefactors) / 1e6, firstRefactors[0] / 1e6, median(exits) / 1e6, exits[0] / 1e6);
+        }
+        double speedup = median(results.get(versions.get(0)).stream().mapToLong(Run::firstRefactorNanos).sorted().toArray())
+                / median(results.get(versions.get(1)).stream().mapToLong(Run::firstRefactorNanos).sorted().toArray());
+        System.out.printf("Time to first refactor: %.2fx faster after%n", speedup);
+    }
+
+    private static Run runOnce(Version version, Path sources, Path copy) throws IOException, InterruptedException {
+        copy(sources, copy);
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(version.command()).redirectErrorStream(true).start();
+        try (OutputStream input = process.getOutputStream()) {
+            input.write((copy.toAbsolutePath() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        long firstRefactor = -1;
+        List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (firstRefactor < 0 && line.startsWith(FIRST_REFACTOR_LINE)) {
+                    firstRefactor = System.nanoTime() - start;
+                }
+                output.add(line);
+            }
+        }
+        int exitCode = process.waitFor();
+        long exit = System.nanoTime() - start;
+        if (exitCode != 0 || firstRefactor < 0) {
+            throw new IllegalStateException(version.name() + " run failed with exit code " + exitCode + ":\n" + String.join("\n", output));
+        }
+        SyntheticProject.delete(copy);
+        return new Run(firstRefactor, exit);
+    }
+
+    private static double median(long[] sorted) {
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            paths.forEach(path -> {
+                try {
+                    Path destination = target.resolve(source.relativize(path).toString());
+                    if (Files.isDirectory(path)) {
+                        Files.createDirectories(destination);
+                    } else {
+                        Files.copy(path, destination);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A generated project of configurable shape, shared by the benchmarks comparing the phases and engines on the same
+ * sources. See {@link SyntheticProject.Shape} for the parameters.
+ */
+@State(Scope.Benchmark)
+public class SyntheticCorpus {
+
+    @Param({"500", "2000"})
+    public int fileCount;
+
+    @Param({"5", "25"})
+    public int sitesPerFile;
+
+    @Param({"0.1", "1.0"})
+    public double crossFileDensity;
+
+    private SyntheticProject.Shape shape;
+    private Path root;
+    private List<Path> files;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        shape = new SyntheticProject.Shape(fileCount, sitesPerFile, crossFileDensity);
+        root = SyntheticProject.generate(shape);
+        try (Stream<Path> paths = Files.walk(root)) {
+            files = paths.filter(path -> path.toString().endsWith(".java")).toList();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        SyntheticProject.delete(root);
+    }
+
+    /**
+     * Writes the generated sources again, undoing a benchmark that wrote its refactoring back.
+     */
+    void restore() throws IOException {
+        SyntheticProject.write(root, shape);
+    }
+
+    Path root() {
+        return root;
+    }
+
+    List<Path> files() {
+        return files;
+    }
+}
@@ -0,0 +1,154 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Generates a throw-away Java source tree that exercises every monitor kind the helper refactors.
+ */
+final class SyntheticProject {
+
+    private static final int FILES_PER_PACKAGE = 100;
+
+    /**
+     * The size of a generated project.
+     *
+     * @param fileCount        number of files, {@value #FILES_PER_PACKAGE} per package
+     * @param sitesPerFile     synchronized sites per file, cycling through synchronized methods, static synchronized
+     *                         methods, and blocks on {@code this}, a field and a class
+     * @param crossFileDensity share of files whose {@code synchronized (Foo.class)} blocks lock the class of another
+     *                         file, which makes the refactoring add a public lock to that file; the others lock their
+     *                         own class
+     */
+    record Shape(int fileCount, int sitesPerFile, double crossFileDensity) {
+
+        Shape {
+            if (fileCount < 1 || sitesPerFile < 0 || crossFileDensity < 0 || crossFileDensity > 1) {
+                throw new IllegalArgumentException("Invalid project shape: " + fileCount + " files, " + sitesPerFile
+                        + " sites per file, cross-file density " + crossFileDensity);
+            }
+        }
+    }
+
+    private SyntheticProject() {
+    }
+
+    /**
+     * Generates {@code fileCount} files with one site of every kind, all locking a class of another file.
+     */
+    static Path generate(int fileCount) throws IOException {
+        return generate(new Shape(fileCount, 5, 1.0));
+    }
+
+    static Path generate(Shape shape) throws IOException {
+        Path root = Files.createTempDirectory("synthetic-project");
+        write(root, shape);
+        return root;
+    }
+
+    /**
+     * (Re)writes the files of {@code shape} under {@code root}, overwriting what a previous run refactored.
+     */
+    static void write(Path root, Shape shape) throws IOException {
+        for (int i = 0; i < shape.fileCount(); i++) {
+            String packageName = "generated.p" + (i / FILES_PER_PACKAGE);
+            Path packageDirectory = root.resolve(packageName.replace('.', '/'));
+            Files.createDirectories(packageDirectory);
+            Files.writeString(packageDirectory.resolve(className(i) + ".java"), source(packageName, i, shape));
+        }
+    }
+
+    static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static String className(int index) {
+        return "Generated" + index;
+    }
+
+    /**
+     * Whether file {@code index} locks a class of another file. The files doing so are spread evenly over the project.
+     */
+    private static boolean locksOtherFile(int index, double crossFileDensity) {
+        return (int) ((index + 1) * crossFileDensity) > (int) (index * crossFileDensity);
+    }
+
+    private static String source(String packageName, int index, Shape shape) {
+        // The monitor class shares the package, so it resolves without imports.
+        String monitorClass = locksOtherFile(index, shape.crossFileDensity())
+                ? className(index - index % FILES_PER_PACKAGE)
+                : className(index);
+        StringBuilder source = new StringBuilder("""
+                package %1$s;
+
+                import java.util.ArrayList;
+                import java.util.List;
+
+                class %2$s {
+
+                    private final Object mutex = new Object();
+                    private final List<String> values = new ArrayList<>();
+                    private int counter;
+                """.formatted(packageName, className(index)));
+        for (int site = 0; site < shape.sitesPerFile(); site++) {
+            // The first five sites keep the names they had before the shape was configurable.
+            String suffix = site < 5 ? "" : String.valueOf(site / 5);
+            source.append('\n').append(switch (site % 5) {
+                case 0 -> """
+                            public synchronized void increment%1$s() {
+                                counter++;
+                            }
+                        """.formatted(suffix);
+                case 1 -> """
+                            public static synchronized void reset%1$s() {
+                                System.out.println("reset");
+                            }
+                        """.formatted(suffix);
+                case 2 -> """
+                            public void add%1$s(String value) {
+                                synchronized (this) {
+                                    values.add(value);
+                                }
+                            }
+                        """.formatted(suffix);
+                case 3 -> """
+                            public void addAll%1$s(List<String> more) {
+                                synchronized (mutex) {
+                                    values.addAll(more);
+                                }
+                            }
+                        """.formatted(suffix);
+                default -> """
+                            public void report%1$s() {
+                                synchronized (%2$s.class) {
+                                    System.out.println(values.size() + counter);
+                                }
+                            }
+                        """.formatted(suffix, monitorClass);
+            });
+        }
+        return source.append("""
+
+                    public int checksum() {
+                        int sum = 0;
+                        for (String value : values) {
+                            sum = 31 * sum + value.hashCode();
+                        }
+                        return sum;
+                    }
+                }
+                """).toString();
+    }
+}
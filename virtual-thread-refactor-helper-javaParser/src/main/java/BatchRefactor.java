@@ -0,0 +1,542 @@
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Batch mode, for many modules refactored in a single run. The input is either a reactor, i.e. a directory whose
+ * {@code pom.xml} lists {@code <modules>}, nested reactors included, or a file listing project roots, one per line,
+ * each of them a reactor, a module with a {@code pom.xml} or a plain source directory. A module depends on the modules
+ * whose {@code groupId:artifactId} its {@code pom.xml} declares as dependencies, and its files are the Java files of
+ * its directory outside the directories of its own modules.
+ * <p>
+ * Every file is parsed as a task of a work-stealing pool, so the workers that are done with a small module take over
+ * the files of the large ones. A module that locks the monitor of a type declared in one of its dependencies, e.g.
+ * with {@code synchronized (Foo.class)}, is refactored in one component with the dependency, because the decision to
+ * convert a monitor covers all its sites; components that would depend on each other through other modules are
+ * merged, so that they form no cycles. Once the modules connected to a component through dependencies are parsed,
+ * the component is indexed together with the modules it depends on, analysed and planned. Its ASTs are modified and
+ * written as soon as the components depending on it, which read them through their own index, are planned, or
+ * refactored if the executor migration, which reads them while applying, is enabled. Independent components are
+ * refactored in parallel.
+ * <p>
+ * A summary of every module is logged, and written with {@code --batch-summary}. Every module gets its own lock table
+ * for dynamic monitors, so an object locked through expressions in several modules is not excluded across them.
+ */
+public class BatchRefactor {
+
+    static Logger logger = Logger.getLogger(BatchRefactor.class.getName());
+
+    private static final String POM_FILE = "pom.xml";
+    private static final String SUMMARY_HEADER = String.join("\t", "module", "component", "files", "parse ms", "wait ms",
+            "plan ms", "apply ms", "write ms", "planned", "converted", "kept", "written");
+
+    /**
+     * A module of the batch.
+     *
+     * @param coordinates  {@code groupId:artifactId}, or the directory of a module without {@code pom.xml}
+     * @param dependencies coordinates of the dependencies declared in its {@code pom.xml}
+     */
+    record Module(String name, Path root, String coordinates, List<String> dependencies, List<Path> files) {
+    }
+
+    /**
+     * What the summary shows of a module.
+     *
+     * @param parseNanos sum of the parse times of its files
+     * @param waitNanos  time from the end of its parse to the start of the planning of its component
+     * @param planNanos  time its component took to be indexed, analysed and planned; the apply and write times are the
+     *                   ones of the component too
+     */
+    record ModuleSummary(String module, String component, int files, long parseNanos, long waitNanos, long planNanos,
+                         long applyNanos, long writeNanos, int plannedSites, int convertedSites, int keptSites, int filesWritten) {
+
+        String toLine() {
+            return String.join("\t", module, component, String.valueOf(files), String.valueOf(parseNanos / 1_000_000),
+                    String.valueOf(waitNanos / 1_000_000), String.valueOf(planNanos / 1_000_000), String.valueOf(applyNanos / 1_000_000),
+                    String.valueOf(writeNanos / 1_000_000), String.valueOf(plannedSites), String.valueOf(convertedSites),
+                    String.valueOf(keptSites), String.valueOf(filesWritten));
+        }
+    }
+
+    private record ParsedModule(List<CompilationUnit> units, List<FileAnalysis> analyses, long parseNanos, long parsedAt) {
+    }
+
+    private record PlannedComponent(List<Integer> modules, List<CompilationUnit> unitList, ProjectIndex index, SiteFilter siteFilter,
+                                    List<RefactorPlan> plans, long startedAt, long planNanos) {
+    }
+
+    private final List<Module> modules;
+    private final List<BitSet> dependencies;
+    private final RefactorOptions options;
+    private final RunMetrics metrics;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<JavaParser> workerParser = ThreadLocal.withInitial(VirtualThreadRefactorHelper::createJavaParser);
+    private final MigrationReport report = new MigrationReport();
+
+    private BatchRefactor(List<Module> modules, RefactorOptions options, RunMetrics metrics, ForkJoinPool pool) {
+        this.modules = modules;
+        this.dependencies = transitiveDependencies(modules);
+        this.options = options;
+        this.metrics = metrics;
+        this.pool = pool;
+    }
+
+    public static void run(Path input, RefactorOptions options, Path summaryFile, RunMetrics metrics) throws IOException {
+        List<Module> modules = metrics.phase("modules", () -> readModules(input));
+        logger.info("Found " + modules.size() + " modules with " + modules.stream().mapToInt(module -> module.files().size()).sum()
+                + " files in " + input);
+        ForkJoinPool pool = new ForkJoinPool(options.parallelism());
+        List<ModuleSummary> summaries;
+        try {
+            summaries = new BatchRefactor(modules, options, metrics, pool).refactor();
+        } finally {
+            pool.shutdown();
+        }
+
+        for (ModuleSummary summary : summaries) {
+            logger.info(summary.module() + ": " + summary.files() + " files parsed in " + summary.parseNanos() / 1_000_000
+                    + " ms, waited " + summary.waitNanos() / 1_000_000 + " ms, planned " + summary.plannedSites() + " sites ("
+                    + summary.convertedSites() + " converted, " + summary.keptSites() + " kept), wrote " + summary.filesWritten()
+                    + " files; component " + summary.component() + " planned in " + summary.planNanos() / 1_000_000 + " ms, applied in "
+                    + summary.applyNanos() / 1_000_000 + " ms, written in " + summary.writeNanos() / 1_000_000 + " ms");
+        }
+        if (summaryFile != null) {
+            List<String> lines = new ArrayList<>();
+            lines.add(SUMMARY_HEADER);
+            summaries.forEach(summary -> lines.add(summary.toLine()));
+            Files.write(summaryFile, lines);
+            logger.info("Wrote the summary of " + summaries.size() + " modules to " + summaryFile);
+        }
+    }
+
+    /**
+     * Reads the modules of the reactor {@code input}, or of the roots listed in the file {@code input}. Modules without
+     * Java files are left out.
+     */
+    static List<Module> readModules(Path input) {
+        List<Module> modules = new ArrayList<>();
+        try {
+            if (Files.isDirectory(input)) {
+                readRoot(input.toAbsolutePath().normalize(), null, modules);
+            } else {
+                for (String line : Files.readAllLines(input)) {
+                    String root = line.strip();
+                    if (!root.isEmpty() && !root.startsWith("#")) {
+                        readRoot(input.toAbsolutePath().getParent().resolve(root).normalize(), null, modules);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the modules of " + input, e);
+        }
+        return modules;
+    }
+
+    private static void readRoot(Path root, String parentGroupId, List<Module> modules) throws IOException {
+        Path pom = root.resolve(POM_FILE);
+        if (!Files.isRegularFile(pom)) {
+            List<Path> files = VirtualThreadRefactorHelper.listJavaFiles(root.toString());
+            if (!files.isEmpty()) {
+                modules.add(new Module(root.getFileName().toString(), root, root.toString(), List.of(), files));
+            }
+            return;
+        }
+        Element project = parsePom(pom);
+        Optional<Element> parent = child(project, "parent");
+        String groupId = text(project, "groupId").or(() -> parent.flatMap(element -> text(element, "groupId"))).orElse(parentGroupId);
+        String artifactId = text(project, "artifactId").orElse(root.getFileName().toString());
+        List<Path> moduleRoots = new ArrayList<>();
+        for (Element module : children(child(project, "modules"), "module")) {
+            Path moduleRoot = root.resolve(module.getTextContent().strip()).normalize();
+            moduleRoots.add(moduleRoot.endsWith(POM_FILE) ? moduleRoot.getParent() : moduleRoot);
+        }
+        List<String> dependencies = new ArrayList<>();
+        for (Element dependency : children(child(project, "dependencies"), "dependency")) {
+            String dependencyGroupId = text(dependency, "groupId").orElse("")
+                    .replace("${project.groupId}", String.valueOf(groupId))
+                    .replace("${project.parent.groupId}", String.valueOf(groupId))
+                    .replace("${groupId}", String.valueOf(groupId));
+            text(dependency, "artifactId").ifPresent(dependencyArtifactId -> dependencies.add(dependencyGroupId + ":" + dependencyArtifactId));
+        }
+
+        List<Path> files = VirtualThreadRefactorHelper.listJavaFiles(root.toString()).stream()
+                .filter(file -> moduleRoots.stream().noneMatch(file::startsWith))
+                .toList();
+        if (!files.isEmpty()) {
+            modules.add(new Module(artifactId, root, groupId + ":" + artifactId, dependencies, files));
+        }
+        for (Path moduleRoot : moduleRoots) {
+            readRoot(moduleRoot, groupId, modules);
+        }
+    }
+
+    private static Element parsePom(Path pom) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder().parse(pom.toFile()).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Failed to parse " + pom, e);
+        }
+    }
+
+    private static Optional<Element> child(Element element, String name) {
+        return children(Optional.of(element), name).stream().findFirst();
+    }
+
+    private static List<Element> children(Optional<Element> element, String name) {
+        List<Element> children = new ArrayList<>();
+        if (element.isPresent()) {
+            NodeList nodes = element.orElseThrow().getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                if (nodes.item(i) instanceof Element child && child.getTagName().equals(name)) {
+                    children.add(child);
+                }
+            }
+        }
+        return children;
+    }
+
+    private static Optional<String> text(Element element, String name) {
+        return child(element, name).map(child -> child.getTextContent().strip()).filter(text -> !text.isEmpty());
+    }
+
+    /**
+     * The modules every module depends on, directly or not. A dependency is matched by its coordinates, or by its
+     * artifact id if its group id is a property that is not resolved.
+     */
+    private static List<BitSet> transitiveDependencies(List<Module> modules) {
+        Map<String, Integer> byCoordinates = new HashMap<>();
+        Map<String, Integer> byArtifactId = new HashMap<>();
+        for (int i = 0; i < modules.size(); i++) {
+            byCoordinates.putIfAbsent(modules.get(i).coordinates(), i);
+            byArtifactId.putIfAbsent(artifactIdOf(modules.get(i).coordinates()), i);
+        }
+        List<BitSet> dependencies = new ArrayList<>();
+        for (Module module : modules) {
+            BitSet direct = new BitSet();
+            for (String dependency : module.dependencies()) {
+                Integer target = byCoordinates.get(dependency);
+                if (target == null && dependency.contains("${")) {
+                    target = byArtifactId.get(artifactIdOf(dependency));
+                }
+                if (target != null) {
+                    direct.set(target);
+                }
+            }
+            dependencies.add(direct);
+        }
+        // Maven forbids cycles, but a list of roots may have them; the closure then holds the module itself.
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (BitSet moduleDependencies : dependencies) {
+                int before = moduleDependencies.cardinality();
+                for (int dependency = moduleDependencies.nextSetBit(0); dependency >= 0; dependency = moduleDependencies.nextSetBit(dependency + 1)) {
+                    moduleDependencies.or(dependencies.get(dependency));
+                }
+                changed |= moduleDependencies.cardinality() != before;
+            }
+        }
+        return dependencies;
+    }
+
+    private static String artifactIdOf(String coordinates) {
+        return coordinates.substring(coordinates.lastIndexOf(':') + 1);
+    }
+
+    private List<ModuleSummary> refactor() {
+        List<CompletableFuture<ParsedModule>> parsed = new ArrayList<>();
+        for (Module module : modules) {
+            parsed.add(parse(module));
+        }
+
+        int[] clusters = new int[modules.size()];
+        for (int i = 0; i < clusters.length; i++) {
+            clusters[i] = i;
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            BitSet moduleDependencies = dependencies.get(i);
+            for (int dependency = moduleDependencies.nextSetBit(0); dependency >= 0; dependency = moduleDependencies.nextSetBit(dependency + 1)) {
+                union(clusters, i, dependency);
+            }
+        }
+        Map<Integer, List<Integer>> modulesByCluster = new LinkedHashMap<>();
+        for (int i = 0; i < modules.size(); i++) {
+            modulesByCluster.computeIfAbsent(find(clusters, i), root -> new ArrayList<>()).add(i);
+        }
+
+        List<CompletableFuture<Map<Integer, ModuleSummary>>> clusterSummaries = new ArrayList<>();
+        for (List<Integer> cluster : modulesByCluster.values()) {
+            CompletableFuture<?>[] clusterParses = cluster.stream().map(parsed::get).toArray(CompletableFuture[]::new);
+            clusterSummaries.add(CompletableFuture.allOf(clusterParses)
+                    .thenCompose(done -> refactorCluster(cluster, cluster.stream().collect(Collectors.toMap(i -> i, i -> parsed.get(i).join())))));
+        }
+        Map<Integer, ModuleSummary> summaries = new TreeMap<>();
+        try {
+            clusterSummaries.forEach(summary -> summaries.putAll(summary.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        VirtualThreadRefactorHelper.writeReport(report, options);
+        return new ArrayList<>(summaries.values());
+    }
+
+    private CompletableFuture<ParsedModule> parse(Module module) {
+        List<CompletableFuture<Optional<CompilationUnit>>> files = new ArrayList<>();
+        long[] parseNanos = new long[module.files().size()];
+        for (int i = 0; i < module.files().size(); i++) {
+            Path path = module.files().get(i);
+            int file = i;
+            files.add(CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                Optional<CompilationUnit> cu = metrics.parseFile(path, () -> VirtualThreadRefactorHelper.parseJavaFile(workerParser.get(), path),
+                        Optional::isPresent);
+                parseNanos[file] = System.nanoTime() - start;
+                return cu;
+            }, pool));
+        }
+        return CompletableFuture.allOf(files.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            List<CompilationUnit> units = new ArrayList<>();
+            files.forEach(file -> file.join().ifPresent(units::add));
+            List<FileAnalysis> analyses = units.stream().map(FileAnalysis::of).toList();
+            long nanos = 0;
+            for (long fileNanos : parseNanos) {
+                nanos += fileNanos;
+            }
+            return new ParsedModule(units, analyses, nanos, System.nanoTime());
+        });
+    }
+
+    /**
+     * Splits the modules of {@code cluster}, which are all parsed, into components and refactors them, each as soon
+     * as the components reading its ASTs are done with them.
+     */
+    private CompletableFuture<Map<Integer, ModuleSummary>> refactorCluster(List<Integer> cluster, Map<Integer, ParsedModule> parsed) {
+        List<List<Integer>> components = components(cluster, parsed);
+        // Components run concurrently, so they share the workers instead of each using all of them.
+        RefactorOptions componentOptions = options.withParallelism(Math.max(1, options.parallelism() / components.size()));
+        Map<Integer, Integer> componentOf = new HashMap<>();
+        for (int i = 0; i < components.size(); i++) {
+            for (int module : components.get(i)) {
+                componentOf.put(module, i);
+            }
+        }
+        List<Set<Integer>> readers = new ArrayList<>();
+        for (List<Integer> component : components) {
+            Set<Integer> componentReaders = new HashSet<>();
+            for (int module : cluster) {
+                if (component.stream().anyMatch(dependencies.get(module)::get) && !component.contains(module)) {
+                    componentReaders.add(componentOf.get(module));
+                }
+            }
+            readers.add(componentReaders);
+        }
+
+        List<CompletableFuture<PlannedComponent>> planned = new ArrayList<>();
+        for (List<Integer> component : components) {
+            planned.add(CompletableFuture.supplyAsync(() -> plan(component, parsed, componentOptions), pool));
+        }
+        List<CompletableFuture<Map<Integer, ModuleSummary>>> refactored = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) {
+            refactored.add(null);
+        }
+        for (int i = 0; i < components.size(); i++) {
+            refactorWhenRead(i, readers, planned, refactored, parsed, componentOptions);
+        }
+        return CompletableFuture.allOf(refactored.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            Map<Integer, ModuleSummary> summaries = new HashMap<>();
+            refactored.forEach(component -> summaries.putAll(component.join()));
+            return summaries;
+        });
+    }
+
+    /**
+     * Schedules the application of the plan of {@code component} after the components reading it, which depend on it
+     * and are therefore scheduled first.
+     */
+    private CompletableFuture<Map<Integer, ModuleSummary>> refactorWhenRead(int component, List<Set<Integer>> readers, List<CompletableFuture<PlannedComponent>> planned,
+                                                                    List<CompletableFuture<Map<Integer, ModuleSummary>>> refactored,
+                                                                    Map<Integer, ParsedModule> parsed, RefactorOptions componentOptions) {
+        if (refactored.get(component) != null) {
+            return refactored.get(component);
+        }
+        List<CompletableFuture<?>> reads = new ArrayList<>();
+        for (int reader : readers.get(component)) {
+            reads.add(options.virtualThreadExecutors() ? refactorWhenRead(reader, readers, planned, refactored, parsed, componentOptions)
+                    : planned.get(reader));
+        }
+        CompletableFuture<Map<Integer, ModuleSummary>> result = planned.get(component)
+                .thenCombine(CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)), (plan, done) -> plan)
+                .thenApplyAsync(plan -> apply(plan, parsed, componentOptions), pool);
+        refactored.set(component, result);
+        return result;
+    }
+
+    /**
+     * Groups the modules of {@code cluster} that lock the monitors of types declared in their dependencies with those
+     * dependencies, and the components that would depend on each other. Components are in the order of their first
+     * module.
+     */
+    private List<List<Integer>> components(List<Integer> cluster, Map<Integer, ParsedModule> parsed) {
+        Map<Integer, Set<String>> declaredTypes = new HashMap<>();
+        for (int module : cluster) {
+            Set<String> types = new HashSet<>();
+            parsed.get(module).analyses().forEach(analysis -> analysis.declaredTypes().forEach(type -> types.add(FileAnalysis.simpleName(type))));
+            declaredTypes.put(module, types);
+        }
+        int[] parents = new int[modules.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (int module : cluster) {
+            for (FileAnalysis analysis : parsed.get(module).analyses()) {
+                for (String type : analysis.monitorTypes()) {
+                    String simpleName = FileAnalysis.simpleName(type);
+                    if (simpleName.equals(DynamicMonitors.CLASS_NAME) || declaredTypes.get(module).contains(simpleName)) {
+                        continue;
+                    }
+                    // Any dependency declaring the name may be the one the index resolves it to.
+                    for (int dependency : cluster) {
+                        if (dependencies.get(module).get(dependency) && declaredTypes.get(dependency).contains(simpleName)) {
+                            union(parents, module, dependency);
+                        }
+                    }
+                }
+            }
+        }
+        // Components that depend on each other, through modules outside of them, are merged until none do.
+        for (boolean merged = true; merged; ) {
+            merged = false;
+            Map<Integer, BitSet> componentDependencies = new HashMap<>();
+            for (int module : cluster) {
+                BitSet reached = componentDependencies.computeIfAbsent(find(parents, module), root -> new BitSet());
+                BitSet moduleDependencies = dependencies.get(module);
+                for (int dependency = moduleDependencies.nextSetBit(0); dependency >= 0; dependency = moduleDependencies.nextSetBit(dependency + 1)) {
+                    reached.set(find(parents, dependency));
+                }
+            }
+            for (boolean changed = true; changed; ) {
+                changed = false;
+                for (BitSet reached : componentDependencies.values()) {
+                    int before = reached.cardinality();
+                    for (int component = reached.nextSetBit(0); component >= 0; component = reached.nextSetBit(component + 1)) {
+                        reached.or(componentDependencies.getOrDefault(component, new BitSet()));
+                    }
+                    changed |= reached.cardinality() != before;
+                }
+            }
+            for (Map.Entry<Integer, BitSet> component : componentDependencies.entrySet()) {
+                BitSet reached = component.getValue();
+                for (int other = reached.nextSetBit(0); other >= 0; other = reached.nextSetBit(other + 1)) {
+                    if (other != component.getKey() && componentDependencies.get(other).get(component.getKey())) {
+                        union(parents, component.getKey(), other);
+                        merged = true;
+                    }
+                }
+            }
+        }
+        Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        for (int module : cluster) {
+            components.computeIfAbsent(find(parents, module), root -> new ArrayList<>()).add(module);
+        }
+        return new ArrayList<>(components.values());
+    }
+
+    private PlannedComponent plan(List<Integer> component, Map<Integer, ParsedModule> parsed, RefactorOptions componentOptions) {
+        long start = System.nanoTime();
+        List<CompilationUnit> unitList = new ArrayList<>();
+        component.forEach(module -> unitList.addAll(parsed.get(module).units()));
+        List<CompilationUnit> indexedUnits = new ArrayList<>(unitList);
+        BitSet componentDependencies = new BitSet();
+        component.forEach(module -> componentDependencies.or(dependencies.get(module)));
+        for (int dependency = componentDependencies.nextSetBit(0); dependency >= 0; dependency = componentDependencies.nextSetBit(dependency + 1)) {
+            if (!component.contains(dependency)) {
+                indexedUnits.addAll(parsed.get(dependency).units());
+            }
+        }
+        // The component and its dependencies are the whole project as far as the component can tell.
+        ProjectIndex index = metrics.phase("index", () -> ProjectIndex.build(indexedUnits));
+        SiteFilter siteFilter = metrics.phase("site filter", () -> VirtualThreadRefactorHelper.createSiteFilter(index,
+                () -> BlockingCallAnalysis.analyse(indexedUnits, componentOptions.blockingApis(), true), componentOptions));
+        List<RefactorPlan> plans = VirtualThreadRefactorHelper.planUnits(index, siteFilter, unitList, componentOptions, metrics);
+        return new PlannedComponent(component, unitList, index, siteFilter, plans, start, System.nanoTime() - start);
+    }
+
+    private Map<Integer, ModuleSummary> apply(PlannedComponent component, Map<Integer, ParsedModule> parsed, RefactorOptions componentOptions) {
+        long applyStart = System.nanoTime();
+        DirtyUnitTracker dirtyUnits = VirtualThreadRefactorHelper.applyPlansAndMigrate(workerParser.get(), component.index(), component.siteFilter(),
+                component.unitList(), component.plans(), () -> BlockingCallAnalysis.analyse(component.unitList(), componentOptions.blockingApis(), true),
+                componentOptions, metrics, report);
+        long applyNanos = System.nanoTime() - applyStart;
+        Map<CompilationUnit, Boolean> writtenUnits = new IdentityHashMap<>();
+        component.unitList().forEach(cu -> writtenUnits.put(cu, dirtyUnits.isDirty(cu)));
+        long writeStart = System.nanoTime();
+        DirtyUnitTracker.FlushResult flushResult = metrics.phase("write", () -> dirtyUnits.flush(componentOptions.parallelism()));
+        metrics.filesWritten(flushResult);
+        long writeNanos = System.nanoTime() - writeStart;
+
+        Map<CompilationUnit, RefactorPlan> plansByUnit = new IdentityHashMap<>();
+        component.plans().forEach(plan -> plansByUnit.put(plan.getCompilationUnit(), plan));
+        String componentName = modules.get(component.modules().get(0)).name()
+                + (component.modules().size() > 1 ? "+" + (component.modules().size() - 1) : "");
+        Map<Integer, ModuleSummary> summaries = new HashMap<>();
+        for (int module : component.modules()) {
+            ParsedModule parsedModule = parsed.get(module);
+            int plannedSites = 0;
+            int convertedSites = 0;
+            int keptSites = 0;
+            int filesWritten = 0;
+            for (CompilationUnit cu : parsedModule.units()) {
+                RefactorPlan plan = plansByUnit.get(cu);
+                plannedSites += plan.getPlannedSites().size();
+                convertedSites += (int) plan.getPlannedSites().stream().filter(RefactorPlan.PlannedSite::converted).count();
+                keptSites += plan.getKeptSites();
+                filesWritten += writtenUnits.get(cu) ? 1 : 0;
+            }
+            summaries.put(module, new ModuleSummary(modules.get(module).name(), componentName, modules.get(module).files().size(),
+                    parsedModule.parseNanos(), Math.max(0, component.startedAt() - parsedModule.parsedAt()), component.planNanos(), applyNanos,
+                    writeNanos, plannedSites, convertedSites, keptSites, filesWritten));
+        }
+        return summaries;
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int i, int j) {
+        parents[find(parents, i)] = find(parents, j);
+    }
+}
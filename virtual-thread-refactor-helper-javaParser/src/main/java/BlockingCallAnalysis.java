@@ -0,0 +1,813 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.SuperExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.expr.TypeExpr;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Decides which synchronized methods and blocks may block, i.e. reach a call to a known blocking API. Only those pin a
+ * carrier thread for long; converting CPU-only critical sections just adds lock allocation and try/finally overhead.
+ * <p>
+ * There is no symbol solver, so calls are resolved from declarations: receiver types come from local variables,
+ * parameters and fields and are qualified through the imports of the unit. Calls into the project are resolved by
+ * name and argument count against the receiver type, or against every project method of that name when the receiver
+ * is unknown. Resolution errs on the side of "blocking", which keeps the previous behaviour of converting the site.
+ * <p>
+ * Every file is first reduced to a {@link CallSummary}, which holds the calls of its callables with the receiver types
+ * as written. The summaries of the whole project are then solved once: the calls are resolved against the types of
+ * every file, every callable gets a verdict, and blocking is propagated from the directly blocking callables to their
+ * callers over the reversed call graph, so each callable is visited once regardless of recursion. The ASTs of the
+ * files being refactored are bound to their summaries; the other files of the project may be known by their summaries
+ * only, as in incremental and streaming mode, and are analysed exactly as if they were parsed.
+ * <p>
+ * When only part of the project is analysed and the rest is not even summarised, calls on types that are neither
+ * analysed nor part of the JDK may reach code that is not visible, and are treated as blocking.
+ */
+public class BlockingCallAnalysis implements SiteFilter {
+
+    static final List<String> DEFAULT_BLOCKING_APIS = List.of(
+            "java.io.",
+            "java.nio.channels.",
+            "java.net.",
+            "java.sql.",
+            "javax.sql.",
+            "java.nio.file.Files",
+            "java.lang.Thread#sleep",
+            "*#wait");
+
+    private static final Map<String, String> WELL_KNOWN_FIELD_TYPES = Map.of(
+            "System.out", "java.io.PrintStream",
+            "System.err", "java.io.PrintStream",
+            "System.in", "java.io.InputStream");
+
+    private static final CallSummary.Call BLOCKING_API_CALL = new CallSummary.Call(CallSummary.CallKind.BLOCKING_API, "", false, false, "", 0, List.of());
+    private static final Map<String, Boolean> PLATFORM_TYPES = new ConcurrentHashMap<>();
+
+    private record TypeReference(int file, int type) {
+    }
+
+    /**
+     * Where a call is resolved from; {@code file} is -1 for a unit without a summary.
+     */
+    private record Context(int file, String packageName, List<String> imports) {
+    }
+
+    // The solved summaries, shared with the analyses bound to other units of the same project.
+    private final boolean wholeProject;
+    private final BlockingApis blockingApis;
+    private final List<CallSummary> files;
+    private final int[] callableOffsets;
+    private final List<CallSummary.Code> callables;
+    private final TypeDirectory<TypeReference> types;
+    private final Map<String, List<Integer>> callablesByName;
+    private final List<int[][]> targets;
+    private final BitSet blockingCallables;
+    private final List<BitSet> blockingBlocks;
+
+    // The ASTs bound to the summaries.
+    private final Map<CompilationUnit, Integer> boundFiles = new IdentityHashMap<>();
+    private final Map<Node, Integer> callableIds = new IdentityHashMap<>();
+    private final Map<Node, Boolean> blockVerdicts = new IdentityHashMap<>();
+    private final Map<Node, Integer> typeIndices = new IdentityHashMap<>();
+
+    private BlockingCallAnalysis(boolean wholeProject, BlockingApis blockingApis, List<CallSummary> files) {
+        this.wholeProject = wholeProject;
+        this.blockingApis = blockingApis;
+        this.files = files;
+        this.callableOffsets = new int[files.size() + 1];
+        this.callables = new ArrayList<>();
+        this.types = new TypeDirectory<>();
+        this.callablesByName = new HashMap<>();
+        this.targets = new ArrayList<>();
+        this.blockingCallables = new BitSet();
+        this.blockingBlocks = new ArrayList<>();
+        solve();
+    }
+
+    private BlockingCallAnalysis(BlockingCallAnalysis solved) {
+        this.wholeProject = solved.wholeProject;
+        this.blockingApis = solved.blockingApis;
+        this.files = solved.files;
+        this.callableOffsets = solved.callableOffsets;
+        this.callables = solved.callables;
+        this.types = solved.types;
+        this.callablesByName = solved.callablesByName;
+        this.targets = solved.targets;
+        this.blockingCallables = solved.blockingCallables;
+        this.blockingBlocks = solved.blockingBlocks;
+    }
+
+    /**
+     * Analyses {@code unitList}. {@code extraBlockingApis} are added to {@link #DEFAULT_BLOCKING_APIS}; an entry is a
+     * package prefix ending with a dot ({@code java.io.}), a type ({@code java.nio.file.Files} or {@code Files}),
+     * or a method of a type ({@code java.lang.Thread#sleep}, {@code *#wait} for any receiver). {@code wholeProject}
+     * tells whether {@code unitList} is the complete project.
+     */
+    public static BlockingCallAnalysis analyse(List<CompilationUnit> unitList, List<String> extraBlockingApis, boolean wholeProject) {
+        return analyse(unitList, List.of(), blockingApis(extraBlockingApis), wholeProject);
+    }
+
+    /**
+     * Analyses {@code unitList} as a part of the project whose other files are known by {@code otherFiles}, their
+     * summaries made with the same {@code extraBlockingApis}.
+     */
+    public static BlockingCallAnalysis analyse(List<CompilationUnit> unitList, List<CallSummary> otherFiles, List<String> extraBlockingApis) {
+        return analyse(unitList, otherFiles, blockingApis(extraBlockingApis), true);
+    }
+
+    private static BlockingCallAnalysis analyse(List<CompilationUnit> unitList, List<CallSummary> otherFiles, BlockingApis blockingApis,
+                                                boolean wholeProject) {
+        List<CallSummary> summaries = new ArrayList<>(unitList.size() + otherFiles.size());
+        unitList.forEach(cu -> summaries.add(summarize(cu, blockingApis)));
+        summaries.addAll(otherFiles);
+        BlockingCallAnalysis analysis = new BlockingCallAnalysis(wholeProject, blockingApis, summaries);
+        for (int file = 0; file < unitList.size(); file++) {
+            analysis.bind(unitList.get(file), file);
+        }
+        return analysis;
+    }
+
+    /**
+     * Solves the summaries of the whole project, made with the same {@code extraBlockingApis}, without any AST. Use
+     * {@link #bind(List, List)} to ask about the sites of parsed units.
+     */
+    public static BlockingCallAnalysis solve(List<CallSummary> project, List<String> extraBlockingApis) {
+        return new BlockingCallAnalysis(true, blockingApis(extraBlockingApis), List.copyOf(project));
+    }
+
+    /**
+     * Returns an analysis sharing this one's verdicts, with {@code unitList} bound to the summaries at
+     * {@code fileIndices}. The units must be parsed from the files the summaries were made of.
+     */
+    public BlockingCallAnalysis bind(List<CompilationUnit> unitList, List<Integer> fileIndices) {
+        BlockingCallAnalysis analysis = new BlockingCallAnalysis(this);
+        for (int i = 0; i < unitList.size(); i++) {
+            analysis.bind(unitList.get(i), fileIndices.get(i));
+        }
+        return analysis;
+    }
+
+    /**
+     * Reduces {@code cu} to the summary the analysis needs, with {@code extraBlockingApis} as in
+     * {@link #analyse(List, List, boolean)}.
+     */
+    public static CallSummary summarize(CompilationUnit cu, List<String> extraBlockingApis) {
+        return summarize(cu, blockingApis(extraBlockingApis));
+    }
+
+    @Override
+    public boolean accepts(Node site) {
+        return site instanceof SynchronizedStmt statement ? isBlocking(statement) : isBlocking((MethodDeclaration) site);
+    }
+
+    public boolean isBlocking(MethodDeclaration method) {
+        Integer id = callableIds.get(method);
+        return id != null ? blockingCallables.get(id) : callsBlock(method);
+    }
+
+    public boolean isBlocking(SynchronizedStmt statement) {
+        Boolean verdict = blockVerdicts.get(statement);
+        return verdict != null ? verdict : callsBlock(statement.getBody());
+    }
+
+    /**
+     * Whether {@code code}, such as a task submitted to an executor, may reach a blocking call, directly, through a
+     * project method, or through a method reference.
+     */
+    public boolean mayBlock(Node code) {
+        CompilationUnit cu = code.findCompilationUnit().orElseThrow();
+        Context context = contextOf(cu);
+        if (callsBlock(code)) {
+            return true;
+        }
+        for (MethodReferenceExpr reference : code.findAll(MethodReferenceExpr.class)) {
+            if (isBlockingReference(context, cu, reference)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of files of the project, summarised or bound.
+     */
+    public int fileCount() {
+        return files.size();
+    }
+
+    /**
+     * Returns the keys, see {@link CallSummary#callableKeys()}, of the callables of the file at {@code file} that may
+     * block.
+     */
+    public Set<String> blockingCallableKeys(int file) {
+        Set<String> keys = new TreeSet<>();
+        List<String> callableKeys = files.get(file).callableKeys();
+        for (int i = 0; i < callableKeys.size(); i++) {
+            if (blockingCallables.get(callableOffsets[file] + i)) {
+                keys.add(callableKeys.get(i));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the indices of the files declaring, or calling, one of the callables given by their keys for every file.
+     */
+    public BitSet filesDeclaringOrCalling(List<Set<String>> callableKeys) {
+        BitSet selectedCallables = new BitSet();
+        BitSet selectedFiles = new BitSet();
+        for (int file = 0; file < files.size(); file++) {
+            List<String> keys = files.get(file).callableKeys();
+            for (int i = 0; i < keys.size(); i++) {
+                if (callableKeys.get(file).contains(keys.get(i))) {
+                    selectedCallables.set(callableOffsets[file] + i);
+                    selectedFiles.set(file);
+                }
+            }
+        }
+        if (selectedCallables.isEmpty()) {
+            return selectedFiles;
+        }
+        for (int file = 0; file < files.size(); file++) {
+            for (int[] callTargets : targets.get(file)) {
+                if (callTargets != null && calls(callTargets, selectedCallables)) {
+                    selectedFiles.set(file);
+                    break;
+                }
+            }
+        }
+        return selectedFiles;
+    }
+
+    private static boolean calls(int[] callTargets, BitSet selectedCallables) {
+        for (int target : callTargets) {
+            if (selectedCallables.get(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static BlockingApis blockingApis(List<String> extraBlockingApis) {
+        List<String> apis = new ArrayList<>(DEFAULT_BLOCKING_APIS);
+        apis.addAll(extraBlockingApis);
+        return new BlockingApis(apis);
+    }
+
+    private void addTypes(int file) {
+        List<CallSummary.TypeSummary> fileTypes = files.get(file).types();
+        for (int type = 0; type < fileTypes.size(); type++) {
+            CallSummary.TypeSummary summary = fileTypes.get(type);
+            types.add(summary.qualifiedName(), summary.name(), summary.topLevel(), new TypeReference(file, type));
+        }
+    }
+
+    private void solve() {
+        for (int file = 0; file < files.size(); file++) {
+            addTypes(file);
+            callableOffsets[file + 1] = callableOffsets[file] + files.get(file).callables().size();
+            for (CallSummary.Code callable : files.get(file).callables()) {
+                callablesByName.computeIfAbsent(callable.name(), name -> new ArrayList<>()).add(callables.size());
+                callables.add(callable);
+            }
+        }
+        for (int file = 0; file < files.size(); file++) {
+            CallSummary summary = files.get(file);
+            Context context = new Context(file, summary.packageName(), summary.imports());
+            int[][] fileTargets = new int[summary.calls().size()][];
+            for (int call = 0; call < fileTargets.length; call++) {
+                CallSummary.Call resolved = summary.calls().get(call);
+                fileTargets[call] = blocksItself(context, resolved) ? null : resolve(context, resolved);
+            }
+            targets.add(fileTargets);
+        }
+
+        // The callers of every callable, counted first so that they fit in arrays.
+        int[] callerCounts = new int[callables.size()];
+        Deque<Integer> worklist = new ArrayDeque<>();
+        for (int id = 0; id < callables.size(); id++) {
+            if (isDirectlyBlocking(id)) {
+                blockingCallables.set(id);
+                worklist.add(id);
+            } else {
+                forEachTarget(id, target -> callerCounts[target]++);
+            }
+        }
+        int[][] callers = new int[callables.size()][];
+        for (int id = 0; id < callables.size(); id++) {
+            callers[id] = new int[callerCounts[id]];
+            callerCounts[id] = 0;
+        }
+        for (int id = 0; id < callables.size(); id++) {
+            if (!blockingCallables.get(id)) {
+                int caller = id;
+                forEachTarget(id, target -> callers[target][callerCounts[target]++] = caller);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            for (int caller : callers[worklist.poll()]) {
+                if (!blockingCallables.get(caller)) {
+                    blockingCallables.set(caller);
+                    worklist.add(caller);
+                }
+            }
+        }
+
+        for (int file = 0; file < files.size(); file++) {
+            List<CallSummary.Code> blocks = files.get(file).blocks();
+            BitSet blocking = new BitSet(blocks.size());
+            for (int block = 0; block < blocks.size(); block++) {
+                if (callsBlock(file, blocks.get(block).calls())) {
+                    blocking.set(block);
+                }
+            }
+            blockingBlocks.add(blocking);
+        }
+    }
+
+    private int fileOfCallable(int id) {
+        int file = 0;
+        int low = 0;
+        int high = files.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (callableOffsets[middle] <= id) {
+                file = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        // Files without callables share their offset with the next file.
+        while (callableOffsets[file + 1] <= id) {
+            file++;
+        }
+        return file;
+    }
+
+    private boolean isDirectlyBlocking(int id) {
+        int[][] fileTargets = targets.get(fileOfCallable(id));
+        for (int call : callables.get(id).calls()) {
+            if (fileTargets[call] == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void forEachTarget(int id, IntConsumer action) {
+        int[][] fileTargets = targets.get(fileOfCallable(id));
+        for (int call : callables.get(id).calls()) {
+            for (int target : fileTargets[call]) {
+                action.accept(target);
+            }
+        }
+    }
+
+    private boolean callsBlock(int file, List<Integer> calls) {
+        int[][] fileTargets = targets.get(file);
+        for (int call : calls) {
+            if (fileTargets[call] == null || calls(fileTargets[call], blockingCallables)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a call made in {@code code}, which may not have been summarised, blocks.
+     */
+    private boolean callsBlock(Node code) {
+        CompilationUnit cu = code.findCompilationUnit().orElseThrow();
+        Context context = contextOf(cu);
+        for (Node node : callsIn(code)) {
+            CallSummary.Call call = summarizeCall(cu, node, typeIndices, blockingApis);
+            if (blocksItself(context, call) || calls(resolve(context, call), blockingCallables)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bind(CompilationUnit cu, int file) {
+        CallSummary summary = files.get(file);
+        List<Node> typeNodes = new ArrayList<>(cu.findAll(TypeDeclaration.class));
+        List<Node> callableNodes = new ArrayList<>(cu.findAll(CallableDeclaration.class));
+        List<SynchronizedStmt> blockNodes = cu.findAll(SynchronizedStmt.class);
+        if (typeNodes.size() != summary.types().size() || callableNodes.size() != summary.callables().size()
+                || blockNodes.size() != summary.blocks().size()) {
+            throw new IllegalStateException("The call summary does not match the unit "
+                    + cu.getStorage().map(storage -> storage.getPath().toString()).orElse(cu.getPrimaryTypeName().orElse("")));
+        }
+        boundFiles.put(cu, file);
+        for (int i = 0; i < typeNodes.size(); i++) {
+            typeIndices.put(typeNodes.get(i), i);
+        }
+        for (int i = 0; i < callableNodes.size(); i++) {
+            callableIds.put(callableNodes.get(i), callableOffsets[file] + i);
+        }
+        for (int i = 0; i < blockNodes.size(); i++) {
+            blockVerdicts.put(blockNodes.get(i), blockingBlocks.get(file).get(i));
+        }
+    }
+
+    private Context contextOf(CompilationUnit cu) {
+        Integer file = boundFiles.get(cu);
+        if (file != null) {
+            return new Context(file, files.get(file).packageName(), files.get(file).imports());
+        }
+        return new Context(-1, packageNameOf(cu), importsOf(cu));
+    }
+
+    /**
+     * A call blocks by itself if it calls a blocking API, or, when only part of the project is visible, a type that
+     * is neither in the project nor in the JDK.
+     */
+    private boolean blocksItself(Context context, CallSummary.Call call) {
+        if (call.kind() == CallSummary.CallKind.BLOCKING_API) {
+            return true;
+        }
+        boolean typedCall = call.kind() == CallSummary.CallKind.CREATION || call.kind() == CallSummary.CallKind.RECEIVER && call.typed();
+        return !wholeProject && typedCall && !call.platformType() && findType(context, call.type()).isEmpty();
+    }
+
+    private Optional<TypeReference> findType(Context context, String typeName) {
+        return types.find(context.packageName(), context.imports(), typeName);
+    }
+
+    private int[] resolve(Context context, CallSummary.Call call) {
+        List<Integer> resolved = new ArrayList<>();
+        switch (call.kind()) {
+            case CREATION -> findType(context, call.type()).ifPresent(type -> {
+                for (int constructor : typeSummary(type).constructors()) {
+                    resolved.add(callableOffsets[type.file()] + constructor);
+                }
+            });
+            case UNQUALIFIED -> {
+                if (context.file() >= 0) {
+                    for (int type : call.enclosingTypes()) {
+                        methodsOf(new TypeReference(context.file(), type), call.name(), call.arguments(), resolved);
+                    }
+                }
+                if (resolved.isEmpty()) {
+                    methodsNamed(call.name(), call.arguments(), resolved);
+                }
+            }
+            case RECEIVER -> {
+                Optional<TypeReference> receiver = findType(context, call.type());
+                if (receiver.isPresent()) {
+                    methodsOf(receiver.orElseThrow(), call.name(), call.arguments(), resolved);
+                } else if (!call.typed()) {
+                    methodsNamed(call.name(), call.arguments(), resolved);
+                }
+                // Otherwise a variable of a type outside the project, or a static call on such a type.
+            }
+            case NAMED -> methodsNamed(call.name(), call.arguments(), resolved);
+            default -> throw new IllegalArgumentException("Not a project call: " + call);
+        }
+        return resolved.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private CallSummary.TypeSummary typeSummary(TypeReference type) {
+        return files.get(type.file()).types().get(type.type());
+    }
+
+    /**
+     * Methods of {@code type} and its project supertypes matching {@code name} and {@code arguments}. A matching
+     * method without a body (abstract or interface) stands for every project method of that name.
+     */
+    private void methodsOf(TypeReference type, String name, int arguments, List<Integer> resolved) {
+        Deque<TypeReference> pending = new ArrayDeque<>(List.of(type));
+        Set<TypeReference> visited = new HashSet<>();
+        while (!pending.isEmpty()) {
+            TypeReference current = pending.poll();
+            if (!visited.add(current)) {
+                continue;
+            }
+            CallSummary file = files.get(current.file());
+            CallSummary.TypeSummary summary = typeSummary(current);
+            for (int method : summary.methods()) {
+                CallSummary.Code callable = file.callables().get(method);
+                if (callable.name().equals(name) && callable.parameters() == arguments) {
+                    if (callable.kind() == CallSummary.CodeKind.METHOD) {
+                        resolved.add(callableOffsets[current.file()] + method);
+                    } else {
+                        methodsNamed(name, arguments, resolved);
+                    }
+                }
+            }
+            for (String supertype : summary.supertypes()) {
+                types.find(file.packageName(), file.imports(), supertype).ifPresent(pending::add);
+            }
+        }
+    }
+
+    private void methodsNamed(String name, int arguments, List<Integer> resolved) {
+        for (int id : callablesByName.getOrDefault(name, List.of())) {
+            CallSummary.Code callable = callables.get(id);
+            if (callable.kind() != CallSummary.CodeKind.CONSTRUCTOR && callable.parameters() == arguments) {
+                resolved.add(id);
+            }
+        }
+    }
+
+    /**
+     * Method references have no argument count, so they match every method of their name on the receiver type, or
+     * in the whole project if the receiver is not known.
+     */
+    private boolean isBlockingReference(Context context, CompilationUnit cu, MethodReferenceExpr reference) {
+        String methodName = reference.getIdentifier();
+        if (blockingApis.matchesAnyReceiver(methodName)) {
+            return true;
+        }
+        Expression scope = reference.getScope();
+        Optional<String> receiverType = Optional.empty();
+        if (scope instanceof TypeExpr typeExpr && typeExpr.getType() instanceof ClassOrInterfaceType type) {
+            receiverType = Optional.of(type.getNameWithScope());
+        } else if (scope instanceof NameExpr nameExpr) {
+            receiverType = declaredTypeOf(nameExpr, nameExpr.getNameAsString()).map(ClassOrInterfaceType::getNameWithScope);
+            if (receiverType.isEmpty() && Character.isUpperCase(nameExpr.getNameAsString().charAt(0))) {
+                receiverType = Optional.of(nameExpr.getNameAsString());
+            }
+        } else if (scope instanceof ThisExpr || scope instanceof SuperExpr) {
+            receiverType = Declarations.enclosingType(reference).map(TypeDeclaration::getNameAsString);
+        }
+        if (receiverType.isPresent()) {
+            Optional<TypeReference> receiver = findType(context, receiverType.orElseThrow());
+            if (receiver.isPresent()) {
+                List<Integer> methods = new ArrayList<>();
+                for (int method : typeSummary(receiver.orElseThrow()).methods()) {
+                    if (files.get(receiver.orElseThrow().file()).callables().get(method).name().equals(methodName)) {
+                        methods.add(callableOffsets[receiver.orElseThrow().file()] + method);
+                    }
+                }
+                if (!methods.isEmpty()) {
+                    return methods.stream().anyMatch(blockingCallables::get);
+                }
+            } else {
+                return qualify(cu, receiverType.orElseThrow()).stream().anyMatch(type -> blockingApis.matches(type, methodName));
+            }
+        }
+        return callablesByName.getOrDefault(methodName, List.of()).stream().anyMatch(blockingCallables::get);
+    }
+
+    private static CallSummary summarize(CompilationUnit cu, BlockingApis blockingApis) {
+        Map<Node, Integer> typeIndices = new IdentityHashMap<>();
+        List<TypeDeclaration<?>> typeDeclarations = new ArrayList<>();
+        for (TypeDeclaration<?> type : cu.findAll(TypeDeclaration.class)) {
+            typeIndices.put(type, typeDeclarations.size());
+            typeDeclarations.add(type);
+        }
+        Map<Node, Integer> callableIndices = new IdentityHashMap<>();
+        List<CallableDeclaration<?>> callableDeclarations = new ArrayList<>();
+        for (CallableDeclaration<?> callable : cu.findAll(CallableDeclaration.class)) {
+            callableIndices.put(callable, callableDeclarations.size());
+            callableDeclarations.add(callable);
+        }
+
+        List<CallSummary.TypeSummary> types = new ArrayList<>();
+        for (TypeDeclaration<?> type : typeDeclarations) {
+            List<String> supertypes = new ArrayList<>();
+            if (type instanceof ClassOrInterfaceDeclaration declaration) {
+                declaration.getExtendedTypes().forEach(supertype -> supertypes.add(supertype.getNameWithScope()));
+                declaration.getImplementedTypes().forEach(supertype -> supertypes.add(supertype.getNameWithScope()));
+            }
+            types.add(new CallSummary.TypeSummary(type.getFullyQualifiedName().orElse(""), type.getNameAsString(), type.isTopLevelType(),
+                    supertypes, type.getMethods().stream().map(callableIndices::get).toList(),
+                    type.getConstructors().stream().map(callableIndices::get).toList()));
+        }
+
+        Map<CallSummary.Call, Integer> callIndices = new HashMap<>();
+        List<CallSummary.Call> calls = new ArrayList<>();
+        Map<Node, Integer> callNodes = new IdentityHashMap<>();
+        for (Node node : callsIn(cu)) {
+            CallSummary.Call call = summarizeCall(cu, node, typeIndices, blockingApis);
+            callNodes.put(node, callIndices.computeIfAbsent(call, key -> {
+                calls.add(key);
+                return calls.size() - 1;
+            }));
+        }
+
+        List<CallSummary.Code> callables = new ArrayList<>();
+        for (CallableDeclaration<?> callable : callableDeclarations) {
+            CallSummary.CodeKind kind = callable instanceof ConstructorDeclaration ? CallSummary.CodeKind.CONSTRUCTOR
+                    : ((MethodDeclaration) callable).getBody().isPresent() ? CallSummary.CodeKind.METHOD : CallSummary.CodeKind.ABSTRACT_METHOD;
+            int type = Declarations.enclosingType(callable).map(typeIndices::get).orElseThrow();
+            callables.add(new CallSummary.Code(kind, type, callable.getNameAsString(), callable.getParameters().size(), callsOf(callable, callNodes)));
+        }
+        List<CallSummary.Code> blocks = new ArrayList<>();
+        for (SynchronizedStmt statement : cu.findAll(SynchronizedStmt.class)) {
+            blocks.add(new CallSummary.Code(CallSummary.CodeKind.BLOCK, -1, "", 0, callsOf(statement.getBody(), callNodes)));
+        }
+        return new CallSummary(packageNameOf(cu), importsOf(cu), types, calls, callables, blocks);
+    }
+
+    private static List<Integer> callsOf(Node code, Map<Node, Integer> callNodes) {
+        return callsIn(code).stream().map(callNodes::get).distinct().sorted().toList();
+    }
+
+    private static CallSummary.Call summarizeCall(CompilationUnit cu, Node node, Map<Node, Integer> typeIndices, BlockingApis blockingApis) {
+        if (isBlockingApiCall(cu, node, blockingApis)) {
+            return BLOCKING_API_CALL;
+        }
+        if (node instanceof ObjectCreationExpr creation) {
+            String type = creation.getType().getNameWithScope();
+            return new CallSummary.Call(CallSummary.CallKind.CREATION, type, true, isPlatformType(cu, type), "", 0, List.of());
+        }
+        MethodCallExpr call = (MethodCallExpr) node;
+        String name = call.getNameAsString();
+        int arguments = call.getArguments().size();
+        Optional<Expression> scope = call.getScope();
+        if (scope.isEmpty() || scope.orElseThrow() instanceof ThisExpr || scope.orElseThrow() instanceof SuperExpr) {
+            List<Integer> enclosingTypes = new ArrayList<>();
+            for (Node parent = call; parent != null; parent = parent.getParentNode().orElse(null)) {
+                Integer type = parent instanceof TypeDeclaration<?> ? typeIndices.get(parent) : null;
+                if (type != null) {
+                    enclosingTypes.add(type);
+                }
+            }
+            return new CallSummary.Call(CallSummary.CallKind.UNQUALIFIED, "", false, false, name, arguments, enclosingTypes);
+        }
+        if (scope.orElseThrow() instanceof NameExpr nameExpr) {
+            Optional<ClassOrInterfaceType> declaredType = declaredTypeOf(nameExpr, nameExpr.getNameAsString());
+            String type = declaredType.map(ClassOrInterfaceType::getNameWithScope).orElse(nameExpr.getNameAsString());
+            boolean typed = declaredType.isPresent() || Character.isUpperCase(type.charAt(0));
+            return new CallSummary.Call(CallSummary.CallKind.RECEIVER, type, typed, typed && isPlatformType(cu, type), name, arguments, List.of());
+        }
+        return new CallSummary.Call(CallSummary.CallKind.NAMED, "", false, false, name, arguments, List.of());
+    }
+
+    private static List<Node> callsIn(Node node) {
+        List<Node> calls = new ArrayList<>(node.findAll(MethodCallExpr.class));
+        calls.addAll(node.findAll(ObjectCreationExpr.class));
+        return calls;
+    }
+
+    private static boolean isBlockingApiCall(CompilationUnit cu, Node call, BlockingApis blockingApis) {
+        if (call instanceof ObjectCreationExpr creation) {
+            return qualify(cu, creation.getType().getNameWithScope()).stream().anyMatch(blockingApis::matchesType);
+        }
+        MethodCallExpr methodCall = (MethodCallExpr) call;
+        String methodName = methodCall.getNameAsString();
+        if (blockingApis.matchesAnyReceiver(methodName)) {
+            return true;
+        }
+        return receiverTypes(cu, methodCall).stream().anyMatch(type -> blockingApis.matches(type, methodName));
+    }
+
+    private static boolean isPlatformType(CompilationUnit cu, String typeName) {
+        return qualify(cu, typeName).stream().anyMatch(BlockingCallAnalysis::isPlatformType);
+    }
+
+    private static boolean isPlatformType(String qualifiedName) {
+        return PLATFORM_TYPES.computeIfAbsent(qualifiedName, name -> {
+            try {
+                Class.forName(name, false, ClassLoader.getPlatformClassLoader());
+                return true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        });
+    }
+
+    private static List<String> receiverTypes(CompilationUnit cu, MethodCallExpr call) {
+        if (call.getScope().isEmpty()) {
+            return List.of();
+        }
+        Expression scope = call.getScope().orElseThrow();
+        if (scope instanceof NameExpr nameExpr) {
+            Optional<ClassOrInterfaceType> declaredType = declaredTypeOf(nameExpr, nameExpr.getNameAsString());
+            return qualify(cu, declaredType.map(ClassOrInterfaceType::getNameWithScope).orElse(nameExpr.getNameAsString()));
+        }
+        if (scope instanceof FieldAccessExpr fieldAccess && WELL_KNOWN_FIELD_TYPES.containsKey(fieldAccess.toString())) {
+            return List.of(WELL_KNOWN_FIELD_TYPES.get(fieldAccess.toString()));
+        }
+        if (scope instanceof ObjectCreationExpr creation) {
+            return qualify(cu, creation.getType().getNameWithScope());
+        }
+        return List.of();
+    }
+
+    /**
+     * Returns the fully-qualified names {@code typeName} may stand for in {@code cu}: the single-type import if
+     * there is one, otherwise the candidates from {@code java.lang}, on-demand imports and the unit's own package.
+     */
+    private static List<String> qualify(CompilationUnit cu, String typeName) {
+        if (typeName.contains(".")) {
+            return List.of(typeName);
+        }
+        List<String> candidates = new ArrayList<>();
+        for (ImportDeclaration importDeclaration : cu.getImports()) {
+            if (!importDeclaration.isStatic() && !importDeclaration.isAsterisk()
+                    && importDeclaration.getName().getIdentifier().equals(typeName)) {
+                return List.of(importDeclaration.getNameAsString());
+            }
+            if (!importDeclaration.isStatic() && importDeclaration.isAsterisk()) {
+                candidates.add(importDeclaration.getNameAsString() + "." + typeName);
+            }
+        }
+        candidates.add("java.lang." + typeName);
+        candidates.add(cu.getPackageDeclaration().map(declaration -> declaration.getNameAsString() + ".").orElse("") + typeName);
+        return candidates;
+    }
+
+    static String packageNameOf(CompilationUnit cu) {
+        return cu.getPackageDeclaration().map(declaration -> declaration.getNameAsString()).orElse("");
+    }
+
+    static List<String> importsOf(CompilationUnit cu) {
+        List<String> imports = new ArrayList<>();
+        for (ImportDeclaration importDeclaration : cu.getImports()) {
+            if (!importDeclaration.isStatic()) {
+                imports.add(importDeclaration.getNameAsString() + (importDeclaration.isAsterisk() ? ".*" : ""));
+            }
+        }
+        return imports;
+    }
+
+    /**
+     * Finds the declared class type of the variable {@code name} visible at {@code site}, see
+     * {@link Declarations#typeOf}.
+     */
+    private static Optional<ClassOrInterfaceType> declaredTypeOf(Node site, String name) {
+        return Declarations.typeOf(site, name, TypeDeclaration::getFieldByName)
+                .filter(Type::isClassOrInterfaceType)
+                .map(Type::asClassOrInterfaceType);
+    }
+
+    /**
+     * The configured blocking APIs, see {@link #analyse(List, List, boolean)} for the entry format.
+     */
+    private static class BlockingApis {
+
+        private static final String ANY_RECEIVER = "*";
+
+        private final List<String> packages = new ArrayList<>();
+        private final List<String> types = new ArrayList<>();
+        private final Map<String, List<String>> methodsByType = new HashMap<>();
+
+        BlockingApis(List<String> entries) {
+            for (String entry : entries) {
+                int separator = entry.indexOf('#');
+                if (separator >= 0) {
+                    methodsByType.computeIfAbsent(entry.substring(0, separator), type -> new ArrayList<>())
+                            .add(entry.substring(separator + 1));
+                } else if (entry.endsWith(".")) {
+                    packages.add(entry);
+                } else {
+                    types.add(entry);
+                }
+            }
+        }
+
+        boolean matchesAnyReceiver(String methodName) {
+            return methodsByType.getOrDefault(ANY_RECEIVER, List.of()).contains(methodName);
+        }
+
+        boolean matchesType(String qualifiedType) {
+            String simpleName = FileAnalysis.simpleName(qualifiedType);
+            return packages.stream().anyMatch(qualifiedType::startsWith)
+                    || types.contains(qualifiedType) || types.contains(simpleName);
+        }
+
+        boolean matches(String qualifiedType, String methodName) {
+            if (matchesType(qualifiedType)) {
+                return true;
+            }
+            String simpleName = FileAnalysis.simpleName(qualifiedType);
+            return methodsByType.getOrDefault(qualifiedType, List.of()).contains(methodName)
+                    || methodsByType.getOrDefault(simpleName, List.of()).contains(methodName);
+        }
+    }
+}
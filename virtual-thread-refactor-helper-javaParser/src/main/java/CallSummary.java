@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What {@link BlockingCallAnalysis} needs of a file once its AST is gone: the package and imports that resolve the
+ * type names written in it, the methods, constructors and supertypes of the types it declares, and the calls made by
+ * each of its callables and synchronized blocks. Receiver types are kept as written and only resolved when the
+ * summaries of the whole project are solved, so the summary of a file stays valid as long as the file does not
+ * change. Calls to a blocking API are recorded as such, so a summary is only valid for the blocking APIs it was made
+ * with.
+ *
+ * @param imports   the non-static imports, on-demand ones ending with {@code .*}
+ * @param types     the types declared in the file, nested and local ones included, in declaration order
+ * @param calls     the distinct calls of the file
+ * @param callables the methods and constructors of the file, in declaration order
+ * @param blocks    the synchronized blocks of the file, in declaration order
+ */
+public record CallSummary(String packageName, List<String> imports, List<TypeSummary> types, List<Call> calls,
+                          List<Code> callables, List<Code> blocks) {
+
+    enum CallKind {
+        /**
+         * A call to a blocking API.
+         */
+        BLOCKING_API,
+        /**
+         * {@code new Foo()}.
+         */
+        CREATION,
+        /**
+         * {@code foo()}, {@code this.foo()} or {@code super.foo()}, resolved against the enclosing types.
+         */
+        UNQUALIFIED,
+        /**
+         * {@code foo.bar()} or {@code Foo.bar()}, resolved against the type of the variable or the named type.
+         */
+        RECEIVER,
+        /**
+         * A call on any other receiver, resolved against every project method of its name.
+         */
+        NAMED
+    }
+
+    /**
+     * @param type           the created type, the declared type of the receiver variable, or the receiver name, as
+     *                       written
+     * @param typed          whether {@code type} is a declared type or a capitalised name rather than a variable of
+     *                       unknown type
+     * @param platformType   whether {@code type} may be a JDK type
+     * @param enclosingTypes for an unqualified call, the indices of the types declaring it, innermost first
+     */
+    record Call(CallKind kind, String type, boolean typed, boolean platformType, String name, int arguments, List<Integer> enclosingTypes) {
+    }
+
+    /**
+     * @param qualifiedName the fully-qualified name, empty if the type has none
+     * @param supertypes    the extended and implemented types as written, for classes and interfaces only
+     * @param methods       the indices of the methods the type declares
+     * @param constructors  the indices of the constructors the type declares
+     */
+    record TypeSummary(String qualifiedName, String name, boolean topLevel, List<String> supertypes, List<Integer> methods,
+                       List<Integer> constructors) {
+    }
+
+    enum CodeKind {
+        METHOD, ABSTRACT_METHOD, CONSTRUCTOR, BLOCK
+    }
+
+    /**
+     * A callable or a synchronized block.
+     *
+     * @param type  the index of the enclosing type, -1 for blocks
+     * @param calls the indices of the calls made in the code, nested lambdas and classes included
+     */
+    record Code(CodeKind kind, int type, String name, int parameters, List<Integer> calls) {
+    }
+
+    /**
+     * Returns a key for every callable that tells it apart from the other callables of the project and stays the same
+     * when the file is edited elsewhere: the name of its type, its name, its number of parameters and, for overloads
+     * with as many parameters, its rank among them.
+     */
+    public List<String> callableKeys() {
+        List<String> keys = new ArrayList<>(callables.size());
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (Code callable : callables) {
+            TypeSummary type = types.get(callable.type());
+            String key = (type.qualifiedName().isEmpty() ? type.name() : type.qualifiedName()) + "#" + callable.name() + "/" + callable.parameters();
+            int occurrence = occurrences.merge(key, 1, Integer::sum) - 1;
+            keys.add(occurrence == 0 ? key : key + "#" + occurrence);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the summary as lines of tab-separated columns for the {@link IncrementalCache}, each starting with its
+     * kind.
+     */
+    List<String[]> toLines() {
+        List<String[]> lines = new ArrayList<>();
+        lines.add(new String[]{"package", packageName});
+        imports.forEach(name -> lines.add(new String[]{"import", name}));
+        for (TypeSummary type : types) {
+            lines.add(new String[]{"declares", type.qualifiedName(), type.name(), flag(type.topLevel()), String.join(",", type.supertypes()),
+                    join(type.methods()), join(type.constructors())});
+        }
+        for (Call call : calls) {
+            lines.add(new String[]{"call", call.kind().name(), call.type(), flag(call.typed()), flag(call.platformType()), call.name(),
+                    String.valueOf(call.arguments()), join(call.enclosingTypes())});
+        }
+        for (Code callable : callables) {
+            lines.add(new String[]{"callable", callable.kind().name(), String.valueOf(callable.type()), callable.name(),
+                    String.valueOf(callable.parameters()), join(callable.calls())});
+        }
+        blocks.forEach(block -> lines.add(new String[]{"block", join(block.calls())}));
+        return lines;
+    }
+
+    /**
+     * Parses the lines written by {@link #toLines()}. Throws {@link IllegalStateException} if they are malformed.
+     */
+    static CallSummary fromLines(List<String[]> lines) {
+        String packageName = null;
+        List<String> imports = new ArrayList<>();
+        List<TypeSummary> types = new ArrayList<>();
+        List<Call> calls = new ArrayList<>();
+        List<Code> callables = new ArrayList<>();
+        List<Code> blocks = new ArrayList<>();
+        try {
+            for (String[] columns : lines) {
+                switch (columns[0]) {
+                    case "package" -> packageName = column(columns, 2, 1);
+                    case "import" -> imports.add(column(columns, 2, 1));
+                    case "declares" -> types.add(new TypeSummary(column(columns, 7, 1), columns[2], parseFlag(columns[3]),
+                            split(columns[4]), parseIndices(columns[5]), parseIndices(columns[6])));
+                    case "call" -> calls.add(new Call(CallKind.valueOf(column(columns, 8, 1)), columns[2], parseFlag(columns[3]),
+                            parseFlag(columns[4]), columns[5], Integer.parseInt(columns[6]), parseIndices(columns[7])));
+                    case "callable" -> callables.add(new Code(CodeKind.valueOf(column(columns, 6, 1)), Integer.parseInt(columns[2]),
+                            columns[3], Integer.parseInt(columns[4]), parseIndices(columns[5])));
+                    case "block" -> blocks.add(new Code(CodeKind.BLOCK, -1, "", 0, parseIndices(column(columns, 2, 1))));
+                    default -> throw new IllegalStateException("Not a call summary line: " + String.join("\t", columns));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Malformed call summary: " + e.getMessage(), e);
+        }
+        if (packageName == null) {
+            throw new IllegalStateException("Call summary without a package line");
+        }
+        CallSummary summary = new CallSummary(packageName, imports, types, calls, callables, blocks);
+        summary.checkIndices();
+        return summary;
+    }
+
+    private void checkIndices() {
+        for (TypeSummary type : types) {
+            type.methods().forEach(method -> checkIndex(method, callables.size()));
+            type.constructors().forEach(constructor -> checkIndex(constructor, callables.size()));
+        }
+        calls.forEach(call -> call.enclosingTypes().forEach(type -> checkIndex(type, types.size())));
+        for (Code code : callables) {
+            checkIndex(code.type(), types.size());
+            code.calls().forEach(call -> checkIndex(call, calls.size()));
+        }
+        blocks.forEach(block -> block.calls().forEach(call -> checkIndex(call, calls.size())));
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IllegalStateException("Call summary index out of range: " + index);
+        }
+    }
+
+    private static String column(String[] columns, int expected, int index) {
+        if (columns.length != expected) {
+            throw new IllegalStateException("Malformed call summary line: " + String.join("\t", columns));
+        }
+        return columns[index];
+    }
+
+    private static String flag(boolean value) {
+        return value ? "1" : "0";
+    }
+
+    private static boolean parseFlag(String value) {
+        return switch (value) {
+            case "1" -> true;
+            case "0" -> false;
+            default -> throw new IllegalStateException("Malformed flag: " + value);
+        };
+    }
+
+    private static String join(List<Integer> indices) {
+        StringBuilder joined = new StringBuilder();
+        for (int index : indices) {
+            joined.append(joined.isEmpty() ? "" : ",").append(index);
+        }
+        return joined.toString();
+    }
+
+    private static List<String> split(String value) {
+        return value.isEmpty() ? List.of() : Arrays.asList(value.split(","));
+    }
+
+    private static List<Integer> parseIndices(String value) {
+        return split(value).stream().map(Integer::valueOf).toList();
+    }
+}
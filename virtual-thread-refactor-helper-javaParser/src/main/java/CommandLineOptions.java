@@ -0,0 +1,57 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+public class CommandLineOptions {
+
+    private static final String OPTION_PREFIX = "--";
+
+    private final Map<String, String> options;
+
+    private CommandLineOptions(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static CommandLineOptions parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith(OPTION_PREFIX)) {
+                throw new IllegalArgumentException("Unrecognized argument: " + arg);
+            }
+            String option = arg.substring(OPTION_PREFIX.length());
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                options.put(option, "true");
+            } else {
+                options.put(option.substring(0, separator), option.substring(separator + 1));
+            }
+        }
+        return new CommandLineOptions(options);
+    }
+
+    public boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    public String get(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * Returns the options except {@code excluded} as a stable, sorted string, e.g. to tell whether two runs used the
+     * same settings.
+     */
+    public String signature(Set<String> excluded) {
+        return new TreeMap<>(options).entrySet().stream()
+                .filter(option -> !excluded.contains(option.getKey()))
+                .map(option -> OPTION_PREFIX + option.getKey() + "=" + option.getValue())
+                .collect(Collectors.joining(" "));
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,476 @@
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.ArrayAccessExpr;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.BooleanLiteralExpr;
+import com.github.javaparser.ast.expr.EnclosedExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.ThrowStmt;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.stmt.WhileStmt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decides the {@code Condition}s replacing the {@code wait}/{@code notify}/{@code notifyAll} calls of every converted
+ * monitor. By default a monitor gets one condition: {@code wait} becomes {@code await}, {@code notify} becomes
+ * {@code signal} and {@code notifyAll} becomes {@code signalAll}, which behaves exactly like the monitor.
+ * <p>
+ * Waiters are told apart by the guard of their {@code while (guard) wait();} loop, and each distinct guard gets a
+ * condition of its own, so that a notification only wakes the waiters whose guard it may have made false. A guard is
+ * only split off if it reads nothing but private fields of the type owning the lock, and if every write to those
+ * fields that may release its waiters is inside a site of the monitor that notifies unconditionally. Writes are
+ * classified so that, e.g., {@code count++} releases {@code while (count <= 0)} but not
+ * {@code while (count >= capacity)}, and {@code ready = true} releases {@code while (!ready)}. Waiters whose guard is
+ * not understood share the default condition, which every notification signals.
+ */
+public class ConditionPlanner {
+
+    /**
+     * Which writes to a variable of a guard may make the guard false.
+     */
+    private enum Release {ANY, INCREASE, DECREASE, SET_TRUE, SET_FALSE}
+
+    /**
+     * What a write does to a variable.
+     */
+    private enum Change {OTHER, INCREASE, DECREASE, SET_TRUE, SET_FALSE}
+
+    private record Write(String variable, Change change, Node node) {
+    }
+
+    /**
+     * The waiters sharing a guard, or the waiters without an understood guard if {@code guard} is {@code null}.
+     */
+    private static class WaiterGroup {
+
+        final String guard;
+        final Map<String, Release> variables;
+        final List<RefactorPlan.MonitorCall> waits = new ArrayList<>();
+        String conditionName;
+
+        WaiterGroup(String guard, Map<String, Release> variables) {
+            this.guard = guard;
+            this.variables = variables;
+        }
+    }
+
+    /**
+     * The converted sites and monitor calls of one lock.
+     */
+    private static class LockUsage {
+
+        final RefactorPlan.LockFieldRequest lock;
+        final List<Node> sites = new ArrayList<>();
+        final List<RefactorPlan.MonitorCall> calls = new ArrayList<>();
+        final Map<RefactorPlan.MonitorCall, RefactorPlan> plansByCall = new IdentityHashMap<>();
+
+        LockUsage(RefactorPlan.LockFieldRequest lock) {
+            this.lock = lock;
+        }
+    }
+
+    public static void plan(List<RefactorPlan> plans) {
+        Map<TypeDeclaration<?>, Map<String, LockUsage>> usagesByType = new IdentityHashMap<>();
+        List<LockUsage> usages = new ArrayList<>();
+        for (RefactorPlan plan : plans) {
+            for (RefactorPlan.PlannedSite site : plan.getPlannedSites()) {
+                if (site.converted()) {
+                    usageOf(usagesByType, usages, site.lock()).sites.add(site.rewrite().site());
+                }
+            }
+            for (RefactorPlan.MonitorCall call : plan.getMonitorCalls()) {
+                LockUsage usage = usageOf(usagesByType, usages, call.lock());
+                usage.calls.add(call);
+                usage.plansByCall.put(call, plan);
+            }
+        }
+        for (LockUsage usage : usages) {
+            if (!usage.calls.isEmpty()) {
+                planConditions(usage);
+            }
+        }
+    }
+
+    private static LockUsage usageOf(Map<TypeDeclaration<?>, Map<String, LockUsage>> usagesByType, List<LockUsage> usages, RefactorPlan.LockFieldRequest lock) {
+        return usagesByType.computeIfAbsent(lock.targetType(), type -> new HashMap<>())
+                .computeIfAbsent(lock.lockName(), lockName -> {
+                    LockUsage usage = new LockUsage(lock);
+                    usages.add(usage);
+                    return usage;
+                });
+    }
+
+    private static void planConditions(LockUsage usage) {
+        TypeDeclaration<?> owner = usage.lock.targetType();
+        boolean withinOwner = usage.calls.stream().allMatch(call -> call.call().isDescendantOf(owner))
+                && usage.sites.stream().allMatch(site -> site.isDescendantOf(owner));
+        List<Write> writes = withinOwner ? writesIn(owner) : List.of();
+
+        WaiterGroup defaultGroup = new WaiterGroup(null, Map.of());
+        Map<String, WaiterGroup> guardedGroups = new LinkedHashMap<>();
+        for (RefactorPlan.MonitorCall call : usage.calls) {
+            if (!call.call().getNameAsString().equals("wait")) {
+                continue;
+            }
+            Optional<Expression> guard = withinOwner ? guardOf(call.call()) : Optional.empty();
+            Optional<Map<String, Release>> variables = guard.flatMap(expression -> releasesOf(expression, owner));
+            if (variables.isPresent() && canSignalSeparately(usage, variables.orElseThrow(), writes)) {
+                guardedGroups.computeIfAbsent(guard.orElseThrow().toString(), text -> new WaiterGroup(text, variables.orElseThrow()))
+                        .waits.add(call);
+            } else {
+                defaultGroup.waits.add(call);
+            }
+        }
+
+        List<WaiterGroup> groups = new ArrayList<>();
+        if (!defaultGroup.waits.isEmpty() || guardedGroups.isEmpty()) {
+            groups.add(defaultGroup);
+        }
+        groups.addAll(guardedGroups.values());
+        nameConditions(usage.lock.lockName(), groups);
+
+        boolean isPublic = usage.calls.stream().anyMatch(call -> !call.call().isDescendantOf(owner));
+        for (WaiterGroup group : groups) {
+            RefactorPlan plan = usage.plansByCall.get(group.waits.isEmpty() ? usage.calls.get(0) : group.waits.get(0));
+            plan.planCondition(new RefactorPlan.ConditionFieldRequest(usage.lock.targetUnit(), owner, usage.lock.lockName(),
+                    group.conditionName, usage.lock.isStatic(), isPublic));
+        }
+
+        for (RefactorPlan.MonitorCall call : usage.calls) {
+            // The conditions are reached like the lock, e.g. through the same field.
+            String prefix = call.lockExpression().substring(0, call.lockExpression().length() - usage.lock.lockName().length());
+            List<String> conditions = new ArrayList<>();
+            String method;
+            if (call.call().getNameAsString().equals("wait")) {
+                method = "await";
+                for (WaiterGroup group : groups) {
+                    if (group.waits.stream().anyMatch(wait -> wait.call() == call.call())) {
+                        conditions.add(prefix + group.conditionName);
+                    }
+                }
+            } else {
+                method = call.call().getNameAsString().equals("notify") ? "signal" : "signalAll";
+                for (WaiterGroup group : signalledGroups(usage, groups, defaultGroup, call, writes)) {
+                    conditions.add(prefix + group.conditionName);
+                }
+            }
+            usage.plansByCall.get(call).planMonitorCallRewrite(new RefactorPlan.MonitorCallRewrite(call.call(), method, conditions));
+        }
+    }
+
+    private static void nameConditions(String lockName, List<WaiterGroup> groups) {
+        if (groups.size() == 1) {
+            groups.get(0).conditionName = ReentrantLockFactory.getConditionName(lockName, "");
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (WaiterGroup group : groups) {
+            String waiter = group.guard == null ? "" : Declarations.enclosingCallable(group.waits.get(0).call())
+                    .map(CallableDeclaration::getNameAsString)
+                    .orElse("");
+            String name = ReentrantLockFactory.getConditionName(lockName, waiter);
+            for (int i = 2; names.contains(name); i++) {
+                name = ReentrantLockFactory.getConditionName(lockName, waiter + i);
+            }
+            names.add(name);
+            group.conditionName = name;
+        }
+    }
+
+    /**
+     * The groups a {@code notify}/{@code notifyAll} call signals: the default group, and the guarded groups released
+     * by a write of its site. A call outside the sites of the lock may follow any write, so it signals every group.
+     */
+    private static List<WaiterGroup> signalledGroups(LockUsage usage, List<WaiterGroup> groups, WaiterGroup defaultGroup, RefactorPlan.MonitorCall call, List<Write> writes) {
+        Optional<Node> site = usage.sites.stream().filter(candidate -> call.call().isDescendantOf(candidate)).findFirst();
+        if (site.isEmpty()) {
+            return groups;
+        }
+        List<WaiterGroup> signalled = new ArrayList<>();
+        for (WaiterGroup group : groups) {
+            if (group == defaultGroup
+                    || writes.stream().anyMatch(write -> write.node().isDescendantOf(site.orElseThrow()) && releases(write, group.variables))) {
+                signalled.add(group);
+            }
+        }
+        return signalled.isEmpty() ? groups : signalled;
+    }
+
+    /**
+     * Whether every write that may release a guard reading {@code variables} is followed by a notification: it is in
+     * a site of the lock that always notifies, or in a constructor or initializer, before the object is shared.
+     */
+    private static boolean canSignalSeparately(LockUsage usage, Map<String, Release> variables, List<Write> writes) {
+        for (Write write : writes) {
+            if (!releases(write, variables) || isBeforePublication(write.node())) {
+                continue;
+            }
+            Optional<Node> site = usage.sites.stream().filter(candidate -> write.node().isDescendantOf(candidate)).findFirst();
+            if (site.isEmpty() || !alwaysNotifies(usage, site.orElseThrow())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean releases(Write write, Map<String, Release> variables) {
+        Release release = variables.get(write.variable());
+        if (release == null) {
+            return false;
+        }
+        return switch (release) {
+            case ANY -> true;
+            case INCREASE -> write.change() == Change.INCREASE || write.change() == Change.OTHER;
+            case DECREASE -> write.change() == Change.DECREASE || write.change() == Change.OTHER;
+            case SET_TRUE -> write.change() == Change.SET_TRUE || write.change() == Change.OTHER;
+            case SET_FALSE -> write.change() == Change.SET_FALSE || write.change() == Change.OTHER;
+        };
+    }
+
+    private static boolean isBeforePublication(Node node) {
+        return Declarations.ancestor(node, ConstructorDeclaration.class).isPresent()
+                || Declarations.ancestor(node, InitializerDeclaration.class).isPresent()
+                || Declarations.ancestor(node, FieldDeclaration.class).isPresent();
+    }
+
+    /**
+     * Whether {@code site} notifies on every path: from a {@code finally} block, or from a statement that is only
+     * nested in blocks and {@code try} blocks of the site and comes after every {@code return} and {@code throw}.
+     */
+    private static boolean alwaysNotifies(LockUsage usage, Node site) {
+        for (RefactorPlan.MonitorCall call : usage.calls) {
+            if (call.call().getNameAsString().equals("wait") || !call.call().isDescendantOf(site)
+                    || !(call.call().getParentNode().orElse(null) instanceof ExpressionStmt statement)) {
+                continue;
+            }
+            boolean unconditional = true;
+            boolean inFinally = false;
+            Node child = statement;
+            for (Node parent = statement.getParentNode().orElse(null); parent != site && parent != null; parent = parent.getParentNode().orElse(null)) {
+                if (parent instanceof TryStmt tryStmt && tryStmt.getFinallyBlock().orElse(null) == child) {
+                    inFinally = true;
+                } else if (!(parent instanceof BlockStmt) && !(parent instanceof TryStmt tryStmt && tryStmt.getTryBlock() == child)) {
+                    unconditional = false;
+                    break;
+                }
+                child = parent;
+            }
+            if (unconditional && (inFinally || !leavesBefore(site, statement))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean leavesBefore(Node site, ExpressionStmt statement) {
+        return site.findAll(ReturnStmt.class).stream().anyMatch(exit -> isOwnCode(exit, site) && isBefore(exit, statement))
+                || site.findAll(ThrowStmt.class).stream().anyMatch(exit -> isOwnCode(exit, site) && isBefore(exit, statement));
+    }
+
+    private static boolean isBefore(Node node, Node other) {
+        return node.getBegin().orElseThrow().isBefore(other.getBegin().orElseThrow());
+    }
+
+    private static boolean isOwnCode(Node node, Node site) {
+        for (Node parent = node.getParentNode().orElse(null); parent != null && parent != site; parent = parent.getParentNode().orElse(null)) {
+            if (parent instanceof LambdaExpr || parent instanceof ObjectCreationExpr || parent instanceof TypeDeclaration<?>) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The condition of the {@code while} loop around {@code wait}, if the call is only nested in blocks and
+     * {@code try} blocks of the loop body.
+     */
+    private static Optional<Expression> guardOf(MethodCallExpr wait) {
+        Node child = wait.getParentNode().orElse(null);
+        if (!(child instanceof ExpressionStmt)) {
+            return Optional.empty();
+        }
+        for (Node parent = child.getParentNode().orElse(null); parent != null; parent = parent.getParentNode().orElse(null)) {
+            if (parent instanceof WhileStmt whileStmt) {
+                return Optional.of(whileStmt.getCondition());
+            }
+            if (!(parent instanceof BlockStmt) && !(parent instanceof TryStmt tryStmt && tryStmt.getTryBlock() == child)) {
+                return Optional.empty();
+            }
+            child = parent;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The private fields of {@code owner} read by {@code guard} and the writes to them that may make it false, or
+     * nothing if the guard reads anything else, such as a method result or a field of another object.
+     */
+    private static Optional<Map<String, Release>> releasesOf(Expression guard, TypeDeclaration<?> owner) {
+        Map<String, Release> variables = new HashMap<>();
+        for (MethodCallExpr call : guard.findAll(MethodCallExpr.class)) {
+            if (call.getScope().flatMap(scope -> fieldOf(scope, owner)).isEmpty()) {
+                return Optional.empty();
+            }
+        }
+        for (NameExpr name : guard.findAll(NameExpr.class)) {
+            if (isLocal(name)) {
+                continue;
+            }
+            Optional<String> field = fieldOf(name, owner);
+            if (field.isEmpty()) {
+                return Optional.empty();
+            }
+            variables.put(field.orElseThrow() + (isArrayOfElementAccess(name) ? "[]" : ""), Release.ANY);
+        }
+        for (FieldAccessExpr access : guard.findAll(FieldAccessExpr.class)) {
+            if (access.getScope() instanceof ThisExpr) {
+                Optional<String> field = fieldOf(access, owner);
+                if (field.isEmpty()) {
+                    return Optional.empty();
+                }
+                variables.put(field.orElseThrow() + (isArrayOfElementAccess(access) ? "[]" : ""), Release.ANY);
+            }
+        }
+        if (variables.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Expression expression = unwrap(guard);
+        if (expression instanceof UnaryExpr not && not.getOperator() == UnaryExpr.Operator.LOGICAL_COMPLEMENT) {
+            fieldOf(unwrap(not.getExpression()), owner).ifPresent(field -> variables.put(field, Release.SET_TRUE));
+        } else if (expression instanceof NameExpr || expression instanceof FieldAccessExpr) {
+            fieldOf(expression, owner).ifPresent(field -> variables.put(field, Release.SET_FALSE));
+        } else if (expression instanceof BinaryExpr comparison) {
+            Optional<String> left = fieldOf(unwrap(comparison.getLeft()), owner);
+            Optional<String> right = fieldOf(unwrap(comparison.getRight()), owner);
+            switch (comparison.getOperator()) {
+                case LESS, LESS_EQUALS -> {
+                    left.ifPresent(field -> variables.put(field, Release.INCREASE));
+                    right.ifPresent(field -> variables.put(field, Release.DECREASE));
+                }
+                case GREATER, GREATER_EQUALS -> {
+                    left.ifPresent(field -> variables.put(field, Release.DECREASE));
+                    right.ifPresent(field -> variables.put(field, Release.INCREASE));
+                }
+                default -> {
+                }
+            }
+            if (left.isPresent() && left.equals(right)) {
+                variables.put(left.orElseThrow(), Release.ANY);
+            }
+        }
+        return Optional.of(variables);
+    }
+
+    private static Expression unwrap(Expression expression) {
+        while (expression instanceof EnclosedExpr enclosed) {
+            expression = enclosed.getInner();
+        }
+        return expression;
+    }
+
+    /**
+     * All writes in {@code owner} to its private fields: assignments, increments and decrements, and method calls on
+     * them, which may change the object they refer to. Writes to array elements are writes to {@code field[]}.
+     */
+    private static List<Write> writesIn(TypeDeclaration<?> owner) {
+        List<Write> writes = new ArrayList<>();
+        for (AssignExpr assign : owner.findAll(AssignExpr.class)) {
+            variableOf(assign.getTarget(), owner).ifPresent(variable -> writes.add(new Write(variable, changeOf(assign), assign)));
+        }
+        for (UnaryExpr unary : owner.findAll(UnaryExpr.class)) {
+            Change change = switch (unary.getOperator()) {
+                case PREFIX_INCREMENT, POSTFIX_INCREMENT -> Change.INCREASE;
+                case PREFIX_DECREMENT, POSTFIX_DECREMENT -> Change.DECREASE;
+                default -> null;
+            };
+            if (change != null) {
+                variableOf(unary.getExpression(), owner).ifPresent(variable -> writes.add(new Write(variable, change, unary)));
+            }
+        }
+        for (MethodCallExpr call : owner.findAll(MethodCallExpr.class)) {
+            Optional<Expression> scope = call.getScope();
+            while (scope.isPresent() && (scope.orElseThrow() instanceof MethodCallExpr || scope.orElseThrow() instanceof ArrayAccessExpr
+                    || scope.orElseThrow() instanceof FieldAccessExpr access && !(access.getScope() instanceof ThisExpr))) {
+                Expression inner = scope.orElseThrow();
+                scope = inner instanceof MethodCallExpr innerCall ? innerCall.getScope()
+                        : inner instanceof ArrayAccessExpr access ? Optional.of(access.getName())
+                        : Optional.of(((FieldAccessExpr) inner).getScope());
+            }
+            scope.flatMap(root -> fieldOf(root, owner)).ifPresent(field -> writes.add(new Write(field, Change.OTHER, call)));
+        }
+        return writes;
+    }
+
+    private static Change changeOf(AssignExpr assign) {
+        Expression value = unwrap(assign.getValue());
+        boolean positive = value instanceof IntegerLiteralExpr literal && literal.asNumber().longValue() > 0;
+        return switch (assign.getOperator()) {
+            case ASSIGN -> value instanceof BooleanLiteralExpr bool ? (bool.getValue() ? Change.SET_TRUE : Change.SET_FALSE) : Change.OTHER;
+            case PLUS -> positive ? Change.INCREASE : Change.OTHER;
+            case MINUS -> positive ? Change.DECREASE : Change.OTHER;
+            default -> Change.OTHER;
+        };
+    }
+
+    /**
+     * The written variable: a private field of {@code owner}, or {@code field[]} for an element of an array field.
+     */
+    private static Optional<String> variableOf(Expression target, TypeDeclaration<?> owner) {
+        if (target instanceof ArrayAccessExpr access) {
+            Expression array = access.getName();
+            while (array instanceof ArrayAccessExpr inner) {
+                array = inner.getName();
+            }
+            return fieldOf(array, owner).map(field -> field + "[]");
+        }
+        return fieldOf(target, owner);
+    }
+
+    /**
+     * The name of the private field of {@code owner} that {@code expression} refers to, if it is a name that is not
+     * a local variable or {@code this.name}.
+     */
+    private static Optional<String> fieldOf(Expression expression, TypeDeclaration<?> owner) {
+        String name;
+        if (expression instanceof NameExpr nameExpr && !isLocal(nameExpr)) {
+            name = nameExpr.getNameAsString();
+        } else if (expression instanceof FieldAccessExpr access && access.getScope() instanceof ThisExpr) {
+            name = access.getNameAsString();
+        } else {
+            return Optional.empty();
+        }
+        return owner.getFieldByName(name).filter(FieldDeclaration::isPrivate).map(field -> name);
+    }
+
+    private static boolean isArrayOfElementAccess(Expression expression) {
+        return expression.getParentNode().orElse(null) instanceof ArrayAccessExpr access && access.getName() == expression;
+    }
+
+    private static boolean isLocal(NameExpr name) {
+        return Declarations.typeOf(name, name.getNameAsString(), (type, field) -> Optional.empty()).isPresent();
+    }
+}
@@ -0,0 +1,120 @@
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.CatchClause;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.type.Type;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+/**
+ * Looks up the declarations of variables without a symbol solver, by walking up from a use of the variable, and the
+ * declarations enclosing a node.
+ */
+public class Declarations {
+
+    /**
+     * Finds the nearest ancestor of {@code node} of class {@code type}, like {@link Node#findAncestor(Class[])}
+     * without its generic varargs array.
+     */
+    public static <N extends Node> Optional<N> ancestor(Node node, Class<N> type) {
+        for (Node parent = node.getParentNode().orElse(null); parent != null; parent = parent.getParentNode().orElse(null)) {
+            if (type.isInstance(parent)) {
+                return Optional.of(type.cast(parent));
+            }
+        }
+        return Optional.empty();
+    }
+
+    public static Optional<TypeDeclaration<?>> enclosingType(Node node) {
+        return ancestor(node, TypeDeclaration.class).map(type -> (TypeDeclaration<?>) type);
+    }
+
+    public static Optional<CallableDeclaration<?>> enclosingCallable(Node node) {
+        return ancestor(node, CallableDeclaration.class).map(callable -> (CallableDeclaration<?>) callable);
+    }
+
+    public static Optional<BodyDeclaration<?>> enclosingMember(Node node) {
+        return ancestor(node, BodyDeclaration.class).map(member -> (BodyDeclaration<?>) member);
+    }
+
+    /**
+     * Finds the declared element type of the variable {@code name} visible at {@code site}: a local variable of an
+     * enclosing block, a loop, resource or catch variable, a parameter, or a field of an enclosing type, looked up
+     * with {@code fieldLookup}.
+     */
+    public static Optional<Type> typeOf(Node site, String name, BiFunction<TypeDeclaration<?>, String, Optional<FieldDeclaration>> fieldLookup) {
+        for (Node node = site.getParentNode().orElse(null); node != null; node = node.getParentNode().orElse(null)) {
+            Optional<Type> type = Optional.empty();
+            if (node instanceof BlockStmt block) {
+                type = localVariableType(block.getStatements(), name);
+            } else if (node instanceof ForStmt forStmt) {
+                type = variableType(forStmt.getInitialization(), name);
+            } else if (node instanceof ForEachStmt forEachStmt) {
+                type = variableType(List.of(forEachStmt.getVariable()), name);
+            } else if (node instanceof TryStmt tryStmt) {
+                type = variableType(tryStmt.getResources(), name);
+            } else if (node instanceof CatchClause catchClause) {
+                type = parameterType(List.of(catchClause.getParameter()), name);
+            } else if (node instanceof LambdaExpr lambda) {
+                type = parameterType(lambda.getParameters(), name);
+            } else if (node instanceof CallableDeclaration<?> callable) {
+                type = parameterType(callable.getParameters(), name);
+            } else if (node instanceof TypeDeclaration<?> typeDeclaration) {
+                type = fieldLookup.apply(typeDeclaration, name).map(FieldDeclaration::getElementType);
+            }
+            if (type.isPresent()) {
+                return type;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Type> localVariableType(List<Statement> statements, String name) {
+        for (Statement statement : statements) {
+            if (statement instanceof ExpressionStmt expressionStmt) {
+                Optional<Type> type = variableType(List.of(expressionStmt.getExpression()), name);
+                if (type.isPresent()) {
+                    return type;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Type> variableType(List<? extends Expression> expressions, String name) {
+        for (Expression expression : expressions) {
+            if (expression instanceof VariableDeclarationExpr declaration) {
+                for (VariableDeclarator variable : declaration.getVariables()) {
+                    if (variable.getNameAsString().equals(name)) {
+                        return Optional.of(variable.getType().getElementType());
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Type> parameterType(List<Parameter> parameters, String name) {
+        for (Parameter parameter : parameters) {
+            if (parameter.getNameAsString().equals(name)) {
+                return Optional.of(parameter.getType().getElementType());
+            }
+        }
+        return Optional.empty();
+    }
+}
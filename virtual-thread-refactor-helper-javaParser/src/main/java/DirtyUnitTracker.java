@@ -0,0 +1,94 @@
+import com.github.javaparser.ast.CompilationUnit;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Collects the compilation units modified during a run, so that every file is pretty-printed and written exactly
+ * once at the end, however many synchronized sites touched it. Files are written to a temporary sibling and moved
+ * over the original, so a failed write never leaves a truncated source file behind.
+ */
+public class DirtyUnitTracker {
+
+    static Logger logger = Logger.getLogger(DirtyUnitTracker.class.getName());
+
+    public record FlushResult(int flushes, long bytesWritten) {
+    }
+
+    private final Set<CompilationUnit> dirtyUnits = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    public void markDirty(CompilationUnit cu) {
+        dirtyUnits.add(cu);
+    }
+
+    public boolean isDirty(CompilationUnit cu) {
+        return dirtyUnits.contains(cu);
+    }
+
+    public int size() {
+        return dirtyUnits.size();
+    }
+
+    /**
+     * Writes every dirty unit. Units whose file could not be written stay dirty, so that a later flush retries them.
+     */
+    public FlushResult flush(int parallelism) {
+        List<CompilationUnit> units;
+        synchronized (dirtyUnits) {
+            units = new ArrayList<>(dirtyUnits);
+            dirtyUnits.clear();
+        }
+
+        int flushes = 0;
+        long bytesWritten = 0;
+        List<Long> results = Parallel.map(units, parallelism, DirtyUnitTracker::write);
+        for (int i = 0; i < units.size(); i++) {
+            long bytes = results.get(i);
+            if (bytes >= 0) {
+                flushes++;
+                bytesWritten += bytes;
+            } else {
+                dirtyUnits.add(units.get(i));
+            }
+        }
+        return new FlushResult(flushes, bytesWritten);
+    }
+
+    /**
+     * Returns the number of bytes written, or -1 if the file could not be written.
+     */
+    private static long write(CompilationUnit cu) {
+        Path target = Paths.get(Utils.getFilePath(cu));
+        Path temporaryFile = null;
+        try {
+            byte[] content = cu.toString().getBytes();
+            temporaryFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            Files.write(temporaryFile, content);
+            if (Files.exists(target) && FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.setPosixFilePermissions(temporaryFile, Files.getPosixFilePermissions(target));
+            }
+            Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return content.length;
+        } catch (IOException e) {
+            logger.warning("Failed to refactor " + target + ": " + e);
+            if (temporaryFile != null) {
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                } catch (IOException ignored) {
+                    // The original file is untouched, a leftover temporary file is harmless.
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.expr.EnclosedExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+
+import java.util.List;
+
+/**
+ * Synchronized blocks whose monitor is reached through an expression that no lock field stands for, such as
+ * {@code synchronized (cache.get(key))}, {@code synchronized (nodes[i])} or a local variable of a JDK type. Their
+ * locks come from a single table for the whole project, the generated {@code MonitorLocks} class, keyed by the
+ * identity of the monitor object, so that all the sites locking the same object get the same lock. The table is
+ * either a weak identity map with exactly one lock per live object, the default, or a fixed number of lock stripes,
+ * where distinct objects may share a lock. Sharing is only a matter of contention for sites that lock a single
+ * dynamic monitor at a time, but a thread holding the stripe of one object while it locks another may deadlock with a
+ * thread doing the same on two unrelated objects whose stripes are crossed, which the original monitors never did.
+ * <p>
+ * Like the field locks, the table assumes that an object locked through an expression is not also locked through a
+ * field of a project type, or by its own synchronized methods; the sites whose monitor is known to be of a project
+ * type keep it. A {@code wait} or {@code notify} on such a monitor keeps every site of the table, as the stripes have
+ * no conditions per object.
+ */
+public class DynamicMonitors {
+
+    /**
+     * How dynamic monitors are replaced: by a striped lock table, a weak identity map of locks, or not at all.
+     */
+    public enum Mode {STRIPED, WEAK, NONE}
+
+    static final String CLASS_NAME = "MonitorLocks";
+    static final String LOCK_VARIABLE = "monitorLock";
+    public static final int DEFAULT_STRIPES = 64;
+
+    private static final String STRIPED_SOURCE = """
+            /**
+             * Locks replacing the monitors of objects reached through expressions, such as map values or array elements.
+             * The lock of an object is one of a fixed table of stripes, chosen by its identity hash code: an object always
+             * gets the same lock, and distinct objects may share one.
+             */
+            public final class MonitorLocks {
+
+                private static final int STRIPES = %d;
+                private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+                static {
+                    for (int i = 0; i < STRIPES; i++) {
+                        LOCKS[i] = new ReentrantLock();
+                    }
+                }
+
+                private MonitorLocks() {
+                }
+
+                public static ReentrantLock lockFor(Object monitor) {
+                    int hash = System.identityHashCode(Objects.requireNonNull(monitor));
+                    return LOCKS[Math.floorMod(hash ^ (hash >>> 16), STRIPES)];
+                }
+            }
+            """;
+
+    private static final String WEAK_SOURCE = """
+            /**
+             * Locks replacing the monitors of objects reached through expressions, such as map values or array elements.
+             * Every object gets its own lock, which is dropped once the object is garbage collected.
+             */
+            public final class MonitorLocks {
+
+                private static final ConcurrentHashMap<Key, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+                private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<>();
+
+                private MonitorLocks() {
+                }
+
+                public static ReentrantLock lockFor(Object monitor) {
+                    Objects.requireNonNull(monitor);
+                    for (Reference<?> collected = COLLECTED.poll(); collected != null; collected = COLLECTED.poll()) {
+                        LOCKS.remove(collected);
+                    }
+                    ReentrantLock lock = LOCKS.get(new Key(monitor, null));
+                    return lock != null ? lock : LOCKS.computeIfAbsent(new Key(monitor, COLLECTED), key -> new ReentrantLock());
+                }
+
+                /**
+                 * A weak reference equal to the references to the same object, or to itself once the object is collected.
+                 */
+                private static final class Key extends WeakReference<Object> {
+
+                    private final int hash;
+
+                    Key(Object monitor, ReferenceQueue<Object> queue) {
+                        super(monitor, queue);
+                        this.hash = System.identityHashCode(monitor);
+                    }
+
+                    @Override
+                    public boolean equals(Object other) {
+                        if (this == other) {
+                            return true;
+                        }
+                        Object monitor = get();
+                        return monitor != null && other instanceof Key key && key.get() == monitor;
+                    }
+
+                    @Override
+                    public int hashCode() {
+                        return hash;
+                    }
+                }
+            }
+            """;
+
+    /**
+     * The {@code MonitorLocks} class for {@code mode}, with {@code stripes} locks if it is striped.
+     */
+    public static GeneratedClass tableClass(Mode mode, int stripes) {
+        return switch (mode) {
+            case STRIPED -> new GeneratedClass(CLASS_NAME, STRIPED_SOURCE.formatted(stripes),
+                    List.of("java.util.Objects", "java.util.concurrent.locks.ReentrantLock"));
+            case WEAK -> new GeneratedClass(CLASS_NAME, WEAK_SOURCE, List.of("java.lang.ref.Reference", "java.lang.ref.ReferenceQueue",
+                    "java.lang.ref.WeakReference", "java.util.Objects", "java.util.concurrent.ConcurrentHashMap",
+                    "java.util.concurrent.locks.ReentrantLock"));
+            case NONE -> throw new IllegalArgumentException("No lock table without dynamic monitors");
+        };
+    }
+
+    /**
+     * Whether {@code monitor} is neither {@code this}, a class, a name nor a field of {@code this}, judging by its
+     * syntax only. The planner also takes the local variables and parameters of types outside the project from the
+     * table.
+     */
+    static boolean isDynamic(Expression monitor) {
+        Expression expression = unwrap(monitor);
+        return !(expression instanceof ThisExpr || expression instanceof ClassExpr || expression instanceof NameExpr
+                || expression instanceof FieldAccessExpr fieldAccess && fieldAccess.getScope() instanceof ThisExpr);
+    }
+
+    static Expression unwrap(Expression expression) {
+        while (expression instanceof EnclosedExpr enclosed) {
+            expression = enclosed.getInner();
+        }
+        return expression;
+    }
+}
@@ -0,0 +1,463 @@
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.BooleanLiteralExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Moves the tasks of thread pools and raw threads to virtual threads, so that the converted locks actually run on
+ * them. Only executors whose tasks may block, as decided by {@link BlockingCallAnalysis}, are converted:
+ * {@code Executors.newCachedThreadPool()} becomes {@code Executors.newVirtualThreadPerTaskExecutor()}, and
+ * {@code new Thread(task).start()} becomes {@code Thread.ofVirtual().start(task)}.
+ * <p>
+ * A fixed pool size also limits how many tasks use a downstream resource, such as database connections, at a time.
+ * {@code Executors.newFixedThreadPool(n)} and a {@code ThreadPoolExecutor} with an unbounded queue therefore become a
+ * generated {@value #LIMITER_CLASS}, which starts a virtual thread per task but only lets {@code n} of them run at a
+ * time, and the conversion is reported so that the limit can be reviewed.
+ * <p>
+ * The tasks of a pool are found through the variable holding it, so only pools held in a local variable or a private
+ * field are considered, and only if the variable is used to submit tasks and to shut the pool down. Pools running
+ * CPU-bound tasks only, and pools whose tasks cannot all be found, are left on platform threads and reported.
+ */
+public class ExecutorMigration {
+
+    static Logger logger = Logger.getLogger(ExecutorMigration.class.getName());
+
+    static final String PASS = "virtual-thread-executor";
+    static final String LIMITER_CLASS = "BoundedVirtualThreadExecutor";
+
+    private static final GeneratedClass LIMITER = new GeneratedClass(LIMITER_CLASS, """
+            /**
+             * Runs every task in a virtual thread of its own, like Executors.newVirtualThreadPerTaskExecutor(), but at most
+             * maxConcurrency of them at a time, like the fixed thread pool it replaces. Tasks waiting for a permit are parked
+             * virtual threads rather than queued tasks, so shutdownNow() interrupts them, which cancels them, and returns
+             * no task.
+             */
+            public final class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+                private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+                private final Semaphore permits;
+
+                public BoundedVirtualThreadExecutor(int maxConcurrency) {
+                    this.permits = new Semaphore(maxConcurrency, true);
+                }
+
+                @Override
+                public void execute(Runnable task) {
+                    executor.execute(() -> {
+                        try {
+                            permits.acquire();
+                        } catch (InterruptedException e) {
+                            if (task instanceof Future<?> future) {
+                                future.cancel(false);
+                            }
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        try {
+                            task.run();
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+
+                @Override
+                public void shutdown() {
+                    executor.shutdown();
+                }
+
+                @Override
+                public List<Runnable> shutdownNow() {
+                    return executor.shutdownNow();
+                }
+
+                @Override
+                public boolean isShutdown() {
+                    return executor.isShutdown();
+                }
+
+                @Override
+                public boolean isTerminated() {
+                    return executor.isTerminated();
+                }
+
+                @Override
+                public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                    return executor.awaitTermination(timeout, unit);
+                }
+            }
+            """, List.of("java.util.List", "java.util.concurrent.AbstractExecutorService", "java.util.concurrent.ExecutorService",
+            "java.util.concurrent.Executors", "java.util.concurrent.Future", "java.util.concurrent.Semaphore",
+            "java.util.concurrent.TimeUnit"));
+
+    /**
+     * Types a converted pool may be held as; anything more specific has methods the replacement does not have.
+     */
+    private static final Set<String> EXECUTOR_TYPES = Set.of("Executor", "ExecutorService");
+    private static final Set<String> SUBMIT_METHODS = Set.of("submit", "execute");
+    private static final Set<String> LIFECYCLE_METHODS = Set.of("shutdown", "shutdownNow", "awaitTermination", "close",
+            "isShutdown", "isTerminated");
+    private static final Set<String> TASK_METHODS = Set.of("run", "call");
+
+    private enum Workload {BLOCKING, CPU_BOUND}
+
+    /**
+     * The variable holding a pool or thread: a private field of {@code owner}, or a local variable if {@code owner}
+     * is {@code null}, visible in {@code scope}.
+     */
+    private record Holder(String name, Node scope, TypeDeclaration<?> owner, Type type, Node binding) {
+    }
+
+    private final MigrationReport report;
+    private final BlockingCallAnalysis analysis;
+    private final ProjectIndex index;
+    private final Set<CompilationUnit> limiterUsers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * @param report   receives an entry for every pool or thread that is left on platform threads, and for every
+     *                 pool whose size is kept by a {@value #LIMITER_CLASS}
+     * @param analysis decides which tasks may block
+     */
+    public ExecutorMigration(MigrationReport report, BlockingCallAnalysis analysis, ProjectIndex index) {
+        this.report = report;
+        this.analysis = analysis;
+        this.index = index;
+    }
+
+    /**
+     * Converts the pools and threads of {@code cu} running blocking tasks and reports the others. Returns whether
+     * {@code cu} was modified. Units may be migrated concurrently.
+     */
+    public boolean migrate(CompilationUnit cu) {
+        List<Runnable> rewrites = new ArrayList<>();
+        for (MethodCallExpr call : cu.findAll(MethodCallExpr.class)) {
+            if (isExecutorsCall(call, "newFixedThreadPool") || isExecutorsCall(call, "newCachedThreadPool")) {
+                convert(cu, call, rewrites);
+            }
+        }
+        for (ObjectCreationExpr creation : cu.findAll(ObjectCreationExpr.class)) {
+            String typeName = creation.getType().getNameAsString();
+            if (typeName.equals("ThreadPoolExecutor") || typeName.equals("Thread")) {
+                convert(cu, creation, rewrites);
+            }
+        }
+        rewrites.forEach(Runnable::run);
+        return !rewrites.isEmpty();
+    }
+
+    private void convert(CompilationUnit cu, Expression creation, List<Runnable> rewrites) {
+        try {
+            if (creation instanceof MethodCallExpr call) {
+                convertExecutorsPool(cu, call, rewrites);
+            } else if (((ObjectCreationExpr) creation).getType().getNameAsString().equals("Thread")) {
+                convertThread(cu, (ObjectCreationExpr) creation, rewrites);
+            } else {
+                convertThreadPoolExecutor(cu, (ObjectCreationExpr) creation, rewrites);
+            }
+        } catch (NotConvertible e) {
+            report.add(PASS, e.node, subjectOf(creation), e.getMessage());
+        }
+    }
+
+    private void convertExecutorsPool(CompilationUnit cu, MethodCallExpr call, List<Runnable> rewrites) throws NotConvertible {
+        boolean fixed = call.getNameAsString().equals("newFixedThreadPool");
+        if (call.getArguments().size() != (fixed ? 1 : 0)) {
+            throw new NotConvertible(call, "uses a custom ThreadFactory, left on platform threads");
+        }
+        Holder holder = holderOf(call).orElseThrow(() -> new NotConvertible(call, "is not held in a variable, so its tasks cannot be found"));
+        if (poolWorkload(cu, holder) != Workload.BLOCKING) {
+            throw new NotConvertible(call, "only runs CPU-bound tasks, left on platform threads");
+        }
+        if (!fixed) {
+            rewrites.add(() -> call.setName("newVirtualThreadPerTaskExecutor"));
+            return;
+        }
+        checkExecutorType(call, holder);
+        Expression limit = call.getArgument(0);
+        rewrites.add(() -> replaceWithLimiter(cu, call, limit));
+        reportLimiter(call, holder, limit);
+    }
+
+    /**
+     * Only a pool with an unbounded queue is converted: it runs {@code corePoolSize} tasks at a time and never rejects
+     * one. A bounded queue, a thread factory, a rejection handler or overridden hooks cannot be kept.
+     */
+    private void convertThreadPoolExecutor(CompilationUnit cu, ObjectCreationExpr creation, List<Runnable> rewrites) throws NotConvertible {
+        if (creation.getArguments().size() != 5 || creation.getAnonymousClassBody().isPresent()
+                || !(creation.getArgument(4) instanceof ObjectCreationExpr queue)
+                || !queue.getType().getNameAsString().equals("LinkedBlockingQueue") || !queue.getArguments().isEmpty()) {
+            throw new NotConvertible(creation, "uses a bounded queue, a ThreadFactory, a RejectedExecutionHandler or hooks, left on platform threads");
+        }
+        Holder holder = holderOf(creation).orElseThrow(() -> new NotConvertible(creation, "is not held in a variable, so its tasks cannot be found"));
+        if (poolWorkload(cu, holder) != Workload.BLOCKING) {
+            throw new NotConvertible(creation, "only runs CPU-bound tasks, left on platform threads");
+        }
+        checkExecutorType(creation, holder);
+        // A pool without core threads still runs one thread for its unbounded queue.
+        Expression corePoolSize = creation.getArgument(0);
+        Expression limit = corePoolSize instanceof IntegerLiteralExpr literal && literal.asNumber().intValue() == 0
+                ? new IntegerLiteralExpr("1") : corePoolSize;
+        rewrites.add(() -> replaceWithLimiter(cu, creation, limit));
+        reportLimiter(creation, holder, limit);
+    }
+
+    /**
+     * A thread is started on a virtual thread directly, or created unstarted if it is kept in a variable. Virtual
+     * threads are daemon threads, so threads started from {@code main}, which the JVM would no longer wait for, and
+     * threads made non-daemon explicitly are not converted.
+     */
+    private void convertThread(CompilationUnit cu, ObjectCreationExpr creation, List<Runnable> rewrites) throws NotConvertible {
+        if (creation.getAnonymousClassBody().isPresent()) {
+            throw new NotConvertible(creation, "subclasses Thread, left on a platform thread");
+        }
+        NodeList<Expression> arguments = creation.getArguments();
+        if (arguments.isEmpty() || arguments.size() > 2 || arguments.size() == 2 && !isThreadName(arguments.get(1))) {
+            throw new NotConvertible(creation, "is not created from a task and a name, left on a platform thread");
+        }
+        Workload workload = taskWorkload(cu, arguments.get(0))
+                .orElseThrow(() -> new NotConvertible(creation, "runs a task that cannot be found, left on a platform thread"));
+        if (workload != Workload.BLOCKING) {
+            throw new NotConvertible(creation, "only runs CPU-bound work, left on a platform thread");
+        }
+        if (Declarations.ancestor(creation, MethodDeclaration.class).filter(ExecutorMigration::isMainMethod).isPresent()) {
+            throw new NotConvertible(creation, "is started from main, and the JVM does not wait for virtual threads, left on a platform thread");
+        }
+
+        if (creation.getParentNode().orElse(null) instanceof MethodCallExpr start && start.getNameAsString().equals("start")
+                && start.getScope().orElse(null) == creation && start.getArguments().isEmpty()) {
+            rewrites.add(() -> start.replace(new MethodCallExpr(virtualThreadBuilder(arguments), "start", new NodeList<>(arguments.get(0).clone()))));
+            return;
+        }
+        Optional<Holder> holder = holderOf(creation);
+        if (holder.isPresent()) {
+            for (Expression use : usesOf(holder.orElseThrow())) {
+                if (use.getParentNode().orElse(null) instanceof MethodCallExpr call && call.getScope().orElse(null) == use
+                        && call.getNameAsString().equals("setDaemon")
+                        && !(call.getArguments().size() == 1 && call.getArgument(0) instanceof BooleanLiteralExpr daemon && daemon.getValue())) {
+                    throw new NotConvertible(call, "may be made a non-daemon thread, which virtual threads cannot be");
+                }
+            }
+        }
+        rewrites.add(() -> creation.replace(new MethodCallExpr(virtualThreadBuilder(arguments), "unstarted", new NodeList<>(arguments.get(0).clone()))));
+    }
+
+    /**
+     * {@code Thread.ofVirtual()}, named like the thread created from {@code arguments} if it was given a name.
+     */
+    private static Expression virtualThreadBuilder(NodeList<Expression> arguments) {
+        MethodCallExpr builder = new MethodCallExpr(new NameExpr("Thread"), "ofVirtual");
+        return arguments.size() == 2 ? new MethodCallExpr(builder, "name", new NodeList<>(arguments.get(1).clone())) : builder;
+    }
+
+    private void replaceWithLimiter(CompilationUnit cu, Expression creation, Expression limit) {
+        creation.replace(new ObjectCreationExpr(null, new ClassOrInterfaceType(null, LIMITER_CLASS), new NodeList<>(limit.clone())));
+        limiterUsers.add(cu);
+    }
+
+    private void reportLimiter(Expression creation, Holder holder, Expression limit) {
+        report.add(PASS, creation, holder.name(), "runs blocking tasks, replaced by " + LIMITER_CLASS + ", which keeps at most "
+                + limit + " of them running at a time like the pool did; remove the limit if it does not protect a resource");
+    }
+
+    private static void checkExecutorType(Expression creation, Holder holder) throws NotConvertible {
+        if (!(holder.type() instanceof ClassOrInterfaceType type) || !EXECUTOR_TYPES.contains(type.getNameAsString())) {
+            throw new NotConvertible(creation, "is held as " + holder.type() + ", which the virtual thread executor is not");
+        }
+    }
+
+    /**
+     * Whether the tasks submitted through {@code holder} may block. Every use of the variable must submit a task or
+     * manage the pool's lifecycle, otherwise tasks may be submitted elsewhere.
+     */
+    private Workload poolWorkload(CompilationUnit cu, Holder holder) throws NotConvertible {
+        List<Expression> tasks = new ArrayList<>();
+        for (Expression use : usesOf(holder)) {
+            Node parent = use.getParentNode().orElseThrow();
+            if (parent instanceof AssignExpr assign && assign.getTarget() == use) {
+                if (assign != holder.binding()) {
+                    throw new NotConvertible(assign, "is reassigned, so its tasks cannot all be found");
+                }
+            } else if (parent instanceof MethodCallExpr call && call.getScope().orElse(null) == use) {
+                if (SUBMIT_METHODS.contains(call.getNameAsString()) && !call.getArguments().isEmpty()) {
+                    tasks.add(call.getArgument(0));
+                } else if (!LIFECYCLE_METHODS.contains(call.getNameAsString())) {
+                    throw new NotConvertible(call, "is used with " + call.getNameAsString() + ", so its tasks cannot all be found");
+                }
+            } else if (parent instanceof MethodCallExpr call && isCompletableFutureCall(call) && call.getArguments().size() == 2
+                    && call.getArgument(1) == use) {
+                tasks.add(call.getArgument(0));
+            } else {
+                throw new NotConvertible(use, "is passed to other code, so its tasks cannot all be found");
+            }
+        }
+        if (tasks.isEmpty()) {
+            throw new NotConvertible(holder.binding(), "has no task submitted through " + holder.name());
+        }
+        boolean unknown = false;
+        for (Expression task : tasks) {
+            Optional<Workload> workload = taskWorkload(cu, task);
+            if (workload.isPresent() && workload.orElseThrow() == Workload.BLOCKING) {
+                return Workload.BLOCKING;
+            }
+            unknown |= workload.isEmpty();
+        }
+        if (unknown) {
+            throw new NotConvertible(holder.binding(), "runs a task that cannot be found, left on platform threads");
+        }
+        return Workload.CPU_BOUND;
+    }
+
+    /**
+     * The workload of a task given as a lambda, a method reference, an anonymous class, or a new or {@code this}
+     * object of a project class, whose {@code run} or {@code call} method is the task. Nothing for other expressions.
+     */
+    private Optional<Workload> taskWorkload(CompilationUnit cu, Expression task) {
+        List<Node> code = new ArrayList<>();
+        if (task instanceof LambdaExpr lambda) {
+            code.add(lambda.getBody());
+        } else if (task instanceof MethodReferenceExpr reference) {
+            code.add(reference);
+        } else if (task instanceof ObjectCreationExpr creation && creation.getAnonymousClassBody().isPresent()) {
+            creation.getAnonymousClassBody().orElseThrow().stream()
+                    .filter(member -> member instanceof MethodDeclaration method && TASK_METHODS.contains(method.getNameAsString()))
+                    .forEach(code::add);
+        } else if (task instanceof ObjectCreationExpr creation) {
+            Optional<TypeDeclaration<?>> type = index.findType(cu, creation.getType());
+            if (type.isEmpty()) {
+                return Optional.empty();
+            }
+            code.addAll(taskMethodsOf(type.orElseThrow()));
+        } else if (task instanceof ThisExpr) {
+            Declarations.enclosingType(task).ifPresent(type -> code.addAll(taskMethodsOf(type)));
+        }
+        if (code.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(code.stream().anyMatch(node -> node instanceof MethodDeclaration method ? analysis.isBlocking(method) : analysis.mayBlock(node))
+                ? Workload.BLOCKING : Workload.CPU_BOUND);
+    }
+
+    private static List<MethodDeclaration> taskMethodsOf(TypeDeclaration<?> type) {
+        return type.getMethods().stream()
+                .filter(method -> TASK_METHODS.contains(method.getNameAsString()) && method.getParameters().isEmpty())
+                .toList();
+    }
+
+    /**
+     * The variable {@code creation} is stored in: a local variable initialized with it, or a private field
+     * initialized or assigned with it. Other fields may be used from other classes.
+     */
+    private static Optional<Holder> holderOf(Expression creation) throws NotConvertible {
+        Node parent = creation.getParentNode().orElseThrow();
+        if (parent instanceof VariableDeclarator variable && variable.getInitializer().orElse(null) == creation) {
+            if (variable.getParentNode().orElse(null) instanceof FieldDeclaration field) {
+                TypeDeclaration<?> owner = (TypeDeclaration<?>) field.getParentNode().orElseThrow();
+                return Optional.of(fieldHolder(owner, variable, field, creation));
+            }
+            Node scope = Declarations.enclosingMember(variable).orElseThrow();
+            return Optional.of(new Holder(variable.getNameAsString(), scope, null, variable.getType(), variable));
+        }
+        if (parent instanceof AssignExpr assign && assign.getValue() == creation && assign.getOperator() == AssignExpr.Operator.ASSIGN) {
+            Expression target = assign.getTarget();
+            String name = target instanceof NameExpr nameExpr ? nameExpr.getNameAsString()
+                    : target instanceof FieldAccessExpr access && access.getScope() instanceof ThisExpr ? access.getNameAsString()
+                    : null;
+            Optional<TypeDeclaration<?>> owner = Declarations.enclosingType(assign);
+            if (name != null && owner.isPresent() && (target instanceof FieldAccessExpr
+                    || Declarations.typeOf(target, name, (type, fieldName) -> Optional.empty()).isEmpty())) {
+                Optional<FieldDeclaration> field = owner.orElseThrow().getFieldByName(name);
+                if (field.isPresent()) {
+                    VariableDeclarator variable = field.orElseThrow().getVariables().stream()
+                            .filter(candidate -> candidate.getNameAsString().equals(name))
+                            .findFirst()
+                            .orElseThrow();
+                    return Optional.of(fieldHolder(owner.orElseThrow(), variable, field.orElseThrow(), assign));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Holder fieldHolder(TypeDeclaration<?> owner, VariableDeclarator variable, FieldDeclaration field, Node binding) throws NotConvertible {
+        if (!field.isPrivate()) {
+            throw new NotConvertible(field, "is not private, so its tasks cannot all be found");
+        }
+        ThreadLocalFields.checkNotShadowed(owner, variable);
+        return new Holder(variable.getNameAsString(), owner, owner, variable.getType(), binding);
+    }
+
+    private static List<Expression> usesOf(Holder holder) {
+        if (holder.owner() != null) {
+            return ThreadLocalFields.usesOf(holder.owner(), holder.name());
+        }
+        List<Expression> uses = new ArrayList<>();
+        for (NameExpr nameExpr : holder.scope().findAll(NameExpr.class)) {
+            if (nameExpr.getNameAsString().equals(holder.name())) {
+                uses.add(nameExpr);
+            }
+        }
+        return uses;
+    }
+
+    private static boolean isExecutorsCall(MethodCallExpr call, String methodName) {
+        return call.getNameAsString().equals(methodName) && call.getScope().isPresent()
+                && (call.getScope().orElseThrow().toString().equals("Executors")
+                || call.getScope().orElseThrow().toString().equals("java.util.concurrent.Executors"));
+    }
+
+    private static boolean isCompletableFutureCall(MethodCallExpr call) {
+        return (call.getNameAsString().equals("supplyAsync") || call.getNameAsString().equals("runAsync"))
+                && call.getScope().map(scope -> scope.toString().endsWith("CompletableFuture")).orElse(false);
+    }
+
+    private static boolean isThreadName(Expression expression) {
+        return expression instanceof StringLiteralExpr
+                || expression instanceof BinaryExpr binary && binary.getOperator() == BinaryExpr.Operator.PLUS
+                && (isThreadName(binary.getLeft()) || isThreadName(binary.getRight()));
+    }
+
+    private static boolean isMainMethod(MethodDeclaration method) {
+        return method.getNameAsString().equals("main") && method.isStatic() && method.getParameters().size() == 1;
+    }
+
+    private static String subjectOf(Expression creation) {
+        return creation instanceof ObjectCreationExpr objectCreation
+                ? "new " + objectCreation.getType().getNameAsString()
+                : ((MethodCallExpr) creation).getNameAsString();
+    }
+
+    /**
+     * Generates {@value #LIMITER_CLASS} for the units converted to it, see {@link GeneratedClass#create}. Returns the
+     * generated unit, which has to be written.
+     */
+    public Optional<CompilationUnit> createLimiterClass(JavaParser javaParser, List<CompilationUnit> unitList) {
+        return LIMITER.create(javaParser, unitList, unitList.stream().filter(limiterUsers::contains).toList());
+    }
+}
@@ -0,0 +1,155 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.ast.type.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Per-file facts kept in the {@link IncrementalCache}: the types a file declares, the lock fields of those types, of
+ * any {@link RefactorPlan.LockKind}, the synchronized sites left in the file, and the names of the types whose monitors
+ * or locks the file uses. Monitor types are taken from synchronized sites, {@code wait} and {@code notify} calls, and
+ * lock calls such as {@code x.fooLock.lock()}, {@code x.fooLock.readLock().lock()} or
+ * {@code x.fooLock.unlockRead(stamp)}, so the dependency survives once the site has been refactored. Files locking
+ * dynamic monitors, before or after the refactoring, depend on the lock table of {@link DynamicMonitors}.
+ */
+public record FileAnalysis(List<String> declaredTypes, Map<String, List<String>> lockFields, List<String> syncSites,
+                           Set<String> monitorTypes) {
+
+    private static final Set<String> LOCK_TYPES = Arrays.stream(RefactorPlan.LockKind.values())
+            .map(RefactorPlan.LockKind::getClassName)
+            .collect(Collectors.toUnmodifiableSet());
+    private static final Set<String> LOCK_METHODS = Set.of("lock", "unlock", "readLock", "writeLock", "tryOptimisticRead",
+            "validate", "unlockRead", "unlockWrite");
+
+    public static FileAnalysis of(CompilationUnit cu) {
+        List<String> declaredTypes = new ArrayList<>();
+        Map<String, List<String>> lockFields = new LinkedHashMap<>();
+        for (TypeDeclaration<?> type : cu.findAll(TypeDeclaration.class)) {
+            String typeName = type.getFullyQualifiedName().orElse(type.getNameAsString());
+            declaredTypes.add(typeName);
+            List<String> locks = lockFieldsOf(type);
+            if (!locks.isEmpty()) {
+                lockFields.put(typeName, locks);
+            }
+        }
+        return new FileAnalysis(declaredTypes, lockFields, syncSitesOf(cu), monitorTypesOf(cu));
+    }
+
+    /**
+     * Returns this analysis with lock fields and synchronized sites taken from {@code cu} after it was refactored.
+     * Monitor types are kept, because the in-memory refactoring does not produce parsed lock calls.
+     */
+    public FileAnalysis refreshedAfterRefactoring(CompilationUnit cu) {
+        FileAnalysis after = of(cu);
+        return new FileAnalysis(after.declaredTypes(), after.lockFields(), after.syncSites(), monitorTypes);
+    }
+
+    private static List<String> lockFieldsOf(TypeDeclaration<?> type) {
+        List<String> locks = new ArrayList<>();
+        for (FieldDeclaration field : type.getFields()) {
+            if (field.getElementType().isClassOrInterfaceType()
+                    && LOCK_TYPES.contains(field.getElementType().asClassOrInterfaceType().getNameAsString())) {
+                field.getVariables().forEach(variable -> locks.add(variable.getNameAsString()));
+            }
+        }
+        return locks;
+    }
+
+    private static List<String> syncSitesOf(CompilationUnit cu) {
+        List<String> sites = new ArrayList<>();
+        for (MethodDeclaration method : cu.findAll(MethodDeclaration.class)) {
+            if (method.isSynchronized()) {
+                sites.add("method " + method.getNameAsString() + ":" + lineOf(method));
+            }
+        }
+        for (SynchronizedStmt statement : cu.findAll(SynchronizedStmt.class)) {
+            String monitor = statement.getExpression().toString().replaceAll("\\s+", " ");
+            sites.add("block " + monitor + ":" + lineOf(statement));
+        }
+        return sites;
+    }
+
+    private static Set<String> monitorTypesOf(CompilationUnit cu) {
+        Set<String> monitorTypes = new LinkedHashSet<>();
+        for (SynchronizedStmt statement : cu.findAll(SynchronizedStmt.class)) {
+            addMonitorType(monitorTypes, statement, statement.getExpression());
+        }
+        for (MethodCallExpr call : cu.findAll(MethodCallExpr.class)) {
+            String name = call.getNameAsString();
+            if (name.equals("lockFor") && call.getScope().filter(scope -> scope.toString().equals(DynamicMonitors.CLASS_NAME)).isPresent()) {
+                monitorTypes.add(DynamicMonitors.CLASS_NAME);
+            } else if (LOCK_METHODS.contains(name) && lockFieldOf(call).isPresent()) {
+                addMonitorType(monitorTypes, call, lockFieldOf(call).orElseThrow().getScope());
+            } else if (RefactorPlanner.isMonitorCall(call) && call.getScope().isPresent()) {
+                // A helper may wait on, or notify, the monitor of a site in another file.
+                addMonitorType(monitorTypes, call, call.getScope().orElseThrow());
+            }
+        }
+        return monitorTypes;
+    }
+
+    /**
+     * The field access {@code x.fooLock} a lock call is made on, looking through the {@code readLock()} or
+     * {@code writeLock()} view of a {@code ReentrantReadWriteLock}.
+     */
+    private static Optional<FieldAccessExpr> lockFieldOf(MethodCallExpr call) {
+        Optional<Expression> scope = call.getScope();
+        if (scope.isPresent() && scope.orElseThrow() instanceof MethodCallExpr view && view.getArguments().isEmpty()
+                && (view.getNameAsString().equals("readLock") || view.getNameAsString().equals("writeLock"))) {
+            scope = view.getScope();
+        }
+        return scope.filter(Expression::isFieldAccessExpr).map(Expression::asFieldAccessExpr);
+    }
+
+    private static void addMonitorType(Set<String> monitorTypes, Node site, Expression monitor) {
+        if (site instanceof SynchronizedStmt && (DynamicMonitors.isDynamic(monitor) || monitor instanceof NameExpr nameExpr
+                && Character.isLowerCase(nameExpr.getNameAsString().charAt(0)) && fieldTypeName(site, nameExpr.getNameAsString()).isEmpty())) {
+            monitorTypes.add(DynamicMonitors.CLASS_NAME);
+            // A local variable or parameter of a project type is locked with the lock of its type instead.
+            if (monitor instanceof NameExpr nameExpr) {
+                Declarations.typeOf(nameExpr, nameExpr.getNameAsString(), (type, fieldName) -> type.getFieldByName(fieldName))
+                        .filter(Type::isClassOrInterfaceType)
+                        .ifPresent(type -> monitorTypes.add(type.asClassOrInterfaceType().getNameWithScope()));
+            }
+        } else if (monitor instanceof ClassExpr classExpr && classExpr.getType().isClassOrInterfaceType()) {
+            monitorTypes.add(classExpr.getType().asClassOrInterfaceType().getNameWithScope());
+        } else if (monitor instanceof NameExpr nameExpr) {
+            // A name that is not a field of the enclosing type is taken to be a type, as in Boo.booClassLock.
+            String name = nameExpr.getNameAsString();
+            monitorTypes.add(fieldTypeName(site, name).orElse(name));
+        }
+    }
+
+    private static Optional<String> fieldTypeName(Node site, String fieldName) {
+        return Declarations.enclosingType(site)
+                .flatMap(type -> type.getFieldByName(fieldName))
+                .map(FieldDeclaration::getElementType)
+                .filter(Type::isClassOrInterfaceType)
+                .map(elementType -> elementType.asClassOrInterfaceType().getNameWithScope());
+    }
+
+    private static int lineOf(Node node) {
+        return node.getBegin().map(position -> position.line).orElse(0);
+    }
+
+    static String simpleName(String typeName) {
+        return typeName.substring(typeName.lastIndexOf('.') + 1);
+    }
+}
@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The parsing of one source file.
+ */
+@Name("virtualthread.refactor.FileParsed")
+@Label("File Parsed")
+@Category({"Virtual Thread Refactor Helper"})
+@Description("Parsing of a source file")
+@StackTrace(false)
+public class FileParsedEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Successful")
+    boolean successful;
+}
@@ -0,0 +1,146 @@
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * A support class that a migration generates into the project, such as {@code BoundedObjectPool}, for the units that
+ * were converted to use it.
+ *
+ * @param name    simple name of the class
+ * @param source  source of the class, without package declaration and imports
+ * @param imports imports of the class
+ */
+public record GeneratedClass(String name, String source, List<String> imports) {
+
+    static Logger logger = Logger.getLogger(GeneratedClass.class.getName());
+
+    /**
+     * The sentence added to the Javadoc comment of every generated class, which tells it apart from a project class
+     * of the same name.
+     */
+    static final String MARKER = "Generated by virtual-thread-refactor-helper.";
+
+    /**
+     * Generates the class for {@code users}, in their common package or else in the package of the first of them
+     * that has one, and imports it where needed. An existing class of the same name in {@code unitList} or on disk is
+     * reused if it was generated, as told by {@link #MARKER}. Throws {@link IllegalStateException} if a project class
+     * of the same name that was not generated is in the way, or if a generated class in the default package would
+     * have to be imported. Returns the generated unit, which has to be written.
+     */
+    public Optional<CompilationUnit> create(JavaParser javaParser, List<CompilationUnit> unitList, List<CompilationUnit> users) {
+        if (users.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<String> existingPackage = unitList.stream()
+                .filter(cu -> cu.getTypes().stream().anyMatch(type -> type.getNameAsString().equals(name) && isGenerated(type)))
+                .map(GeneratedClass::packageOf)
+                .findFirst();
+        String classPackage = existingPackage.orElseGet(() -> packageFor(users));
+        if (classPackage.isEmpty() && users.stream().anyMatch(cu -> !packageOf(cu).isEmpty())) {
+            throw new IllegalStateException("The generated class " + name + " is in the default package, where the units of named packages using it "
+                    + "cannot import it; move it to a named package");
+        }
+        for (CompilationUnit cu : unitList) {
+            if (packageOf(cu).equals(classPackage) && cu.getTypes().stream().anyMatch(type -> type.getNameAsString().equals(name) && !isGenerated(type))) {
+                throw new IllegalStateException(notGenerated(cu.getStorage().map(storage -> storage.getPath().toString()).orElse(name)));
+            }
+        }
+        CompilationUnit user = users.stream().filter(cu -> isInPackage(packageOf(cu), classPackage)).findFirst().orElseThrow();
+
+        for (CompilationUnit cu : users) {
+            if (!packageOf(cu).equals(classPackage) && !classPackage.isEmpty()) {
+                cu.addImport(classPackage + "." + name);
+            }
+        }
+        if (existingPackage.isPresent()) {
+            return Optional.empty();
+        }
+        Path directory = user.getStorage().orElseThrow().getDirectory();
+        for (int i = depth(classPackage); i < depth(packageOf(user)); i++) {
+            directory = directory.getParent();
+        }
+        Path file = directory.resolve(name + ".java");
+        if (Files.exists(file)) {
+            // Generated by a previous run, or for another group of files in streaming mode.
+            if (!readString(file).contains(MARKER)) {
+                throw new IllegalStateException(notGenerated(file.toString()));
+            }
+            return Optional.empty();
+        }
+
+        CompilationUnit generated = javaParser.parse(source).getResult().orElseThrow();
+        generated.getType(0).getJavadocComment().ifPresent(javadoc ->
+                generated.getType(0).setJavadocComment(javadoc.getContent().stripTrailing() + "\n * <p>\n * " + MARKER + "\n "));
+        if (!classPackage.isEmpty()) {
+            generated.setPackageDeclaration(new PackageDeclaration(javaParser.parseName(classPackage).getResult().orElseThrow()));
+        }
+        imports.forEach(generated::addImport);
+        generated.setStorage(file);
+        logger.info("Generated " + file + " for " + users.size() + " units");
+        return Optional.of(generated);
+    }
+
+    private boolean isGenerated(TypeDeclaration<?> type) {
+        return type.getJavadocComment().filter(javadoc -> javadoc.getContent().contains(MARKER)).isPresent();
+    }
+
+    private String notGenerated(String file) {
+        return file + " declares a class " + name + " that was not generated by virtual-thread-refactor-helper, where the generated one has to go; "
+                + "rename it";
+    }
+
+    private static String readString(Path file) {
+        try {
+            return Files.readString(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        }
+    }
+
+    private static String packageFor(List<CompilationUnit> users) {
+        List<String> common = null;
+        for (CompilationUnit cu : users) {
+            List<String> segments = segments(packageOf(cu));
+            if (common == null) {
+                common = new ArrayList<>(segments);
+            } else {
+                int length = 0;
+                while (length < common.size() && length < segments.size() && common.get(length).equals(segments.get(length))) {
+                    length++;
+                }
+                common = common.subList(0, length);
+            }
+        }
+        if (!common.isEmpty()) {
+            return String.join(".", common);
+        }
+        // A class in the default package cannot be imported by the others.
+        return users.stream().map(GeneratedClass::packageOf).filter(packageName -> !packageName.isEmpty()).findFirst().orElse("");
+    }
+
+    private static String packageOf(CompilationUnit cu) {
+        return cu.getPackageDeclaration().map(PackageDeclaration::getNameAsString).orElse("");
+    }
+
+    private static boolean isInPackage(String packageName, String parent) {
+        return parent.isEmpty() || packageName.equals(parent) || packageName.startsWith(parent + ".");
+    }
+
+    private static List<String> segments(String packageName) {
+        return packageName.isEmpty() ? List.of() : List.of(packageName.split("\\."));
+    }
+
+    private static int depth(String packageName) {
+        return segments(packageName).size();
+    }
+}
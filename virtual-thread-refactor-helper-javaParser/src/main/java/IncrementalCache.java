@@ -0,0 +1,264 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * On-disk record of the last run: for every file (relative to the project root) the SHA-256 of its content as it was
+ * left on disk, its {@link FileAnalysis}, its {@link CallSummary} and the callables of the file that the blocking
+ * analysis of the last run found blocking. The cache is a tab-separated text file; anything unexpected in it, a
+ * different format version or different refactoring settings makes {@link #load} return nothing, which callers treat
+ * as "run everything".
+ */
+public class IncrementalCache {
+
+    static Logger logger = Logger.getLogger(IncrementalCache.class.getName());
+
+    private static final String HEADER = "virtual-thread-refactor-helper-cache";
+    private static final int FORMAT_VERSION = 2;
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * @param blockingCallables the keys, see {@link CallSummary#callableKeys()}, of the callables that may block
+     */
+    public record Entry(String hash, FileAnalysis analysis, CallSummary calls, Set<String> blockingCallables) {
+    }
+
+    private final String settings;
+    private final Map<String, Entry> entries;
+
+    public IncrementalCache(String settings) {
+        this(settings, new TreeMap<>());
+    }
+
+    private IncrementalCache(String settings, Map<String, Entry> entries) {
+        this.settings = settings;
+        this.entries = entries;
+    }
+
+    public static Optional<IncrementalCache> load(Path cacheFile, String settings) {
+        if (!Files.exists(cacheFile)) {
+            return Optional.empty();
+        }
+        try {
+            List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+            if (lines.size() < 2 || !lines.get(0).equals(HEADER + SEPARATOR + FORMAT_VERSION)) {
+                logger.warning("Ignoring cache with unknown format: " + cacheFile);
+                return Optional.empty();
+            }
+            if (!lines.get(1).equals("settings" + SEPARATOR + settings)) {
+                logger.info("Ignoring cache written with different settings: " + cacheFile);
+                return Optional.empty();
+            }
+            return Optional.of(new IncrementalCache(settings, parseEntries(lines.subList(2, lines.size()))));
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Ignoring unreadable cache " + cacheFile + ": " + e);
+            return Optional.empty();
+        }
+    }
+
+    private static Map<String, Entry> parseEntries(List<String> lines) {
+        Map<String, Entry> entries = new TreeMap<>();
+        String path = null;
+        String hash = null;
+        List<String> declaredTypes = null;
+        Map<String, List<String>> lockFields = null;
+        List<String> syncSites = null;
+        Set<String> monitorTypes = null;
+        List<String[]> callLines = null;
+        Set<String> blockingCallables = null;
+        for (String line : lines) {
+            String[] columns = line.split(SEPARATOR, -1);
+            switch (columns[0]) {
+                case "file" -> {
+                    requireColumns(line, columns, 3);
+                    if (!columns[2].matches("[0-9a-f]{64}")) {
+                        throw new IllegalStateException("Malformed hash: " + line);
+                    }
+                    if (path != null) {
+                        entries.put(path, new Entry(hash, new FileAnalysis(declaredTypes, lockFields, syncSites, monitorTypes),
+                                CallSummary.fromLines(callLines), blockingCallables));
+                    }
+                    path = columns[1];
+                    hash = columns[2];
+                    declaredTypes = new ArrayList<>();
+                    lockFields = new LinkedHashMap<>();
+                    syncSites = new ArrayList<>();
+                    monitorTypes = new LinkedHashSet<>();
+                    callLines = new ArrayList<>();
+                    blockingCallables = new TreeSet<>();
+                }
+                case "type" -> {
+                    requireColumns(line, columns, 2);
+                    requireFile(line, path);
+                    declaredTypes.add(columns[1]);
+                }
+                case "lock" -> {
+                    requireColumns(line, columns, 3);
+                    requireFile(line, path);
+                    lockFields.computeIfAbsent(columns[1], type -> new ArrayList<>()).add(columns[2]);
+                }
+                case "site" -> {
+                    requireColumns(line, columns, 2);
+                    requireFile(line, path);
+                    syncSites.add(columns[1]);
+                }
+                case "monitor" -> {
+                    requireColumns(line, columns, 2);
+                    requireFile(line, path);
+                    monitorTypes.add(columns[1]);
+                }
+                case "blocking" -> {
+                    requireColumns(line, columns, 2);
+                    requireFile(line, path);
+                    blockingCallables.add(columns[1]);
+                }
+                case "package", "import", "declares", "call", "callable", "block" -> {
+                    // Checked by CallSummary.fromLines.
+                    requireFile(line, path);
+                    callLines.add(columns);
+                }
+                default -> throw new IllegalStateException("Malformed cache line: " + line);
+            }
+        }
+        if (path != null) {
+            entries.put(path, new Entry(hash, new FileAnalysis(declaredTypes, lockFields, syncSites, monitorTypes),
+                    CallSummary.fromLines(callLines), blockingCallables));
+        }
+        return entries;
+    }
+
+    private static void requireColumns(String line, String[] columns, int expected) {
+        if (columns.length != expected) {
+            throw new IllegalStateException("Malformed cache line: " + line);
+        }
+    }
+
+    private static void requireFile(String line, String path) {
+        if (path == null) {
+            throw new IllegalStateException("Cache line outside of a file entry: " + line);
+        }
+    }
+
+    /**
+     * Writes the cache to a sibling temporary file and moves it over {@code cacheFile}, so an interrupted run never
+     * leaves a truncated cache behind.
+     */
+    public void save(Path cacheFile) throws IOException {
+        Path directory = cacheFile.toAbsolutePath().getParent();
+        Path temporaryFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writeLine(writer, HEADER, String.valueOf(FORMAT_VERSION));
+            writeLine(writer, "settings", settings);
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                FileAnalysis analysis = entry.getValue().analysis();
+                writeLine(writer, "file", entry.getKey(), entry.getValue().hash());
+                for (String type : analysis.declaredTypes()) {
+                    writeLine(writer, "type", type);
+                }
+                for (Map.Entry<String, List<String>> locks : analysis.lockFields().entrySet()) {
+                    for (String lock : locks.getValue()) {
+                        writeLine(writer, "lock", locks.getKey(), lock);
+                    }
+                }
+                for (String site : analysis.syncSites()) {
+                    writeLine(writer, "site", site);
+                }
+                for (String monitorType : analysis.monitorTypes()) {
+                    writeLine(writer, "monitor", monitorType);
+                }
+                for (String[] callLine : entry.getValue().calls().toLines()) {
+                    writeLine(writer, callLine);
+                }
+                for (String callable : entry.getValue().blockingCallables()) {
+                    writeLine(writer, "blocking", callable);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeLine(BufferedWriter writer, String... columns) throws IOException {
+        writer.write(String.join(SEPARATOR, columns));
+        writer.newLine();
+    }
+
+    public Optional<Entry> get(String path) {
+        return Optional.ofNullable(entries.get(path));
+    }
+
+    public Set<String> paths() {
+        return entries.keySet();
+    }
+
+    public void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    public void remove(String path) {
+        entries.remove(path);
+    }
+
+    /**
+     * Returns the cached files declaring a type whose simple name matches one of {@code typeNames}. Matching on the
+     * simple name over-approximates, which is safe: an extra file is parsed, never a needed one skipped.
+     */
+    public Set<String> filesDeclaring(Set<String> typeNames) {
+        Set<String> simpleNames = simpleNames(typeNames);
+        Set<String> files = new LinkedHashSet<>();
+        entries.forEach((path, entry) -> {
+            if (entry.analysis().declaredTypes().stream().map(FileAnalysis::simpleName).anyMatch(simpleNames::contains)) {
+                files.add(path);
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Returns the cached files that use a monitor or lock of one of {@code typeNames}.
+     */
+    public Set<String> filesDependingOn(Set<String> typeNames) {
+        Set<String> simpleNames = simpleNames(typeNames);
+        Set<String> files = new LinkedHashSet<>();
+        entries.forEach((path, entry) -> {
+            if (entry.analysis().monitorTypes().stream().map(FileAnalysis::simpleName).anyMatch(simpleNames::contains)) {
+                files.add(path);
+            }
+        });
+        return files;
+    }
+
+    private static Set<String> simpleNames(Set<String> typeNames) {
+        Set<String> simpleNames = new HashSet<>();
+        typeNames.forEach(typeName -> simpleNames.add(FileAnalysis.simpleName(typeName)));
+        return simpleNames;
+    }
+
+    public static String hash(Path file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(file)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
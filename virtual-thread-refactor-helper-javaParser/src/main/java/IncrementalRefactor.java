@@ -0,0 +1,193 @@
+import com.github.javaparser.ast.CompilationUnit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Incremental mode: only files whose content changed since the last run, and files that use the monitor or lock of
+ * a type declared in a changed or deleted file, are parsed and refactored, together with every file sharing a monitor
+ * with them: the files declaring the types they lock on, and the other files locking on those types. A monitor is
+ * converted at all of its sites or at none, so they must be planned together. Everything else is skipped without
+ * parsing. Without a usable cache every file is processed, exactly as in a normal run.
+ * <p>
+ * The blocking analysis still sees the whole project: the skipped files are known by the {@link CallSummary} kept in
+ * the cache, so a synchronized site is converted exactly when a normal run would convert it. When a change makes a
+ * callable block, the files calling it are processed as well, since their sites may now need to be converted. A
+ * callable that stops blocking does not bring its callers back, as sites that were converted stay converted.
+ */
+public class IncrementalRefactor {
+
+    static Logger logger = Logger.getLogger(IncrementalRefactor.class.getName());
+
+    public static final String DEFAULT_CACHE_FILE = ".virtual-thread-refactor-helper.cache";
+    /**
+     * Options that do not change the refactoring result and therefore do not invalidate the cache.
+     */
+    public static final Set<String> EXECUTION_OPTIONS = Set.of("parallelism", "incremental", "cache", "metrics", "slowest-files");
+
+    public static void run(Path projectRoot, Path cacheFile, String settings, RefactorOptions options, RunMetrics metrics) throws IOException {
+        Map<String, Path> files = new LinkedHashMap<>();
+        Map<String, String> hashes = new HashMap<>();
+        for (Path path : VirtualThreadRefactorHelper.listJavaFiles(projectRoot.toString())) {
+            String relativePath = relativePath(projectRoot, path);
+            files.put(relativePath, path);
+            hashes.put(relativePath, IncrementalCache.hash(path));
+        }
+
+        Optional<IncrementalCache> loadedCache = IncrementalCache.load(cacheFile, settings);
+        IncrementalCache cache = loadedCache.orElseGet(() -> new IncrementalCache(settings));
+        Set<String> dirtyFiles = new TreeSet<>();
+        if (loadedCache.isEmpty()) {
+            logger.info("No usable cache at " + cacheFile + ", processing all files.");
+            dirtyFiles.addAll(files.keySet());
+        } else {
+            Set<String> changedTypes = new HashSet<>();
+            for (String file : files.keySet()) {
+                Optional<IncrementalCache.Entry> entry = cache.get(file);
+                if (entry.isEmpty() || !entry.orElseThrow().hash().equals(hashes.get(file))) {
+                    dirtyFiles.add(file);
+                    entry.ifPresent(cached -> changedTypes.addAll(cached.analysis().declaredTypes()));
+                }
+            }
+            for (String file : new ArrayList<>(cache.paths())) {
+                if (!files.containsKey(file)) {
+                    changedTypes.addAll(cache.get(file).orElseThrow().analysis().declaredTypes());
+                    cache.remove(file);
+                }
+            }
+            if (dirtyFiles.isEmpty() && changedTypes.isEmpty()) {
+                logger.info("All " + files.size() + " files are up to date.");
+                return;
+            }
+            for (String dependent : cache.filesDependingOn(changedTypes)) {
+                if (files.containsKey(dependent)) {
+                    dirtyFiles.add(dependent);
+                }
+            }
+        }
+
+        Map<CompilationUnit, FileAnalysis> analyses = new IdentityHashMap<>();
+        List<CompilationUnit> unitList = new ArrayList<>();
+        Set<String> loadedFiles = new HashSet<>();
+        Set<String> projectTypes = new HashSet<>();
+        for (String file : cache.paths()) {
+            cache.get(file).orElseThrow().analysis().declaredTypes().forEach(type -> projectTypes.add(FileAnalysis.simpleName(type)));
+        }
+        Set<String> pendingFiles = new TreeSet<>(dirtyFiles);
+        Map<String, Set<String>> blockingCallables = new HashMap<>();
+        boolean callersAdded = !options.blockingAnalysis() && !options.virtualThreadExecutors();
+        while (!pendingFiles.isEmpty()) {
+            loadedFiles.addAll(pendingFiles);
+            Set<String> lockTypes = new HashSet<>();
+            for (CompilationUnit cu : VirtualThreadRefactorHelper.parseJavaFiles(pathsOf(files, pendingFiles), options.parallelism(), metrics)) {
+                FileAnalysis analysis = FileAnalysis.of(cu);
+                analyses.put(cu, analysis);
+                unitList.add(cu);
+                analysis.declaredTypes().forEach(type -> projectTypes.add(FileAnalysis.simpleName(type)));
+                lockTypes.addAll(analysis.declaredTypes());
+                lockTypes.addAll(analysis.monitorTypes());
+            }
+            // The lock table of dynamic monitors is shared by its users even before it is generated.
+            lockTypes.removeIf(type -> !projectTypes.contains(FileAnalysis.simpleName(type)) && !type.equals(DynamicMonitors.CLASS_NAME));
+
+            pendingFiles = new TreeSet<>(cache.filesDeclaring(lockTypes));
+            pendingFiles.addAll(cache.filesDependingOn(lockTypes));
+            pendingFiles.removeIf(file -> !files.containsKey(file) || loadedFiles.contains(file));
+            if (pendingFiles.isEmpty() && !callersAdded) {
+                // The skipped files did not change, so the files loaded for their monitors do not change the verdicts.
+                callersAdded = true;
+                pendingFiles = callersOfNewlyBlocking(files.keySet(), unitList, projectRoot, cache, loadedCache.isPresent(), options, blockingCallables);
+                pendingFiles.removeIf(loadedFiles::contains);
+                if (!pendingFiles.isEmpty()) {
+                    logger.info("Processing " + pendingFiles.size() + " files calling callables that now block");
+                }
+                dirtyFiles.addAll(pendingFiles);
+            }
+        }
+
+        // The summaries of the skipped files complete the project for the blocking analysis.
+        List<String> otherFiles = files.keySet().stream().filter(file -> !loadedFiles.contains(file)).toList();
+        List<CallSummary> otherSummaries = otherFiles.stream().map(file -> cache.get(file).orElseThrow().calls()).toList();
+        DirtyUnitTracker dirtyUnits = VirtualThreadRefactorHelper.refactorUnits(VirtualThreadRefactorHelper.createJavaParser(), unitList, otherSummaries, options, metrics);
+        VirtualThreadRefactorHelper.write(dirtyUnits, options, metrics);
+
+        for (CompilationUnit cu : unitList) {
+            Path path = cu.getStorage().orElseThrow().getPath();
+            String file = relativePath(projectRoot, path);
+            if (dirtyUnits.isDirty(cu)) {
+                // The file still has its old content, so the next run must process it again.
+                cache.remove(file);
+                continue;
+            }
+            FileAnalysis analysis = analyses.get(cu).refreshedAfterRefactoring(cu);
+            cache.put(file, new IncrementalCache.Entry(IncrementalCache.hash(path), analysis, BlockingCallAnalysis.summarize(cu, options.blockingApis()),
+                    blockingCallables.getOrDefault(file, Set.of())));
+        }
+        for (String file : otherFiles) {
+            IncrementalCache.Entry entry = cache.get(file).orElseThrow();
+            cache.put(file, new IncrementalCache.Entry(entry.hash(), entry.analysis(), entry.calls(), blockingCallables.getOrDefault(file, Set.of())));
+        }
+        cache.save(cacheFile);
+        // Counted from the loaded files and the cache hits: files that failed to parse are in neither unitList nor the cache.
+        long sharingFiles = loadedFiles.stream().filter(file -> !dirtyFiles.contains(file)).count();
+        logger.info("Processed " + dirtyFiles.size() + " changed or dependent files and " + sharingFiles
+                + " files sharing their monitors, skipped " + otherFiles.size() + " files using their cache entries.");
+    }
+
+    /**
+     * Solves the blocking analysis of the project made of {@code unitList} and the cached summaries of the other files,
+     * records the blocking callables of every file in {@code blockingCallables}, and returns the files declaring or
+     * calling a callable that did not block in the last run.
+     */
+    private static Set<String> callersOfNewlyBlocking(Set<String> files, List<CompilationUnit> unitList, Path projectRoot, IncrementalCache cache,
+                                                      boolean cacheLoaded, RefactorOptions options, Map<String, Set<String>> blockingCallables) {
+        Map<String, CallSummary> summaries = new HashMap<>();
+        for (CompilationUnit cu : unitList) {
+            summaries.put(relativePath(projectRoot, cu.getStorage().orElseThrow().getPath()), BlockingCallAnalysis.summarize(cu, options.blockingApis()));
+        }
+        // A new file that failed to parse has neither a summary nor a cache entry, and is left out like in a normal run.
+        List<String> projectFiles = files.stream().filter(file -> summaries.containsKey(file) || cache.get(file).isPresent()).toList();
+        List<CallSummary> project = projectFiles.stream()
+                .map(file -> summaries.containsKey(file) ? summaries.get(file) : cache.get(file).orElseThrow().calls())
+                .toList();
+        BlockingCallAnalysis analysis = BlockingCallAnalysis.solve(project, options.blockingApis());
+
+        List<Set<String>> newlyBlocking = new ArrayList<>();
+        for (int file = 0; file < projectFiles.size(); file++) {
+            Set<String> blocking = analysis.blockingCallableKeys(file);
+            blockingCallables.put(projectFiles.get(file), blocking);
+            Set<String> added = new HashSet<>(blocking);
+            cache.get(projectFiles.get(file)).ifPresent(entry -> added.removeAll(entry.blockingCallables()));
+            newlyBlocking.add(added);
+        }
+        Set<String> callers = new TreeSet<>();
+        if (cacheLoaded) {
+            BitSet callerFiles = analysis.filesDeclaringOrCalling(newlyBlocking);
+            callerFiles.stream().forEach(file -> callers.add(projectFiles.get(file)));
+        }
+        return callers;
+    }
+
+    private static List<Path> pathsOf(Map<String, Path> files, Set<String> relativePaths) {
+        return relativePaths.stream().map(files::get).toList();
+    }
+
+    private static String relativePath(Path projectRoot, Path path) {
+        return projectRoot.toAbsolutePath().normalize()
+                .relativize(path.toAbsolutePath().normalize())
+                .toString()
+                .replace('\\', '/');
+    }
+}
@@ -0,0 +1,71 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Findings of the migration passes to be reviewed by hand: what was not applied automatically, e.g. a
+ * {@code ThreadLocal} whose usage cannot be converted safely, and the estimated effect of some conversions that were.
+ * Passes may add entries concurrently.
+ */
+public class MigrationReport {
+
+    /**
+     * @param pass    the pass that produced the entry
+     * @param file    file of the node the entry is about
+     * @param line    line of the node the entry is about
+     * @param subject the field, type or expression concerned
+     * @param message what was found, and why it was not rewritten or what rewriting it saves
+     */
+    public record Entry(String pass, String file, int line, String subject, String message) {
+
+        public String location() {
+            return file + ":" + line;
+        }
+    }
+
+    private final List<Entry> entries = Collections.synchronizedList(new ArrayList<>());
+
+    public void add(String pass, Node node, String subject, String message) {
+        String file = node.findCompilationUnit()
+                .flatMap(CompilationUnit::getStorage)
+                .map(storage -> storage.getPath().toString())
+                .orElse("?");
+        entries.add(new Entry(pass, file, node.getBegin().map(position -> position.line).orElse(0), subject, message));
+    }
+
+    public List<Entry> getEntries() {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::pass).thenComparing(Entry::file).thenComparingInt(Entry::line)
+                .thenComparing(Entry::subject));
+        return sorted;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public void log(Logger logger) {
+        for (Entry entry : getEntries()) {
+            logger.info("[" + entry.pass() + "] " + entry.location() + " " + entry.subject() + ": " + entry.message());
+        }
+    }
+
+    /**
+     * Writes the entries as tab-separated lines: pass, location, subject and message.
+     */
+    public void write(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Entry entry : getEntries()) {
+            lines.add(String.join("\t", entry.pass(), entry.location(), entry.subject(), entry.message()));
+        }
+        Files.write(file, lines);
+    }
+}
@@ -0,0 +1,17 @@
+import com.github.javaparser.ast.Node;
+
+/**
+ * Thrown by a migration pass while checking a field, with the node and the reason it cannot be converted.
+ */
+public class NotConvertible extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    // Only read by the pass that throws it, never serialized.
+    final transient Node node;
+
+    NotConvertible(Node node, String message) {
+        super(message, null, false, false);
+        this.node = node;
+    }
+}
@@ -0,0 +1,182 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Selects the synchronized sites to convert from a JFR recording with {@code jdk.VirtualThreadPinned} events, so only
+ * sites that were seen pinning a carrier thread are converted, worst first.
+ * <p>
+ * Events are combined by stack trace. Every frame of a stack is mapped by type and line number to the synchronized
+ * blocks and synchronized methods of the parsed project that enclose it; each of them held its monitor while the
+ * thread was pinned. The line numbers are those of the recorded build, so the sources should not have changed since.
+ */
+public class PinnedSiteProfile implements SiteFilter {
+
+    static Logger logger = Logger.getLogger(PinnedSiteProfile.class.getName());
+
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    record Frame(String typeName, String methodName, int lineNumber) {
+    }
+
+    /**
+     * Pinned events combined by stack or by site.
+     */
+    record PinnedTime(long events, Duration duration) {
+
+        PinnedTime plus(PinnedTime other) {
+            return new PinnedTime(events + other.events, duration.plus(other.duration));
+        }
+    }
+
+    record PinnedSite(Node site, PinnedTime pinnedTime) {
+    }
+
+    private final List<PinnedSite> selectedSites;
+    private final Set<Node> selectedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private PinnedSiteProfile(List<PinnedSite> selectedSites) {
+        this.selectedSites = selectedSites;
+        selectedSites.forEach(pinnedSite -> selectedNodes.add(pinnedSite.site()));
+    }
+
+    /**
+     * Reads {@code recording} and selects the {@code top} sites with the longest total pinned time, and of those only
+     * the ones pinned for at least {@code minimumDuration} in total. {@code top} of 0 means no limit.
+     */
+    public static PinnedSiteProfile load(Path recording, ProjectIndex index, int top, Duration minimumDuration) throws IOException {
+        Map<List<Frame>, PinnedTime> pinnedStacks = readPinnedStacks(recording);
+        List<PinnedSite> rankedSites = rankSites(index, pinnedStacks);
+        List<PinnedSite> selectedSites = rankedSites.stream()
+                .filter(pinnedSite -> pinnedSite.pinnedTime().duration().compareTo(minimumDuration) >= 0)
+                .limit(top > 0 ? top : Long.MAX_VALUE)
+                .toList();
+        logger.info("Read " + pinnedStacks.values().stream().mapToLong(PinnedTime::events).sum() + " pinned events with "
+                + pinnedStacks.size() + " distinct stacks from " + recording + ", selected " + selectedSites.size()
+                + " of " + rankedSites.size() + " pinned sites");
+        for (int i = 0; i < selectedSites.size(); i++) {
+            PinnedSite pinnedSite = selectedSites.get(i);
+            logger.info("#" + (i + 1) + " " + pinnedSite.pinnedTime().duration().toMillis() + " ms in "
+                    + pinnedSite.pinnedTime().events() + " events: " + describe(pinnedSite.site()));
+        }
+        return new PinnedSiteProfile(selectedSites);
+    }
+
+    public List<PinnedSite> getSelectedSites() {
+        return selectedSites;
+    }
+
+    @Override
+    public boolean accepts(Node site) {
+        return selectedNodes.contains(site);
+    }
+
+    static Map<List<Frame>, PinnedTime> readPinnedStacks(Path recording) throws IOException {
+        Map<List<Frame>, PinnedTime> pinnedStacks = new HashMap<>();
+        try (RecordingFile recordingFile = new RecordingFile(recording)) {
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                if (!event.getEventType().getName().equals(PINNED_EVENT) || event.getStackTrace() == null) {
+                    continue;
+                }
+                List<Frame> stack = new ArrayList<>();
+                for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                    if (frame.isJavaFrame() && frame.getLineNumber() > 0) {
+                        stack.add(new Frame(frame.getMethod().getType().getName(), frame.getMethod().getName(), frame.getLineNumber()));
+                    }
+                }
+                pinnedStacks.merge(stack, new PinnedTime(1, event.getDuration()), PinnedTime::plus);
+            }
+        }
+        return pinnedStacks;
+    }
+
+    /**
+     * Maps the pinned stacks to project sites and ranks the sites by total pinned time, longest first. A site counts
+     * once per stack even if several frames of the stack fall into it.
+     */
+    static List<PinnedSite> rankSites(ProjectIndex index, Map<List<Frame>, PinnedTime> pinnedStacks) {
+        Map<Node, PinnedTime> pinnedTimes = new IdentityHashMap<>();
+        for (Map.Entry<List<Frame>, PinnedTime> pinnedStack : pinnedStacks.entrySet()) {
+            Set<Node> sites = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Frame frame : pinnedStack.getKey()) {
+                sites.addAll(sitesEnclosing(index, frame));
+            }
+            for (Node site : sites) {
+                pinnedTimes.merge(site, pinnedStack.getValue(), PinnedTime::plus);
+            }
+        }
+        List<PinnedSite> rankedSites = new ArrayList<>();
+        pinnedTimes.forEach((site, pinnedTime) -> rankedSites.add(new PinnedSite(site, pinnedTime)));
+        rankedSites.sort(Comparator.comparing((PinnedSite pinnedSite) -> pinnedSite.pinnedTime().duration()).reversed());
+        return rankedSites;
+    }
+
+    private static List<Node> sitesEnclosing(ProjectIndex index, Frame frame) {
+        Optional<TypeDeclaration<?>> type = declaringType(index, frame.typeName());
+        if (type.isEmpty()) {
+            return List.of();
+        }
+        List<Node> sites = new ArrayList<>();
+        for (SynchronizedStmt statement : type.orElseThrow().findAll(SynchronizedStmt.class)) {
+            if (encloses(statement, frame.lineNumber())) {
+                sites.add(statement);
+            }
+        }
+        for (MethodDeclaration method : type.orElseThrow().findAll(MethodDeclaration.class)) {
+            if (method.isSynchronized() && encloses(method, frame.lineNumber())) {
+                sites.add(method);
+            }
+        }
+        return sites;
+    }
+
+    /**
+     * Resolves a binary class name such as {@code com.example.Outer$Inner$1} to the innermost indexed type, here
+     * {@code com.example.Outer.Inner}: anonymous and local classes are searched through their enclosing type.
+     */
+    private static Optional<TypeDeclaration<?>> declaringType(ProjectIndex index, String binaryName) {
+        String name = binaryName.replace('$', '.');
+        while (true) {
+            Optional<TypeDeclaration<?>> type = index.findType(name);
+            int separator = name.lastIndexOf('.');
+            if (type.isPresent() || separator < 0) {
+                return type;
+            }
+            name = name.substring(0, separator);
+        }
+    }
+
+    private static boolean encloses(Node node, int lineNumber) {
+        return node.getRange().map(range -> range.begin.line <= lineNumber && lineNumber <= range.end.line).orElse(false);
+    }
+
+    private static String describe(Node site) {
+        String location = site.findCompilationUnit().flatMap(CompilationUnit::getStorage)
+                .map(storage -> storage.getPath().toString()).orElse("?")
+                + ":" + site.getBegin().map(position -> position.line).orElse(0);
+        if (site instanceof MethodDeclaration method) {
+            return location + " synchronized method " + method.getNameAsString();
+        }
+        return location + " synchronized (" + ((SynchronizedStmt) site).getExpression() + ")";
+    }
+}
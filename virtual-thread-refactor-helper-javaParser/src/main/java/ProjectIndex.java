@@ -0,0 +1,157 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Project-wide symbol table built once after parsing. Types are indexed by fully-qualified name (nested types
+ * included) and by simple name (top-level types only, first declaration wins), and every type gets a field-name
+ * table. Nodes are keyed by identity because JavaParser's {@code equals}/{@code hashCode} walk the whole subtree.
+ * <p>
+ * Lock fields must be inserted through {@link #addField(TypeDeclaration, FieldDeclaration)} so the field tables
+ * stay in sync with the ASTs. Once built, the index may be read concurrently, and fields of types in different
+ * compilation units may be added concurrently.
+ */
+public class ProjectIndex {
+
+    private final Map<String, TypeDeclaration<?>> typesByQualifiedName = new HashMap<>();
+    private final Map<String, TypeDeclaration<?>> typesBySimpleName = new HashMap<>();
+    private final Map<TypeDeclaration<?>, CompilationUnit> unitsByType = new IdentityHashMap<>();
+    private final Map<TypeDeclaration<?>, Map<String, FieldDeclaration>> fieldsByType = new IdentityHashMap<>();
+
+    public static ProjectIndex build(List<CompilationUnit> unitList) {
+        ProjectIndex index = new ProjectIndex();
+        unitList.forEach(index::addCompilationUnit);
+        return index;
+    }
+
+    public void addCompilationUnit(CompilationUnit cu) {
+        for (TypeDeclaration<?> type : cu.getTypes()) {
+            typesBySimpleName.putIfAbsent(type.getNameAsString(), type);
+        }
+        for (TypeDeclaration<?> type : cu.findAll(TypeDeclaration.class)) {
+            unitsByType.put(type, cu);
+            fieldsByType.put(type, collectFields(type));
+            type.getFullyQualifiedName().ifPresent(name -> typesByQualifiedName.putIfAbsent(name, type));
+        }
+    }
+
+    /**
+     * Resolves {@code type} as seen from {@code context}: an explicit qualified name, then single-type imports, the
+     * package of {@code context} and on-demand imports. Falls back to the first project type with the same simple
+     * name.
+     */
+    public Optional<TypeDeclaration<?>> findType(CompilationUnit context, ClassOrInterfaceType type) {
+        String simpleName = type.getNameAsString();
+        if (type.getScope().isPresent()) {
+            TypeDeclaration<?> qualified = typesByQualifiedName.get(type.getNameWithScope());
+            if (qualified != null) {
+                return Optional.of(qualified);
+            }
+        }
+
+        for (ImportDeclaration importDeclaration : context.getImports()) {
+            if (!importDeclaration.isStatic() && !importDeclaration.isAsterisk()
+                    && importDeclaration.getName().getIdentifier().equals(simpleName)) {
+                TypeDeclaration<?> imported = typesByQualifiedName.get(importDeclaration.getNameAsString());
+                if (imported != null) {
+                    return Optional.of(imported);
+                }
+            }
+        }
+
+        String packagePrefix = context.getPackageDeclaration().map(declaration -> declaration.getNameAsString() + ".").orElse("");
+        TypeDeclaration<?> samePackage = typesByQualifiedName.get(packagePrefix + simpleName);
+        if (samePackage != null) {
+            return Optional.of(samePackage);
+        }
+
+        for (ImportDeclaration importDeclaration : context.getImports()) {
+            if (!importDeclaration.isStatic() && importDeclaration.isAsterisk()) {
+                TypeDeclaration<?> onDemand = typesByQualifiedName.get(importDeclaration.getNameAsString() + "." + simpleName);
+                if (onDemand != null) {
+                    return Optional.of(onDemand);
+                }
+            }
+        }
+
+        return Optional.ofNullable(typesBySimpleName.get(simpleName));
+    }
+
+    public Optional<TypeDeclaration<?>> findType(String qualifiedName) {
+        return Optional.ofNullable(typesByQualifiedName.get(qualifiedName));
+    }
+
+    public CompilationUnit getCompilationUnit(TypeDeclaration<?> type) {
+        CompilationUnit cu = unitsByType.get(type);
+        if (cu == null) {
+            throw new IllegalArgumentException("Type is not indexed: " + type.getNameAsString());
+        }
+        return cu;
+    }
+
+    public boolean hasField(TypeDeclaration<?> type, String fieldName) {
+        return fieldsOf(type).containsKey(fieldName);
+    }
+
+    public Optional<FieldDeclaration> getField(TypeDeclaration<?> type, String fieldName) {
+        return Optional.ofNullable(fieldsOf(type).get(fieldName));
+    }
+
+    /**
+     * Inserts {@code field} as the first member of {@code type} and records its variables in the field table.
+     */
+    public void addField(TypeDeclaration<?> type, FieldDeclaration field) {
+        type.getMembers().add(0, field);
+        recordField(type, field);
+    }
+
+    /**
+     * Inserts {@code field} right after the member {@code previous} of {@code type} and records its variables in the
+     * field table.
+     */
+    public void addFieldAfter(TypeDeclaration<?> type, FieldDeclaration previous, FieldDeclaration field) {
+        int index = 0;
+        while (type.getMember(index) != previous) {
+            index++;
+        }
+        type.getMembers().add(index + 1, field);
+        recordField(type, field);
+    }
+
+    private void recordField(TypeDeclaration<?> type, FieldDeclaration field) {
+        Map<String, FieldDeclaration> fields = fieldsOf(type);
+        for (VariableDeclarator variable : field.getVariables()) {
+            fields.put(variable.getNameAsString(), field);
+        }
+    }
+
+    private Map<String, FieldDeclaration> fieldsOf(TypeDeclaration<?> type) {
+        Map<String, FieldDeclaration> fields = fieldsByType.get(type);
+        if (fields == null) {
+            throw new IllegalArgumentException("Type is not indexed: " + type.getNameAsString());
+        }
+        return fields;
+    }
+
+    private static Map<String, FieldDeclaration> collectFields(TypeDeclaration<?> type) {
+        Map<String, FieldDeclaration> fields = new HashMap<>();
+        for (BodyDeclaration<?> member : type.getMembers()) {
+            if (member instanceof FieldDeclaration field) {
+                for (VariableDeclarator variable : field.getVariables()) {
+                    fields.putIfAbsent(variable.getNameAsString(), field);
+                }
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,347 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.CastExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.expr.EnclosedExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.LiteralExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Classifies synchronized sites as read-only or mutating without a symbol solver, so that a monitor whose sites mostly
+ * read can be replaced by a read/write lock. The classification is conservative: a site is only read-only if nothing
+ * in it may write anything but its own local variables, as far as declarations and a list of JDK query methods tell.
+ * Whatever is not recognised, such as a call on an object of a project type, a call whose receiver type is unknown, or
+ * the creation of an object, counts as a write.
+ */
+public class ReadWriteAnalysis {
+
+    private static final Set<String> COLLECTION_READS = Set.of("size", "isEmpty", "contains", "containsAll", "equals", "hashCode");
+    private static final Set<String> LIST_READS = union(COLLECTION_READS, Set.of("get", "indexOf", "lastIndexOf"));
+    private static final Set<String> QUEUE_READS = union(COLLECTION_READS, Set.of("peek", "element"));
+    private static final Set<String> DEQUE_READS = union(QUEUE_READS, Set.of("peekFirst", "peekLast", "getFirst", "getLast"));
+    private static final Set<String> SORTED_SET_READS = union(COLLECTION_READS, Set.of("first", "last"));
+    private static final Set<String> MAP_READS = Set.of("size", "isEmpty", "containsKey", "containsValue", "equals", "hashCode");
+    /**
+     * {@code get} of a {@code LinkedHashMap} in access order moves the entry, and {@code get} of a {@code WeakHashMap}
+     * expunges stale entries, so a map lookup only reads for the maps below.
+     */
+    private static final Set<String> LOOKUP_MAP_READS = union(MAP_READS, Set.of("get", "getOrDefault"));
+    private static final Set<String> NUMBER_READS = Set.of("intValue", "longValue", "doubleValue", "floatValue", "shortValue", "byteValue",
+            "equals", "hashCode", "compareTo", "toString");
+    private static final Set<String> ATOMIC_READS = Set.of("get", "getPlain", "getAcquire", "getOpaque", "intValue", "longValue", "doubleValue");
+
+    /**
+     * Methods that only read the object they are called on, by the fully-qualified type of the receiver. The methods
+     * must only read for every JDK class a variable of that type may hold; element methods such as {@code equals} are
+     * assumed to follow their contract. Any other call may write.
+     */
+    private static final Map<String, Set<String>> READ_METHODS = Map.ofEntries(
+            Map.entry("java.lang.String", Set.of("length", "isEmpty", "isBlank", "charAt", "codePointAt", "indexOf", "lastIndexOf",
+                    "contains", "startsWith", "endsWith", "equals", "equalsIgnoreCase", "hashCode", "compareTo", "compareToIgnoreCase",
+                    "substring", "toLowerCase", "toUpperCase", "trim", "strip", "matches", "toString")),
+            Map.entry("java.lang.Integer", NUMBER_READS),
+            Map.entry("java.lang.Long", NUMBER_READS),
+            Map.entry("java.lang.Short", NUMBER_READS),
+            Map.entry("java.lang.Byte", NUMBER_READS),
+            Map.entry("java.lang.Double", NUMBER_READS),
+            Map.entry("java.lang.Float", NUMBER_READS),
+            Map.entry("java.lang.Boolean", Set.of("booleanValue", "equals", "hashCode", "compareTo", "toString")),
+            Map.entry("java.lang.Character", Set.of("charValue", "equals", "hashCode", "compareTo", "toString")),
+            Map.entry("java.util.Collection", COLLECTION_READS),
+            Map.entry("java.util.Set", COLLECTION_READS),
+            Map.entry("java.util.HashSet", COLLECTION_READS),
+            Map.entry("java.util.LinkedHashSet", COLLECTION_READS),
+            Map.entry("java.util.SortedSet", SORTED_SET_READS),
+            Map.entry("java.util.NavigableSet", SORTED_SET_READS),
+            Map.entry("java.util.TreeSet", SORTED_SET_READS),
+            Map.entry("java.util.List", LIST_READS),
+            Map.entry("java.util.ArrayList", LIST_READS),
+            Map.entry("java.util.LinkedList", union(LIST_READS, DEQUE_READS)),
+            Map.entry("java.util.concurrent.CopyOnWriteArrayList", LIST_READS),
+            Map.entry("java.util.Queue", QUEUE_READS),
+            Map.entry("java.util.Deque", DEQUE_READS),
+            Map.entry("java.util.ArrayDeque", DEQUE_READS),
+            Map.entry("java.util.Map", MAP_READS),
+            Map.entry("java.util.HashMap", MAP_READS),
+            Map.entry("java.util.LinkedHashMap", MAP_READS),
+            Map.entry("java.util.WeakHashMap", MAP_READS),
+            Map.entry("java.util.SortedMap", union(LOOKUP_MAP_READS, Set.of("firstKey", "lastKey"))),
+            Map.entry("java.util.NavigableMap", union(LOOKUP_MAP_READS, Set.of("firstKey", "lastKey"))),
+            Map.entry("java.util.TreeMap", union(LOOKUP_MAP_READS, Set.of("firstKey", "lastKey"))),
+            Map.entry("java.util.concurrent.ConcurrentMap", LOOKUP_MAP_READS),
+            Map.entry("java.util.concurrent.ConcurrentHashMap", LOOKUP_MAP_READS),
+            Map.entry("java.util.IdentityHashMap", LOOKUP_MAP_READS),
+            Map.entry("java.util.EnumMap", LOOKUP_MAP_READS),
+            Map.entry("java.util.concurrent.atomic.AtomicInteger", ATOMIC_READS),
+            Map.entry("java.util.concurrent.atomic.AtomicLong", ATOMIC_READS),
+            Map.entry("java.util.concurrent.atomic.AtomicBoolean", ATOMIC_READS),
+            Map.entry("java.util.concurrent.atomic.AtomicReference", ATOMIC_READS));
+    /**
+     * Maps that only read on {@code get} when a variable is known to hold exactly that class, i.e. a final field
+     * initialised with a new instance: a {@code HashMap} variable may hold a {@code LinkedHashMap}.
+     */
+    private static final Map<String, Set<String>> EXACT_READ_METHODS = Map.of(
+            "java.util.HashMap", LOOKUP_MAP_READS,
+            "java.util.Hashtable", LOOKUP_MAP_READS);
+    /**
+     * Static methods that only read their arguments, by the fully-qualified type declaring them.
+     */
+    private static final Map<String, Set<String>> STATIC_READ_METHODS = Map.of(
+            "java.lang.Math", Set.of("min", "max", "abs", "floor", "ceil", "round", "sqrt", "pow", "signum"),
+            "java.lang.String", Set.of("valueOf"),
+            "java.lang.Integer", Set.of("valueOf", "compare", "parseInt", "toString"),
+            "java.lang.Long", Set.of("valueOf", "compare", "parseLong", "toString"),
+            "java.lang.Boolean", Set.of("valueOf", "compare", "parseBoolean", "toString"),
+            "java.util.Objects", Set.of("equals", "hashCode", "isNull", "nonNull"));
+    private static final Set<String> JAVA_LANG_TYPES = Set.of("String", "Integer", "Long", "Short", "Byte", "Double", "Float", "Boolean",
+            "Character", "Math");
+
+    /**
+     * Whether {@code site}, a synchronized method or block, only reads: it assigns no field or array element, creates
+     * no object, calls no method of its own object, which could write or acquire the lock again, only calls the
+     * {@link #READ_METHODS} of JDK objects held by its variables and fields, does not pass {@code this} anywhere and
+     * does not use the monitor's {@code wait}/{@code notify}.
+     */
+    public static boolean isReadOnly(Node site) {
+        for (AssignExpr assign : site.findAll(AssignExpr.class)) {
+            if (!isLocalVariable(assign.getTarget())) {
+                return false;
+            }
+        }
+        for (UnaryExpr unary : site.findAll(UnaryExpr.class)) {
+            if (isIncrementOrDecrement(unary) && !isLocalVariable(unary.getExpression())) {
+                return false;
+            }
+        }
+        if (!site.findAll(ObjectCreationExpr.class).isEmpty() || !site.findAll(MethodReferenceExpr.class).isEmpty()) {
+            return false;
+        }
+        CompilationUnit cu = site.findCompilationUnit().orElse(null);
+        for (MethodCallExpr call : site.findAll(MethodCallExpr.class)) {
+            if (cu == null || !isReadCall(cu, call)) {
+                return false;
+            }
+        }
+        for (ThisExpr thisExpr : site.findAll(ThisExpr.class)) {
+            Node parent = thisExpr.getParentNode().orElse(null);
+            if (!(parent instanceof FieldAccessExpr access && access.getScope() == thisExpr) && !(parent instanceof SynchronizedStmt)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the read-only {@code site} can read optimistically, i.e. run without the lock and be repeated under it
+     * if a writer interfered: its body is a single {@code return} of fields, literals and arithmetic that cannot throw
+     * on a state that is only half written, in a method returning a value.
+     */
+    public static boolean canReadOptimistically(Node site) {
+        BlockStmt body;
+        if (site instanceof MethodDeclaration method) {
+            body = method.getBody().orElse(null);
+        } else if (site instanceof SynchronizedStmt statement && statement.getParentNode().orElse(null) instanceof BlockStmt parent
+                && parent.getParentNode().orElse(null) instanceof MethodDeclaration) {
+            body = statement.getBody();
+        } else {
+            return false;
+        }
+        if (body == null || body.getStatements().size() != 1 || !(body.getStatement(0) instanceof ReturnStmt returnStmt)) {
+            return false;
+        }
+        Optional<MethodDeclaration> method = site instanceof MethodDeclaration declaration ? Optional.of(declaration)
+                : Declarations.ancestor(site, MethodDeclaration.class);
+        return method.isPresent() && !method.orElseThrow().getType().isVoidType()
+                && returnStmt.getExpression().map(ReadWriteAnalysis::readsSafely).orElse(false);
+    }
+
+    private static boolean readsSafely(Expression expression) {
+        if (expression instanceof NameExpr || expression instanceof LiteralExpr) {
+            return true;
+        } else if (expression instanceof FieldAccessExpr access) {
+            return access.getScope() instanceof ThisExpr;
+        } else if (expression instanceof EnclosedExpr enclosed) {
+            return readsSafely(enclosed.getInner());
+        } else if (expression instanceof UnaryExpr unary) {
+            return !isIncrementOrDecrement(unary) && readsSafely(unary.getExpression());
+        } else if (expression instanceof BinaryExpr binary) {
+            return binary.getOperator() != BinaryExpr.Operator.DIVIDE && binary.getOperator() != BinaryExpr.Operator.REMAINDER
+                    && readsSafely(binary.getLeft()) && readsSafely(binary.getRight());
+        } else if (expression instanceof ConditionalExpr conditional) {
+            return readsSafely(conditional.getCondition()) && readsSafely(conditional.getThenExpr()) && readsSafely(conditional.getElseExpr());
+        } else if (expression instanceof CastExpr cast) {
+            return cast.getType().isPrimitiveType() && readsSafely(cast.getExpression());
+        }
+        return false;
+    }
+
+    /**
+     * Whether a {@code StampedLock}, which is not reentrant, can replace the monitor of {@code sites}: no site is
+     * nested in another one or calls a method of its own object, and {@code owner} never passes {@code this} to other
+     * objects, explicitly or through an anonymous class or a lambda calling its methods, which could call back into it
+     * while the lock is held.
+     */
+    public static boolean cannotReenter(TypeDeclaration<?> owner, List<Node> sites) {
+        for (Node site : sites) {
+            for (Node other : sites) {
+                if (other != site && site.isDescendantOf(other)) {
+                    return false;
+                }
+            }
+            for (MethodCallExpr call : site.findAll(MethodCallExpr.class)) {
+                if (call.getScope().isEmpty() || call.getScope().orElseThrow() instanceof ThisExpr) {
+                    return false;
+                }
+            }
+        }
+        for (ThisExpr thisExpr : owner.findAll(ThisExpr.class)) {
+            Node parent = thisExpr.getParentNode().orElse(null);
+            boolean accessesMember = parent instanceof FieldAccessExpr access && access.getScope() == thisExpr
+                    || parent instanceof MethodCallExpr call && call.getScope().orElse(null) == thisExpr
+                    || parent instanceof SynchronizedStmt;
+            if (!accessesMember) {
+                return false;
+            }
+        }
+        for (LambdaExpr lambda : owner.findAll(LambdaExpr.class)) {
+            if (lambda.findAll(MethodCallExpr.class).stream().anyMatch(call -> call.getScope().isEmpty())) {
+                return false;
+            }
+        }
+        return owner.findAll(ObjectCreationExpr.class).stream().noneMatch(creation -> creation.getAnonymousClassBody().isPresent());
+    }
+
+    /**
+     * Whether {@code call} is one of the {@link #READ_METHODS} on a variable, a field or a string literal of a JDK type,
+     * or one of the {@link #STATIC_READ_METHODS}.
+     */
+    private static boolean isReadCall(CompilationUnit cu, MethodCallExpr call) {
+        Expression scope = call.getScope().orElse(null);
+        String method = call.getNameAsString();
+        if (scope instanceof StringLiteralExpr) {
+            return READ_METHODS.get("java.lang.String").contains(method);
+        }
+        String name;
+        if (scope instanceof NameExpr nameExpr) {
+            name = nameExpr.getNameAsString();
+        } else if (scope instanceof FieldAccessExpr access && access.getScope() instanceof ThisExpr) {
+            name = access.getNameAsString();
+        } else {
+            return false;
+        }
+        List<FieldDeclaration> field = new ArrayList<>(1);
+        Optional<Type> declaredType = Declarations.typeOf(scope, name, (type, fieldName) -> {
+            Optional<FieldDeclaration> declaration = type.getFieldByName(fieldName);
+            declaration.ifPresent(field::add);
+            return declaration;
+        });
+        if (declaredType.isEmpty()) {
+            // Not a variable, so possibly a static call on a type.
+            return scope instanceof NameExpr && jdkType(cu, name)
+                    .map(type -> STATIC_READ_METHODS.getOrDefault(type, Set.of()).contains(method))
+                    .orElse(false);
+        }
+        if (!(declaredType.orElseThrow() instanceof ClassOrInterfaceType type)) {
+            return false;
+        }
+        Optional<String> jdkType = jdkType(cu, type.getNameWithScope());
+        if (jdkType.isPresent() && READ_METHODS.getOrDefault(jdkType.orElseThrow(), Set.of()).contains(method)) {
+            return true;
+        }
+        return !field.isEmpty() && exactType(cu, field.get(0), name)
+                .map(exact -> EXACT_READ_METHODS.getOrDefault(exact, Set.of()).contains(method))
+                .orElse(false);
+    }
+
+    /**
+     * The JDK class of the instance a final field holds, if it is initialised with {@code new} of that class.
+     */
+    private static Optional<String> exactType(CompilationUnit cu, FieldDeclaration field, String name) {
+        if (!field.isFinal()) {
+            return Optional.empty();
+        }
+        return field.getVariables().stream()
+                .filter(variable -> variable.getNameAsString().equals(name))
+                .findFirst()
+                .flatMap(VariableDeclarator::getInitializer)
+                .filter(initializer -> initializer instanceof ObjectCreationExpr creation && creation.getAnonymousClassBody().isEmpty())
+                .flatMap(initializer -> jdkType(cu, ((ObjectCreationExpr) initializer).getType().getNameWithScope()));
+    }
+
+    /**
+     * The fully-qualified name of the JDK type {@code typeName} stands for in {@code cu}, if it is one of the types
+     * this analysis knows: imported, from an on-demand import, or from {@code java.lang}. A type of the same name
+     * declared in the unit hides it.
+     */
+    private static Optional<String> jdkType(CompilationUnit cu, String typeName) {
+        if (typeName.contains(".")) {
+            return Optional.of(typeName).filter(ReadWriteAnalysis::isKnownType);
+        }
+        if (cu.findFirst(TypeDeclaration.class, type -> type.getNameAsString().equals(typeName)).isPresent()) {
+            return Optional.empty();
+        }
+        for (ImportDeclaration importDeclaration : cu.getImports()) {
+            if (!importDeclaration.isStatic() && !importDeclaration.isAsterisk()
+                    && importDeclaration.getName().getIdentifier().equals(typeName)) {
+                return Optional.of(importDeclaration.getNameAsString()).filter(ReadWriteAnalysis::isKnownType);
+            }
+        }
+        if (JAVA_LANG_TYPES.contains(typeName)) {
+            return Optional.of("java.lang." + typeName);
+        }
+        for (ImportDeclaration importDeclaration : cu.getImports()) {
+            String candidate = importDeclaration.getNameAsString() + "." + typeName;
+            if (!importDeclaration.isStatic() && importDeclaration.isAsterisk() && isKnownType(candidate)) {
+                return Optional.of(candidate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isKnownType(String qualifiedName) {
+        return READ_METHODS.containsKey(qualifiedName) || EXACT_READ_METHODS.containsKey(qualifiedName) || STATIC_READ_METHODS.containsKey(qualifiedName);
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> union = new HashSet<>(first);
+        union.addAll(second);
+        return Set.copyOf(union);
+    }
+
+    private static boolean isIncrementOrDecrement(UnaryExpr unary) {
+        return unary.getOperator().isPostfix() || unary.getOperator() == UnaryExpr.Operator.PREFIX_INCREMENT
+                || unary.getOperator() == UnaryExpr.Operator.PREFIX_DECREMENT;
+    }
+
+    private static boolean isLocalVariable(Expression target) {
+        return target instanceof NameExpr name && Declarations.typeOf(name, name.getNameAsString(), (type, field) -> Optional.empty()).isPresent();
+    }
+}
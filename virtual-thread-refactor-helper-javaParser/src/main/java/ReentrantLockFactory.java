@@ -12,6 +12,8 @@ public class ReentrantLockFactory {
     private static final String CLASS_LOCK_POSTFIX = "ClassLock";
     private static final String OBJECT_LOCK_POSTFIX = "ObjectLock";
     private static final String FIELD_LOCK_POSTFIX = "Lock";
+    private static final String CONDITION_POSTFIX = "Condition";
+    static final String INSTRUMENTED_LOCK_CLASS = "org.eddiecho.virtualthread.runtime.InstrumentedReentrantLock";
 
     public static String getReentrantLockName(TypeDeclaration<?> type, boolean isStatic) {
         String postfix = isStatic ? CLASS_LOCK_POSTFIX : OBJECT_LOCK_POSTFIX;
@@ -23,6 +25,15 @@ public class ReentrantLockFactory {
         return fieldName.substring(0, 1).toLowerCase() + fieldName.substring(1) + FIELD_LOCK_POSTFIX;
     }
 
+    /**
+     * The name of a condition of the lock {@code lockName}, for the waiters of {@code waiter}, or the only condition of
+     * the lock if {@code waiter} is empty.
+     */
+    public static String getConditionName(String lockName, String waiter) {
+        String waiterName = waiter.isEmpty() ? "" : waiter.substring(0, 1).toUpperCase() + waiter.substring(1);
+        return lockName + waiterName + CONDITION_POSTFIX;
+    }
+
     public static FieldDeclaration createReentrantLock(JavaParser javaParser, CompilationUnit cu, TypeDeclaration<?> type, boolean isStatic) {
         cu.addImport("java.util.concurrent.locks.ReentrantLock");
         String lockName = getReentrantLockName(type, isStatic);
@@ -35,14 +46,70 @@ public class ReentrantLockFactory {
         return createReentrantLock(javaParser, lockName, false);
     }
 
+    public static FieldDeclaration createReentrantLock(JavaParser javaParser, CompilationUnit cu, String lockName, boolean isStatic) {
+        cu.addImport("java.util.concurrent.locks.ReentrantLock");
+        return createReentrantLock(javaParser, lockName, isStatic);
+    }
+
     public static FieldDeclaration createReentrantLock(JavaParser javaParser, String lockName, boolean isStatic) {
+        return createLock(javaParser, lockName, isStatic, RefactorPlan.LockKind.REENTRANT);
+    }
+
+    public static FieldDeclaration createLock(JavaParser javaParser, CompilationUnit cu, String lockName, boolean isStatic, RefactorPlan.LockKind kind) {
+        cu.addImport("java.util.concurrent.locks." + kind.getClassName());
+        return createLock(javaParser, lockName, isStatic, kind);
+    }
+
+    /**
+     * Creates a {@code ReentrantLock} field initialised with an {@code InstrumentedReentrantLock} of the
+     * {@code virtual-thread-refactor-helper-runtime} library, named by {@link #getMonitorName(TypeDeclaration, String)}.
+     */
+    public static FieldDeclaration createInstrumentedLock(JavaParser javaParser, CompilationUnit cu, TypeDeclaration<?> type, String lockName, boolean isStatic) {
+        cu.addImport("java.util.concurrent.locks." + RefactorPlan.LockKind.REENTRANT.getClassName());
+        cu.addImport(INSTRUMENTED_LOCK_CLASS);
+        FieldDeclaration lockField = createLock(javaParser, lockName, isStatic, RefactorPlan.LockKind.REENTRANT);
+        String instrumentedLock = INSTRUMENTED_LOCK_CLASS.substring(INSTRUMENTED_LOCK_CLASS.lastIndexOf('.') + 1);
+        lockField.getVariable(0).setInitializer(javaParser.parseExpression("new " + instrumentedLock + "(\""
+                + getMonitorName(type, lockName) + "\")").getResult().orElseThrow());
+        return lockField;
+    }
+
+    /**
+     * The declaring class and the monitor replaced by the lock {@code lockName} of {@code type}, e.g.
+     * {@code com.example.Foo.this}, {@code com.example.Foo.class} or {@code com.example.Foo.mutex}.
+     */
+    public static String getMonitorName(TypeDeclaration<?> type, String lockName) {
+        String className = type.getFullyQualifiedName().orElse(type.getNameAsString());
+        if (lockName.equals(getReentrantLockName(type, false))) {
+            return className + ".this";
+        } else if (lockName.equals(getReentrantLockName(type, true))) {
+            return className + ".class";
+        } else if (lockName.endsWith(FIELD_LOCK_POSTFIX)) {
+            return className + "." + lockName.substring(0, lockName.length() - FIELD_LOCK_POSTFIX.length());
+        }
+        return className + "." + lockName;
+    }
+
+    public static FieldDeclaration createLock(JavaParser javaParser, String lockName, boolean isStatic, RefactorPlan.LockKind kind) {
         FieldDeclaration objectLockField = new FieldDeclaration(new NodeList<>(),
-                new VariableDeclarator(javaParser.parseClassOrInterfaceType("ReentrantLock").getResult().orElseThrow(),
-                        lockName, new NameExpr("new ReentrantLock()")));
+                new VariableDeclarator(javaParser.parseClassOrInterfaceType(kind.getClassName()).getResult().orElseThrow(),
+                        lockName, new NameExpr("new " + kind.getClassName() + "()")));
         objectLockField.setModifier(Modifier.Keyword.PRIVATE, true);
         if (isStatic) {
             objectLockField.setModifier(Modifier.Keyword.STATIC, true);
         }
         return objectLockField;
     }
+
+    public static FieldDeclaration createCondition(JavaParser javaParser, CompilationUnit cu, String conditionName, String lockName, boolean isStatic) {
+        cu.addImport("java.util.concurrent.locks.Condition");
+        FieldDeclaration conditionField = new FieldDeclaration(new NodeList<>(),
+                new VariableDeclarator(javaParser.parseClassOrInterfaceType("Condition").getResult().orElseThrow(),
+                        conditionName, new NameExpr(lockName + ".newCondition()")));
+        conditionField.setModifier(Modifier.Keyword.PRIVATE, true);
+        if (isStatic) {
+            conditionField.setModifier(Modifier.Keyword.STATIC, true);
+        }
+        return conditionField;
+    }
 }
@@ -0,0 +1,464 @@
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Daemon mode: the project is parsed once and its compilation units and {@link ProjectIndex} are kept in memory. A
+ * {@link WatchService} reports the files changed on disk, which are re-parsed before the next request; files whose
+ * content did not change, e.g. the ones the daemon wrote itself, are not. A request refactors the files changed
+ * since the previous one, the files calling a method that a change made blocking, and every file sharing a monitor with
+ * them, as in {@link IncrementalRefactor}, so a request without changes returns at once. The blocking analysis always
+ * covers the whole project in memory.
+ * <p>
+ * Requests are lines read from standard input, or from connections to a port on the loopback interface. Every
+ * response ends with a line starting with {@code OK} or {@code ERROR}:
+ * <ul>
+ *     <li>{@code refactor}: refactors and writes the changed files.</li>
+ *     <li>{@code dry-run}: lists the sites the next {@code refactor} would convert, without modifying anything.</li>
+ *     <li>{@code status}: the number of files in memory and of changed files.</li>
+ *     <li>{@code quit}: stops the daemon.</li>
+ * </ul>
+ * Requests are handled one at a time.
+ */
+public class RefactorDaemon {
+
+    static Logger logger = Logger.getLogger(RefactorDaemon.class.getName());
+
+    private final Path projectRoot;
+    private final RefactorOptions options;
+    private final JavaParser javaParser = VirtualThreadRefactorHelper.createJavaParser();
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Set<Path> changedFiles = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this.
+    private final Map<Path, CompilationUnit> units = new TreeMap<>();
+    private final Map<Path, String> hashes = new HashMap<>();
+    private final Map<Path, FileAnalysis> analyses = new HashMap<>();
+    private final Set<Path> pendingFiles = new TreeSet<>();
+    // Refactored in memory, but the file could not be written, so its hash is still the one of the old content.
+    private final Set<Path> unwrittenFiles = new TreeSet<>();
+    private final Map<Path, Set<String>> blockingCallables = new HashMap<>();
+    private ProjectIndex index;
+    private BlockingCallAnalysis blockingAnalysis;
+    private SiteFilter siteFilter;
+    private boolean stopped;
+
+    private RefactorDaemon(Path projectRoot, RefactorOptions options) throws IOException {
+        this.projectRoot = projectRoot.toAbsolutePath().normalize();
+        this.options = options;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Loads {@code projectRoot} and serves requests from {@code in}, or from connections to {@code port} if it is
+     * positive, until {@code quit}.
+     */
+    public static void run(Path projectRoot, RefactorOptions options, int port, Scanner in) throws IOException {
+        RefactorDaemon daemon = load(projectRoot, options);
+        Thread watcher = new Thread(daemon::watch, "refactor-daemon-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        try {
+            if (port > 0) {
+                daemon.listen(port);
+            } else {
+                daemon.serve(in, System.out);
+            }
+        } finally {
+            daemon.watchService.close();
+        }
+    }
+
+    /**
+     * Loads {@code projectRoot}, without watching it yet.
+     */
+    static RefactorDaemon load(Path projectRoot, RefactorOptions options) throws IOException {
+        RefactorDaemon daemon = new RefactorDaemon(projectRoot, options);
+        daemon.load();
+        return daemon;
+    }
+
+    private synchronized void load() throws IOException {
+        long start = System.nanoTime();
+        registerTree(projectRoot);
+        List<Path> paths = VirtualThreadRefactorHelper.listJavaFiles(projectRoot.toString());
+        for (CompilationUnit cu : VirtualThreadRefactorHelper.parseJavaFiles(paths, options.parallelism(), new RunMetrics())) {
+            Path path = pathOf(cu);
+            units.put(path, cu);
+            hashes.put(path, IncrementalCache.hash(path));
+            analyses.put(path, FileAnalysis.of(cu));
+        }
+        pendingFiles.addAll(units.keySet());
+        index = ProjectIndex.build(new ArrayList<>(units.values()));
+        logger.info("Loaded " + units.size() + " files in " + (System.nanoTime() - start) / 1_000_000 + " ms, watching " + projectRoot);
+    }
+
+    private void listen(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            logger.info("Listening on " + serverSocket.getLocalSocketAddress());
+            while (!isStopped()) {
+                try (Socket socket = serverSocket.accept()) {
+                    serve(new Scanner(socket.getInputStream(), StandardCharsets.UTF_8),
+                            new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private void serve(Scanner in, PrintStream out) {
+        while (!isStopped() && in.hasNextLine()) {
+            String request = in.nextLine().trim();
+            if (request.isEmpty()) {
+                continue;
+            }
+            try {
+                out.println(handle(request, out));
+            } catch (RuntimeException | IOException e) {
+                logger.warning("Failed to handle " + request + ": " + e);
+                out.println("ERROR " + e);
+            }
+            out.flush();
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Handles {@code request}, printing its details to {@code out}, and returns its last line.
+     */
+    synchronized String handle(String request, PrintStream out) throws IOException {
+        long start = System.nanoTime();
+        switch (request) {
+            case "refactor" -> {
+                int reparsed = synchronizeChanges();
+                List<CompilationUnit> unitList = unitsToRefactor();
+                if (unitList.isEmpty() && unwrittenFiles.isEmpty()) {
+                    return "OK nothing to refactor, re-parsed " + reparsed + " files in " + millisSince(start) + " ms";
+                }
+                RunMetrics metrics = new RunMetrics();
+                DirtyUnitTracker dirtyUnits = unitList.isEmpty() ? new DirtyUnitTracker()
+                        : VirtualThreadRefactorHelper.refactorUnits(javaParser, index, siteFilter(metrics), unitList, this::blockingAnalysis, options, metrics);
+                // Retry the files a previous request failed to write.
+                unwrittenFiles.forEach(path -> dirtyUnits.markDirty(units.get(path)));
+                List<Path> modified = new ArrayList<>();
+                units.forEach((path, cu) -> {
+                    if (dirtyUnits.isDirty(cu)) {
+                        modified.add(path);
+                    }
+                });
+                metrics.filesWritten(metrics.phase("write", () -> dirtyUnits.flush(options.parallelism())));
+                List<Path> written = new ArrayList<>();
+                unwrittenFiles.clear();
+                for (Path path : modified) {
+                    CompilationUnit cu = units.get(path);
+                    analyses.put(path, analyses.get(path).refreshedAfterRefactoring(cu));
+                    if (dirtyUnits.isDirty(cu)) {
+                        // The file still has its old content, which must not be taken for the unit in memory.
+                        unwrittenFiles.add(path);
+                    } else {
+                        // The file now has the content of the unit in memory, so its change event is ignored.
+                        hashes.put(path, IncrementalCache.hash(path));
+                        written.add(path);
+                    }
+                }
+                pendingFiles.clear();
+                metrics.finish(options);
+                written.forEach(path -> out.println("wrote " + projectRoot.relativize(path)));
+                unwrittenFiles.forEach(path -> out.println("failed to write " + projectRoot.relativize(path)));
+                return "OK refactored " + unitList.size() + " files, re-parsed " + reparsed + ", wrote " + written.size()
+                        + (unwrittenFiles.isEmpty() ? "" : ", failed to write " + unwrittenFiles.size())
+                        + " in " + millisSince(start) + " ms";
+            }
+            case "dry-run" -> {
+                int reparsed = synchronizeChanges();
+                List<CompilationUnit> unitList = unitsToRefactor();
+                RunMetrics metrics = new RunMetrics();
+                List<RefactorPlan> plans = unitList.isEmpty() ? List.of()
+                        : VirtualThreadRefactorHelper.planUnits(index, siteFilter(metrics), unitList, options, metrics);
+                int convertedSites = 0;
+                for (RefactorPlan plan : plans) {
+                    int converted = plan.getSiteRewrites().size();
+                    convertedSites += converted;
+                    if (converted > 0 || plan.getKeptSites() > 0) {
+                        out.println(projectRoot.relativize(pathOf(plan.getCompilationUnit())) + ": converts " + converted
+                                + " sites, keeps " + plan.getKeptSites());
+                    }
+                    for (RefactorPlan.LockFieldRequest request1 : plan.getLockFieldRequests()) {
+                        if (request1.targetUnit() != plan.getCompilationUnit()) {
+                            out.println(projectRoot.relativize(pathOf(plan.getCompilationUnit())) + ": adds " + request1.lockName()
+                                    + " to " + request1.targetType().getNameAsString() + " in " + projectRoot.relativize(pathOf(request1.targetUnit())));
+                        }
+                    }
+                }
+                return "OK would convert " + convertedSites + " sites in " + unitList.size() + " files, re-parsed " + reparsed
+                        + " in " + millisSince(start) + " ms";
+            }
+            case "status" -> {
+                Set<Path> changed = new TreeSet<>(pendingFiles);
+                for (Path path : changedFiles) {
+                    if (!Files.isRegularFile(path) ? units.containsKey(path) : !IncrementalCache.hash(path).equals(hashes.get(path))) {
+                        changed.add(path);
+                    }
+                }
+                changed.forEach(path -> out.println("changed " + projectRoot.relativize(path)));
+                return "OK " + units.size() + " files, " + changed.size() + " changed since the last refactoring";
+            }
+            case "quit" -> {
+                stopped = true;
+                return "OK stopping";
+            }
+            default -> {
+                return "ERROR unknown request " + request + ", expected refactor, dry-run, status or quit";
+            }
+        }
+    }
+
+    /**
+     * Re-parses the changed files whose content differs from the unit in memory and drops the deleted ones. The
+     * files depending on the types of a deleted file, and the files declaring or calling a callable that did not
+     * block before the changes, become pending. Returns the number of re-parsed files.
+     */
+    private int synchronizeChanges() throws IOException {
+        Set<Path> changed = new TreeSet<>();
+        for (Path path : new ArrayList<>(changedFiles)) {
+            changedFiles.remove(path);
+            changed.add(path);
+        }
+        List<Path> toParse = new ArrayList<>();
+        Set<String> deletedTypes = new HashSet<>();
+        for (Path path : changed) {
+            if (!Files.isRegularFile(path)) {
+                if (units.remove(path) != null) {
+                    hashes.remove(path);
+                    pendingFiles.remove(path);
+                    unwrittenFiles.remove(path);
+                    blockingCallables.remove(path);
+                    deletedTypes.addAll(analyses.remove(path).declaredTypes());
+                }
+            } else if (!IncrementalCache.hash(path).equals(hashes.get(path))) {
+                toParse.add(path);
+            }
+        }
+        if (toParse.isEmpty() && deletedTypes.isEmpty()) {
+            return 0;
+        }
+        for (CompilationUnit cu : VirtualThreadRefactorHelper.parseJavaFiles(toParse, options.parallelism(), new RunMetrics())) {
+            Path path = pathOf(cu);
+            units.put(path, cu);
+            hashes.put(path, IncrementalCache.hash(path));
+            analyses.put(path, FileAnalysis.of(cu));
+            pendingFiles.add(path);
+            // The refactoring that could not be written is replaced by the new content, which is refactored again.
+            unwrittenFiles.remove(path);
+        }
+        pendingFiles.addAll(filesUsing(deletedTypes));
+        // Rebuilding the index only walks the type declarations, and the blocking analysis must see the new code.
+        index = ProjectIndex.build(new ArrayList<>(units.values()));
+        blockingAnalysis = null;
+        siteFilter = null;
+        if (options.blockingAnalysis() && options.pinnedEvents() == null || options.virtualThreadExecutors()) {
+            pendingFiles.addAll(callersOfNewlyBlocking());
+        }
+        return toParse.size();
+    }
+
+    /**
+     * Returns the files declaring or calling a callable that blocks now but did not when the analysis last ran, and
+     * records the blocking callables of every file. Sites that were converted stay converted, so callables that stop
+     * blocking are not looked at.
+     */
+    private Set<Path> callersOfNewlyBlocking() {
+        boolean analysed = !blockingCallables.isEmpty();
+        BlockingCallAnalysis analysis = blockingAnalysis();
+        List<Path> paths = new ArrayList<>(units.keySet());
+        List<Set<String>> newlyBlocking = new ArrayList<>();
+        for (int file = 0; file < paths.size(); file++) {
+            Set<String> blocking = analysis.blockingCallableKeys(file);
+            Set<String> added = new HashSet<>(blocking);
+            added.removeAll(blockingCallables.getOrDefault(paths.get(file), Set.of()));
+            newlyBlocking.add(added);
+            blockingCallables.put(paths.get(file), blocking);
+        }
+        Set<Path> callers = new TreeSet<>();
+        if (analysed) {
+            // Before the first analysis every file is pending anyway.
+            analysis.filesDeclaringOrCalling(newlyBlocking).stream().forEach(file -> callers.add(paths.get(file)));
+        }
+        return callers;
+    }
+
+    /**
+     * The pending files and, transitively, the files sharing a monitor with them: the files declaring the types they
+     * lock on and the other files locking on those types.
+     */
+    private List<CompilationUnit> unitsToRefactor() {
+        Set<Path> selected = new TreeSet<>(pendingFiles);
+        Set<Path> frontier = pendingFiles;
+        while (!frontier.isEmpty()) {
+            Set<String> lockTypes = new HashSet<>();
+            for (Path path : frontier) {
+                lockTypes.addAll(analyses.get(path).declaredTypes());
+                lockTypes.addAll(analyses.get(path).monitorTypes());
+            }
+            Set<Path> next = new TreeSet<>(filesDeclaring(lockTypes));
+            next.addAll(filesUsing(lockTypes));
+            next.removeAll(selected);
+            selected.addAll(next);
+            frontier = next;
+        }
+        return selected.stream().map(units::get).toList();
+    }
+
+    private Set<Path> filesDeclaring(Set<String> typeNames) {
+        Set<String> simpleNames = simpleNames(typeNames);
+        Set<Path> files = new TreeSet<>();
+        analyses.forEach((path, analysis) -> {
+            if (analysis.declaredTypes().stream().map(FileAnalysis::simpleName).anyMatch(simpleNames::contains)) {
+                files.add(path);
+            }
+        });
+        return files;
+    }
+
+    private Set<Path> filesUsing(Set<String> typeNames) {
+        Set<String> simpleNames = simpleNames(typeNames);
+        Set<Path> files = new TreeSet<>();
+        analyses.forEach((path, analysis) -> {
+            if (analysis.monitorTypes().stream().map(FileAnalysis::simpleName).anyMatch(simpleNames::contains)) {
+                files.add(path);
+            }
+        });
+        return files;
+    }
+
+    private static Set<String> simpleNames(Set<String> typeNames) {
+        Set<String> simpleNames = new HashSet<>();
+        typeNames.forEach(typeName -> simpleNames.add(FileAnalysis.simpleName(typeName)));
+        return simpleNames;
+    }
+
+    /**
+     * The site filter of the whole project, kept until a file changes on disk. Refactoring does not change which
+     * calls block, so it survives the daemon's own changes.
+     */
+    private SiteFilter siteFilter(RunMetrics metrics) {
+        if (siteFilter == null) {
+            siteFilter = metrics.phase("site filter", () -> VirtualThreadRefactorHelper.createSiteFilter(index, this::blockingAnalysis, options));
+        }
+        return siteFilter;
+    }
+
+    /**
+     * The blocking analysis of the whole project, kept like the site filter. The first one also records the blocking
+     * callables of every file, later ones are compared with them by {@link #callersOfNewlyBlocking()}.
+     */
+    private BlockingCallAnalysis blockingAnalysis() {
+        if (blockingAnalysis == null) {
+            blockingAnalysis = BlockingCallAnalysis.analyse(new ArrayList<>(units.values()), options.blockingApis(), true);
+            if (blockingCallables.isEmpty()) {
+                List<Path> paths = new ArrayList<>(units.keySet());
+                for (int file = 0; file < paths.size(); file++) {
+                    blockingCallables.put(paths.get(file), blockingAnalysis.blockingCallableKeys(file));
+                }
+            }
+        }
+        return blockingAnalysis;
+    }
+
+    /**
+     * Registers a change of the file {@code path} on disk, seen before the next request.
+     */
+    void changed(Path path) {
+        changedFiles.add(path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Registers the change events of new, modified and deleted files and directories, until the watch service is
+     * closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = watchedDirectories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.warning("Missed file changes, checking every file");
+                        VirtualThreadRefactorHelper.listJavaFiles(projectRoot.toString()).forEach(this::changed);
+                        synchronized (this) {
+                            changedFiles.addAll(units.keySet());
+                        }
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        registerTree(path);
+                        try (Stream<Path> files = Files.walk(path)) {
+                            files.filter(VirtualThreadRefactorHelper::isRefactoredFile).forEach(this::changed);
+                        }
+                    } else if (VirtualThreadRefactorHelper.isRefactoredFile(path)) {
+                        changed(path);
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // The daemon stopped.
+        } catch (IOException e) {
+            logger.warning("Stopped watching " + projectRoot + ": " + e);
+        }
+    }
+
+    private void registerTree(Path root) throws IOException {
+        try (Stream<Path> directories = Files.walk(root)) {
+            for (Path directory : directories.filter(Files::isDirectory).toList()) {
+                watchedDirectories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), directory);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Path pathOf(CompilationUnit cu) {
+        return cu.getStorage().orElseThrow().getPath().toAbsolutePath().normalize();
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,92 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings of a refactoring run that are shared by its phases.
+ *
+ * @param parallelism        number of workers used to parse, plan, apply and write
+ * @param blockingAnalysis   whether only synchronized sites that may reach a blocking call are converted
+ * @param blockingApis       blocking APIs in addition to {@link BlockingCallAnalysis#DEFAULT_BLOCKING_APIS}
+ * @param pinnedEvents       JFR recording whose pinned sites are converted instead, or {@code null}
+ * @param topPinnedSites     number of pinned sites converted, longest pinned time first; 0 for all of them
+ * @param minimumPinnedTime  total pinned time below which a pinned site is not converted
+ * @param readMostlyLocks    kind of lock replacing monitors whose sites mostly read
+ * @param scopedValues       whether {@code ThreadLocal} fields are migrated to {@code ScopedValue}
+ * @param threadLocalCaches  whether {@code ThreadLocal} caches of expensive objects are replaced by shared objects
+ * @param estimatedThreads   number of threads the allocations saved by replacing a cache are estimated for
+ * @param virtualThreadExecutors whether thread pools and threads running blocking tasks are moved to virtual threads
+ * @param instrumentedLocks  whether new {@code ReentrantLock} fields are initialised with the instrumented lock of the
+ *                           runtime library
+ * @param dynamicMonitors    how monitors reached through expressions that no lock field stands for are replaced
+ * @param lockStripes        number of locks of the striped lock table of {@link DynamicMonitors}
+ * @param reportFile         file the {@link MigrationReport} is written to, or {@code null}
+ * @param metricsFile        file the JSON summary of the {@link RunMetrics} is written to, or {@code null}
+ * @param slowestFiles       number of files listed in the metrics as the slowest to parse
+ */
+public record RefactorOptions(int parallelism, boolean blockingAnalysis, List<String> blockingApis,
+                              Path pinnedEvents, int topPinnedSites, Duration minimumPinnedTime,
+                              RefactorPlan.LockKind readMostlyLocks, boolean scopedValues, boolean threadLocalCaches, int estimatedThreads,
+                              boolean virtualThreadExecutors, boolean instrumentedLocks, DynamicMonitors.Mode dynamicMonitors, int lockStripes,
+                              Path reportFile, Path metricsFile, int slowestFiles) {
+
+    public static final int DEFAULT_ESTIMATED_THREADS = 100_000;
+    public static final int DEFAULT_SLOWEST_FILES = 10;
+
+    public static RefactorOptions allSites(int parallelism) {
+        return new RefactorOptions(parallelism, false, List.of(), null, 0, Duration.ZERO, RefactorPlan.LockKind.REENTRANT, false, false, DEFAULT_ESTIMATED_THREADS, false, false,
+                DynamicMonitors.Mode.WEAK, DynamicMonitors.DEFAULT_STRIPES, null, null, DEFAULT_SLOWEST_FILES);
+    }
+
+    public RefactorOptions withParallelism(int parallelism) {
+        return new RefactorOptions(parallelism, blockingAnalysis, blockingApis, pinnedEvents, topPinnedSites, minimumPinnedTime, readMostlyLocks,
+                scopedValues, threadLocalCaches, estimatedThreads, virtualThreadExecutors, instrumentedLocks,
+                dynamicMonitors, lockStripes, reportFile, metricsFile, slowestFiles);
+    }
+
+    public static RefactorOptions fromCommandLine(CommandLineOptions options) {
+        String blockingApis = options.get("blocking-apis", "");
+        int lockStripes = options.getInt("lock-stripes", DynamicMonitors.DEFAULT_STRIPES);
+        if (lockStripes <= 0) {
+            throw new IllegalArgumentException("--lock-stripes must be positive: " + lockStripes);
+        }
+        return new RefactorOptions(
+                options.getInt("parallelism", Runtime.getRuntime().availableProcessors()),
+                !options.has("skip-blocking-analysis"),
+                blockingApis.isBlank() ? List.of() : Arrays.stream(blockingApis.split(",")).map(String::trim).toList(),
+                options.has("jfr") ? Paths.get(options.get("jfr", "")) : null,
+                options.getInt("jfr-top", 0),
+                Duration.ofMillis(options.getInt("jfr-min-pinned-ms", 0)),
+                readMostlyLocks(options.get("read-mostly-locks", "none")),
+                options.has("scoped-values"),
+                options.has("thread-local-caches"),
+                options.getInt("estimated-threads", DEFAULT_ESTIMATED_THREADS),
+                options.has("virtual-thread-executors"),
+                options.has("instrumented-locks"),
+                dynamicMonitors(options.get("dynamic-monitors", "weak")),
+                lockStripes,
+                options.has("report") ? Paths.get(options.get("report", "")) : null,
+                options.has("metrics") ? Paths.get(options.get("metrics", "")) : null,
+                options.getInt("slowest-files", DEFAULT_SLOWEST_FILES));
+    }
+
+    private static DynamicMonitors.Mode dynamicMonitors(String value) {
+        return switch (value) {
+            case "striped" -> DynamicMonitors.Mode.STRIPED;
+            case "weak" -> DynamicMonitors.Mode.WEAK;
+            case "none" -> DynamicMonitors.Mode.NONE;
+            default -> throw new IllegalArgumentException("--dynamic-monitors must be striped, weak or none: " + value);
+        };
+    }
+
+    private static RefactorPlan.LockKind readMostlyLocks(String value) {
+        return switch (value) {
+            case "read-write" -> RefactorPlan.LockKind.READ_WRITE;
+            case "stamped" -> RefactorPlan.LockKind.STAMPED;
+            case "none" -> RefactorPlan.LockKind.REENTRANT;
+            default -> throw new IllegalArgumentException("--read-mostly-locks must be read-write, stamped or none: " + value);
+        };
+    }
+}
@@ -0,0 +1,17 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A phase of a refactoring run, e.g. parsing or planning, spanning all files processed in the phase.
+ */
+@Name("virtualthread.refactor.Phase")
+@Label("Refactoring Phase")
+@Category({"Virtual Thread Refactor Helper"})
+@Description("Wall time of a phase of a refactoring run")
+public class RefactorPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+}
@@ -0,0 +1,433 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The changes planned for one compilation unit: the lock fields its synchronized sites need, possibly in types of
+ * other units, and the sites to rewrite. Plans are built without touching any AST, so units can be planned
+ * concurrently.
+ * <p>
+ * Every site is planned together with the lock replacing its monitor and whether the site filter accepted it. A
+ * monitor must be replaced at all of its sites or at none, otherwise converted and unconverted sites would no longer
+ * exclude each other, so {@link #convertAcceptedLocks(List)} decides per lock across all plans. The
+ * {@code wait}/{@code notify} calls on a monitor are planned with it, and become calls on {@code Condition}s of the
+ * lock once {@link ConditionPlanner} has decided which conditions the lock needs. A monitor with a call that cannot be
+ * rewritten keeps all of its sites.
+ * <p>
+ * Sites are also planned as read-only or mutating, and {@link #selectLockKinds(List, ProjectIndex, LockKind)} replaces
+ * the monitors whose sites mostly read with read/write locks.
+ */
+public class RefactorPlan {
+
+    /**
+     * The class of a lock field.
+     */
+    public enum LockKind {
+        REENTRANT("ReentrantLock"),
+        READ_WRITE("ReentrantReadWriteLock"),
+        STAMPED("StampedLock");
+
+        private final String className;
+
+        LockKind(String className) {
+            this.className = className;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+    }
+
+    /**
+     * How a site acquires its lock: {@code EXCLUSIVE} for a {@code ReentrantLock}, the read or write lock of a
+     * {@code ReentrantReadWriteLock}, or a read or write stamp of a {@code StampedLock}, possibly an optimistic one.
+     */
+    public enum LockAccess {EXCLUSIVE, READ, WRITE, STAMPED_READ, STAMPED_WRITE, OPTIMISTIC_READ}
+
+    /**
+     * Asks for {@code lockName} in {@code targetType}, created if missing and made public for locks used from other
+     * types.
+     */
+    public record LockFieldRequest(CompilationUnit targetUnit, TypeDeclaration<?> targetType, String lockName,
+                                   boolean isStatic, boolean isPublic, LockKind kind) {
+
+        LockFieldRequest(CompilationUnit targetUnit, TypeDeclaration<?> targetType, String lockName, boolean isStatic, boolean isPublic) {
+            this(targetUnit, targetType, lockName, isStatic, isPublic, LockKind.REENTRANT);
+        }
+
+        LockFieldRequest asPublic() {
+            return new LockFieldRequest(targetUnit, targetType, lockName, isStatic, true, kind);
+        }
+
+        LockFieldRequest withKind(LockKind kind) {
+            return new LockFieldRequest(targetUnit, targetType, lockName, isStatic, isPublic, kind);
+        }
+
+        /**
+         * Whether this is {@link #LOCK_TABLE}, which has no field.
+         */
+        public boolean isLockTable() {
+            return targetType == LOCK_TABLE.targetType();
+        }
+    }
+
+    /**
+     * The lock table of {@link DynamicMonitors}. It stands for all the dynamic monitors of the project, so they are
+     * converted together, and its sites get their locks from the generated class instead of a field.
+     */
+    static final LockFieldRequest LOCK_TABLE = new LockFieldRequest(null,
+            new ClassOrInterfaceDeclaration(new NodeList<>(), false, DynamicMonitors.CLASS_NAME), "lockFor", true, true);
+
+    /**
+     * Asks for {@code conditionName} in {@code targetType}, created from {@code lockName} if missing.
+     */
+    public record ConditionFieldRequest(CompilationUnit targetUnit, TypeDeclaration<?> targetType, String lockName,
+                                        String conditionName, boolean isStatic, boolean isPublic) {
+
+        ConditionFieldRequest asPublic() {
+            return new ConditionFieldRequest(targetUnit, targetType, lockName, conditionName, isStatic, true);
+        }
+    }
+
+    public sealed interface SiteRewrite permits MethodRewrite, BlockRewrite, TableBlockRewrite {
+
+        /**
+         * The synchronized method or block.
+         */
+        Node site();
+
+        String lockExpression();
+
+        LockAccess access();
+
+        SiteRewrite withAccess(LockAccess access);
+    }
+
+    public record MethodRewrite(MethodDeclaration method, String lockExpression, LockAccess access) implements SiteRewrite {
+
+        public MethodRewrite(MethodDeclaration method, String lockExpression) {
+            this(method, lockExpression, LockAccess.EXCLUSIVE);
+        }
+
+        @Override
+        public Node site() {
+            return method;
+        }
+
+        @Override
+        public SiteRewrite withAccess(LockAccess access) {
+            return new MethodRewrite(method, lockExpression, access);
+        }
+    }
+
+    public record BlockRewrite(SynchronizedStmt statement, String lockExpression, LockAccess access) implements SiteRewrite {
+
+        public BlockRewrite(SynchronizedStmt statement, String lockExpression) {
+            this(statement, lockExpression, LockAccess.EXCLUSIVE);
+        }
+
+        @Override
+        public Node site() {
+            return statement;
+        }
+
+        @Override
+        public SiteRewrite withAccess(LockAccess access) {
+            return new BlockRewrite(statement, lockExpression, access);
+        }
+    }
+
+    /**
+     * A synchronized block whose lock is taken from the lock table once, by {@code lockExpression}, and kept in a
+     * local variable.
+     */
+    public record TableBlockRewrite(SynchronizedStmt statement, String lockExpression, LockAccess access) implements SiteRewrite {
+
+        public TableBlockRewrite(SynchronizedStmt statement, String lockExpression) {
+            this(statement, lockExpression, LockAccess.EXCLUSIVE);
+        }
+
+        @Override
+        public Node site() {
+            return statement;
+        }
+
+        @Override
+        public SiteRewrite withAccess(LockAccess access) {
+            return new TableBlockRewrite(statement, lockExpression, access);
+        }
+    }
+
+    public record PlannedSite(LockFieldRequest lock, SiteRewrite rewrite, boolean converted, boolean readOnly) {
+    }
+
+    /**
+     * A {@code wait}, {@code notify} or {@code notifyAll} call on the monitor replaced by {@code lock}, whose
+     * conditions are reached through {@code lockExpression} like the lock itself.
+     */
+    public record MonitorCall(LockFieldRequest lock, String lockExpression, MethodCallExpr call, boolean converted) {
+    }
+
+    /**
+     * Replaces {@code call} with {@code method} called on each of {@code conditionExpressions}.
+     */
+    public record MonitorCallRewrite(MethodCallExpr call, String method, List<String> conditionExpressions) {
+    }
+
+    private final CompilationUnit cu;
+    private final List<PlannedSite> plannedSites = new ArrayList<>();
+    private final List<MonitorCall> monitorCalls = new ArrayList<>();
+    private final List<LockFieldRequest> keptLocks = new ArrayList<>();
+    private final List<ConditionFieldRequest> conditionFieldRequests = new ArrayList<>();
+    private final List<MonitorCallRewrite> monitorCallRewrites = new ArrayList<>();
+    private int visitedNodes;
+
+    public RefactorPlan(CompilationUnit cu) {
+        this.cu = cu;
+    }
+
+    public CompilationUnit getCompilationUnit() {
+        return cu;
+    }
+
+    /**
+     * The lock fields of the converted sites. The sites of the lock table need none.
+     */
+    public List<LockFieldRequest> getLockFieldRequests() {
+        return plannedSites.stream().filter(PlannedSite::converted).map(PlannedSite::lock).filter(lock -> !lock.isLockTable()).toList();
+    }
+
+    /**
+     * Whether a converted site takes its lock from the lock table.
+     */
+    public boolean usesLockTable() {
+        return plannedSites.stream().anyMatch(site -> site.converted() && site.lock().isLockTable());
+    }
+
+    public List<SiteRewrite> getSiteRewrites() {
+        return plannedSites.stream().filter(PlannedSite::converted).map(PlannedSite::rewrite).toList();
+    }
+
+    /**
+     * Number of synchronized sites that keep their monitor.
+     */
+    public int getKeptSites() {
+        return (int) plannedSites.stream().filter(site -> !site.converted()).count();
+    }
+
+    /**
+     * Number of nodes of the unit visited to plan it, which is the number of nodes of the unit.
+     */
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    void setVisitedNodes(int visitedNodes) {
+        this.visitedNodes = visitedNodes;
+    }
+
+    public boolean isEmpty() {
+        return plannedSites.stream().noneMatch(PlannedSite::converted);
+    }
+
+    public List<PlannedSite> getPlannedSites() {
+        return plannedSites;
+    }
+
+    /**
+     * The monitor calls of the converted locks.
+     */
+    public List<MonitorCall> getMonitorCalls() {
+        return monitorCalls.stream().filter(MonitorCall::converted).toList();
+    }
+
+    public List<ConditionFieldRequest> getConditionFieldRequests() {
+        return conditionFieldRequests;
+    }
+
+    public List<MonitorCallRewrite> getMonitorCallRewrites() {
+        return monitorCallRewrites;
+    }
+
+    void planSite(LockFieldRequest lock, SiteRewrite rewrite, boolean accepted, boolean readOnly) {
+        plannedSites.add(new PlannedSite(lock, rewrite, accepted, readOnly));
+    }
+
+    void planMonitorCall(LockFieldRequest lock, String lockExpression, MethodCallExpr call) {
+        monitorCalls.add(new MonitorCall(lock, lockExpression, call, false));
+    }
+
+    /**
+     * Keeps the monitor replaced by {@code lock} at all of its sites, in every plan.
+     */
+    void keepLock(LockFieldRequest lock) {
+        keptLocks.add(lock);
+    }
+
+    void planCondition(ConditionFieldRequest request) {
+        conditionFieldRequests.add(request);
+    }
+
+    void planMonitorCallRewrite(MonitorCallRewrite rewrite) {
+        monitorCallRewrites.add(rewrite);
+    }
+
+    /**
+     * Converts every site whose lock is used by at least one accepted site of {@code plans}, and only those, unless a
+     * plan keeps the lock. The monitor calls of the converted locks are converted with them.
+     */
+    public static void convertAcceptedLocks(List<RefactorPlan> plans) {
+        Map<TypeDeclaration<?>, Set<String>> acceptedLocks = new IdentityHashMap<>();
+        Map<TypeDeclaration<?>, Set<String>> keptLocks = new IdentityHashMap<>();
+        for (RefactorPlan plan : plans) {
+            for (PlannedSite site : plan.plannedSites) {
+                if (site.converted()) {
+                    acceptedLocks.computeIfAbsent(site.lock().targetType(), type -> new HashSet<>()).add(site.lock().lockName());
+                }
+            }
+            for (LockFieldRequest lock : plan.keptLocks) {
+                keptLocks.computeIfAbsent(lock.targetType(), type -> new HashSet<>()).add(lock.lockName());
+            }
+        }
+        for (RefactorPlan plan : plans) {
+            plan.plannedSites.replaceAll(site -> new PlannedSite(site.lock(), site.rewrite(),
+                    isConverted(site.lock(), acceptedLocks, keptLocks), site.readOnly()));
+            plan.monitorCalls.replaceAll(call -> new MonitorCall(call.lock(), call.lockExpression(), call.call(),
+                    isConverted(call.lock(), acceptedLocks, keptLocks)));
+        }
+    }
+
+    private static boolean isConverted(LockFieldRequest lock, Map<TypeDeclaration<?>, Set<String>> acceptedLocks, Map<TypeDeclaration<?>, Set<String>> keptLocks) {
+        return acceptedLocks.getOrDefault(lock.targetType(), Set.of()).contains(lock.lockName())
+                && !keptLocks.getOrDefault(lock.targetType(), Set.of()).contains(lock.lockName());
+    }
+
+    /**
+     * Chooses the kind of every converted lock. A lock whose field already exists keeps its kind. Otherwise a lock
+     * with more read-only than mutating sites becomes a {@code readMostlyKind} lock, unless it has monitor calls,
+     * which need the {@code Condition}s of a {@code ReentrantLock}. A {@code StampedLock} is not reentrant, so it is
+     * only chosen if {@link ReadWriteAnalysis#cannotReenter} holds for the sites, otherwise a
+     * {@code ReentrantReadWriteLock} is used. Every site then gets the matching access to its lock.
+     */
+    public static void selectLockKinds(List<RefactorPlan> plans, ProjectIndex index, LockKind readMostlyKind) {
+        Map<TypeDeclaration<?>, Map<String, List<PlannedSite>>> sitesByLock = new IdentityHashMap<>();
+        Map<TypeDeclaration<?>, Set<String>> locksWithMonitorCalls = new IdentityHashMap<>();
+        for (RefactorPlan plan : plans) {
+            for (PlannedSite site : plan.plannedSites) {
+                if (site.converted()) {
+                    sitesByLock.computeIfAbsent(site.lock().targetType(), type -> new HashMap<>())
+                            .computeIfAbsent(site.lock().lockName(), lockName -> new ArrayList<>()).add(site);
+                }
+            }
+            for (MonitorCall call : plan.getMonitorCalls()) {
+                locksWithMonitorCalls.computeIfAbsent(call.lock().targetType(), type -> new HashSet<>()).add(call.lock().lockName());
+            }
+        }
+
+        Map<TypeDeclaration<?>, Map<String, LockKind>> kinds = new IdentityHashMap<>();
+        sitesByLock.forEach((type, sitesByName) -> sitesByName.forEach((lockName, sites) -> {
+            LockKind kind;
+            Optional<FieldDeclaration> existing = type == LOCK_TABLE.targetType() ? Optional.empty() : index.getField(type, lockName);
+            if (type == LOCK_TABLE.targetType()) {
+                kind = LockKind.REENTRANT;
+            } else if (existing.isPresent()) {
+                String className = existing.orElseThrow().getElementType() instanceof ClassOrInterfaceType fieldType ? fieldType.getNameAsString() : "";
+                kind = Arrays.stream(LockKind.values()).filter(candidate -> candidate.getClassName().equals(className))
+                        .findFirst()
+                        .orElse(LockKind.REENTRANT);
+            } else {
+                long readOnlySites = sites.stream().filter(PlannedSite::readOnly).count();
+                boolean readMostly = readOnlySites > sites.size() - readOnlySites
+                        && !locksWithMonitorCalls.getOrDefault(type, Set.of()).contains(lockName);
+                kind = readMostly ? readMostlyKind : LockKind.REENTRANT;
+                if (kind == LockKind.STAMPED && (sites.stream().anyMatch(site -> site.lock().isPublic())
+                        || !ReadWriteAnalysis.cannotReenter(type, sites.stream().map(site -> site.rewrite().site()).toList()))) {
+                    kind = LockKind.READ_WRITE;
+                }
+            }
+            kinds.computeIfAbsent(type, key -> new HashMap<>()).put(lockName, kind);
+        }));
+
+        for (RefactorPlan plan : plans) {
+            plan.plannedSites.replaceAll(site -> {
+                if (!site.converted()) {
+                    return site;
+                }
+                LockKind kind = kinds.get(site.lock().targetType()).get(site.lock().lockName());
+                return new PlannedSite(site.lock().withKind(kind), site.rewrite().withAccess(accessOf(kind, site)), true, site.readOnly());
+            });
+        }
+    }
+
+    private static LockAccess accessOf(LockKind kind, PlannedSite site) {
+        return switch (kind) {
+            case REENTRANT -> LockAccess.EXCLUSIVE;
+            case READ_WRITE -> site.readOnly() ? LockAccess.READ : LockAccess.WRITE;
+            case STAMPED -> !site.readOnly() ? LockAccess.STAMPED_WRITE
+                    : ReadWriteAnalysis.canReadOptimistically(site.rewrite().site()) ? LockAccess.OPTIMISTIC_READ
+                    : LockAccess.STAMPED_READ;
+        };
+    }
+
+    /**
+     * Merges the lock field requests of {@code plans} into one request per target type and lock name. Requests keep
+     * the order of their first occurrence, plans taken in list order, which is the order a serial run would have
+     * inserted the fields in. A lock is public if any request needs it to be.
+     */
+    public static List<LockFieldRequest> mergeLockFieldRequests(List<RefactorPlan> plans) {
+        List<LockFieldRequest> merged = new ArrayList<>();
+        Map<TypeDeclaration<?>, Map<String, Integer>> positions = new IdentityHashMap<>();
+        for (RefactorPlan plan : plans) {
+            for (LockFieldRequest request : plan.getLockFieldRequests()) {
+                Map<String, Integer> positionsInType = positions.computeIfAbsent(request.targetType(), type -> new HashMap<>());
+                Integer position = positionsInType.get(request.lockName());
+                if (position == null) {
+                    positionsInType.put(request.lockName(), merged.size());
+                    merged.add(request);
+                } else if (request.isPublic() && !merged.get(position).isPublic()) {
+                    merged.set(position, merged.get(position).asPublic());
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merges the condition field requests of {@code plans} like {@link #mergeLockFieldRequests(List)}, one request per
+     * target type and condition name.
+     */
+    public static List<ConditionFieldRequest> mergeConditionFieldRequests(List<RefactorPlan> plans) {
+        List<ConditionFieldRequest> merged = new ArrayList<>();
+        Map<TypeDeclaration<?>, Map<String, Integer>> positions = new IdentityHashMap<>();
+        for (RefactorPlan plan : plans) {
+            for (ConditionFieldRequest request : plan.getConditionFieldRequests()) {
+                Map<String, Integer> positionsInType = positions.computeIfAbsent(request.targetType(), type -> new HashMap<>());
+                Integer position = positionsInType.get(request.conditionName());
+                if (position == null) {
+                    positionsInType.put(request.conditionName(), merged.size());
+                    merged.add(request);
+                } else if (request.isPublic() && !merged.get(position).isPublic()) {
+                    merged.set(position, merged.get(position).asPublic());
+                }
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,394 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.AnnotationDeclaration;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.ArrayAccessExpr;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.CastExpr;
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Read-only first phase of the refactoring: finds the synchronized sites of a compilation unit and decides which
+ * lock each of them uses, recording whether the {@link SiteFilter} accepts the site. The {@code wait},
+ * {@code notify} and {@code notifyAll} calls on the same monitors are planned with them. Nothing is modified, so any
+ * number of units can be planned at the same time.
+ */
+public class RefactorPlanner {
+
+    static Logger logger = Logger.getLogger(RefactorPlanner.class.getName());
+
+    /**
+     * The lock replacing a monitor, and the expression reaching it from the code using the monitor.
+     */
+    private record MonitorLock(RefactorPlan.LockFieldRequest request, String lockExpression) {
+    }
+
+    /**
+     * Plans the sites of {@code cu} in a single pass over its nodes. Every site is planned once, with the innermost
+     * type or anonymous class declaring it as owner of {@code this}, wherever it is nested: in blocks, loops,
+     * lambdas, constructors, initializers, local and anonymous classes.
+     */
+    public static RefactorPlan plan(ProjectIndex index, SiteFilter siteFilter, CompilationUnit cu) {
+        return plan(index, siteFilter, cu, false);
+    }
+
+    /**
+     * Same as {@link #plan(ProjectIndex, SiteFilter, CompilationUnit)}, taking the locks of the monitors that no lock
+     * field stands for from the lock table of {@link DynamicMonitors} if {@code lockTable}.
+     */
+    public static RefactorPlan plan(ProjectIndex index, SiteFilter siteFilter, CompilationUnit cu, boolean lockTable) {
+        UnitScan scan = new UnitScan(new RefactorPlan(cu), index, siteFilter, cu, lockTable);
+        scan.visit(cu, null);
+        scan.plan.setVisitedNodes(scan.visitedNodes);
+        logger.fine("Visited " + scan.visitedNodes + " nodes and planned " + scan.plan.getPlannedSites().size()
+                + " synchronized sites in " + Utils.getFilePath(cu));
+        return scan.plan;
+    }
+
+    /**
+     * The state of planning one unit. The owner of a node is the innermost {@link TypeDeclaration} around it, or the
+     * {@link ObjectCreationExpr} or {@link EnumConstantDeclaration} of the anonymous class around it.
+     */
+    private static final class UnitScan {
+
+        private final RefactorPlan plan;
+        private final ProjectIndex index;
+        private final SiteFilter siteFilter;
+        private final CompilationUnit cu;
+        private final boolean lockTable;
+        private int visitedNodes;
+
+        private UnitScan(RefactorPlan plan, ProjectIndex index, SiteFilter siteFilter, CompilationUnit cu, boolean lockTable) {
+            this.plan = plan;
+            this.index = index;
+            this.siteFilter = siteFilter;
+            this.cu = cu;
+            this.lockTable = lockTable;
+        }
+
+        private void visit(Node node, Node owner) {
+            visitedNodes++;
+            if (node instanceof MethodDeclaration method && method.isSynchronized()) {
+                planSynchronizedMethod(owner, method);
+            } else if (node instanceof SynchronizedStmt statement) {
+                planSynchronizedBlock(owner, statement);
+            } else if (node instanceof MethodCallExpr call && isMonitorCall(call)) {
+                planMonitorCall(owner, call);
+            }
+            boolean declaresAnonymousClass = node instanceof ObjectCreationExpr || node instanceof EnumConstantDeclaration;
+            for (Node child : node.getChildNodes()) {
+                if (node instanceof TypeDeclaration<?>) {
+                    visit(child, node);
+                } else {
+                    visit(child, declaresAnonymousClass && child instanceof BodyDeclaration<?> ? node : owner);
+                }
+            }
+        }
+
+        private void planSynchronizedMethod(Node owner, MethodDeclaration method) {
+            if (!(owner instanceof TypeDeclaration<?> type) || !canDeclareLock(type, method.isStatic())) {
+                keepSite(method, "is declared in a type that cannot declare its lock");
+                return;
+            }
+            String lockName = ReentrantLockFactory.getReentrantLockName(type, method.isStatic());
+            plan.planSite(new RefactorPlan.LockFieldRequest(cu, type, lockName, method.isStatic(), false),
+                    new RefactorPlan.MethodRewrite(method, lockName), siteFilter.accepts(method), ReadWriteAnalysis.isReadOnly(method));
+        }
+
+        private void planSynchronizedBlock(Node owner, SynchronizedStmt statement) {
+            Optional<MonitorLock> lock = lockOf(index, cu, owner, statement.getExpression());
+            if (lock.isEmpty() && lockTable && usesLockTable(index, cu, owner, statement.getExpression())) {
+                plan.planSite(RefactorPlan.LOCK_TABLE, new RefactorPlan.TableBlockRewrite(statement,
+                                DynamicMonitors.CLASS_NAME + ".lockFor(" + DynamicMonitors.unwrap(statement.getExpression()) + ")"),
+                        siteFilter.accepts(statement), false);
+                return;
+            }
+            if (lock.isEmpty()) {
+                keepSite(statement, "locks a monitor that has no lock field to replace it");
+                return;
+            }
+            plan.planSite(lock.orElseThrow().request(), new RefactorPlan.BlockRewrite(statement, lock.orElseThrow().lockExpression()),
+                    siteFilter.accepts(statement), ReadWriteAnalysis.isReadOnly(statement));
+        }
+
+        /**
+         * Plans a {@code wait}, {@code notify} or {@code notifyAll} call on {@code this}, a class or a field, resolved
+         * like the monitors of synchronized sites. It is planned wherever it is, not only inside synchronized sites, as
+         * a helper method may wait for its caller's monitor. A call that cannot be rewritten keeps its monitor.
+         */
+        private void planMonitorCall(Node owner, MethodCallExpr call) {
+            Expression monitor = call.getScope().orElse(null);
+            if (monitor == null) {
+                if (isInStaticMethod(call)) {
+                    return;
+                }
+                monitor = new ThisExpr();
+            }
+            Optional<MonitorLock> lock = lockOf(index, cu, owner, monitor);
+            if (lock.isEmpty()) {
+                if (lockTable && usesLockTable(index, cu, owner, monitor)) {
+                    logger.info("Keeping the monitors of the lock table, " + call + " at " + location(cu, call) + " has no condition per object");
+                    plan.keepLock(RefactorPlan.LOCK_TABLE);
+                }
+                return;
+            }
+            plan.planMonitorCall(lock.orElseThrow().request(), lock.orElseThrow().lockExpression(), call);
+            Optional<String> problem = unsupportedMonitorCall(call);
+            if (problem.isPresent()) {
+                logger.info("Keeping monitor " + lock.orElseThrow().request().lockName() + ", " + call + " at "
+                        + location(cu, call) + " " + problem.orElseThrow());
+                plan.keepLock(lock.orElseThrow().request());
+            }
+        }
+
+        private void keepSite(Node site, String reason) {
+            logger.info("Keeping monitor of the synchronized site at " + location(cu, site) + ", it " + reason);
+        }
+    }
+
+    /**
+     * The lock replacing {@code monitor} when used in {@code owner}: a lock of the type of {@code this} for
+     * {@code this} and for fields of types outside the project, declared in the type declaring the field, otherwise a
+     * public lock of the class or of the type of the field, local variable or parameter. There is none for the
+     * {@code this} of an anonymous class, for local variables and parameters of types outside the project, for other
+     * expressions, and for types that cannot declare the lock.
+     */
+    private static Optional<MonitorLock> lockOf(ProjectIndex index, CompilationUnit cu, Node owner, Expression monitor) {
+        monitor = DynamicMonitors.unwrap(monitor);
+        if (monitor instanceof FieldAccessExpr fieldAccess && fieldAccess.getScope() instanceof ThisExpr thisExpr
+                && thisExpr.getTypeName().isEmpty() && owner instanceof TypeDeclaration<?> type) {
+            String fieldName = fieldAccess.getNameAsString();
+            return index.getField(type, fieldName)
+                    .flatMap(field -> lockOfField(index, cu, type, fieldName, field.getElementType(), fieldAccess.toString()));
+        }
+        if (monitor instanceof ThisExpr thisExpr) {
+            Optional<TypeDeclaration<?>> type = thisExpr.getTypeName().isPresent()
+                    ? enclosingType(owner, thisExpr.getTypeName().orElseThrow().getIdentifier())
+                    : owner instanceof TypeDeclaration<?> declaration ? Optional.of(declaration) : Optional.empty();
+            if (type.isEmpty() || !canDeclareLock(type.orElseThrow(), false)) {
+                return Optional.empty();
+            }
+            String lockName = ReentrantLockFactory.getReentrantLockName(type.orElseThrow(), false);
+            return Optional.of(new MonitorLock(new RefactorPlan.LockFieldRequest(cu, type.orElseThrow(), lockName, false, false), lockName));
+
+        } else if (monitor instanceof NameExpr nameExpr) {
+            String lockObjectName = nameExpr.getNameAsString();
+            List<TypeDeclaration<?>> declaringType = new ArrayList<>(1);
+            Optional<Type> lockObjectType = Declarations.typeOf(nameExpr, lockObjectName, (type, fieldName) -> {
+                Optional<FieldDeclaration> field = index.getField(type, fieldName);
+                field.ifPresent(found -> declaringType.add(type));
+                return field;
+            });
+            if (declaringType.isEmpty()) {
+                // A local variable or parameter of a project type shares the lock of the type's own synchronized methods.
+                return lockObjectType.filter(Type::isClassOrInterfaceType)
+                        .flatMap(type -> index.findType(cu, type.asClassOrInterfaceType()))
+                        .flatMap(type -> lockFromClassOrComponent(index, type, lockObjectName, false));
+            }
+            return lockOfField(index, cu, declaringType.get(0), lockObjectName, lockObjectType.orElseThrow(), lockObjectName);
+
+        } else if (monitor instanceof ClassExpr classExpr && classExpr.getType() instanceof ClassOrInterfaceType classType) {
+            return index.findType(cu, classType)
+                    .flatMap(typeDeclaration -> lockFromClassOrComponent(index, typeDeclaration, classType.getNameWithScope(), true));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The lock replacing the monitor of the field {@code fieldName} of {@code declaringType}, reached by
+     * {@code fieldExpression}: the public lock of the field's type if it is a project type, otherwise a lock of
+     * {@code declaringType} for the field.
+     */
+    private static Optional<MonitorLock> lockOfField(ProjectIndex index, CompilationUnit cu, TypeDeclaration<?> declaringType, String fieldName,
+                                                     Type fieldType, String fieldExpression) {
+        Optional<TypeDeclaration<?>> typeDefinedLockObject = fieldType instanceof ClassOrInterfaceType classType
+                ? index.findType(cu, classType)
+                : Optional.empty();
+        if (typeDefinedLockObject.isPresent()) {
+            return lockFromClassOrComponent(index, typeDefinedLockObject.orElseThrow(), fieldExpression, false);
+        }
+        if (!canDeclareLock(declaringType, false)) {
+            return Optional.empty();
+        }
+        String lockName = ReentrantLockFactory.getReentrantLockName(fieldName);
+        return Optional.of(new MonitorLock(new RefactorPlan.LockFieldRequest(cu, declaringType, lockName, false, false), lockName));
+    }
+
+    /**
+     * Whether the lock of {@code monitor}, which {@link #lockOf} found no lock for, is taken from the lock table: it is
+     * a local variable or parameter, or another expression, and is not known to be of a project type, whose own
+     * synchronized methods and blocks lock the same monitor. A field of a project type is locked through its name
+     * elsewhere, so it is not taken from the table either.
+     */
+    private static boolean usesLockTable(ProjectIndex index, CompilationUnit cu, Node owner, Expression monitor) {
+        Expression expression = DynamicMonitors.unwrap(monitor);
+        if (expression instanceof ThisExpr || expression instanceof ClassExpr) {
+            return false;
+        }
+        if (expression instanceof NameExpr nameExpr) {
+            List<TypeDeclaration<?>> declaringType = new ArrayList<>(1);
+            Optional<Type> type = Declarations.typeOf(nameExpr, nameExpr.getNameAsString(), (candidate, fieldName) -> {
+                Optional<FieldDeclaration> field = index.getField(candidate, fieldName);
+                field.ifPresent(found -> declaringType.add(candidate));
+                return field;
+            });
+            // A name declared nowhere may be an inherited field.
+            return type.isPresent() && declaringType.isEmpty() && !isProjectType(index, cu, type);
+        }
+        if (expression instanceof FieldAccessExpr fieldAccess && (fieldAccess.getScope() instanceof ThisExpr
+                || isProjectType(index, cu, staticTypeOf(index, cu, owner, fieldAccess.getScope()))
+                || fieldAccess.getScope() instanceof NameExpr scope && Character.isUpperCase(scope.getNameAsString().charAt(0))
+                && index.findType(cu, new ClassOrInterfaceType(null, scope.getNameAsString())).isPresent())) {
+            return false;
+        }
+        return !isProjectType(index, cu, staticTypeOf(index, cu, owner, expression));
+    }
+
+    private static boolean isProjectType(ProjectIndex index, CompilationUnit cu, Optional<Type> type) {
+        return type.filter(Type::isClassOrInterfaceType)
+                .flatMap(classType -> index.findType(cu, classType.asClassOrInterfaceType()))
+                .isPresent();
+    }
+
+    /**
+     * The declared type of {@code expression}, as far as it can be told without a symbol solver: variables, fields,
+     * array elements, casts, object creations, and the methods of {@code owner} and of project types. A method of
+     * another type, such as {@code Map.get}, is taken to return the last type argument of its receiver.
+     */
+    private static Optional<Type> staticTypeOf(ProjectIndex index, CompilationUnit cu, Node owner, Expression expression) {
+        expression = DynamicMonitors.unwrap(expression);
+        if (expression instanceof NameExpr nameExpr) {
+            return Declarations.typeOf(nameExpr, nameExpr.getNameAsString(), index::getField);
+        } else if (expression instanceof ArrayAccessExpr arrayAccess) {
+            // Declarations give the element type of arrays.
+            return staticTypeOf(index, cu, owner, arrayAccess.getName());
+        } else if (expression instanceof CastExpr cast) {
+            return Optional.of(cast.getType());
+        } else if (expression instanceof ObjectCreationExpr creation) {
+            return Optional.of(creation.getType());
+        } else if (expression instanceof FieldAccessExpr fieldAccess) {
+            return typeDeclarationOf(index, cu, owner, fieldAccess.getScope())
+                    .flatMap(type -> index.getField(type, fieldAccess.getNameAsString()))
+                    .map(FieldDeclaration::getElementType);
+        } else if (expression instanceof MethodCallExpr call) {
+            Optional<TypeDeclaration<?>> receiver = call.getScope().isEmpty() ? typeDeclarationOf(index, cu, owner, new ThisExpr())
+                    : typeDeclarationOf(index, cu, owner, call.getScope().orElseThrow());
+            if (receiver.isPresent()) {
+                return receiver.orElseThrow().getMethodsByName(call.getNameAsString()).stream()
+                        .filter(method -> method.getParameters().size() == call.getArguments().size())
+                        .map(MethodDeclaration::getType)
+                        .findFirst();
+            }
+            return call.getScope()
+                    .flatMap(scope -> staticTypeOf(index, cu, owner, scope))
+                    .filter(Type::isClassOrInterfaceType)
+                    .flatMap(type -> type.asClassOrInterfaceType().getTypeArguments())
+                    .filter(typeArguments -> !typeArguments.isEmpty())
+                    .map(typeArguments -> typeArguments.get(typeArguments.size() - 1));
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<TypeDeclaration<?>> typeDeclarationOf(ProjectIndex index, CompilationUnit cu, Node owner, Expression expression) {
+        if (expression instanceof ThisExpr thisExpr) {
+            return thisExpr.getTypeName().isPresent() ? enclosingType(owner, thisExpr.getTypeName().orElseThrow().getIdentifier())
+                    : owner instanceof TypeDeclaration<?> type ? Optional.of(type) : Optional.empty();
+        }
+        Optional<Type> type = staticTypeOf(index, cu, owner, expression);
+        return type.filter(Type::isClassOrInterfaceType).flatMap(classType -> index.findType(cu, classType.asClassOrInterfaceType()));
+    }
+
+    /**
+     * The type named {@code name} declaring {@code owner} or enclosing it.
+     */
+    private static Optional<TypeDeclaration<?>> enclosingType(Node owner, String name) {
+        for (Node node = owner; node != null; node = node.getParentNode().orElse(null)) {
+            if (node instanceof TypeDeclaration<?> type && type.getNameAsString().equals(name)) {
+                return Optional.of(type);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Interfaces and annotations cannot declare private fields, and records cannot declare instance fields.
+     */
+    private static boolean canDeclareLock(TypeDeclaration<?> type, boolean isStatic) {
+        if (type instanceof ClassOrInterfaceDeclaration declaration) {
+            return !declaration.isInterface();
+        }
+        return !(type instanceof AnnotationDeclaration) && (isStatic || !(type instanceof RecordDeclaration));
+    }
+
+    private static Optional<MonitorLock> lockFromClassOrComponent(ProjectIndex index, TypeDeclaration<?> typeDeclaration, String lockNamePrefix, boolean isStatic) {
+        if (!canDeclareLock(typeDeclaration, isStatic)) {
+            return Optional.empty();
+        }
+        CompilationUnit unitDefinedType = index.getCompilationUnit(typeDeclaration);
+        String lockName = ReentrantLockFactory.getReentrantLockName(typeDeclaration, isStatic);
+        return Optional.of(new MonitorLock(new RefactorPlan.LockFieldRequest(unitDefinedType, typeDeclaration, lockName, isStatic, true),
+                lockNamePrefix + "." + lockName));
+    }
+
+    static boolean isMonitorCall(MethodCallExpr call) {
+        return switch (call.getNameAsString()) {
+            case "wait" -> call.getArguments().size() <= 2;
+            case "notify", "notifyAll" -> call.getArguments().isEmpty();
+            default -> false;
+        };
+    }
+
+    /**
+     * {@code wait(timeout, nanos)} has no exact equivalent, and a timeout of 0 waits forever with {@code wait} but
+     * not with {@code await}, so a timeout that is not a literal is tested before the call and must be safe to
+     * evaluate twice.
+     */
+    private static Optional<String> unsupportedMonitorCall(MethodCallExpr call) {
+        if (call.getNameAsString().equals("wait") && call.getArguments().size() == 2) {
+            return Optional.of("waits with a timeout in nanoseconds");
+        }
+        if (call.getNameAsString().equals("wait") && call.getArguments().size() == 1) {
+            Expression timeout = call.getArgument(0);
+            if (!timeout.isLiteralExpr() && (!timeout.findAll(MethodCallExpr.class).isEmpty()
+                    || !timeout.findAll(AssignExpr.class).isEmpty()
+                    || !timeout.findAll(UnaryExpr.class, unary -> unary.getOperator().isPostfix()
+                    || unary.getOperator() == UnaryExpr.Operator.PREFIX_INCREMENT
+                    || unary.getOperator() == UnaryExpr.Operator.PREFIX_DECREMENT).isEmpty()
+                    || !timeout.findAll(ObjectCreationExpr.class).isEmpty())) {
+                return Optional.of("waits with a timeout that has side effects");
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String location(CompilationUnit cu, Node node) {
+        return node.getBegin().map(position -> Utils.getFilePath(cu) + ":" + position.line).orElse(Utils.getFilePath(cu));
+    }
+
+    private static boolean isInStaticMethod(Node node) {
+        return Declarations.enclosingCallable(node)
+                .map(callable -> callable.isStatic())
+                .orElse(false);
+    }
+}
@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The totals of a refactoring run, committed once at its end.
+ */
+@Name("virtualthread.refactor.Run")
+@Label("Refactoring Run")
+@Category({"Virtual Thread Refactor Helper"})
+@Description("Totals of a refactoring run")
+@StackTrace(false)
+public class RefactorRunEvent extends jdk.jfr.Event {
+
+    @Label("Parsed Files")
+    int parsedFiles;
+
+    @Label("Synchronized Methods")
+    int synchronizedMethods;
+
+    @Label("Synchronized Blocks")
+    int synchronizedBlocks;
+
+    @Label("Converted Sites")
+    int convertedSites;
+
+    @Label("Cross-File Writes")
+    @Description("Lock fields requested in a type of another file")
+    int crossFileWrites;
+
+    @Label("Written Files")
+    int writtenFiles;
+
+    @Label("Peak Heap")
+    @DataAmount
+    long peakHeap;
+}
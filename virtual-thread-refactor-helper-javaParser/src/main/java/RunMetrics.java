@@ -0,0 +1,268 @@
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Measurements of a refactoring run: the wall time of every phase, the parse time of every file, the synchronized
+ * sites found by monitor kind, the lock fields requested in other files, and the peak heap usage. Every phase and
+ * file is also committed as a JFR event ({@link RefactorPhaseEvent}, {@link FileParsedEvent}) and the totals as a
+ * {@link RefactorRunEvent}, so a run recorded with {@code -XX:StartFlightRecording} shows them next to the CPU
+ * samples. Files may be parsed concurrently.
+ */
+public class RunMetrics {
+
+    static Logger logger = Logger.getLogger(RunMetrics.class.getName());
+
+    /**
+     * The monitor a synchronized site locks: {@code this}, a field of the site's class, a class, a component, i.e.
+     * a field of a project type whose public lock is used, or a dynamic monitor locked through the lock table.
+     */
+    public enum MonitorKind {THIS, FIELD, CLASS, COMPONENT, DYNAMIC}
+
+    public record FileParse(String path, long nanos, boolean successful) {
+    }
+
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final List<FileParse> fileParses = new ArrayList<>();
+    private final Map<MonitorKind, Integer> synchronizedMethods = new TreeMap<>();
+    private final Map<MonitorKind, Integer> synchronizedBlocks = new TreeMap<>();
+    private int convertedSites;
+    private int crossFileWrites;
+    private int writtenFiles;
+    private long bytesWritten;
+
+    public RunMetrics() {
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    /**
+     * Runs {@code work} as the phase {@code name}. A phase run several times is accounted once with the sum of its
+     * wall times.
+     */
+    public <T> T phase(String name, Supplier<T> work) {
+        RefactorPhaseEvent event = new RefactorPhaseEvent();
+        event.phase = name;
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            long nanos = System.nanoTime() - start;
+            event.commit();
+            synchronized (this) {
+                phaseNanos.merge(name, nanos, Long::sum);
+            }
+        }
+    }
+
+    public void runPhase(String name, Runnable work) {
+        phase(name, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Parses {@code path} with {@code parse}, which tells whether the file could be parsed.
+     */
+    public <T> T parseFile(Path path, Supplier<T> parse, Predicate<T> successful) {
+        FileParsedEvent event = new FileParsedEvent();
+        event.begin();
+        long start = System.nanoTime();
+        T result = parse.get();
+        long nanos = System.nanoTime() - start;
+        boolean parsed = successful.test(result);
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path.toString();
+            event.size = path.toFile().length();
+            event.successful = parsed;
+            event.commit();
+        }
+        synchronized (this) {
+            fileParses.add(new FileParse(path.toString(), nanos, parsed));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the synchronized sites of {@code plans}, once the locks to convert are decided, and the lock fields they
+     * request in types of other files.
+     */
+    public synchronized void sitesPlanned(List<RefactorPlan> plans) {
+        for (RefactorPlan plan : plans) {
+            Set<String> requestedElsewhere = new HashSet<>();
+            for (RefactorPlan.PlannedSite site : plan.getPlannedSites()) {
+                Map<MonitorKind, Integer> counts = site.rewrite() instanceof RefactorPlan.MethodRewrite ? synchronizedMethods : synchronizedBlocks;
+                counts.merge(monitorKind(site), 1, Integer::sum);
+                if (site.converted()) {
+                    convertedSites++;
+                    if (!site.lock().isLockTable() && site.lock().targetUnit() != plan.getCompilationUnit()) {
+                        requestedElsewhere.add(site.lock().targetType().getNameAsString() + "." + site.lock().lockName());
+                    }
+                }
+            }
+            crossFileWrites += requestedElsewhere.size();
+        }
+    }
+
+    private static MonitorKind monitorKind(RefactorPlan.PlannedSite site) {
+        if (site.rewrite() instanceof RefactorPlan.MethodRewrite) {
+            return site.lock().isStatic() ? MonitorKind.CLASS : MonitorKind.THIS;
+        }
+        if (site.lock().isLockTable()) {
+            return MonitorKind.DYNAMIC;
+        }
+        RefactorPlan.BlockRewrite block = (RefactorPlan.BlockRewrite) site.rewrite();
+        if (block.statement().getExpression() instanceof ThisExpr) {
+            return MonitorKind.THIS;
+        } else if (block.statement().getExpression() instanceof ClassExpr) {
+            return MonitorKind.CLASS;
+        }
+        return site.lock().isPublic() ? MonitorKind.COMPONENT : MonitorKind.FIELD;
+    }
+
+    public synchronized void filesWritten(DirtyUnitTracker.FlushResult result) {
+        writtenFiles += result.flushes();
+        bytesWritten += result.bytesWritten();
+    }
+
+    /**
+     * The sum of the peak usages of the heap pools since the run started. The pools do not peak at the same time, so
+     * this is an upper bound of the peak heap usage.
+     */
+    public long peakHeapBytes() {
+        return heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+                .toList();
+    }
+
+    public synchronized Map<String, Long> getPhaseNanos() {
+        return new LinkedHashMap<>(phaseNanos);
+    }
+
+    /**
+     * The {@code count} files that took longest to parse, slowest first.
+     */
+    public synchronized List<FileParse> slowestFiles(int count) {
+        return fileParses.stream()
+                .sorted(Comparator.comparingLong(FileParse::nanos).reversed().thenComparing(FileParse::path))
+                .limit(count)
+                .toList();
+    }
+
+    /**
+     * Commits the {@link RefactorRunEvent}, logs the phases and writes the JSON summary if {@code options} asks for
+     * it.
+     */
+    public synchronized void finish(RefactorOptions options) {
+        long peakHeap = peakHeapBytes();
+        RefactorRunEvent event = new RefactorRunEvent();
+        event.parsedFiles = (int) fileParses.stream().filter(FileParse::successful).count();
+        event.synchronizedMethods = synchronizedMethods.values().stream().mapToInt(Integer::intValue).sum();
+        event.synchronizedBlocks = synchronizedBlocks.values().stream().mapToInt(Integer::intValue).sum();
+        event.convertedSites = convertedSites;
+        event.crossFileWrites = crossFileWrites;
+        event.writtenFiles = writtenFiles;
+        event.peakHeap = peakHeap;
+        event.commit();
+
+        StringBuilder phases = new StringBuilder();
+        phaseNanos.forEach((name, nanos) -> phases.append(phases.isEmpty() ? "" : ", ").append(name).append(' ').append(nanos / 1_000_000).append(" ms"));
+        logger.info("Phases: " + phases + "; peak heap " + peakHeap / (1024 * 1024) + " MB");
+
+        if (options.metricsFile() != null) {
+            try {
+                Files.writeString(options.metricsFile(), toJson(options.slowestFiles(), peakHeap));
+                logger.info("Wrote metrics to " + options.metricsFile());
+            } catch (IOException e) {
+                logger.warning("Failed to write metrics " + options.metricsFile() + ": " + e);
+            }
+        }
+    }
+
+    private String toJson(int slowestFileCount, long peakHeap) {
+        StringBuilder json = new StringBuilder("{\n  \"phases\": [");
+        String separator = "\n";
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            json.append(separator).append("    {\"name\": ").append(quote(phase.getKey()))
+                    .append(", \"millis\": ").append(millis(phase.getValue())).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n  \"files\": {\n    \"parsed\": ").append(fileParses.stream().filter(FileParse::successful).count())
+                .append(",\n    \"failed\": ").append(fileParses.stream().filter(parse -> !parse.successful()).count())
+                .append(",\n    \"parseMillis\": ").append(millis(fileParses.stream().mapToLong(FileParse::nanos).sum()))
+                .append(",\n    \"slowest\": [");
+        separator = "\n";
+        for (FileParse parse : slowestFiles(slowestFileCount)) {
+            json.append(separator).append("      {\"path\": ").append(quote(parse.path()))
+                    .append(", \"millis\": ").append(millis(parse.nanos())).append('}');
+            separator = ",\n";
+        }
+        json.append("\n    ],\n    \"written\": ").append(writtenFiles)
+                .append(",\n    \"bytesWritten\": ").append(bytesWritten)
+                .append("\n  },\n  \"synchronizedMethods\": ").append(countsJson(synchronizedMethods))
+                .append(",\n  \"synchronizedBlocks\": ").append(countsJson(synchronizedBlocks))
+                .append(",\n  \"convertedSites\": ").append(convertedSites)
+                .append(",\n  \"crossFileWrites\": ").append(crossFileWrites)
+                .append(",\n  \"peakHeapBytes\": ").append(peakHeap)
+                .append("\n}\n");
+        return json.toString();
+    }
+
+    private static String countsJson(Map<MonitorKind, Integer> counts) {
+        StringBuilder json = new StringBuilder("{");
+        for (MonitorKind kind : MonitorKind.values()) {
+            json.append(kind == MonitorKind.THIS ? "" : ", ").append(quote(kind.name().toLowerCase(Locale.ROOT)))
+                    .append(": ").append(counts.getOrDefault(kind, 0));
+        }
+        return json.append('}').toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
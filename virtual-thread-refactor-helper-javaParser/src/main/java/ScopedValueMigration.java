@@ -0,0 +1,445 @@
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.expr.EnclosedExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.NullLiteralExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.BreakStmt;
+import com.github.javaparser.ast.stmt.ContinueStmt;
+import com.github.javaparser.ast.stmt.DoStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.LocalClassDeclarationStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.SwitchStmt;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.stmt.WhileStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Migrates {@code ThreadLocal} fields to {@code ScopedValue} where every binding of the field is bounded: a
+ * {@code set} followed by a {@code try} block whose {@code finally} only calls {@code remove}, or a {@code set} and a
+ * {@code remove} in the same block. Each binding becomes {@code ScopedValue.where(field, value).run(...)}, or
+ * {@code call(...)} when the bounded code returns a value. A {@code get()} in the bounded code stays {@code get()};
+ * any other becomes {@code field.isBound() ? field.get() : null}, which keeps the {@code null} of an unbound
+ * {@code ThreadLocal}, as {@code orElse} does not accept {@code null}. The generated code uses the {@code ScopedValue}
+ * API as finalized in Java 25.
+ * <p>
+ * A field is only converted if all of its uses can be, so only private fields are considered. The bounded code is
+ * moved into a lambda, which must not throw checked exceptions, leave the lambda with {@code break} or
+ * {@code continue}, or assign local variables of the enclosing method. Every field that is not converted gets a
+ * {@link MigrationReport} entry explaining why.
+ */
+public class ScopedValueMigration {
+
+    static Logger logger = Logger.getLogger(ScopedValueMigration.class.getName());
+
+    static final String PASS = "scoped-value";
+
+    private static final String SCOPED_VALUE = "ScopedValue";
+
+    /**
+     * A bounded binding: {@code set} at {@code setIndex} of {@code block}, and the statement at {@code endIndex} that
+     * removes the value again, the {@code try} statement if {@code tryFinally}, otherwise the {@code remove} call.
+     */
+    private record Binding(MethodCallExpr set, BlockStmt block, int setIndex, int endIndex, boolean tryFinally, boolean returnsValue) {
+    }
+
+    /**
+     * Converts the {@code ThreadLocal} fields of {@code cu} that can be converted safely and reports the others.
+     * Returns whether {@code cu} was modified.
+     */
+    public static boolean migrate(CompilationUnit cu, MigrationReport report) {
+        boolean modified = false;
+        for (FieldDeclaration field : cu.findAll(FieldDeclaration.class)) {
+            if (!ThreadLocalFields.isThreadLocal(field)) {
+                continue;
+            }
+            String fieldName = field.getVariables().get(0).getNameAsString();
+            try {
+                migrateField(cu, field);
+                logger.info("Migrated ThreadLocal " + fieldName + " to ScopedValue");
+                modified = true;
+            } catch (NotConvertible e) {
+                report.add(PASS, e.node, fieldName, e.getMessage());
+            }
+        }
+        return modified;
+    }
+
+    private static void migrateField(CompilationUnit cu, FieldDeclaration field) throws NotConvertible {
+        if (field.getVariables().size() != 1) {
+            throw new NotConvertible(field, "declares several variables");
+        }
+        VariableDeclarator variable = field.getVariable(0);
+        ClassOrInterfaceType type = variable.getType().asClassOrInterfaceType();
+        if (!type.getNameAsString().equals(ThreadLocalFields.THREAD_LOCAL)) {
+            throw new NotConvertible(field, "is inheritable; pass the value to child threads explicitly or bind it in a StructuredTaskScope");
+        }
+        if (!field.isPrivate()) {
+            throw new NotConvertible(field, "is not private, so not all of its uses can be rewritten");
+        }
+        if (variable.getInitializer().isEmpty()
+                || !(variable.getInitializer().orElseThrow() instanceof ObjectCreationExpr creation)
+                || creation.getAnonymousClassBody().isPresent() || !creation.getArguments().isEmpty()) {
+            throw new NotConvertible(field, "has an initial value; a ScopedValue is unbound until a caller binds it");
+        }
+
+        String fieldName = variable.getNameAsString();
+        TypeDeclaration<?> owner = Declarations.enclosingType(field).orElseThrow();
+        ThreadLocalFields.checkNotShadowed(owner, variable);
+
+        List<MethodCallExpr> gets = new ArrayList<>();
+        List<MethodCallExpr> sets = new ArrayList<>();
+        Set<MethodCallExpr> removes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Expression use : ThreadLocalFields.usesOf(owner, fieldName)) {
+            if (!(use.getParentNode().orElse(null) instanceof MethodCallExpr call) || call.getScope().orElse(null) != use) {
+                throw new NotConvertible(use, "is used as a value, not only through get/set/remove");
+            }
+            String method = call.getNameAsString();
+            if (method.equals("get") && call.getArguments().isEmpty()) {
+                gets.add(call);
+            } else if (method.equals("set") && call.getArguments().size() == 1) {
+                sets.add(call);
+            } else if (method.equals("remove") && call.getArguments().isEmpty()) {
+                removes.add(call);
+            } else {
+                throw new NotConvertible(call, "calls " + method + "()");
+            }
+        }
+
+        List<Binding> bindings = new ArrayList<>();
+        for (MethodCallExpr set : sets) {
+            Binding binding = bindingOf(set, fieldName);
+            bindings.add(binding);
+            removes.remove(removeCallOf(binding));
+        }
+        if (!removes.isEmpty()) {
+            throw new NotConvertible(removes.iterator().next(), "calls remove() outside of a bounded set/remove pair");
+        }
+
+        for (MethodCallExpr get : gets) {
+            if (bindings.stream().noneMatch(binding -> isBoundAt(binding, get))) {
+                readUnlessUnbound(get);
+            }
+        }
+        // Later bindings first, so that the statement indexes of earlier bindings in the same block stay valid.
+        bindings.sort(Comparator.comparing((Binding binding) -> binding.set().getBegin().orElseThrow()).reversed());
+        for (Binding binding : bindings) {
+            bind(binding);
+        }
+        variable.setType(new ClassOrInterfaceType(null, new SimpleName(SCOPED_VALUE), type.getTypeArguments().orElse(null)));
+        variable.setInitializer(new MethodCallExpr(new NameExpr(SCOPED_VALUE), "newInstance"));
+    }
+
+    private static Binding bindingOf(MethodCallExpr set, String fieldName) throws NotConvertible {
+        if (!(set.getParentNode().orElse(null) instanceof ExpressionStmt setStatement)
+                || !(setStatement.getParentNode().orElse(null) instanceof BlockStmt block)) {
+            throw new NotConvertible(set, "calls set() inside an expression");
+        }
+        NodeList<Statement> statements = block.getStatements();
+        int setIndex = statements.indexOf(setStatement);
+        checkEnclosingCallable(set);
+
+        if (setIndex + 1 < statements.size() && statements.get(setIndex + 1) instanceof TryStmt tryStmt
+                && tryStmt.getResources().isEmpty() && tryStmt.getCatchClauses().isEmpty()
+                && tryStmt.getFinallyBlock().isPresent()
+                && tryStmt.getFinallyBlock().orElseThrow().getStatements().size() == 1
+                && isRemove(tryStmt.getFinallyBlock().orElseThrow().getStatement(0), fieldName)) {
+            BlockStmt tryBlock = tryStmt.getTryBlock();
+            boolean returnsValue = checkReturns(tryBlock, tryBlock.getStatements(), true);
+            checkLambdaBody(tryBlock, tryBlock.getStatements());
+            return new Binding(set, block, setIndex, setIndex + 1, true, returnsValue);
+        }
+
+        for (int endIndex = setIndex + 1; endIndex < statements.size(); endIndex++) {
+            Statement statement = statements.get(endIndex);
+            if (isRemove(statement, fieldName)) {
+                List<Statement> bounded = statements.subList(setIndex + 1, endIndex);
+                checkReturns(block, bounded, false);
+                checkLambdaBody(block, bounded);
+                checkDeclarationsNotUsedAfter(statements, setIndex + 1, endIndex);
+                return new Binding(set, block, setIndex, endIndex, false, false);
+            }
+            if (isSet(statement, fieldName)) {
+                throw new NotConvertible(statement, "calls set() again before remove()");
+            }
+        }
+        throw new NotConvertible(set, "calls set() without a remove() in the same block");
+    }
+
+    private static boolean isRemove(Statement statement, String fieldName) {
+        return isCall(statement, fieldName, "remove");
+    }
+
+    private static boolean isSet(Statement statement, String fieldName) {
+        return isCall(statement, fieldName, "set");
+    }
+
+    private static boolean isCall(Statement statement, String fieldName, String method) {
+        return statement instanceof ExpressionStmt expressionStmt
+                && expressionStmt.getExpression() instanceof MethodCallExpr call
+                && call.getNameAsString().equals(method)
+                && call.getScope().map(scope -> scope instanceof NameExpr name && name.getNameAsString().equals(fieldName)
+                || scope instanceof FieldAccessExpr access && access.getNameAsString().equals(fieldName)).orElse(false);
+    }
+
+    private static MethodCallExpr removeCallOf(Binding binding) {
+        Statement end = binding.block().getStatement(binding.endIndex());
+        if (end instanceof TryStmt tryStmt) {
+            end = tryStmt.getFinallyBlock().orElseThrow().getStatement(0);
+        }
+        return (MethodCallExpr) ((ExpressionStmt) end).getExpression();
+    }
+
+    /**
+     * The bounded code becomes the body of a {@code Runnable} or a {@code CallableOp} lambda, which cannot throw
+     * checked exceptions. That holds if the enclosing method or constructor declares none and no enclosing
+     * {@code try} statement catches any.
+     */
+    private static void checkEnclosingCallable(Node site) throws NotConvertible {
+        for (Node node = site.getParentNode().orElse(null); node != null; node = node.getParentNode().orElse(null)) {
+            if (node instanceof TryStmt tryStmt && !tryStmt.getCatchClauses().isEmpty()) {
+                throw new NotConvertible(site, "is bound inside a try statement with catch clauses, the bounded code may throw checked exceptions");
+            }
+            if (node instanceof LambdaExpr) {
+                throw new NotConvertible(site, "is bound inside a lambda, the bounded code may throw checked exceptions");
+            }
+            if (node instanceof CallableDeclaration<?> callable) {
+                if (!callable.getThrownExceptions().isEmpty()) {
+                    throw new NotConvertible(site, "is bound in " + callable.getNameAsString() + ", which declares checked exceptions");
+                }
+                return;
+            }
+            if (node instanceof InitializerDeclaration) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks the {@code return} statements of the bounded code, the {@code bounded} statements of {@code container},
+     * and returns whether it returns a value. A value can only be returned through {@code call} if the bounded code
+     * is a {@code try} block ending with a {@code return}.
+     */
+    private static boolean checkReturns(Node container, List<Statement> bounded, boolean untilEndOfTry) throws NotConvertible {
+        List<ReturnStmt> returns = ownStatements(container, bounded, ReturnStmt.class);
+        if (returns.isEmpty()) {
+            return false;
+        }
+        if (!untilEndOfTry) {
+            throw new NotConvertible(returns.get(0), "returns between set() and remove(), so the value is never removed");
+        }
+        for (ReturnStmt returnStmt : returns) {
+            if (returnStmt.getExpression().isEmpty()) {
+                throw new NotConvertible(returnStmt, "returns from the middle of the bounded code");
+            }
+        }
+        if (!(bounded.get(bounded.size() - 1) instanceof ReturnStmt)) {
+            throw new NotConvertible(returns.get(0), "returns a value on some paths only");
+        }
+        return true;
+    }
+
+    private static void checkLambdaBody(Node container, List<Statement> bounded) throws NotConvertible {
+        for (BreakStmt breakStmt : ownStatements(container, bounded, BreakStmt.class)) {
+            if (breakStmt.getLabel().isPresent() || !hasTargetInside(breakStmt, container, true)) {
+                throw new NotConvertible(breakStmt, "breaks out of the bounded code");
+            }
+        }
+        for (ContinueStmt continueStmt : ownStatements(container, bounded, ContinueStmt.class)) {
+            if (continueStmt.getLabel().isPresent() || !hasTargetInside(continueStmt, container, false)) {
+                throw new NotConvertible(continueStmt, "continues a loop outside of the bounded code");
+            }
+        }
+
+        Node callable = container;
+        while (!(callable instanceof CallableDeclaration<?>) && !(callable instanceof InitializerDeclaration)) {
+            callable = callable.getParentNode().orElseThrow();
+        }
+        Set<String> declaredInBody = new HashSet<>();
+        findAll(bounded, VariableDeclarator.class).forEach(declarator -> declaredInBody.add(declarator.getNameAsString()));
+        findAll(bounded, Parameter.class).forEach(parameter -> declaredInBody.add(parameter.getNameAsString()));
+        Set<String> localsOutside = new HashSet<>();
+        for (VariableDeclarator declarator : callable.findAll(VariableDeclarator.class)) {
+            if (!isWithin(declarator, bounded) && !(declarator.getParentNode().orElse(null) instanceof FieldDeclaration)) {
+                localsOutside.add(declarator.getNameAsString());
+            }
+        }
+        callable.findAll(Parameter.class).forEach(parameter -> localsOutside.add(parameter.getNameAsString()));
+        localsOutside.removeAll(declaredInBody);
+
+        Set<String> reassigned = new HashSet<>();
+        for (AssignExpr assign : callable.findAll(AssignExpr.class)) {
+            if (assign.getTarget() instanceof NameExpr target) {
+                reassigned.add(target.getNameAsString());
+            }
+        }
+        for (UnaryExpr unary : callable.findAll(UnaryExpr.class)) {
+            if (unary.getExpression() instanceof NameExpr target && isIncrementOrDecrement(unary)) {
+                reassigned.add(target.getNameAsString());
+            }
+        }
+        for (NameExpr nameExpr : findAll(bounded, NameExpr.class)) {
+            if (localsOutside.contains(nameExpr.getNameAsString()) && reassigned.contains(nameExpr.getNameAsString())) {
+                throw new NotConvertible(nameExpr, "uses local variable " + nameExpr.getNameAsString() + ", which is not effectively final");
+            }
+        }
+    }
+
+    private static boolean isIncrementOrDecrement(UnaryExpr unary) {
+        return switch (unary.getOperator()) {
+            case PREFIX_INCREMENT, PREFIX_DECREMENT, POSTFIX_INCREMENT, POSTFIX_DECREMENT -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean hasTargetInside(Statement jump, Node container, boolean isBreak) {
+        for (Node node = jump.getParentNode().orElse(null); node != null && node != container; node = node.getParentNode().orElse(null)) {
+            if (node instanceof ForStmt || node instanceof ForEachStmt || node instanceof WhileStmt || node instanceof DoStmt
+                    || isBreak && node instanceof SwitchStmt) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Statements of {@code type} in the {@code bounded} statements of {@code container} that belong to them, not to a
+     * nested lambda or class.
+     */
+    private static <T extends Statement> List<T> ownStatements(Node container, List<Statement> bounded, Class<T> type) {
+        List<T> statements = new ArrayList<>();
+        for (T statement : findAll(bounded, type)) {
+            boolean nested = false;
+            for (Node node = statement.getParentNode().orElse(null); node != null && node != container; node = node.getParentNode().orElse(null)) {
+                if (node instanceof LambdaExpr || node instanceof ObjectCreationExpr || node instanceof LocalClassDeclarationStmt) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+
+    private static <T extends Node> List<T> findAll(List<Statement> statements, Class<T> type) {
+        List<T> nodes = new ArrayList<>();
+        statements.forEach(statement -> nodes.addAll(statement.findAll(type)));
+        return nodes;
+    }
+
+    private static boolean isWithin(Node node, List<Statement> statements) {
+        return statements.stream().anyMatch(statement -> node == statement || node.isDescendantOf(statement));
+    }
+
+    /**
+     * Whether {@code get} runs while {@code binding} holds: in the bounded code itself, not in a lambda or class
+     * declared there, which may run after the binding has ended.
+     */
+    private static boolean isBoundAt(Binding binding, MethodCallExpr get) {
+        NodeList<Statement> statements = binding.block().getStatements();
+        List<Statement> bounded = binding.tryFinally()
+                ? List.of(((TryStmt) statements.get(binding.endIndex())).getTryBlock())
+                : statements.subList(binding.setIndex() + 1, binding.endIndex());
+        for (Node node = get.getParentNode().orElse(null); node != null; node = node.getParentNode().orElse(null)) {
+            if (node instanceof LambdaExpr || node instanceof LocalClassDeclarationStmt
+                    || node instanceof ObjectCreationExpr creation && creation.getAnonymousClassBody().isPresent()) {
+                return false;
+            }
+            for (Statement statement : bounded) {
+                if (statement == node) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces {@code get}, which may run where the value is not bound, with {@code field.isBound() ? field.get() :
+     * null}: the {@code null} of an unbound {@code ThreadLocal}, where {@code ScopedValue.get()} throws and
+     * {@code orElse} does not accept {@code null}.
+     */
+    private static void readUnlessUnbound(MethodCallExpr get) {
+        Expression field = get.getScope().orElseThrow();
+        Expression read = new ConditionalExpr(new MethodCallExpr(field.clone(), "isBound"), get.clone(), new NullLiteralExpr());
+        Node parent = get.getParentNode().orElseThrow();
+        boolean standsAlone = parent instanceof VariableDeclarator || parent instanceof ReturnStmt
+                || parent instanceof AssignExpr assign && assign.getValue() == get
+                || parent instanceof MethodCallExpr call && call.getScope().orElse(null) != get
+                || parent instanceof ObjectCreationExpr creation && creation.getScope().orElse(null) != get;
+        get.replace(standsAlone ? read : new EnclosedExpr(read));
+    }
+
+    private static void checkDeclarationsNotUsedAfter(NodeList<Statement> statements, int from, int to) throws NotConvertible {
+        Set<String> declared = new HashSet<>();
+        for (int i = from; i < to; i++) {
+            if (statements.get(i) instanceof ExpressionStmt expressionStmt
+                    && expressionStmt.getExpression().isVariableDeclarationExpr()) {
+                expressionStmt.getExpression().asVariableDeclarationExpr().getVariables()
+                        .forEach(declarator -> declared.add(declarator.getNameAsString()));
+            }
+        }
+        for (int i = to + 1; i < statements.size(); i++) {
+            for (NameExpr nameExpr : statements.get(i).findAll(NameExpr.class)) {
+                if (declared.contains(nameExpr.getNameAsString())) {
+                    throw new NotConvertible(nameExpr, "uses " + nameExpr.getNameAsString() + " after remove(), which is declared between set() and remove()");
+                }
+            }
+        }
+    }
+
+    private static void bind(Binding binding) {
+        Expression field = binding.set().getScope().orElseThrow();
+        Expression value = binding.set().getArgument(0);
+        MethodCallExpr where = new MethodCallExpr(new NameExpr(SCOPED_VALUE), "where", NodeList.nodeList(field.clone(), value.clone()));
+        NodeList<Statement> statements = binding.block().getStatements();
+        BlockStmt body;
+        if (binding.tryFinally()) {
+            body = ((TryStmt) statements.get(binding.endIndex())).getTryBlock().clone();
+        } else {
+            body = new BlockStmt();
+            for (Statement statement : statements.subList(binding.setIndex() + 1, binding.endIndex())) {
+                body.addStatement(statement.clone());
+            }
+        }
+        LambdaExpr lambda = new LambdaExpr(new NodeList<>(), body);
+        MethodCallExpr scoped = new MethodCallExpr(where, binding.returnsValue() ? "call" : "run", NodeList.nodeList(lambda));
+        Statement replacement = binding.returnsValue() ? new ReturnStmt(scoped) : new ExpressionStmt(scoped);
+
+        for (int i = binding.endIndex(); i > binding.setIndex(); i--) {
+            statements.remove(i);
+        }
+        statements.set(binding.setIndex(), replacement);
+    }
+}
@@ -0,0 +1,12 @@
+import com.github.javaparser.ast.Node;
+
+/**
+ * Decides which synchronized sites the planner converts. A site is a synchronized {@code MethodDeclaration} or a
+ * {@code SynchronizedStmt}; rejected sites keep their monitor.
+ */
+public interface SiteFilter {
+
+    SiteFilter ALL_SITES = site -> true;
+
+    boolean accepts(Node site);
+}
@@ -0,0 +1,230 @@
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.stmt.SynchronizedStmt;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Streaming mode, for projects whose ASTs do not fit in memory together. A first pass parses one file at a time and
+ * keeps only a {@link FileSummary} of it: the types it declares, the types whose monitors or locks it uses, with
+ * field types already resolved to type names, whether it has anything to refactor and, if the blocking analysis is
+ * needed, its {@link CallSummary}. The files are then grouped like the files sharing a monitor in
+ * {@link IncrementalRefactor}: a file declaring a type is in the group of every file using the type's monitor, types
+ * being resolved by fully-qualified name, so the units that receive lock fields are loaded together with the units
+ * requesting them, and the files locking dynamic monitors are loaded together. The second pass parses, refactors and
+ * writes one group at a time and then drops its ASTs, so the peak heap usage is bounded by the call summaries of the
+ * project plus the largest group, times the parallelism, instead of by the ASTs of the project.
+ * <p>
+ * Groups are refactored concurrently, each on a single thread, except when a migration may generate a support class
+ * shared by several groups; then they are refactored one after the other, each with every worker. A group without
+ * synchronized sites or monitor calls is skipped without parsing it again, unless a migration is enabled.
+ * <p>
+ * The call summaries of the whole project are solved once, and each group is bound to them, so a group sees the same
+ * blocking verdicts as a normal run.
+ */
+public class StreamingRefactor {
+
+    static Logger logger = Logger.getLogger(StreamingRefactor.class.getName());
+
+    /**
+     * What the first pass keeps of a file.
+     *
+     * @param imports         the non-static imports, on-demand ones ending with {@code .*}
+     * @param declaredTypes   the fully-qualified names of the types declared in the file, nested ones included
+     * @param topLevelTypes   the top-level ones among {@code declaredTypes}
+     * @param monitorTypes    the monitor types as written in the file
+     * @param hasMonitorSites whether the file has a synchronized method or block, or a {@code wait} or {@code notify}
+     *                        call
+     * @param calls           the call summary of the file, {@code null} if the blocking analysis is not needed
+     */
+    record FileSummary(Path path, String packageName, List<String> imports, List<String> declaredTypes, Set<String> topLevelTypes,
+                       Set<String> monitorTypes, boolean hasMonitorSites, CallSummary calls) {
+
+        static FileSummary of(Path path, CompilationUnit cu, List<String> blockingApis) {
+            List<String> declaredTypes = new ArrayList<>();
+            Set<String> topLevelTypes = new HashSet<>();
+            for (TypeDeclaration<?> type : cu.findAll(TypeDeclaration.class)) {
+                type.getFullyQualifiedName().ifPresent(qualifiedName -> {
+                    declaredTypes.add(qualifiedName);
+                    if (type.isTopLevelType()) {
+                        topLevelTypes.add(qualifiedName);
+                    }
+                });
+            }
+            boolean hasMonitorSites = cu.findFirst(MethodDeclaration.class, MethodDeclaration::isSynchronized).isPresent()
+                    || cu.findFirst(SynchronizedStmt.class).isPresent()
+                    || cu.findFirst(MethodCallExpr.class, RefactorPlanner::isMonitorCall).isPresent();
+            return new FileSummary(path, BlockingCallAnalysis.packageNameOf(cu), List.copyOf(BlockingCallAnalysis.importsOf(cu)),
+                    List.copyOf(declaredTypes), Set.copyOf(topLevelTypes), Set.copyOf(FileAnalysis.of(cu).monitorTypes()), hasMonitorSites,
+                    blockingApis == null ? null : BlockingCallAnalysis.summarize(cu, blockingApis));
+        }
+    }
+
+    private record GroupResult(int files, int plannedSites, int keptSites, DirtyUnitTracker.FlushResult flushResult) {
+    }
+
+    public static void run(Path projectRoot, RefactorOptions options, RunMetrics metrics) {
+        List<Path> paths = VirtualThreadRefactorHelper.listJavaFiles(projectRoot.toString());
+        // The executor migration and the blocking site filter need the blocking analysis; a JFR recording replaces the latter.
+        boolean analysesBlocking = options.blockingAnalysis() && options.pinnedEvents() == null || options.virtualThreadExecutors();
+        List<FileSummary> summaries = metrics.phase("index pass", () -> summarize(paths, analysesBlocking ? options.blockingApis() : null,
+                options.parallelism(), metrics));
+        boolean migrates = options.threadLocalCaches() || options.scopedValues() || options.virtualThreadExecutors();
+        List<List<Integer>> groups = metrics.phase("group", () -> group(summaries, migrates));
+        BlockingCallAnalysis blockingAnalysis = analysesBlocking ? metrics.phase("blocking analysis", () -> BlockingCallAnalysis.solve(
+                summaries.stream().map(FileSummary::calls).toList(), options.blockingApis())) : null;
+        int groupedFiles = groups.stream().mapToInt(List::size).sum();
+        logger.info("Indexed " + summaries.size() + " files, refactoring " + groupedFiles + " of them in " + groups.size()
+                + " groups of at most " + groups.stream().mapToInt(List::size).max().orElse(0) + " files");
+
+        // The thread-local cache and executor migrations generate a support class for the users they see.
+        boolean generatesClasses = options.threadLocalCaches() || options.virtualThreadExecutors();
+        int groupParallelism = generatesClasses ? 1 : options.parallelism();
+        RefactorOptions groupOptions = generatesClasses ? options : options.withParallelism(1);
+        ThreadLocal<JavaParser> workerParser = ThreadLocal.withInitial(VirtualThreadRefactorHelper::createJavaParser);
+        MigrationReport report = new MigrationReport();
+        long start = System.nanoTime();
+        List<GroupResult> results = Parallel.map(groups, groupParallelism, group ->
+                refactorGroup(workerParser.get(), summaries, group, blockingAnalysis, groupOptions, metrics, report));
+
+        int plannedSites = results.stream().mapToInt(GroupResult::plannedSites).sum();
+        int keptSites = results.stream().mapToInt(GroupResult::keptSites).sum();
+        int flushes = results.stream().mapToInt(result -> result.flushResult().flushes()).sum();
+        long bytesWritten = results.stream().mapToLong(result -> result.flushResult().bytesWritten()).sum();
+        logger.info("Planned " + plannedSites + " synchronized sites in " + groupedFiles + " units, wrote " + flushes + " files ("
+                + bytesWritten + " bytes) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        if (keptSites > 0) {
+            logger.info("Kept " + keptSites + " synchronized sites, no site sharing their monitor was selected");
+        }
+        VirtualThreadRefactorHelper.writeReport(report, options);
+    }
+
+    /**
+     * Parses every file on its own, without comments, and keeps its summary, with a call summary made with
+     * {@code blockingApis} unless it is {@code null}. The files that cannot be parsed are left out, as in a normal run.
+     */
+    private static List<FileSummary> summarize(List<Path> paths, List<String> blockingApis, int parallelism, RunMetrics metrics) {
+        ThreadLocal<JavaParser> workerParser = ThreadLocal.withInitial(() -> {
+            ParserConfiguration parserConfiguration = VirtualThreadRefactorHelper.createJavaParser().getParserConfiguration();
+            parserConfiguration.setAttributeComments(false);
+            return new JavaParser(parserConfiguration);
+        });
+        List<FileSummary> summaries = new ArrayList<>(paths.size());
+        for (Optional<FileSummary> summary : Parallel.map(paths, parallelism, path -> metrics.parseFile(path,
+                () -> VirtualThreadRefactorHelper.parseJavaFile(workerParser.get(), path).map(cu -> FileSummary.of(path, cu, blockingApis)),
+                Optional::isPresent))) {
+            summary.ifPresent(summaries::add);
+        }
+        return summaries;
+    }
+
+    /**
+     * Groups the files that declare a project type with the files using its monitor or lock, transitively. Monitor
+     * types are resolved as {@link ProjectIndex} resolves them, from the package and imports of the file using them;
+     * types that no file declares, such as {@code Object}, do not join their users. Groups without monitor sites are
+     * left out unless {@code keepAll}. Returns the indices of the files in {@code summaries}, groups and their files in
+     * path order.
+     */
+    static List<List<Integer>> group(List<FileSummary> summaries, boolean keepAll) {
+        int[] parents = new int[summaries.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        TypeDirectory<Integer> declaringFiles = new TypeDirectory<>();
+        for (int i = 0; i < summaries.size(); i++) {
+            FileSummary summary = summaries.get(i);
+            for (String type : summary.declaredTypes()) {
+                declaringFiles.add(type, FileAnalysis.simpleName(type), summary.topLevelTypes().contains(type), i);
+            }
+        }
+        Integer lockTableUser = null;
+        for (int i = 0; i < summaries.size(); i++) {
+            FileSummary summary = summaries.get(i);
+            for (String type : summary.monitorTypes()) {
+                if (type.equals(DynamicMonitors.CLASS_NAME)) {
+                    // The files locking dynamic monitors share the lock table, which may not be generated yet.
+                    if (lockTableUser == null) {
+                        lockTableUser = i;
+                    } else {
+                        union(parents, lockTableUser, i);
+                    }
+                } else {
+                    int user = i;
+                    declaringFiles.find(summary.packageName(), summary.imports(), type)
+                            .ifPresent(declaringFile -> union(parents, declaringFile, user));
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> groups = new TreeMap<>();
+        Set<Integer> refactoredGroups = new HashSet<>();
+        for (int i = 0; i < summaries.size(); i++) {
+            int root = find(parents, i);
+            groups.computeIfAbsent(root, key -> new ArrayList<>()).add(i);
+            if (keepAll || summaries.get(i).hasMonitorSites()) {
+                refactoredGroups.add(root);
+            }
+        }
+        List<List<Integer>> result = new ArrayList<>();
+        groups.forEach((root, group) -> {
+            if (refactoredGroups.contains(root)) {
+                group.sort(Comparator.comparing(file -> summaries.get(file).path()));
+                result.add(group);
+            }
+        });
+        result.sort(Comparator.comparing(group -> summaries.get(group.get(0)).path()));
+        return result;
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int i, int j) {
+        parents[find(parents, i)] = find(parents, j);
+    }
+
+    /**
+     * Parses, refactors and writes the files of {@code group}, indices in {@code summaries}, binding them to
+     * {@code blockingAnalysis}, the solved call summaries of the project, unless it is {@code null}.
+     */
+    private static GroupResult refactorGroup(JavaParser javaParser, List<FileSummary> summaries, List<Integer> group,
+                                             BlockingCallAnalysis blockingAnalysis, RefactorOptions options, RunMetrics metrics,
+                                             MigrationReport report) {
+        List<CompilationUnit> unitList = new ArrayList<>(group.size());
+        List<Integer> fileIndices = new ArrayList<>(group.size());
+        metrics.runPhase("parse", () -> group.forEach(file -> VirtualThreadRefactorHelper.parseJavaFile(javaParser, summaries.get(file).path())
+                .ifPresent(cu -> {
+                    unitList.add(cu);
+                    fileIndices.add(file);
+                })));
+        ProjectIndex index = metrics.phase("index", () -> ProjectIndex.build(unitList));
+        // Bound before the plans are applied, since the applied plans no longer match the call summaries.
+        BlockingCallAnalysis groupAnalysis = blockingAnalysis == null ? null : blockingAnalysis.bind(unitList, fileIndices);
+        SiteFilter siteFilter = metrics.phase("site filter", () -> VirtualThreadRefactorHelper.createSiteFilter(index, () -> groupAnalysis, options));
+        List<RefactorPlan> plans = VirtualThreadRefactorHelper.planUnits(index, siteFilter, unitList, options, metrics);
+        DirtyUnitTracker dirtyUnits = VirtualThreadRefactorHelper.applyPlansAndMigrate(javaParser, index, siteFilter, unitList, plans,
+                () -> groupAnalysis, options, metrics, report);
+        DirtyUnitTracker.FlushResult flushResult = metrics.phase("write", () -> dirtyUnits.flush(options.parallelism()));
+        metrics.filesWritten(flushResult);
+        return new GroupResult(unitList.size(), plans.stream().mapToInt(plan -> plan.getPlannedSites().size()).sum(),
+                plans.stream().mapToInt(RefactorPlan::getKeptSites).sum(), flushResult);
+    }
+}
@@ -0,0 +1,582 @@
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.ArrayAccessExpr;
+import com.github.javaparser.ast.expr.ArrayCreationExpr;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.TypeExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExplicitConstructorInvocationStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.Type;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Replaces {@code ThreadLocal} fields that cache an expensive object per thread. With a virtual thread per task such a
+ * cache is never reused, so every task pays for a new object. A cached {@code SimpleDateFormat} with a constant
+ * pattern that is only used to format {@code Date}s becomes a shared, immutable {@code DateTimeFormatter}. Other
+ * cached {@code SimpleDateFormat}, {@code MessageDigest}, {@code Cipher} and {@code byte[]} objects are borrowed from
+ * a generated {@value #POOL_CLASS} instead, from the statement using the object until the end of its block.
+ * <p>
+ * A borrowed object must not outlive its block, so a field whose object is returned, stored, or used in a lambda is
+ * not converted; passing the object as an argument is assumed not to retain it. Like {@link ScopedValueMigration},
+ * only private fields are considered. Every converted field gets a {@link MigrationReport} entry estimating the
+ * allocations saved, and every field that is not converted an entry explaining why.
+ */
+public class ThreadLocalCacheMigration {
+
+    static Logger logger = Logger.getLogger(ThreadLocalCacheMigration.class.getName());
+
+    static final String PASS = "thread-local-cache";
+    static final String POOL_CLASS = "BoundedObjectPool";
+    /**
+     * The capacity of the generated pool, evaluated on the machine running the refactored code.
+     */
+    static final String POOL_CAPACITY = "Runtime.getRuntime().availableProcessors()";
+
+    /**
+     * Retained heap of one cached object in bytes, measured on JDK 17 with a SHA-256 digest and an AES/GCM cipher. An
+     * array adds its length to the header.
+     */
+    private static final Map<String, Long> RETAINED_BYTES = Map.of(
+            "SimpleDateFormat", 1_300L,
+            "DateFormat", 1_300L,
+            "MessageDigest", 220L,
+            "Cipher", 1_000L,
+            "byte[]", 16L);
+    /**
+     * Pattern letters that {@code DateTimeFormatter.ofPattern} interprets like {@code SimpleDateFormat}.
+     */
+    private static final String COMPATIBLE_PATTERN_LETTERS = "yMdHhmsSEaZX";
+    private static final String DATE_TIME_FORMATTER = "DateTimeFormatter";
+
+    private static final GeneratedClass POOL = new GeneratedClass(POOL_CLASS, """
+            /**
+             * A bounded pool of reusable objects that replaces a ThreadLocal cache. Borrowing never blocks: an object is
+             * created when the pool is empty, and a released object is dropped when the pool is full.
+             */
+            public final class BoundedObjectPool<T> {
+
+                private final ArrayBlockingQueue<T> idle;
+                private final Supplier<? extends T> factory;
+                private final Consumer<? super T> reset;
+
+                public BoundedObjectPool(Supplier<? extends T> factory) {
+                    this(factory, object -> {
+                    });
+                }
+
+                public BoundedObjectPool(Supplier<? extends T> factory, Consumer<? super T> reset) {
+                    this(%s, factory, reset);
+                }
+
+                public BoundedObjectPool(int capacity, Supplier<? extends T> factory, Consumer<? super T> reset) {
+                    this.idle = new ArrayBlockingQueue<>(capacity);
+                    this.factory = factory;
+                    this.reset = reset;
+                }
+
+                public T borrow() {
+                    T object = idle.poll();
+                    return object != null ? object : factory.get();
+                }
+
+                public void release(T object) {
+                    reset.accept(object);
+                    idle.offer(object);
+                }
+            }
+            """.formatted(POOL_CAPACITY), List.of("java.util.concurrent.ArrayBlockingQueue", "java.util.function.Consumer", "java.util.function.Supplier"));
+
+    private final MigrationReport report;
+    private final int estimatedThreads;
+    private final Set<CompilationUnit> poolUsers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * @param report           receives an entry for every cached field, converted or not
+     * @param estimatedThreads number of threads the saved allocations are estimated for, each using a field once
+     */
+    public ThreadLocalCacheMigration(MigrationReport report, int estimatedThreads) {
+        this.report = report;
+        this.estimatedThreads = estimatedThreads;
+    }
+
+    /**
+     * Converts the cached fields of {@code cu} that can be converted safely and reports the others. Returns whether
+     * {@code cu} was modified. Units may be migrated concurrently.
+     */
+    public boolean migrate(CompilationUnit cu) {
+        boolean modified = false;
+        for (FieldDeclaration field : cu.findAll(FieldDeclaration.class)) {
+            Optional<Type> cachedType = cachedType(field);
+            Optional<Expression> factory = cachedType.flatMap(type -> factoryOf(field));
+            if (factory.isEmpty()) {
+                continue;
+            }
+            String fieldName = field.getVariables().get(0).getNameAsString();
+            try {
+                String replacement = migrateField(cu, field, cachedType.orElseThrow(), factory.orElseThrow());
+                logger.info("Replaced ThreadLocal cache " + fieldName + " with " + replacement);
+                modified = true;
+            } catch (NotConvertible e) {
+                report.add(PASS, e.node, fieldName, e.getMessage());
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * The cached type of a {@code ThreadLocal} field if it is one of the expensive objects handled here.
+     */
+    private static Optional<Type> cachedType(FieldDeclaration field) {
+        if (!ThreadLocalFields.isThreadLocal(field)) {
+            return Optional.empty();
+        }
+        return field.getElementType().asClassOrInterfaceType().getTypeArguments()
+                .filter(arguments -> arguments.size() == 1)
+                .map(arguments -> arguments.get(0))
+                .filter(type -> RETAINED_BYTES.containsKey(typeKey(type)));
+    }
+
+    private static String typeKey(Type type) {
+        if (type instanceof ArrayType arrayType && arrayType.getComponentType() instanceof PrimitiveType primitive
+                && primitive.getType() == PrimitiveType.Primitive.BYTE) {
+            return "byte[]";
+        }
+        return type instanceof ClassOrInterfaceType classType ? classType.getNameAsString() : type.asString();
+    }
+
+    /**
+     * The {@code Supplier} creating the cached object: the argument of {@code ThreadLocal.withInitial}, or a lambda
+     * built from the {@code initialValue} method of an anonymous subclass. Fields without an initial value are
+     * explicitly set per thread, which makes them context rather than a cache.
+     */
+    private static Optional<Expression> factoryOf(FieldDeclaration field) {
+        Optional<Expression> initializer = field.getVariables().get(0).getInitializer();
+        if (initializer.isPresent() && initializer.orElseThrow() instanceof MethodCallExpr call
+                && call.getNameAsString().equals("withInitial") && call.getArguments().size() == 1) {
+            return Optional.of(call.getArgument(0));
+        }
+        if (initializer.isPresent() && initializer.orElseThrow() instanceof ObjectCreationExpr creation
+                && creation.getAnonymousClassBody().isPresent()) {
+            for (BodyDeclaration<?> member : creation.getAnonymousClassBody().orElseThrow()) {
+                if (member instanceof MethodDeclaration method && method.getNameAsString().equals("initialValue")
+                        && method.getParameters().isEmpty() && method.getBody().isPresent()) {
+                    BlockStmt body = method.getBody().orElseThrow();
+                    if (body.getStatements().size() == 1 && body.getStatement(0) instanceof ReturnStmt returnStmt
+                            && returnStmt.getExpression().isPresent()) {
+                        return Optional.of(new LambdaExpr(new NodeList<>(), returnStmt.getExpression().orElseThrow().clone()));
+                    }
+                    return Optional.of(new LambdaExpr(new NodeList<>(), body.clone()));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns a description of the replacement.
+     */
+    private String migrateField(CompilationUnit cu, FieldDeclaration field, Type cachedType, Expression factory) throws NotConvertible {
+        if (field.getVariables().size() != 1) {
+            throw new NotConvertible(field, "declares several variables");
+        }
+        if (!field.isPrivate()) {
+            throw new NotConvertible(field, "is not private, so not all of its uses can be rewritten");
+        }
+        VariableDeclarator variable = field.getVariable(0);
+        TypeDeclaration<?> owner = Declarations.enclosingType(field).orElseThrow();
+        ThreadLocalFields.checkNotShadowed(owner, variable);
+
+        List<MethodCallExpr> gets = new ArrayList<>();
+        List<ExpressionStmt> removes = new ArrayList<>();
+        for (Expression use : ThreadLocalFields.usesOf(owner, variable.getNameAsString())) {
+            if (!(use.getParentNode().orElse(null) instanceof MethodCallExpr call) || call.getScope().orElse(null) != use) {
+                throw new NotConvertible(use, "is used as a value, not only through get/remove");
+            }
+            String method = call.getNameAsString();
+            if (method.equals("get") && call.getArguments().isEmpty()) {
+                gets.add(call);
+            } else if (method.equals("remove") && call.getArguments().isEmpty()
+                    && call.getParentNode().orElse(null) instanceof ExpressionStmt statement) {
+                removes.add(statement);
+            } else {
+                throw new NotConvertible(call, "calls " + method + "(), so the cached object is not only reused");
+            }
+        }
+        gets.sort(Comparator.comparing(get -> get.getBegin().orElseThrow()));
+
+        String key = typeKey(cachedType);
+        Optional<ObjectCreationExpr> dateFormat = dateFormatCreation(factory);
+        String replacement;
+        long savedAllocations;
+        String kept = "";
+        if (dateFormat.isPresent() && gets.stream().allMatch(ThreadLocalCacheMigration::formatsDate)) {
+            replaceWithDateTimeFormatter(cu, variable, dateFormat.orElseThrow(), gets);
+            replacement = "a shared " + DATE_TIME_FORMATTER;
+            savedAllocations = estimatedThreads - 1L;
+        } else {
+            for (MethodCallExpr get : gets) {
+                anchorOf(get);
+                checkNotEscaping(get);
+            }
+            replaceWithPool(cu, variable, cachedType, factory, gets);
+            // The generated pool sizes itself where it runs, so the capacity is not known here.
+            replacement = "a " + POOL_CLASS + " with a capacity of " + POOL_CAPACITY;
+            savedAllocations = estimatedThreads;
+            kept = ", less one per processor kept in the pool";
+        }
+        for (ExpressionStmt remove : removes) {
+            removeStatement(remove);
+        }
+
+        Optional<Long> bytesPerObject = retainedBytes(key, factory);
+        report.add(PASS, field, variable.getNameAsString(), "replaced by " + replacement + ", saves ~"
+                + String.format("%,d", savedAllocations) + " " + key + " allocations"
+                + bytesPerObject.map(bytes -> String.format(" (~%,d KB)", savedAllocations * bytes / 1024)).orElse("")
+                + " at " + String.format("%,d", estimatedThreads) + " threads using it once each" + kept);
+        return replacement;
+    }
+
+    /**
+     * {@code new SimpleDateFormat(pattern)} or {@code new SimpleDateFormat(pattern, locale)} created by
+     * {@code factory}, if its constant pattern means the same to {@code DateTimeFormatter}.
+     */
+    private static Optional<ObjectCreationExpr> dateFormatCreation(Expression factory) {
+        if (factory instanceof LambdaExpr lambda && lambda.getParameters().isEmpty()
+                && lambda.getExpressionBody().orElse(null) instanceof ObjectCreationExpr creation
+                && creation.getType().getNameAsString().equals("SimpleDateFormat")
+                && creation.getAnonymousClassBody().isEmpty()
+                && (creation.getArguments().size() == 1 || creation.getArguments().size() == 2)
+                && creation.getArgument(0) instanceof StringLiteralExpr pattern
+                && isCompatiblePattern(pattern.asString())) {
+            return Optional.of(creation);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Letters outside quotes must be interpreted the same way, and fractions of a second must have three digits,
+     * which is the only width where milliseconds and fraction of second agree. {@code DateTimeFormatter} must also
+     * accept the pattern, as it limits how often a letter repeats: the rewritten field would otherwise fail when its
+     * class is initialized.
+     */
+    static boolean isCompatiblePattern(String pattern) {
+        try {
+            DateTimeFormatter.ofPattern(pattern);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && Character.isLetter(c)) {
+                if (COMPATIBLE_PATTERN_LETTERS.indexOf(c) < 0) {
+                    return false;
+                }
+                int end = i;
+                while (end < pattern.length() && pattern.charAt(end) == c) {
+                    end++;
+                }
+                if (c == 'S' && end - i != 3) {
+                    return false;
+                }
+                i = end - 1;
+            }
+        }
+        return !quoted;
+    }
+
+    /**
+     * Whether {@code get} is only used as {@code get().format(date)} with an argument declared as a {@code Date}.
+     */
+    private static boolean formatsDate(MethodCallExpr get) {
+        if (!(get.getParentNode().orElse(null) instanceof MethodCallExpr call) || call.getScope().orElse(null) != get
+                || !call.getNameAsString().equals("format") || call.getArguments().size() != 1) {
+            return false;
+        }
+        Expression argument = call.getArgument(0);
+        if (argument instanceof ObjectCreationExpr creation) {
+            return isDate(creation.getType());
+        }
+        return argument instanceof NameExpr name
+                && Declarations.typeOf(name, name.getNameAsString(), TypeDeclaration::getFieldByName)
+                .map(ThreadLocalCacheMigration::isDate).orElse(false);
+    }
+
+    private static boolean isDate(Type type) {
+        return type instanceof ClassOrInterfaceType classType
+                && (classType.getNameAsString().equals("Date") && classType.getScope().isEmpty()
+                || classType.asString().equals("java.util.Date"));
+    }
+
+    private static void replaceWithDateTimeFormatter(CompilationUnit cu, VariableDeclarator variable, ObjectCreationExpr dateFormat, List<MethodCallExpr> gets) {
+        NodeList<Expression> arguments = new NodeList<>();
+        dateFormat.getArguments().forEach(argument -> arguments.add(argument.clone()));
+        MethodCallExpr formatter = new MethodCallExpr(new NameExpr(DATE_TIME_FORMATTER), "ofPattern", arguments);
+        variable.setType(new ClassOrInterfaceType(null, DATE_TIME_FORMATTER));
+        variable.setInitializer(new MethodCallExpr(formatter, "withZone",
+                NodeList.nodeList(new MethodCallExpr(new NameExpr("ZoneId"), "systemDefault"))));
+        for (MethodCallExpr get : gets) {
+            MethodCallExpr format = (MethodCallExpr) get.getParentNode().orElseThrow();
+            Expression date = format.getArgument(0);
+            // Date.toInstant() throws for a java.sql.Date, the epoch milliseconds work for every Date.
+            date.replace(new MethodCallExpr(new NameExpr("Instant"), "ofEpochMilli",
+                    NodeList.nodeList(new MethodCallExpr(date.clone(), "getTime"))));
+            get.replace(get.getScope().orElseThrow().clone());
+        }
+        cu.addImport("java.time.Instant");
+        cu.addImport("java.time.ZoneId");
+        cu.addImport("java.time.format." + DATE_TIME_FORMATTER);
+        removeUnusedImport(cu, "java.text.SimpleDateFormat");
+    }
+
+    /**
+     * The statement from which the object obtained by {@code get} is borrowed: the outermost statement of the
+     * enclosing block that contains {@code get}. It must not be inside an expression lambda or a field initializer.
+     */
+    private static Statement anchorOf(MethodCallExpr get) throws NotConvertible {
+        for (Node node = get; node != null; node = node.getParentNode().orElse(null)) {
+            if (node instanceof LambdaExpr) {
+                throw new NotConvertible(get, "is used in a lambda expression, which has no block to borrow the object in");
+            }
+            if (node instanceof ExplicitConstructorInvocationStmt) {
+                throw new NotConvertible(get, "is used in a constructor call, which must come first");
+            }
+            if (node instanceof Statement statement && node.getParentNode().orElse(null) instanceof BlockStmt) {
+                return statement;
+            }
+            if (node instanceof BodyDeclaration<?>) {
+                break;
+            }
+        }
+        throw new NotConvertible(get, "is used outside of a block");
+    }
+
+    /**
+     * A borrowed object is released at the end of the block, so it must neither be returned nor stored, and must not
+     * be used by a lambda or an anonymous class, which may run later. A local variable initialized with it is
+     * checked the same way.
+     */
+    private static void checkNotEscaping(Expression value) throws NotConvertible {
+        Node parent = value.getParentNode().orElseThrow();
+        if (parent instanceof MethodCallExpr
+                || parent instanceof ObjectCreationExpr creation && creation.getAnonymousClassBody().isEmpty()
+                || parent instanceof FieldAccessExpr
+                || parent instanceof ArrayAccessExpr) {
+            return;
+        }
+        if (parent instanceof VariableDeclarator local && local.getParentNode().orElse(null) instanceof VariableDeclarationExpr
+                && local.getParentNode().orElseThrow().getParentNode().orElse(null) instanceof ExpressionStmt declaration
+                && declaration.getParentNode().orElse(null) instanceof BlockStmt block) {
+            String name = local.getNameAsString();
+            for (AssignExpr assign : block.findAll(AssignExpr.class)) {
+                if (assign.getTarget() instanceof NameExpr target && target.getNameAsString().equals(name)) {
+                    throw new NotConvertible(assign, "assigns the local variable " + name + " holding the cached object");
+                }
+            }
+            for (NameExpr use : block.findAll(NameExpr.class)) {
+                if (use.getNameAsString().equals(name)) {
+                    checkNotCaptured(use, block);
+                    checkNotEscaping(use);
+                }
+            }
+            return;
+        }
+        throw new NotConvertible(value, "lets the cached object escape the block it is used in");
+    }
+
+    private static void checkNotCaptured(Node use, BlockStmt block) throws NotConvertible {
+        for (Node node = use.getParentNode().orElse(null); node != null && node != block; node = node.getParentNode().orElse(null)) {
+            if (node instanceof LambdaExpr || node instanceof ObjectCreationExpr creation && creation.getAnonymousClassBody().isPresent()) {
+                throw new NotConvertible(use, "uses the cached object in a lambda or anonymous class, which may run after it is released");
+            }
+        }
+    }
+
+    private void replaceWithPool(CompilationUnit cu, VariableDeclarator variable, Type cachedType, Expression factory, List<MethodCallExpr> gets) {
+        Set<MethodCallExpr> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MethodCallExpr get : gets) {
+            if (!replaced.contains(get)) {
+                borrow(get, gets, replaced, cachedType);
+            }
+        }
+
+        NodeList<Expression> arguments = NodeList.nodeList(factory.clone());
+        if (typeKey(cachedType).equals("MessageDigest")) {
+            arguments.add(new MethodReferenceExpr(new TypeExpr(cachedType.clone()), null, "reset"));
+        }
+        ClassOrInterfaceType poolType = new ClassOrInterfaceType(null, new SimpleName(POOL_CLASS), NodeList.nodeList(cachedType.clone()));
+        variable.setType(poolType);
+        variable.setInitializer(new ObjectCreationExpr(null, new ClassOrInterfaceType(null, new SimpleName(POOL_CLASS), new NodeList<>()), arguments));
+        poolUsers.add(cu);
+    }
+
+    /**
+     * Borrows the object before the anchor statement of {@code get} and releases it in a {@code finally} block
+     * enclosing the rest of the block. Every other {@code get} of the field in those statements uses the same object.
+     */
+    private static void borrow(MethodCallExpr get, List<MethodCallExpr> gets, Set<MethodCallExpr> replaced, Type cachedType) {
+        Expression pool = get.getScope().orElseThrow();
+        Statement anchor;
+        try {
+            anchor = anchorOf(get);
+        } catch (NotConvertible e) {
+            throw new IllegalStateException("Anchor of " + get + " was checked before rewriting", e);
+        }
+        BlockStmt block = (BlockStmt) anchor.getParentNode().orElseThrow();
+        NodeList<Statement> statements = block.getStatements();
+        int anchorIndex = 0;
+        while (statements.get(anchorIndex) != anchor) {
+            anchorIndex++;
+        }
+
+        String name;
+        Statement declaration;
+        if (anchor instanceof ExpressionStmt expressionStmt && expressionStmt.getExpression() instanceof VariableDeclarationExpr locals
+                && locals.getVariables().size() == 1 && locals.getVariable(0).getInitializer().orElse(null) == get) {
+            name = locals.getVariable(0).getNameAsString();
+            declaration = anchor;
+            anchorIndex++;
+        } else {
+            name = freshName(cachedType, Declarations.enclosingMember(anchor).orElseThrow());
+            declaration = new ExpressionStmt(new VariableDeclarationExpr(new VariableDeclarator(cachedType.clone(), name)));
+            get.replace(new NameExpr(name));
+        }
+
+        List<Statement> borrowing = new ArrayList<>(statements.subList(anchorIndex, statements.size()));
+        for (MethodCallExpr other : gets) {
+            if (other != get && !replaced.contains(other) && isOwnedBy(other, borrowing, block)) {
+                other.replace(new NameExpr(name));
+                replaced.add(other);
+            }
+        }
+        MethodCallExpr borrowCall = new MethodCallExpr(pool.clone(), "borrow");
+        ((VariableDeclarationExpr) ((ExpressionStmt) declaration).getExpression()).getVariable(0).setInitializer(borrowCall);
+        replaced.add(get);
+
+        while (statements.size() > anchorIndex) {
+            statements.remove(anchorIndex);
+        }
+        BlockStmt tryBlock = new BlockStmt(new NodeList<>(borrowing));
+        BlockStmt finallyBlock = new BlockStmt(NodeList.nodeList(
+                new ExpressionStmt(new MethodCallExpr(pool.clone(), "release", NodeList.nodeList(new NameExpr(name))))));
+        if (declaration != anchor) {
+            statements.add(declaration);
+        }
+        statements.add(new TryStmt(tryBlock, new NodeList<>(), finallyBlock));
+    }
+
+    /**
+     * Whether {@code get} is in one of {@code statements} of {@code block}, and not in a nested lambda or class.
+     */
+    private static boolean isOwnedBy(MethodCallExpr get, List<Statement> statements, BlockStmt block) {
+        if (statements.stream().noneMatch(statement -> get.isDescendantOf(statement))) {
+            return false;
+        }
+        for (Node node = get.getParentNode().orElse(null); node != null && node != block; node = node.getParentNode().orElse(null)) {
+            if (node instanceof LambdaExpr || node instanceof ObjectCreationExpr creation && creation.getAnonymousClassBody().isPresent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A variable name for the borrowed object that is not used in {@code member} yet, so it shadows nothing.
+     */
+    private static String freshName(Type cachedType, BodyDeclaration<?> member) {
+        Set<String> usedNames = new HashSet<>();
+        member.findAll(SimpleName.class).forEach(name -> usedNames.add(name.asString()));
+        String key = typeKey(cachedType);
+        String base = key.equals("byte[]") ? "buffer" : key.substring(0, 1).toLowerCase() + key.substring(1);
+        String name = base;
+        for (int i = 2; usedNames.contains(name); i++) {
+            name = base + i;
+        }
+        return name;
+    }
+
+    /**
+     * Removes a {@code remove()} call, which has nothing left to clean up, together with a {@code finally} block that
+     * only contained it.
+     */
+    private static void removeStatement(ExpressionStmt remove) {
+        Node parent = remove.getParentNode().orElseThrow();
+        remove.remove();
+        if (parent instanceof BlockStmt block && block.isEmpty()
+                && block.getParentNode().orElse(null) instanceof TryStmt tryStmt
+                && tryStmt.getFinallyBlock().orElse(null) == block) {
+            if (tryStmt.getCatchClauses().isEmpty() && tryStmt.getResources().isEmpty()) {
+                tryStmt.replace(tryStmt.getTryBlock());
+            } else {
+                tryStmt.removeFinallyBlock();
+            }
+        }
+    }
+
+    private static Optional<Long> retainedBytes(String key, Expression factory) {
+        long bytes = RETAINED_BYTES.get(key);
+        if (!key.equals("byte[]")) {
+            return Optional.of(bytes);
+        }
+        if (factory instanceof LambdaExpr lambda && lambda.getExpressionBody().orElse(null) instanceof ArrayCreationExpr array
+                && array.getLevels().size() == 1
+                && array.getLevels().get(0).getDimension().orElse(null) instanceof IntegerLiteralExpr length) {
+            return Optional.of(bytes + length.asNumber().longValue());
+        }
+        return Optional.empty();
+    }
+
+    private static void removeUnusedImport(CompilationUnit cu, String qualifiedName) {
+        String simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+        if (cu.findAll(ClassOrInterfaceType.class).stream().noneMatch(type -> type.getNameAsString().equals(simpleName))) {
+            cu.getImports().removeIf(importDeclaration -> !importDeclaration.isAsterisk() && !importDeclaration.isStatic()
+                    && importDeclaration.getNameAsString().equals(qualifiedName));
+        }
+    }
+
+    /**
+     * Generates {@value #POOL_CLASS} for the units converted to it, see {@link GeneratedClass#create}. Returns the
+     * generated unit, which has to be written.
+     */
+    public Optional<CompilationUnit> createPoolClass(JavaParser javaParser, List<CompilationUnit> unitList) {
+        return POOL.create(javaParser, unitList, unitList.stream().filter(poolUsers::contains).toList());
+    }
+}
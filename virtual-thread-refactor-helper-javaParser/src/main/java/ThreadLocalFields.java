@@ -0,0 +1,65 @@
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared by the passes that migrate {@code ThreadLocal} fields. Without a symbol solver, a field is only converted if
+ * all of its uses can be found, which holds for a private field that is not shadowed by a variable of the same name.
+ */
+public class ThreadLocalFields {
+
+    static final String THREAD_LOCAL = "ThreadLocal";
+
+    static boolean isThreadLocal(FieldDeclaration field) {
+        return field.getElementType() instanceof ClassOrInterfaceType type
+                && (type.getNameAsString().equals(THREAD_LOCAL) || type.getNameAsString().equals("Inheritable" + THREAD_LOCAL));
+    }
+
+    /**
+     * Checks that no other variable or parameter inside {@code owner}, where the uses of the field are looked for, has
+     * the name of the field.
+     */
+    static void checkNotShadowed(TypeDeclaration<?> owner, VariableDeclarator variable) throws NotConvertible {
+        String fieldName = variable.getNameAsString();
+        for (VariableDeclarator declarator : owner.findAll(VariableDeclarator.class)) {
+            if (declarator != variable && declarator.getNameAsString().equals(fieldName)) {
+                throw new NotConvertible(declarator, "is shadowed by another variable of the same name");
+            }
+        }
+        for (Parameter parameter : owner.findAll(Parameter.class)) {
+            if (parameter.getNameAsString().equals(fieldName)) {
+                throw new NotConvertible(parameter, "is shadowed by a parameter of the same name");
+            }
+        }
+    }
+
+    /**
+     * The {@code NameExpr}s and {@code this.}/{@code Owner.} field accesses naming {@code fieldName} inside
+     * {@code owner}, nested types included.
+     */
+    static List<Expression> usesOf(TypeDeclaration<?> owner, String fieldName) {
+        List<Expression> uses = new ArrayList<>();
+        for (NameExpr nameExpr : owner.findAll(NameExpr.class)) {
+            if (nameExpr.getNameAsString().equals(fieldName)) {
+                uses.add(nameExpr);
+            }
+        }
+        for (FieldAccessExpr fieldAccess : owner.findAll(FieldAccessExpr.class)) {
+            if (fieldAccess.getNameAsString().equals(fieldName)
+                    && (fieldAccess.getScope() instanceof ThisExpr
+                    || fieldAccess.getScope().toString().equals(owner.getNameAsString()))) {
+                uses.add(fieldAccess);
+            }
+        }
+        return uses;
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resolves type names as written in a file, given its package and imports, to project types known only by name, the
+ * way {@link ProjectIndex} resolves them against the ASTs: types are indexed by fully-qualified name (nested types
+ * included) and by simple name (top-level types only), and the first declaration wins.
+ */
+class TypeDirectory<T> {
+
+    private final Map<String, T> typesByQualifiedName = new HashMap<>();
+    private final Map<String, T> typesBySimpleName = new HashMap<>();
+
+    /**
+     * Adds a type; {@code qualifiedName} is empty for a type without one.
+     */
+    void add(String qualifiedName, String simpleName, boolean topLevel, T type) {
+        if (topLevel) {
+            typesBySimpleName.putIfAbsent(simpleName, type);
+        }
+        if (!qualifiedName.isEmpty()) {
+            typesByQualifiedName.putIfAbsent(qualifiedName, type);
+        }
+    }
+
+    /**
+     * Resolves {@code typeName} as seen from a file of {@code packageName} with {@code imports}, on-demand ones ending
+     * with {@code .*}: an explicit qualified name, then single-type imports, the package and on-demand imports, and
+     * finally the first top-level type with the same simple name.
+     */
+    Optional<T> find(String packageName, List<String> imports, String typeName) {
+        String simpleName = FileAnalysis.simpleName(typeName);
+        if (typeName.contains(".")) {
+            T qualified = typesByQualifiedName.get(typeName);
+            if (qualified != null) {
+                return Optional.of(qualified);
+            }
+        }
+
+        for (String importName : imports) {
+            if (!importName.endsWith(".*") && FileAnalysis.simpleName(importName).equals(simpleName)) {
+                T imported = typesByQualifiedName.get(importName);
+                if (imported != null) {
+                    return Optional.of(imported);
+                }
+            }
+        }
+
+        T samePackage = typesByQualifiedName.get(packageName.isEmpty() ? simpleName : packageName + "." + simpleName);
+        if (samePackage != null) {
+            return Optional.of(samePackage);
+        }
+
+        for (String importName : imports) {
+            if (importName.endsWith(".*")) {
+                T onDemand = typesByQualifiedName.get(importName.substring(0, importName.length() - 1) + simpleName);
+                if (onDemand != null) {
+                    return Optional.of(onDemand);
+                }
+            }
+        }
+
+        return Optional.ofNullable(typesBySimpleName.get(simpleName));
+    }
+}
@@ -2,6 +2,7 @@ import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseResult;
 import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.*;
 import com.github.javaparser.ast.Modifier;
@@ -14,6 +15,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
@@ -24,88 +26,451 @@ public class VirtualThreadRefactorHelper {
 
     public static void main(String[] args) throws IOException {
 
+        var options = CommandLineOptions.parse(args);
+        var refactorOptions = RefactorOptions.fromCommandLine(options);
         var scanner = new Scanner(System.in);
         logger.info("Please input the project directory:");
         var projectDirectory = scanner.nextLine();
-        ParserConfiguration parserConfiguration = new ParserConfiguration();
-        parserConfiguration.setLanguageLevel(JAVA_VERSION);
 
-        JavaParser javaParser = new JavaParser(parserConfiguration);
+        if (options.has("incremental") && options.has("jfr")) {
+            throw new IllegalArgumentException("--jfr cannot be combined with --incremental");
+        }
+        if (options.has("streaming") && (options.has("incremental") || options.has("daemon") || options.has("jfr"))) {
+            throw new IllegalArgumentException("--streaming cannot be combined with --incremental, --daemon or --jfr");
+        }
+        if (options.has("batch") && (options.has("incremental") || options.has("daemon") || options.has("streaming"))) {
+            throw new IllegalArgumentException("--batch cannot be combined with --incremental, --daemon or --streaming");
+        }
+        if (options.has("daemon")) {
+            if (options.has("incremental")) {
+                throw new IllegalArgumentException("--daemon cannot be combined with --incremental");
+            }
+            RefactorDaemon.run(Paths.get(projectDirectory), refactorOptions, options.getInt("daemon-port", 0), scanner);
+            return;
+        }
+        RunMetrics metrics = new RunMetrics();
+        if (options.has("incremental")) {
+            Path cacheFile = Paths.get(options.get("cache", Paths.get(projectDirectory, IncrementalRefactor.DEFAULT_CACHE_FILE).toString()));
+            IncrementalRefactor.run(Paths.get(projectDirectory), cacheFile, options.signature(IncrementalRefactor.EXECUTION_OPTIONS), refactorOptions, metrics);
+        } else if (options.has("batch")) {
+            BatchRefactor.run(Paths.get(projectDirectory), refactorOptions,
+                    options.has("batch-summary") ? Paths.get(options.get("batch-summary", "")) : null, metrics);
+        } else if (options.has("streaming")) {
+            StreamingRefactor.run(Paths.get(projectDirectory), refactorOptions, metrics);
+        } else {
+            List<CompilationUnit> unitList = parseJavaFiles(listJavaFiles(projectDirectory), refactorOptions.parallelism(), metrics);
+            refactorProject(createJavaParser(), unitList, true, refactorOptions, metrics);
+        }
+        metrics.finish(refactorOptions);
 
-        List<CompilationUnit> unitList = parseJavaFiles(javaParser, projectDirectory);
-        for (CompilationUnit cu : unitList) {
-            boolean refactored = refactorToSupportVirtualThreads(javaParser, unitList, cu);
-            if (refactored) {
-                try (FileOutputStream out = new FileOutputStream(Utils.getFilePath(cu))) {
-                    out.write(cu.toString().getBytes());
-                } catch (Exception e) {
-                    logger.warning("Ｆailed to refactor " + cu);
+        logger.info("Java files refactored successfully.");
+
+
+    }
+
+    /**
+     * Refactors {@code unitList} and writes every modified unit back once, with {@code parallelism} writers.
+     * {@code wholeProject} tells whether {@code unitList} is the complete project or only the part of it that needs
+     * to be refactored; in the latter case, the blocking analysis treats calls into types it cannot see as blocking.
+     */
+    public static DirtyUnitTracker.FlushResult refactorProject(JavaParser javaParser, List<CompilationUnit> unitList, boolean wholeProject, RefactorOptions options) {
+        return refactorProject(javaParser, unitList, wholeProject, options, new RunMetrics());
+    }
+
+    /**
+     * Same as {@link #refactorProject(JavaParser, List, boolean, RefactorOptions)}, recording the phases in
+     * {@code metrics}.
+     */
+    public static DirtyUnitTracker.FlushResult refactorProject(JavaParser javaParser, List<CompilationUnit> unitList, boolean wholeProject,
+                                                               RefactorOptions options, RunMetrics metrics) {
+        return write(refactorUnits(javaParser, unitList, wholeProject, options, metrics), options, metrics);
+    }
+
+    /**
+     * Same as {@link #refactorProject(JavaParser, List, boolean, RefactorOptions, RunMetrics)} for a part of the project
+     * whose other files are known by {@code otherFiles}, their call summaries, so that the blocking analysis sees the
+     * whole project.
+     */
+    public static DirtyUnitTracker.FlushResult refactorProject(JavaParser javaParser, List<CompilationUnit> unitList, List<CallSummary> otherFiles,
+                                                               RefactorOptions options, RunMetrics metrics) {
+        return write(refactorUnits(javaParser, unitList, otherFiles, options, metrics), options, metrics);
+    }
+
+    /**
+     * Refactors {@code unitList} in memory like {@link #refactorProject(JavaParser, List, List, RefactorOptions,
+     * RunMetrics)}, and returns the units that need to be written back.
+     */
+    static DirtyUnitTracker refactorUnits(JavaParser javaParser, List<CompilationUnit> unitList, List<CallSummary> otherFiles,
+                                          RefactorOptions options, RunMetrics metrics) {
+        return refactorUnits(javaParser, unitList, () -> BlockingCallAnalysis.analyse(unitList, otherFiles, options.blockingApis()), options, metrics);
+    }
+
+    /**
+     * Writes the units of {@code dirtyUnits} back. Units whose file could not be written stay dirty.
+     */
+    static DirtyUnitTracker.FlushResult write(DirtyUnitTracker dirtyUnits, RefactorOptions options, RunMetrics metrics) {
+        long flushStart = System.nanoTime();
+        DirtyUnitTracker.FlushResult result = metrics.phase("write", () -> dirtyUnits.flush(options.parallelism()));
+        metrics.filesWritten(result);
+        logger.info("Wrote " + result.flushes() + " files (" + result.bytesWritten() + " bytes) in "
+                + (System.nanoTime() - flushStart) / 1_000_000 + " ms");
+        return result;
+    }
+
+    /**
+     * Refactors {@code unitList} in memory in two phases: every unit is planned on its own, then the merged plans are
+     * applied per target unit. Both phases run with {@code parallelism} workers and give the same ASTs as a serial
+     * run. Between them, the site filter's verdicts are turned into one decision per lock, the kind of every converted
+     * lock is chosen and their conditions are planned. Returns the units that
+     * need to be written back.
+     */
+    public static DirtyUnitTracker refactorUnits(JavaParser javaParser, List<CompilationUnit> unitList, boolean wholeProject, RefactorOptions options) {
+        return refactorUnits(javaParser, unitList, wholeProject, options, new RunMetrics());
+    }
+
+    /**
+     * Same as {@link #refactorUnits(JavaParser, List, boolean, RefactorOptions)}, recording the phases and the sites
+     * in {@code metrics}.
+     */
+    public static DirtyUnitTracker refactorUnits(JavaParser javaParser, List<CompilationUnit> unitList, boolean wholeProject,
+                                                 RefactorOptions options, RunMetrics metrics) {
+        return refactorUnits(javaParser, unitList, () -> BlockingCallAnalysis.analyse(unitList, options.blockingApis(), wholeProject), options, metrics);
+    }
+
+    private static DirtyUnitTracker refactorUnits(JavaParser javaParser, List<CompilationUnit> unitList, Supplier<BlockingCallAnalysis> blockingAnalysis,
+                                                  RefactorOptions options, RunMetrics metrics) {
+        ProjectIndex index = metrics.phase("index", () -> ProjectIndex.build(unitList));
+        SiteFilter siteFilter = metrics.phase("site filter", () -> createSiteFilter(index, blockingAnalysis, options));
+        return refactorUnits(javaParser, index, siteFilter, unitList, blockingAnalysis, options, metrics);
+    }
+
+    /**
+     * Plans the synchronized sites of {@code unitList} and decides which locks are converted, without modifying any
+     * AST. {@code index} may contain more units than {@code unitList}, whose types are then targets of lock fields
+     * but whose sites are not planned.
+     */
+    static List<RefactorPlan> planUnits(ProjectIndex index, SiteFilter siteFilter, List<CompilationUnit> unitList, RefactorOptions options, RunMetrics metrics) {
+        List<RefactorPlan> plans = metrics.phase("plan", () -> Parallel.map(unitList, options.parallelism(), cu -> RefactorPlanner.plan(index, siteFilter, cu, options.dynamicMonitors() != DynamicMonitors.Mode.NONE)));
+        metrics.runPhase("decide", () -> {
+            RefactorPlan.convertAcceptedLocks(plans);
+            RefactorPlan.selectLockKinds(plans, index, options.readMostlyLocks());
+            ConditionPlanner.plan(plans);
+        });
+        metrics.sitesPlanned(plans);
+        return plans;
+    }
+
+    static void logPlans(List<RefactorPlan> plans, SiteFilter siteFilter) {
+        logger.info("Planned " + plans.stream().mapToInt(plan -> plan.getPlannedSites().size()).sum() + " synchronized sites in "
+                + plans.size() + " units, visiting " + plans.stream().mapToLong(RefactorPlan::getVisitedNodes).sum() + " nodes");
+        int keptSites = plans.stream().mapToInt(RefactorPlan::getKeptSites).sum();
+        if (keptSites > 0) {
+            logger.info("Kept " + keptSites + " synchronized sites, no site sharing their monitor was selected by " + siteFilter.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Same as {@link #refactorUnits(JavaParser, List, boolean, RefactorOptions, RunMetrics)} with an index and a site
+     * filter that were built beforehand, possibly for more units than {@code unitList}. {@code blockingAnalysis} analyses
+     * {@code unitList} if the executor migration needs it and the site filter is not a blocking analysis.
+     */
+    static DirtyUnitTracker refactorUnits(JavaParser javaParser, ProjectIndex index, SiteFilter siteFilter, List<CompilationUnit> unitList,
+                                          Supplier<BlockingCallAnalysis> blockingAnalysis, RefactorOptions options, RunMetrics metrics) {
+        List<RefactorPlan> plans = planUnits(index, siteFilter, unitList, options, metrics);
+        logPlans(plans, siteFilter);
+        MigrationReport report = new MigrationReport();
+        DirtyUnitTracker dirtyUnits = applyPlansAndMigrate(javaParser, index, siteFilter, unitList, plans, blockingAnalysis, options, metrics, report);
+        writeReport(report, options);
+        return dirtyUnits;
+    }
+
+    /**
+     * Applies {@code plans}, made by {@link #planUnits}, and runs the enabled migrations on {@code unitList}, adding
+     * their findings to {@code report}, see {@link #refactorUnits(JavaParser, ProjectIndex, SiteFilter, List, Supplier,
+     * RefactorOptions, RunMetrics)}. Returns the units that need to be written back.
+     */
+    static DirtyUnitTracker applyPlansAndMigrate(JavaParser javaParser, ProjectIndex index, SiteFilter siteFilter, List<CompilationUnit> unitList,
+                                                 List<RefactorPlan> plans, Supplier<BlockingCallAnalysis> blockingAnalysis, RefactorOptions options, RunMetrics metrics,
+                                                 MigrationReport report) {
+        int parallelism = options.parallelism();
+        DirtyUnitTracker dirtyUnits = new DirtyUnitTracker();
+        metrics.runPhase("apply", () -> {
+            applyPlans(javaParser, index, dirtyUnits, plans, parallelism, options.instrumentedLocks());
+            List<CompilationUnit> lockTableUsers = plans.stream().filter(RefactorPlan::usesLockTable).map(RefactorPlan::getCompilationUnit).toList();
+            if (!lockTableUsers.isEmpty()) {
+                DynamicMonitors.tableClass(options.dynamicMonitors(), options.lockStripes())
+                        .create(javaParser, unitList, lockTableUsers)
+                        .ifPresent(dirtyUnits::markDirty);
+            }
+        });
+
+        if (options.threadLocalCaches()) {
+            // Before the ScopedValue migration, which reports every ThreadLocal that has an initial value.
+            ThreadLocalCacheMigration cacheMigration = new ThreadLocalCacheMigration(report, options.estimatedThreads());
+            metrics.runPhase(ThreadLocalCacheMigration.PASS, () -> {
+                Parallel.map(unitList, parallelism, cu -> {
+                    if (cacheMigration.migrate(cu)) {
+                        dirtyUnits.markDirty(cu);
+                    }
+                    return cu;
+                });
+                cacheMigration.createPoolClass(javaParser, unitList).ifPresent(dirtyUnits::markDirty);
+            });
+        }
+        if (options.scopedValues()) {
+            metrics.runPhase(ScopedValueMigration.PASS, () -> Parallel.map(unitList, parallelism, cu -> {
+                if (ScopedValueMigration.migrate(cu, report)) {
+                    dirtyUnits.markDirty(cu);
                 }
+                return cu;
+            }));
+        }
+        if (options.virtualThreadExecutors()) {
+            metrics.runPhase(ExecutorMigration.PASS, () -> {
+                BlockingCallAnalysis analysis = siteFilter instanceof BlockingCallAnalysis blockingCallAnalysis ? blockingCallAnalysis
+                        : blockingAnalysis.get();
+                ExecutorMigration executorMigration = new ExecutorMigration(report, analysis, index);
+                Parallel.map(unitList, parallelism, cu -> {
+                    if (executorMigration.migrate(cu)) {
+                        dirtyUnits.markDirty(cu);
+                    }
+                    return cu;
+                });
+                executorMigration.createLimiterClass(javaParser, unitList).ifPresent(dirtyUnits::markDirty);
+            });
+        }
+        return dirtyUnits;
+    }
+
+    static void writeReport(MigrationReport report, RefactorOptions options) {
+        report.log(logger);
+        if (options.reportFile() != null) {
+            try {
+                report.write(options.reportFile());
+                logger.info("Wrote " + report.getEntries().size() + " report entries to " + options.reportFile());
+            } catch (IOException e) {
+                logger.warning("Failed to write report " + options.reportFile() + ": " + e);
             }
         }
+    }
 
-        logger.info("Java files refactored successfully.");
+    /**
+     * Refactors every synchronized site of {@code unitList}, without blocking analysis.
+     */
+    public static DirtyUnitTracker refactorUnits(JavaParser javaParser, List<CompilationUnit> unitList, int parallelism) {
+        return refactorUnits(javaParser, unitList, true, RefactorOptions.allSites(parallelism));
+    }
 
+    /**
+     * Sites seen pinning in the JFR recording if there is one, otherwise the sites that may block, as decided by
+     * {@code blockingAnalysis}, or all sites.
+     */
+    static SiteFilter createSiteFilter(ProjectIndex index, Supplier<BlockingCallAnalysis> blockingAnalysis, RefactorOptions options) {
+        if (options.pinnedEvents() != null) {
+            try {
+                return PinnedSiteProfile.load(options.pinnedEvents(), index, options.topPinnedSites(), options.minimumPinnedTime());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read JFR recording " + options.pinnedEvents(), e);
+            }
+        }
+        if (options.blockingAnalysis()) {
+            long analysisStart = System.nanoTime();
+            BlockingCallAnalysis analysis = blockingAnalysis.get();
+            logger.info("Analysed blocking calls in " + (System.nanoTime() - analysisStart) / 1_000_000 + " ms");
+            return analysis;
+        }
+        return SiteFilter.ALL_SITES;
+    }
 
+    public static JavaParser createJavaParser() {
+        ParserConfiguration parserConfiguration = new ParserConfiguration();
+        parserConfiguration.setLanguageLevel(JAVA_VERSION);
+        return new JavaParser(parserConfiguration);
     }
 
     public static List<CompilationUnit> parseJavaFiles(JavaParser javaParser, String projectPath) {
+        return parseJavaFiles(javaParser, listJavaFiles(projectPath), new RunMetrics());
+    }
+
+    static List<CompilationUnit> parseJavaFiles(List<Path> paths, int parallelism, RunMetrics metrics) {
+        long parseStart = System.nanoTime();
+        List<CompilationUnit> unitList = metrics.phase("parse", () -> parallelism > 1
+                ? parseJavaFiles(VirtualThreadRefactorHelper::createJavaParser, paths, parallelism, metrics)
+                : parseJavaFiles(createJavaParser(), paths, metrics));
+        logger.info("Parsed " + unitList.size() + " files in " + (System.nanoTime() - parseStart) / 1_000_000 + " ms with parallelism " + parallelism);
+        return unitList;
+    }
+
+    private static List<CompilationUnit> parseJavaFiles(JavaParser javaParser, List<Path> paths, RunMetrics metrics) {
         List<CompilationUnit> compilationUnits = new ArrayList<>();
+        for (Path path : paths) {
+            parseJavaFile(javaParser, path, metrics).ifPresent(compilationUnits::add);
+        }
+        return compilationUnits;
+    }
 
+    /**
+     * Parses the project with a fixed pool of {@code parallelism} workers. JavaParser is not thread-safe, so every
+     * worker parses with its own parser from {@code parserFactory}. Results are collected in the same order as
+     * {@link #parseJavaFiles(JavaParser, String)}, so both paths return identical lists.
+     */
+    public static List<CompilationUnit> parseJavaFiles(Supplier<JavaParser> parserFactory, String projectPath, int parallelism) {
+        return parseJavaFiles(parserFactory, listJavaFiles(projectPath), parallelism, new RunMetrics());
+    }
+
+    private static List<CompilationUnit> parseJavaFiles(Supplier<JavaParser> parserFactory, List<Path> paths, int parallelism, RunMetrics metrics) {
+        ThreadLocal<JavaParser> workerParser = ThreadLocal.withInitial(parserFactory);
+        List<CompilationUnit> compilationUnits = new ArrayList<>(paths.size());
+        for (Optional<CompilationUnit> result : Parallel.map(paths, parallelism, path -> parseJavaFile(workerParser.get(), path, metrics))) {
+            result.ifPresent(compilationUnits::add);
+        }
+        return compilationUnits;
+    }
+
+    static List<Path> listJavaFiles(String projectPath) {
         try (Stream<Path> pathsStream = Files.walk(Paths.get(projectPath))) {
-            pathsStream.filter(path -> path.toString().endsWith(".java"))
-                    .filter(path -> !path.toString().endsWith("Tests.java"))
-                    .filter(path -> !path.toString().endsWith("Test.java"))
-                    .forEach(path -> {
-                        try {
-                            ParseResult<CompilationUnit> parseResult = javaParser.parse(path);
-                            if (parseResult.isSuccessful()) {
-                                compilationUnits.add(parseResult.getResult().orElseThrow());
-                            } else {
-                                logger.warning("Error parsing file: " + path);
-                                parseResult.getProblems().forEach(error -> logger.warning(error.toString()));
-                            }
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    });
+            return pathsStream.filter(VirtualThreadRefactorHelper::isRefactoredFile)
+                    .sorted()
+                    .toList();
         } catch (IOException e) {
             e.printStackTrace();
+            return List.of();
         }
+    }
 
-        return compilationUnits;
+    /**
+     * Whether {@code path} is a Java source file to refactor: test classes are left alone.
+     */
+    static boolean isRefactoredFile(Path path) {
+        return path.toString().endsWith(".java") && !path.toString().endsWith("Tests.java") && !path.toString().endsWith("Test.java");
     }
 
-    public static boolean refactorToSupportVirtualThreads(JavaParser javaParser, List<CompilationUnit> unitList, CompilationUnit cu) throws IOException {
-        boolean refactored = false;
-        for (TypeDeclaration<?> type : cu.getTypes()) {
-            for (MethodDeclaration method : type.findAll(MethodDeclaration.class)) {
-                if (method.isSynchronized()) {
-                    refactorSynchronizedMethods(javaParser, cu, type, method);
-                    refactored = true;
-                }
+    private static Optional<CompilationUnit> parseJavaFile(JavaParser javaParser, Path path, RunMetrics metrics) {
+        return metrics.parseFile(path, () -> parseJavaFile(javaParser, path), Optional::isPresent);
+    }
 
-                if (method.getBody().isPresent()) {
-                    for (Statement statement : method.getBody().orElseThrow().getStatements()) {
-                        if (statement.isSynchronizedStmt()) {
-                            refactorSynchronizeBlocks(javaParser, unitList, cu, type, method, (SynchronizedStmt) statement);
-                            refactored = true;
-                        }
-                    }
-                }
+    static Optional<CompilationUnit> parseJavaFile(JavaParser javaParser, Path path) {
+        try {
+            ParseResult<CompilationUnit> parseResult = javaParser.parse(path);
+            if (parseResult.isSuccessful()) {
+                return parseResult.getResult();
             }
+            logger.warning("Error parsing file: " + path);
+            parseResult.getProblems().forEach(error -> logger.warning(error.toString()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return Optional.empty();
+    }
+
+    public static boolean refactorToSupportVirtualThreads(JavaParser javaParser, ProjectIndex index, DirtyUnitTracker dirtyUnits, CompilationUnit cu) {
+        RefactorPlan plan = RefactorPlanner.plan(index, SiteFilter.ALL_SITES, cu);
+        RefactorPlan.convertAcceptedLocks(List.of(plan));
+        ConditionPlanner.plan(List.of(plan));
+        applyPlans(javaParser, index, dirtyUnits, List.of(plan), 1, false);
+        return !plan.isEmpty();
+    }
+
+    private record UnitChanges(CompilationUnit cu, List<RefactorPlan.LockFieldRequest> lockFieldRequests, List<RefactorPlan.SiteRewrite> siteRewrites,
+                               List<RefactorPlan.ConditionFieldRequest> conditionFieldRequests, List<RefactorPlan.MonitorCallRewrite> monitorCallRewrites) {
+    }
+
+    private static void applyPlans(JavaParser javaParser, ProjectIndex index, DirtyUnitTracker dirtyUnits, List<RefactorPlan> plans, int parallelism,
+                                   boolean instrumentedLocks) {
+        Map<CompilationUnit, UnitChanges> changesByUnit = new IdentityHashMap<>();
+        List<UnitChanges> changes = new ArrayList<>();
+        for (RefactorPlan plan : plans) {
+            UnitChanges unitChanges = new UnitChanges(plan.getCompilationUnit(), new ArrayList<>(), plan.getSiteRewrites(),
+                    new ArrayList<>(), plan.getMonitorCallRewrites());
+            changesByUnit.put(plan.getCompilationUnit(), unitChanges);
+            changes.add(unitChanges);
+        }
+        for (RefactorPlan.LockFieldRequest request : RefactorPlan.mergeLockFieldRequests(plans)) {
+            targetChanges(changesByUnit, changes, request.targetUnit()).lockFieldRequests().add(request);
         }
-        return refactored;
+        for (RefactorPlan.ConditionFieldRequest request : RefactorPlan.mergeConditionFieldRequests(plans)) {
+            targetChanges(changesByUnit, changes, request.targetUnit()).conditionFieldRequests().add(request);
+        }
+
+        ThreadLocal<JavaParser> workerParser = ThreadLocal.withInitial(VirtualThreadRefactorHelper::createJavaParser);
+        Parallel.map(changes, parallelism, unitChanges -> {
+            applyChanges(parallelism > 1 ? workerParser.get() : javaParser, index, dirtyUnits, unitChanges, instrumentedLocks);
+            return unitChanges;
+        });
     }
 
-    private static void refactorSynchronizedMethods(JavaParser javaParser, CompilationUnit cu, TypeDeclaration<?> type, MethodDeclaration method) {
-        String lockName = ReentrantLockFactory.getReentrantLockName(type, method.isStatic());
-        NodeList<BodyDeclaration<?>> members = type.getMembers();
-        if (Utils.hasNoField(members, lockName)) {
-            members.add(0, ReentrantLockFactory.createReentrantLock(javaParser, cu, type, method.isStatic()));
+    private static UnitChanges targetChanges(Map<CompilationUnit, UnitChanges> changesByUnit, List<UnitChanges> changes, CompilationUnit targetUnit) {
+        return changesByUnit.computeIfAbsent(targetUnit, cu -> {
+            UnitChanges targetOnly = new UnitChanges(cu, new ArrayList<>(), List.of(), new ArrayList<>(), List.of());
+            changes.add(targetOnly);
+            return targetOnly;
+        });
+    }
+
+    /**
+     * Applies the changes of one unit. Only that unit is modified, so different units can be applied concurrently.
+     * With {@code instrumentedLocks}, new {@code ReentrantLock} fields are initialised with instrumented locks.
+     */
+    private static void applyChanges(JavaParser javaParser, ProjectIndex index, DirtyUnitTracker dirtyUnits, UnitChanges changes, boolean instrumentedLocks) {
+        boolean modified = !changes.siteRewrites().isEmpty();
+        for (RefactorPlan.LockFieldRequest request : changes.lockFieldRequests()) {
+            final FieldDeclaration lockFiled;
+            if (!index.hasField(request.targetType(), request.lockName())) {
+                lockFiled = instrumentedLocks && request.kind() == RefactorPlan.LockKind.REENTRANT
+                        ? ReentrantLockFactory.createInstrumentedLock(javaParser, changes.cu(), request.targetType(), request.lockName(), request.isStatic())
+                        : ReentrantLockFactory.createLock(javaParser, changes.cu(), request.lockName(), request.isStatic(), request.kind());
+                index.addField(request.targetType(), lockFiled);
+            } else {
+                lockFiled = index.getField(request.targetType(), request.lockName()).orElseThrow();
+            }
+            if (request.isPublic()) {
+                changeFieldToPublic(lockFiled);
+                modified = true;
+            }
+        }
+
+        // Each condition follows its lock, or the previous condition of the lock.
+        Map<TypeDeclaration<?>, Map<String, FieldDeclaration>> lastFields = new IdentityHashMap<>();
+        for (RefactorPlan.ConditionFieldRequest request : changes.conditionFieldRequests()) {
+            final FieldDeclaration conditionField;
+            if (!index.hasField(request.targetType(), request.conditionName())) {
+                conditionField = ReentrantLockFactory.createCondition(javaParser, changes.cu(), request.conditionName(), request.lockName(), request.isStatic());
+                Map<String, FieldDeclaration> lastFieldsOfType = lastFields.computeIfAbsent(request.targetType(), type -> new HashMap<>());
+                FieldDeclaration previous = lastFieldsOfType.computeIfAbsent(request.lockName(),
+                        lockName -> index.getField(request.targetType(), lockName).orElseThrow());
+                index.addFieldAfter(request.targetType(), previous, conditionField);
+                lastFieldsOfType.put(request.lockName(), conditionField);
+                modified = true;
+            } else {
+                conditionField = index.getField(request.targetType(), request.conditionName()).orElseThrow();
+            }
+            if (request.isPublic()) {
+                changeFieldToPublic(conditionField);
+                modified = true;
+            }
+        }
+
+        for (RefactorPlan.SiteRewrite rewrite : changes.siteRewrites()) {
+            if (rewrite.access() == RefactorPlan.LockAccess.OPTIMISTIC_READ) {
+                readOptimistically(javaParser, rewrite);
+            } else if (rewrite instanceof RefactorPlan.MethodRewrite methodRewrite) {
+                removeSynchronizedKeyword(methodRewrite.method());
+                wrapMethodBodyWithLockAndUnlockStatements(javaParser, methodRewrite.method(), methodRewrite.lockExpression(), methodRewrite.access());
+            } else if (rewrite instanceof RefactorPlan.BlockRewrite blockRewrite) {
+                refactorSyncBlockWithLock(javaParser, blockRewrite.statement(), blockRewrite.lockExpression(), blockRewrite.access());
+            } else if (rewrite instanceof RefactorPlan.TableBlockRewrite tableRewrite) {
+                refactorSyncBlockWithTableLock(javaParser, changes.cu(), tableRewrite);
+            }
+        }
+
+        for (RefactorPlan.MonitorCallRewrite rewrite : changes.monitorCallRewrites()) {
+            rewriteMonitorCall(changes.cu(), rewrite);
+            modified = true;
+        }
+
+        if (modified) {
+            dirtyUnits.markDirty(changes.cu());
         }
-        removeSynchronizedKeyword(method);
-        wrapMethodBodyWithLockAndUnlockStatements(method, lockName);
     }
 
     private static void removeSynchronizedKeyword(MethodDeclaration method) {
@@ -118,93 +483,164 @@ public class VirtualThreadRefactorHelper {
         modifiers.remove(synchronizedKeyword);
     }
 
-    private static void wrapMethodBodyWithLockAndUnlockStatements(MethodDeclaration method, String lockName) {
-        BlockStmt newBody = new BlockStmt();
-        newBody.addStatement(new NameExpr(lockName + ".lock()"));
+    private static void wrapMethodBodyWithLockAndUnlockStatements(JavaParser javaParser, MethodDeclaration method, String lockName, RefactorPlan.LockAccess access) {
         BlockStmt originalBody = method.getBody().orElseThrow(() -> new IllegalStateException("Method body not found"));
-
-        BlockStmt finallyBlock = new BlockStmt();
-        finallyBlock.addStatement(new NameExpr(lockName + ".unlock()"));
-        newBody.addStatement(new TryStmt(originalBody, new NodeList<>(), finallyBlock));
-        method.setBody(newBody);
+        // Replaced first: setBody detaches the previous body, which would leave it out of the try statement's children.
+        method.setBody(new BlockStmt());
+        method.setBody(lockAndUnlock(javaParser, method, originalBody, lockName, access));
     }
 
-    private static void refactorSynchronizeBlocks(JavaParser javaParser, List<CompilationUnit> unitList, CompilationUnit cu, TypeDeclaration<?> type, MethodDeclaration method, SynchronizedStmt statement) throws IOException {
-        Expression expression = statement.getExpression();
-        if (expression instanceof ThisExpr) {
-            refactorSynchronizeBlockUsingThis(javaParser, cu, type, method, statement);
-
-        } else if (expression instanceof NameExpr nameExpr) {
-            refactorSynchronizeBlockUsingField(javaParser, unitList, cu, type, method, statement, nameExpr);
-
-        } else if (expression instanceof ClassExpr classExpr) {
-            ClassOrInterfaceType classType = (ClassOrInterfaceType) classExpr.getType();
-            SimpleName className = classType.getName();
-            CompilationUnit unitDefinedType = Utils.getCompilationUnitByName(unitList, className).orElseThrow();
-            refactorSynchronizeBlockUsingLockFromClassOrComponent(javaParser, unitDefinedType, classType, method, statement, className.asString(), true);
+    private static void refactorSyncBlockWithLock(JavaParser javaParser, SynchronizedStmt statement, String lockName, RefactorPlan.LockAccess access) {
+        // The body is moved, not copied, so that the sites nested in it are still the planned nodes.
+        statement.replace(lockAndUnlock(javaParser, statement, statement.getBody(), lockName, access));
+    }
 
-        }
+    /**
+     * Takes the lock of the monitor from the lock table before the block, so that the monitor expression is evaluated
+     * once, as by {@code synchronized}.
+     */
+    private static void refactorSyncBlockWithTableLock(JavaParser javaParser, CompilationUnit cu, RefactorPlan.TableBlockRewrite rewrite) {
+        SynchronizedStmt statement = rewrite.statement();
+        String lockName = freshName(statement, DynamicMonitors.LOCK_VARIABLE);
+        cu.addImport("java.util.concurrent.locks.ReentrantLock");
+        Statement lockVariable = javaParser.parseStatement("ReentrantLock " + lockName + " = " + rewrite.lockExpression() + ";").getResult().orElseThrow();
+        BlockStmt block = lockAndUnlock(javaParser, statement, statement.getBody(), lockName, rewrite.access());
+        block.addStatement(0, lockVariable);
+        statement.replace(block);
     }
 
-    private static void refactorSynchronizeBlockUsingThis(JavaParser javaParser, CompilationUnit cu, TypeDeclaration<?> type, MethodDeclaration method, SynchronizedStmt statement) {
-        String lockName = ReentrantLockFactory.getReentrantLockName(type, false);
-        if (Utils.hasNoField(type.getMembers(), lockName)) {
-            FieldDeclaration lockFiled = ReentrantLockFactory.createReentrantLock(javaParser, cu, type, false);
-            type.getMembers().add(0, lockFiled);
+    /**
+     * Runs {@code body} between acquiring and releasing the lock {@code lockName} the way {@code access} says.
+     * {@code StampedLock} stamps are kept in a variable that is not used in the method yet.
+     */
+    private static BlockStmt lockAndUnlock(JavaParser javaParser, Node site, BlockStmt body, String lockName, RefactorPlan.LockAccess access) {
+        BlockStmt newBody = new BlockStmt();
+        BlockStmt finallyBlock = new BlockStmt();
+        switch (access) {
+            case EXCLUSIVE -> {
+                newBody.addStatement(new NameExpr(lockName + ".lock()"));
+                finallyBlock.addStatement(new NameExpr(lockName + ".unlock()"));
+            }
+            case READ, WRITE -> {
+                String readOrWriteLock = lockName + (access == RefactorPlan.LockAccess.READ ? ".readLock()" : ".writeLock()");
+                newBody.addStatement(new NameExpr(readOrWriteLock + ".lock()"));
+                finallyBlock.addStatement(new NameExpr(readOrWriteLock + ".unlock()"));
+            }
+            case STAMPED_READ, STAMPED_WRITE -> {
+                String stamp = freshName(site, "stamp");
+                String mode = access == RefactorPlan.LockAccess.STAMPED_READ ? "Read" : "Write";
+                newBody.addStatement(javaParser.parseStatement("long " + stamp + " = " + lockName + "." + mode.toLowerCase() + "Lock();").getResult().orElseThrow());
+                finallyBlock.addStatement(new NameExpr(lockName + ".unlock" + mode + "(" + stamp + ")"));
+            }
+            default -> throw new IllegalArgumentException("Not a locking access: " + access);
         }
-        refactorSyncBlockWithLock(method, statement, lockName);
+        newBody.addStatement(new TryStmt(body, new NodeList<>(), finallyBlock));
+        return newBody;
     }
 
-    private static void refactorSynchronizeBlockUsingField(JavaParser javaParser, List<CompilationUnit> unitList, CompilationUnit cu, TypeDeclaration<?> type, MethodDeclaration method, SynchronizedStmt statement, NameExpr nameExpr) throws IOException {
-        SimpleName lockObjectName = nameExpr.getName();
-        FieldDeclaration lockObjectField = Utils.getFieldDeclaration(type.getMembers(), lockObjectName);
-        ClassOrInterfaceType typeOfLockObjectField = (ClassOrInterfaceType) lockObjectField.getElementType();
-        Optional<CompilationUnit> unitDefinedType = Utils.getCompilationUnitByName(unitList, typeOfLockObjectField.getName());
+    /**
+     * Computes the returned value of a read-only site without locking, and again under the read lock if a writer
+     * acquired the lock in the meantime, as in the {@code StampedLock} documentation.
+     */
+    private static void readOptimistically(JavaParser javaParser, RefactorPlan.SiteRewrite rewrite) {
+        Node site = rewrite.site();
+        MethodDeclaration method = site instanceof MethodDeclaration declaration ? declaration : Declarations.ancestor(site, MethodDeclaration.class).orElseThrow();
+        BlockStmt body = site instanceof SynchronizedStmt statement ? statement.getBody() : method.getBody().orElseThrow();
+        Expression value = ((ReturnStmt) body.getStatement(0)).getExpression().orElseThrow();
+        String lockName = rewrite.lockExpression();
+        String stamp = freshName(site, "stamp");
+        String result = freshName(site, "value");
 
-        if (unitDefinedType.isPresent()) {
-            refactorSynchronizeBlockUsingLockFromClassOrComponent(javaParser, unitDefinedType.orElseThrow(), typeOfLockObjectField, method, statement, lockObjectName.asString(), false);
+        BlockStmt newBody = new BlockStmt();
+        newBody.addStatement(javaParser.parseStatement("long " + stamp + " = " + lockName + ".tryOptimisticRead();").getResult().orElseThrow());
+        newBody.addStatement(new ExpressionStmt(new VariableDeclarationExpr(new VariableDeclarator(method.getType().clone(), result, value.clone()))));
+        BlockStmt lockedRead = new BlockStmt();
+        lockedRead.addStatement(javaParser.parseStatement(stamp + " = " + lockName + ".readLock();").getResult().orElseThrow());
+        BlockStmt read = new BlockStmt();
+        read.addStatement(new AssignExpr(new NameExpr(result), value.clone(), AssignExpr.Operator.ASSIGN));
+        BlockStmt finallyBlock = new BlockStmt();
+        finallyBlock.addStatement(new NameExpr(lockName + ".unlockRead(" + stamp + ")"));
+        lockedRead.addStatement(new TryStmt(read, new NodeList<>(), finallyBlock));
+        newBody.addStatement(new IfStmt(javaParser.parseExpression("!" + lockName + ".validate(" + stamp + ")").getResult().orElseThrow(), lockedRead, null));
+        newBody.addStatement(new ReturnStmt(new NameExpr(result)));
+
+        if (site instanceof MethodDeclaration) {
+            removeSynchronizedKeyword(method);
+            method.setBody(newBody);
         } else {
-            refactorSynchronizeBlockUsingObject(javaParser, cu, type, method, statement, lockObjectName);
+            site.replace(newBody);
         }
     }
 
-    private static void refactorSynchronizeBlockUsingLockFromClassOrComponent(JavaParser javaParser, CompilationUnit unitDefinedType, ClassOrInterfaceType classType, MethodDeclaration method, SynchronizedStmt statement, String lockNamePrefix, boolean isStatic) throws IOException {
-        TypeDeclaration<?> typeDeclaration = Utils.getTypeDeclaration(unitDefinedType, classType.getName());
-        String lockName = ReentrantLockFactory.getReentrantLockName(typeDeclaration, isStatic);
-        final FieldDeclaration lockFiled;
-        if (Utils.hasNoField(typeDeclaration.getMembers(), lockName)) {
-            lockFiled = ReentrantLockFactory.createReentrantLock(javaParser, unitDefinedType, typeDeclaration, isStatic);
-            typeDeclaration.getMembers().add(0, lockFiled);
-        } else {
-            lockFiled = Utils.getField(typeDeclaration.getMembers(), lockName);
+    /**
+     * {@code base}, or {@code base} with a number, so that it is not used anywhere in the member declaring
+     * {@code site} yet.
+     */
+    private static String freshName(Node site, String base) {
+        Node member = site instanceof BodyDeclaration<?> ? site : Declarations.enclosingMember(site).orElseThrow();
+        Set<String> usedNames = new HashSet<>();
+        member.findAll(SimpleName.class).forEach(name -> usedNames.add(name.asString()));
+        String name = base;
+        for (int i = 2; usedNames.contains(name); i++) {
+            name = base + i;
         }
-        changeFieldToPublic(lockFiled);
-        try (FileOutputStream out = new FileOutputStream(Utils.getFilePath(unitDefinedType))) {
-            out.write(unitDefinedType.toString().getBytes());
-        }
-
-        refactorSyncBlockWithLock(method, statement, lockNamePrefix + "." + lockName);
+        return name;
     }
 
-    private static void refactorSynchronizeBlockUsingObject(JavaParser javaParser, CompilationUnit cu, TypeDeclaration<?> type, MethodDeclaration method, SynchronizedStmt statement, SimpleName lockObjectName) {
-        String lockName = ReentrantLockFactory.getReentrantLockName(lockObjectName.asString());
-        if (Utils.hasNoField(type.getMembers(), lockName)) {
-            FieldDeclaration lockFiled = ReentrantLockFactory.createReentrantLock(javaParser, cu, lockObjectName.asString());
-            type.getMembers().add(0, lockFiled);
+    /**
+     * Turns a {@code wait} into {@code await} on its condition. A timeout of 0 waits forever with {@code wait}, so a
+     * timeout that is not a literal becomes {@link Long#MAX_VALUE} when it is 0. A {@code notify} or {@code notifyAll}
+     * becomes one {@code signal} or {@code signalAll} per condition it wakes.
+     */
+    private static void rewriteMonitorCall(CompilationUnit cu, RefactorPlan.MonitorCallRewrite rewrite) {
+        MethodCallExpr call = rewrite.call();
+        if (rewrite.method().equals("await")) {
+            call.setScope(new NameExpr(rewrite.conditionExpressions().get(0)));
+            call.setName("await");
+            if (call.getArguments().isEmpty()) {
+                return;
+            }
+            Expression timeout = call.getArgument(0);
+            if (timeout instanceof IntegerLiteralExpr || timeout instanceof LongLiteralExpr) {
+                long milliseconds = timeout instanceof IntegerLiteralExpr integer ? integer.asNumber().longValue()
+                        : ((LongLiteralExpr) timeout).asNumber().longValue();
+                if (milliseconds == 0) {
+                    call.getArguments().clear();
+                    return;
+                }
+            } else {
+                call.setArgument(0, new ConditionalExpr(
+                        new BinaryExpr(timeout.clone(), new IntegerLiteralExpr("0"), BinaryExpr.Operator.EQUALS),
+                        new NameExpr("Long.MAX_VALUE"), timeout.clone()));
+            }
+            cu.addImport("java.util.concurrent.TimeUnit");
+            call.addArgument(new NameExpr("TimeUnit.MILLISECONDS"));
+            return;
         }
-        refactorSyncBlockWithLock(method, statement, lockName);
-    }
 
-    private static void refactorSyncBlockWithLock(MethodDeclaration method, SynchronizedStmt statement, String lockName) {
-        BlockStmt statementInsideBlock = new BlockStmt();
-        statementInsideBlock.addStatement(statement.getBody().getStatements().get(0));
-
-        BlockStmt newBody = new BlockStmt();
-        newBody.addStatement(new NameExpr(lockName + ".lock()"));
-        BlockStmt finallyBlock = new BlockStmt();
-        finallyBlock.addStatement(new NameExpr(lockName + ".unlock()"));
-        newBody.addStatement(new TryStmt(statementInsideBlock, new NodeList<>(), finallyBlock));
-        method.getBody().orElseThrow().replace(statement, newBody);
+        List<String> conditions = rewrite.conditionExpressions();
+        call.setScope(new NameExpr(conditions.get(0)));
+        call.setName(rewrite.method());
+        if (conditions.size() == 1) {
+            return;
+        }
+        Statement statement = (Statement) call.getParentNode().orElseThrow();
+        List<Statement> signals = new ArrayList<>();
+        for (String condition : conditions.subList(1, conditions.size())) {
+            signals.add(new ExpressionStmt(new MethodCallExpr(new NameExpr(condition), rewrite.method())));
+        }
+        if (statement.getParentNode().orElse(null) instanceof BlockStmt block) {
+            int position = 0;
+            while (block.getStatement(position) != statement) {
+                position++;
+            }
+            block.getStatements().addAll(position + 1, signals);
+        } else {
+            BlockStmt signalBlock = new BlockStmt();
+            statement.replace(signalBlock);
+            signalBlock.addStatement(statement);
+            signals.forEach(signalBlock::addStatement);
+        }
     }
 
     private static void changeFieldToPublic(FieldDeclaration field) {
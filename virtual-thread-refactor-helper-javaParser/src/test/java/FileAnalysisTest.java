@@ -0,0 +1,50 @@
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FileAnalysisTest {
+
+    @Test
+    void testEveryLockKindIsALockField() {
+        CompilationUnit cu = StaticJavaParser.parse("""
+                import java.util.concurrent.locks.*;
+                class Foo {
+                    ReentrantLock fooLock;
+                    ReentrantReadWriteLock fooReadWriteLock;
+                    StampedLock fooStampedLock;
+                    Object other;
+                }
+                """);
+        assertEquals(Map.of("Foo", List.of("fooLock", "fooReadWriteLock", "fooStampedLock")), FileAnalysis.of(cu).lockFields());
+    }
+
+    @Test
+    void testReadWriteAndStampedLockCallsAreMonitorDependencies() {
+        CompilationUnit cu = StaticJavaParser.parse("""
+                class Bar {
+                    Foo foo;
+                    Boo boo;
+
+                    void read() {
+                        foo.fooLock.readLock().lock();
+                        try {
+                        } finally {
+                            foo.fooLock.readLock().unlock();
+                        }
+                        long stamp = boo.booLock.tryOptimisticRead();
+                        if (!boo.booLock.validate(stamp)) {
+                            stamp = boo.booLock.readLock();
+                            boo.booLock.unlockRead(stamp);
+                        }
+                    }
+                }
+                """);
+        assertEquals(Set.of("Foo", "Boo"), FileAnalysis.of(cu).monitorTypes());
+    }
+}
@@ -0,0 +1,62 @@
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GeneratedClassTest {
+
+    private static final GeneratedClass HELPER = new GeneratedClass("Helper", """
+            /**
+             * A helper.
+             */
+            public final class Helper {
+            }
+            """, List.of());
+
+    @TempDir
+    Path projectRoot;
+
+    private final JavaParser javaParser = VirtualThreadRefactorHelper.createJavaParser();
+
+    @Test
+    void testHelperIsGeneratedInANamedPackageAndImportedFromTheDefaultPackage() throws IOException {
+        CompilationUnit named = parse("p/Foo.java", "package p;\n\npublic class Foo {\n}\n");
+        CompilationUnit unnamed = parse("Bar.java", "public class Bar {\n}\n");
+        CompilationUnit generated = HELPER.create(javaParser, List.of(unnamed, named), List.of(unnamed, named)).orElseThrow();
+        assertEquals("p", generated.getPackageDeclaration().orElseThrow().getNameAsString());
+        assertTrue(generated.getType(0).getJavadocComment().orElseThrow().getContent().contains(GeneratedClass.MARKER));
+        assertTrue(unnamed.getImports().stream().anyMatch(importDeclaration -> importDeclaration.getNameAsString().equals("p.Helper")));
+    }
+
+    @Test
+    void testProjectClassOfTheSameNameIsNotReused() throws IOException {
+        CompilationUnit user = parse("p/Foo.java", "package p;\n\npublic class Foo {\n}\n");
+        CompilationUnit existing = parse("p/Helper.java", "package p;\n\npublic class Helper {\n}\n");
+        assertThrows(IllegalStateException.class, () -> HELPER.create(javaParser, List.of(user, existing), List.of(user)));
+    }
+
+    @Test
+    void testGeneratedClassOnDiskIsReused() throws IOException {
+        CompilationUnit user = parse("p/Foo.java", "package p;\n\npublic class Foo {\n}\n");
+        Files.writeString(projectRoot.resolve("p/Helper.java"), "package p;\n\n/**\n * " + GeneratedClass.MARKER + "\n */\npublic class Helper {\n}\n",
+                StandardCharsets.UTF_8);
+        assertTrue(HELPER.create(javaParser, List.of(user), List.of(user)).isEmpty());
+    }
+
+    private CompilationUnit parse(String name, String content) throws IOException {
+        Path path = projectRoot.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content, StandardCharsets.UTF_8);
+        return VirtualThreadRefactorHelper.parseJavaFile(javaParser, path).orElseThrow();
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParallelRefactorTest {
+
+    private static final Path FIXTURES = Path.of("test/java");
+
+    @TempDir
+    Path serialRoot;
+
+    @TempDir
+    Path parallelRoot;
+
+    @Test
+    void testParallelRunWritesTheSameFilesAsSerialRun() throws IOException {
+        assertSameFiles(new String[0]);
+    }
+
+    @Test
+    void testParallelRunWithMigrationsWritesTheSameFilesAsSerialRun() throws IOException {
+        assertSameFiles(new String[]{"--thread-local-caches", "--scoped-values", "--virtual-thread-executors"});
+    }
+
+    private void assertSameFiles(String[] args) throws IOException {
+        RefactorOptions options = RefactorOptions.fromCommandLine(CommandLineOptions.parse(args));
+        refactor(serialRoot, options.withParallelism(1));
+        refactor(parallelRoot, options.withParallelism(4));
+
+        List<Path> serialFiles = relativeFiles(serialRoot);
+        assertEquals(serialFiles, relativeFiles(parallelRoot));
+        for (Path file : serialFiles) {
+            assertEquals(Files.readString(serialRoot.resolve(file)), Files.readString(parallelRoot.resolve(file)), file.toString());
+        }
+    }
+
+    private static void refactor(Path projectRoot, RefactorOptions options) throws IOException {
+        copyFixtures(projectRoot);
+        RunMetrics metrics = new RunMetrics();
+        List<Path> paths = VirtualThreadRefactorHelper.listJavaFiles(projectRoot.toString());
+        VirtualThreadRefactorHelper.refactorProject(VirtualThreadRefactorHelper.createJavaParser(),
+                VirtualThreadRefactorHelper.parseJavaFiles(paths, options.parallelism(), metrics), true, options, metrics);
+    }
+
+    private static void copyFixtures(Path projectRoot) throws IOException {
+        try (Stream<Path> fixtures = Files.walk(FIXTURES)) {
+            for (Path fixture : fixtures.filter(Files::isRegularFile).toList()) {
+                Path copy = projectRoot.resolve(FIXTURES.relativize(fixture).toString());
+                Files.createDirectories(copy.getParent());
+                Files.copy(fixture, copy);
+            }
+        }
+    }
+
+    private static List<Path> relativeFiles(Path projectRoot) throws IOException {
+        try (Stream<Path> files = Files.walk(projectRoot)) {
+            return files.filter(Files::isRegularFile).map(projectRoot::relativize).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RefactorDaemonTest {
+
+    @TempDir
+    Path projectRoot;
+
+    @Test
+    void testCallerIsRefactoredWhenItsCalleeStartsBlocking() throws IOException {
+        Path caller = write("A.java", """
+                public class A {
+                    private final B b = new B();
+
+                    synchronized void run() {
+                        b.work();
+                    }
+                }
+                """);
+        Path callee = write("B.java", """
+                public class B {
+                    void work() {
+                        int x = 1;
+                    }
+                }
+                """);
+        RefactorDaemon daemon = RefactorDaemon.load(projectRoot, RefactorOptions.fromCommandLine(CommandLineOptions.parse(new String[0])));
+        assertTrue(daemon.handle("refactor", output()).startsWith("OK"));
+        assertTrue(Files.readString(caller).contains("synchronized void run()"));
+
+        write("B.java", """
+                public class B {
+                    void work() {
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                }
+                """);
+        daemon.changed(callee);
+        assertTrue(daemon.handle("dry-run", output()).startsWith("OK would convert 1 sites in 2 files"));
+        assertTrue(daemon.handle("refactor", output()).startsWith("OK"));
+        assertFalse(Files.readString(caller).contains("synchronized"));
+    }
+
+    @Test
+    void testCallerIsKeptWhenItsCalleeStaysNonBlocking() throws IOException {
+        Path caller = write("A.java", """
+                public class A {
+                    private final B b = new B();
+
+                    synchronized void run() {
+                        b.work();
+                    }
+                }
+                """);
+        Path callee = write("B.java", """
+                public class B {
+                    void work() {
+                        int x = 1;
+                    }
+                }
+                """);
+        RefactorDaemon daemon = RefactorDaemon.load(projectRoot, RefactorOptions.fromCommandLine(CommandLineOptions.parse(new String[0])));
+        daemon.handle("refactor", output());
+
+        write("B.java", """
+                public class B {
+                    void work() {
+                        int x = 2;
+                    }
+                }
+                """);
+        daemon.changed(callee);
+        assertTrue(daemon.handle("dry-run", output()).startsWith("OK would convert 0 sites in 1 files"));
+        daemon.handle("refactor", output());
+        assertTrue(Files.readString(caller).contains("synchronized void run()"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(projectRoot.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static PrintStream output() {
+        return new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+    }
+}
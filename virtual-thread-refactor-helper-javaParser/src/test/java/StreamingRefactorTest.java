@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingRefactorTest {
+
+    @TempDir
+    Path projectRoot;
+
+    @Test
+    void testCallerOfNonBlockingMethodInAnotherGroupIsKept() throws IOException {
+        Path caller = write("p/A.java", """
+                package p;
+
+                public class A {
+                    private final B b = new B();
+
+                    public synchronized void run() {
+                        b.work();
+                    }
+                }
+                """);
+        write("p/B.java", """
+                package p;
+
+                public class B {
+                    public int work() {
+                        return 1;
+                    }
+                }
+                """);
+        StreamingRefactor.run(projectRoot, options(), new RunMetrics());
+        assertTrue(Files.readString(caller).contains("public synchronized void run()"));
+    }
+
+    @Test
+    void testCallerOfBlockingMethodInAnotherGroupIsRefactored() throws IOException {
+        Path caller = write("p/A.java", """
+                package p;
+
+                public class A {
+                    private final B b = new B();
+
+                    public synchronized void run() throws InterruptedException {
+                        b.work();
+                    }
+                }
+                """);
+        write("p/B.java", """
+                package p;
+
+                public class B {
+                    public void work() throws InterruptedException {
+                        Thread.sleep(1);
+                    }
+                }
+                """);
+        StreamingRefactor.run(projectRoot, options(), new RunMetrics());
+        assertFalse(Files.readString(caller).contains("synchronized"));
+    }
+
+    @Test
+    void testNestedTypesWithTheSameNameDoNotJoinTheirFiles() throws IOException {
+        for (String name : new String[]{"p/X", "q/Y"}) {
+            write(name + ".java", """
+                    package %s;
+
+                    public class %s {
+                        public synchronized void run() throws InterruptedException {
+                            Thread.sleep(1);
+                        }
+
+                        static class Builder {
+                        }
+                    }
+                    """.formatted(name.substring(0, 1), name.substring(2)));
+        }
+        Path user = write("q/Z.java", """
+                package q;
+
+                public class Z {
+                    void run() {
+                        synchronized (Y.class) {
+                            new Y();
+                        }
+                    }
+                }
+                """);
+        List<StreamingRefactor.FileSummary> summaries = new ArrayList<>();
+        for (Path path : List.of(projectRoot.resolve("p/X.java"), projectRoot.resolve("q/Y.java"), user)) {
+            VirtualThreadRefactorHelper.parseJavaFile(VirtualThreadRefactorHelper.createJavaParser(), path)
+                    .map(cu -> StreamingRefactor.FileSummary.of(path, cu, null))
+                    .ifPresent(summaries::add);
+        }
+        assertEquals(List.of(List.of(0), List.of(1, 2)), StreamingRefactor.group(summaries, false));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path path = projectRoot.resolve(name);
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, content, StandardCharsets.UTF_8);
+    }
+
+    private static RefactorOptions options() {
+        return RefactorOptions.fromCommandLine(CommandLineOptions.parse(new String[0]));
+    }
+}
@@ -0,0 +1,28 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ThreadLocalCacheMigrationTest {
+
+    @Test
+    void testPatternsReadTheSameWayAreCompatible() {
+        assertTrue(ThreadLocalCacheMigration.isCompatiblePattern("yyyy-MM-dd HH:mm:ss.SSS"));
+        assertTrue(ThreadLocalCacheMigration.isCompatiblePattern("EEE, d MMM yyyy hh:mm a"));
+        assertTrue(ThreadLocalCacheMigration.isCompatiblePattern("yyyy-MM-dd'T'HH:mm:ssXXX"));
+    }
+
+    @Test
+    void testLettersReadDifferentlyAreNotCompatible() {
+        assertFalse(ThreadLocalCacheMigration.isCompatiblePattern("YYYY-MM-dd"));
+        assertFalse(ThreadLocalCacheMigration.isCompatiblePattern("HH:mm:ss.SS"));
+        assertFalse(ThreadLocalCacheMigration.isCompatiblePattern("yyyy-MM-dd'T"));
+    }
+
+    @Test
+    void testLettersRepeatedMoreThanDateTimeFormatterAcceptsAreNotCompatible() {
+        assertFalse(ThreadLocalCacheMigration.isCompatiblePattern("hh:mm aa"));
+        assertFalse(ThreadLocalCacheMigration.isCompatiblePattern("HHH:mm"));
+        assertFalse(ThreadLocalCacheMigration.isCompatiblePattern("EEEEEE"));
+    }
+}
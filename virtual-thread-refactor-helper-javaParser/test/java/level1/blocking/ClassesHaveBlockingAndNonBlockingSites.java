@@ -0,0 +1,43 @@
+package level1.blocking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+class ClassHasNonBlockingSites {
+
+    private int counter;
+
+    public synchronized void increment() {
+        counter++;
+    }
+
+    public void incrementInBlock() {
+        synchronized(this){
+            counter = counter + 1;
+        }
+    }
+}
+
+class ClassBlocksThroughCallGraph {
+
+    private final Object mutex = new Object();
+
+    public synchronized void sleepIndirectly() throws InterruptedException {
+        pause();
+    }
+
+    public void readIndirectly(Socket socket) throws IOException {
+        synchronized(mutex){
+            read(socket.getInputStream());
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        Thread.sleep(10);
+    }
+
+    private int read(InputStream inputStream) throws IOException {
+        return inputStream.read();
+    }
+}
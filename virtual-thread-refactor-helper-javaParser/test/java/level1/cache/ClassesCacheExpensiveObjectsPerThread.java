@@ -0,0 +1,98 @@
+package level1.cache;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+class ClassCachesDateFormat {
+
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+
+    public String format(Date date) {
+        return DATE_FORMAT.get().format(date);
+    }
+
+    public String now() {
+        return DATE_FORMAT.get().format(new Date());
+    }
+}
+
+class ClassParsesWithCachedDateFormat {
+
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+
+    public Date parse(String text) throws ParseException {
+        return DATE_FORMAT.get().parse(text);
+    }
+}
+
+class ClassCachesMessageDigest {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    public byte[] hash(byte[] data) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(data);
+        return digest.digest();
+    }
+}
+
+class ClassCachesBuffer {
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    public long copy(InputStream in, OutputStream out) throws IOException {
+        long total = 0;
+        int read;
+        while ((read = in.read(BUFFER.get())) > 0) {
+            out.write(BUFFER.get(), 0, read);
+            total += read;
+        }
+        return total;
+    }
+}
+
+class ClassCachesCipher {
+
+    private static final byte[] KEY = new byte[16];
+
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    public byte[] encrypt(byte[] data) throws GeneralSecurityException {
+        return CIPHER.get().doFinal(data);
+    }
+}
+
+class ClassLeaksCachedBuffer {
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    public byte[] buffer() {
+        return BUFFER.get();
+    }
+}
@@ -0,0 +1,104 @@
+package level1.condition;
+
+class ClassHasBoundedBuffer {
+
+    private final Object[] items;
+    private int putIndex;
+    private int takeIndex;
+    private int count;
+
+    ClassHasBoundedBuffer(int capacity) {
+        items = new Object[capacity];
+    }
+
+    public synchronized void put(Object item) throws InterruptedException {
+        while (count >= items.length) {
+            wait();
+        }
+        items[putIndex] = item;
+        putIndex = (putIndex + 1) % items.length;
+        count++;
+        notifyAll();
+    }
+
+    public synchronized Object take() throws InterruptedException {
+        while (count <= 0) {
+            wait();
+        }
+        Object item = items[takeIndex];
+        items[takeIndex] = null;
+        takeIndex = (takeIndex + 1) % items.length;
+        count--;
+        notifyAll();
+        return item;
+    }
+}
+
+class ClassHasGate {
+
+    private boolean open;
+
+    public synchronized void awaitOpen() throws InterruptedException {
+        while (!open) {
+            wait();
+        }
+    }
+
+    public synchronized void awaitClosed() throws InterruptedException {
+        while (open) {
+            wait();
+        }
+    }
+
+    public synchronized void open() {
+        open = true;
+        notifyAll();
+    }
+
+    public synchronized void close() {
+        open = false;
+        notifyAll();
+    }
+}
+
+class ClassWaitsOnField {
+
+    private final Object mutex = new Object();
+
+    public void awaitFinish(long timeoutMillis) throws InterruptedException {
+        synchronized (mutex) {
+            mutex.wait(timeoutMillis);
+        }
+    }
+
+    public void pollDone() throws InterruptedException {
+        synchronized (mutex) {
+            mutex.wait(100);
+        }
+    }
+
+    public void finish() {
+        synchronized (mutex) {
+            mutex.notifyAll();
+        }
+    }
+}
+
+class ClassHandsOverOneTask {
+
+    private Runnable task;
+
+    public synchronized Runnable takeTask() throws InterruptedException {
+        while (task == null) {
+            wait();
+        }
+        Runnable taken = task;
+        task = null;
+        return taken;
+    }
+
+    public synchronized void offer(Runnable next) {
+        task = next;
+        notify();
+    }
+}
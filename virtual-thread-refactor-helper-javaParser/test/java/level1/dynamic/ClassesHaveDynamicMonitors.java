@@ -0,0 +1,72 @@
+package level1.dynamic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class ClassLocksMapValues {
+
+    private final Map<String, List<String>> linesByFile = new ConcurrentHashMap<>();
+
+    public void load(Path path) throws IOException {
+        List<String> lines = linesByFile.computeIfAbsent(path.toString(), key -> new ArrayList<>());
+        synchronized (lines) {
+            lines.addAll(Files.readAllLines(path));
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        synchronized (linesByFile.get(path.toString())) {
+            Files.write(path, linesByFile.get(path.toString()));
+        }
+    }
+}
+
+class ClassLocksArrayElements {
+
+    private final Object[] segments = new Object[16];
+
+    ClassLocksArrayElements() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Object();
+        }
+    }
+
+    public void write(Path path, int segment) throws IOException {
+        synchronized (segments[segment]) {
+            Files.writeString(path, String.valueOf(segment));
+        }
+    }
+}
+
+class ClassLocksFieldThroughThis {
+
+    private final Object entry = new Object();
+
+    public void write(Path path) throws IOException {
+        synchronized (this.entry) {
+            Files.writeString(path, "entry");
+        }
+    }
+}
+
+class Journal {
+
+    public synchronized void append(Path path, String line) throws IOException {
+        Files.writeString(path, line);
+    }
+}
+
+class ClassLocksLocalOfProjectType {
+
+    public void append(Journal journal, Path path) throws IOException {
+        synchronized (journal) {
+            journal.append(path, "first");
+            journal.append(path, "second");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package level1.executor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class ClassFetchesUrlsInFixedPool {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    public Future<byte[]> fetch(URL url) {
+        return executor.submit(() -> {
+            try (InputStream in = url.openStream()) {
+                return in.readAllBytes();
+            }
+        });
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+}
+
+class ClassCopiesFilesInCachedPool {
+
+    public void copyAll(List<Path> sources, Path target) throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        for (Path source : sources) {
+            executor.execute(() -> copy(source, target));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private void copy(Path source, Path target) {
+        try {
+            Files.copy(source, target.resolve(source.getFileName()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+class ClassPollsInThreadPoolExecutor {
+
+    private ExecutorService executor;
+
+    public void start() {
+        executor = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    public CompletableFuture<String> poll(String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return name;
+        }, executor);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+}
+
+class ClassComputesInFixedPool {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    public Future<Long> sum(long[] values) {
+        return executor.submit(() -> {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum;
+        });
+    }
+}
+
+class ClassSharesItsPool {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+}
+
+class ClassReadsSocketsInThreads {
+
+    private final List<Thread> readers = new ArrayList<>();
+
+    public void read(Socket socket) {
+        new Thread(() -> drain(socket), "reader-" + socket.getPort()).start();
+    }
+
+    public void readLater(Socket socket) {
+        Thread reader = new Thread(() -> drain(socket));
+        readers.add(reader);
+    }
+
+    public void startAll() {
+        readers.forEach(Thread::start);
+    }
+
+    private void drain(Socket socket) {
+        try (InputStream in = socket.getInputStream()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+class ClassServesFromMain {
+
+    public static void main(String[] args) throws IOException {
+        Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+        new Thread(() -> {
+            try (InputStream in = socket.getInputStream()) {
+                in.transferTo(System.out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).start();
+    }
+}
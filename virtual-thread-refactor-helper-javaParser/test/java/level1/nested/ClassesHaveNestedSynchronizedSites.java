@@ -0,0 +1,71 @@
+package level1.nested;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class ClassHasNestedSyncBlocks {
+
+    private final Object mutex = new Object();
+    private final List<String> lines = new ArrayList<>();
+
+    ClassHasNestedSyncBlocks(Path path) throws IOException {
+        synchronized (mutex) {
+            lines.addAll(Files.readAllLines(path));
+        }
+    }
+
+    public void append(Path path, boolean reload) throws IOException {
+        if (reload) {
+            synchronized (mutex) {
+                lines.clear();
+                lines.addAll(Files.readAllLines(path));
+            }
+        }
+        for (String line : lines) {
+            synchronized (this) {
+                Files.writeString(path, line);
+            }
+        }
+    }
+
+    public Runnable flusher(Path path) {
+        return () -> {
+            synchronized (mutex) {
+                try {
+                    Files.write(path, lines);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    public Runnable anonymousFlusher(Path path) {
+        return new Runnable() {
+            @Override
+            public synchronized void run() {
+                synchronized (mutex) {
+                    try {
+                        Files.write(path, lines);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+    }
+
+    static class Writer {
+
+        private final Object lock = new Object();
+
+        public synchronized void write(Path path, String text) throws IOException {
+            synchronized (lock) {
+                Files.writeString(path, text);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package level1.readwrite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+class ClassHasReadMostlySettings {
+
+    private final Map<String, String> settings = new HashMap<>();
+    private long version;
+
+    public synchronized String get(String key) {
+        return settings.get(key);
+    }
+
+    public synchronized boolean contains(String key) {
+        return settings.containsKey(key);
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized void reload(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        }
+        settings.clear();
+        properties.forEach((key, value) -> settings.put(key.toString(), value.toString()));
+        version++;
+    }
+}
+
+class ClassHasReadMostlyBlocks {
+
+    private final Object mutex = new Object();
+    private int width;
+    private int height;
+
+    public int getArea() {
+        synchronized (mutex) {
+            return width * height;
+        }
+    }
+
+    public boolean isEmpty() {
+        synchronized (mutex) {
+            return width == 0 || height == 0;
+        }
+    }
+
+    public void resize(int width, int height) throws InterruptedException {
+        synchronized (mutex) {
+            Thread.sleep(10);
+        }
+    }
+}
+
+class ClassHasWriteMostlyCounter {
+
+    private int count;
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized void increment() throws InterruptedException {
+        Thread.sleep(1);
+        count++;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+    }
+}
+
+class ClassHasAccessOrderedCache {
+
+    private final Map<String, String> recent = new LinkedHashMap<>(16, 0.75f, true);
+    private final Registry registry = new Registry();
+
+    public synchronized String get(String key) {
+        return recent.get(key);
+    }
+
+    public synchronized String getOwner(String key) {
+        return registry.getOwner(key);
+    }
+
+    public synchronized void put(String key, String value) throws InterruptedException {
+        Thread.sleep(1);
+        recent.put(key, value);
+    }
+}
+
+class Registry {
+
+    private final Map<String, Integer> lookups = new HashMap<>();
+
+    String getOwner(String key) {
+        lookups.merge(key, 1, Integer::sum);
+        return key;
+    }
+}
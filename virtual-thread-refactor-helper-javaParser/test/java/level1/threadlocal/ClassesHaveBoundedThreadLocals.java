@@ -0,0 +1,46 @@
+package level1.threadlocal;
+
+class ClassHasThreadLocalBoundInTryFinally {
+
+    private static final ThreadLocal<String> USER = new ThreadLocal<>();
+
+    public void handle(String user) {
+        USER.set(user);
+        try {
+            process();
+        } finally {
+            USER.remove();
+        }
+    }
+
+    private void process() {
+        System.out.println("processing for " + USER.get());
+    }
+}
+
+class ClassHasThreadLocalReturningValue {
+
+    private static final ThreadLocal<Integer> DEPTH = new ThreadLocal<>();
+
+    public String render(int depth) {
+        DEPTH.set(depth);
+        try {
+            return "depth " + DEPTH.get();
+        } finally {
+            DEPTH.remove();
+        }
+    }
+}
+
+class ClassHasThreadLocalBoundBetweenSetAndRemove {
+
+    private final ThreadLocal<Long> transactionId = new ThreadLocal<>();
+
+    public void runInTransaction(long id) {
+        transactionId.set(id);
+        System.out.println("begin " + transactionId.get());
+        System.out.println("commit " + transactionId.get());
+        transactionId.remove();
+        System.out.println("done");
+    }
+}
@@ -0,0 +1,59 @@
+package level1.threadlocal;
+
+import java.io.IOException;
+
+class ClassHasThreadLocalWithInitialValue {
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+    public String format(String value) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        return buffer.append('[').append(value).append(']').toString();
+    }
+}
+
+class ClassHasThreadLocalNeverRemoved {
+
+    private static final ThreadLocal<String> TENANT = new ThreadLocal<>();
+
+    public void login(String tenant) {
+        TENANT.set(tenant);
+    }
+
+    public String tenant() {
+        return TENANT.get();
+    }
+}
+
+class ClassHasThreadLocalBoundAroundCheckedExceptions {
+
+    private static final ThreadLocal<String> REQUEST = new ThreadLocal<>();
+
+    public void read(String request) throws IOException {
+        REQUEST.set(request);
+        try {
+            throw new IOException("cannot read " + REQUEST.get());
+        } finally {
+            REQUEST.remove();
+        }
+    }
+}
+
+class ClassHasThreadLocalAssignedLocals {
+
+    private static final ThreadLocal<String> NAME = new ThreadLocal<>();
+
+    public int count(String name) {
+        int count = 0;
+        NAME.set(name);
+        count++;
+        NAME.remove();
+        return count;
+    }
+}
+
+class ClassHasPublicThreadLocal {
+
+    public static final ThreadLocal<String> LOCALE = new ThreadLocal<>();
+}
@@ -1,18 +1,52 @@
 import lombok.Value;
+import org.openrewrite.Cursor;
 import org.openrewrite.ExecutionContext;
-import org.openrewrite.Recipe;
+import org.openrewrite.ScanningRecipe;
 import org.openrewrite.TreeVisitor;
 import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.JavaParser;
 import org.openrewrite.java.JavaTemplate;
+import org.openrewrite.java.tree.Expression;
+import org.openrewrite.java.tree.Flag;
 import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.JavaType;
 import org.openrewrite.java.tree.Statement;
+import org.openrewrite.java.tree.TypeUtils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * The OpenRewrite counterpart of the javaParser engine, producing the same code: synchronized methods and blocks are
+ * replaced by a {@code ReentrantLock} that is locked before and unlocked in a {@code finally} block after the original
+ * body.
+ * <ul>
+ *     <li>Synchronized methods and {@code synchronized (this)} use a private {@code <type>ObjectLock} of their class,
+ *     static synchronized methods a private static {@code <type>ClassLock}.</li>
+ *     <li>{@code synchronized (field)} uses a private {@code <field>Lock} next to the field, static for a static
+ *     field, unless the field's type is declared in the project: then it uses the public {@code <type>ObjectLock} of
+ *     that type, through the field.</li>
+ *     <li>{@code synchronized (Foo.class)} for a project class uses the public static {@code fooClassLock} of
+ *     {@code Foo}.</li>
+ * </ul>
+ * The project types and the locks other classes need are collected by the scanning phase, so that a class gets the
+ * public lock of a component even if it is locked in other source files only. Other monitors, monitors of anonymous
+ * classes and test classes are left alone.
+ */
 @Value
-public class ReplaceSyncBlockWithReentrantLockRecipe extends Recipe {
+public class ReplaceSyncBlockWithReentrantLockRecipe extends ScanningRecipe<ReplaceSyncBlockWithReentrantLockRecipe.Locks> {
 
+    private static final String REENTRANT_LOCK = "java.util.concurrent.locks.ReentrantLock";
+    private static final String OBJECT_LOCK_POSTFIX = "ObjectLock";
+    private static final String CLASS_LOCK_POSTFIX = "ClassLock";
+    private static final String FIELD_LOCK_POSTFIX = "Lock";
 
     @Override
     public String getDisplayName() {
@@ -25,62 +59,329 @@ public class ReplaceSyncBlockWithReentrantLockRecipe extends Recipe {
                 "We should replace them with reentrantLocks if there are some I/O operations in the synchronized block or method.";
     }
 
+    /**
+     * The locks every class of the source set needs, by fully qualified name.
+     */
+    public static class Locks {
+        final Set<String> projectTypes = new HashSet<>();
+        /**
+         * Types with synchronized methods or {@code synchronized (this)} blocks.
+         */
+        final Set<String> objectLocks = new HashSet<>();
+        /**
+         * Types with static synchronized methods.
+         */
+        final Set<String> classLocks = new HashSet<>();
+        /**
+         * Types of fields used as monitors, which get a public object lock if they are project types.
+         */
+        final Set<String> componentTypes = new HashSet<>();
+        /**
+         * Types used as {@code Foo.class} monitors, which get a public class lock if they are project types.
+         */
+        final Set<String> classMonitors = new HashSet<>();
+        /**
+         * The fields used as monitors in a type, by name, with their type and whether they are static.
+         */
+        final Map<String, Map<String, Monitor>> fieldMonitors = new HashMap<>();
+    }
+
+    /**
+     * A monitor that can be replaced by a lock: {@code this}, a field ({@code name}) of type {@code type}, or a class
+     * ({@code name} as written) of type {@code type}.
+     */
+    @Value
+    static class Monitor {
+        MonitorKind kind;
+        String name;
+        JavaType.FullyQualified type;
+        boolean isStatic;
+    }
+
+    enum MonitorKind {THIS, FIELD, CLASS}
+
+    @Override
+    public Locks getInitialValue(ExecutionContext executionContext) {
+        return new Locks();
+    }
+
     @Override
-    public TreeVisitor<?, ExecutionContext> getVisitor() {
+    public TreeVisitor<?, ExecutionContext> getScanner(Locks locks) {
+        return new JavaIsoVisitor<ExecutionContext>() {
+
+            @Override
+            public J.ClassDeclaration visitClassDeclaration(J.ClassDeclaration classDecl, ExecutionContext executionContext) {
+                if (classDecl.getType() != null) {
+                    locks.projectTypes.add(classDecl.getType().getFullyQualifiedName());
+                }
+                return super.visitClassDeclaration(classDecl, executionContext);
+            }
+
+            @Override
+            public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, ExecutionContext executionContext) {
+                J.ClassDeclaration owner = enclosingClass(getCursor());
+                if (owner != null && method.hasModifier(J.Modifier.Type.Synchronized) && method.getBody() != null) {
+                    (method.hasModifier(J.Modifier.Type.Static) ? locks.classLocks : locks.objectLocks)
+                            .add(owner.getType().getFullyQualifiedName());
+                }
+                return super.visitMethodDeclaration(method, executionContext);
+            }
+
+            @Override
+            public J.Synchronized visitSynchronized(J.Synchronized synch, ExecutionContext executionContext) {
+                J.ClassDeclaration owner = enclosingClass(getCursor());
+                Monitor monitor = monitorOf(synch.getLock().getTree(), getCursor());
+                if (owner != null && monitor != null) {
+                    String ownerType = owner.getType().getFullyQualifiedName();
+                    switch (monitor.getKind()) {
+                        case THIS:
+                            locks.objectLocks.add(ownerType);
+                            break;
+                        case FIELD:
+                            locks.componentTypes.add(monitor.getType().getFullyQualifiedName());
+                            locks.fieldMonitors.computeIfAbsent(ownerType, type -> new LinkedHashMap<>()).put(monitor.getName(), monitor);
+                            break;
+                        case CLASS:
+                            locks.classMonitors.add(monitor.getType().getFullyQualifiedName());
+                            break;
+                    }
+                }
+                return super.visitSynchronized(synch, executionContext);
+            }
+        };
+    }
+
+    @Override
+    public TreeVisitor<?, ExecutionContext> getVisitor(Locks locks) {
         // getVisitor() should always return a new instance of the visitor to avoid any state leaking between cycles
-        return new ReplaceSyncBlockWithReentrantLockVisitor();
+        return new ReplaceSyncBlockWithReentrantLockVisitor(locks);
     }
 
     public class ReplaceSyncBlockWithReentrantLockVisitor extends JavaIsoVisitor<ExecutionContext> {
 
-        private final JavaTemplate importTemplate =
-                JavaTemplate.builder(" ")
-                        .imports("java.util.concurrent.locks.ReentrantLock")
-                        .build();
+        private final Locks locks;
 
+        ReplaceSyncBlockWithReentrantLockVisitor(Locks locks) {
+            this.locks = locks;
+        }
+
+        /**
+         * Adds the lock fields first and visits the class again, so that the templates of its sites see them.
+         */
         @Override
         public J.ClassDeclaration visitClassDeclaration(J.ClassDeclaration classDecl, ExecutionContext executionContext) {
-            J.Identifier identifier = classDecl.getName();
-            if (identifier.getSimpleName().endsWith("Tests") || identifier.getSimpleName().endsWith("Test")) {
+            if (classDecl.getType() == null || isTest(classDecl)) {
                 return classDecl;
             }
+            List<String> lockFields = missingLockFields(classDecl);
+            if (lockFields.isEmpty()) {
+                return super.visitClassDeclaration(classDecl, executionContext);
+            }
+            J.ClassDeclaration withLocks = classDecl;
+            for (int i = lockFields.size() - 1; i >= 0; i--) {
+                withLocks = JavaTemplate.builder(lockFields.get(i))
+                        .imports(REENTRANT_LOCK)
+                        .build()
+                        .apply(new Cursor(getCursor().getParentOrThrow(), withLocks), withLocks.getBody().getCoordinates().firstStatement());
+            }
+            maybeAddImport(REENTRANT_LOCK);
+            return (J.ClassDeclaration) visit(withLocks, executionContext, getCursor().getParentOrThrow());
+        }
 
-            List<J.MethodDeclaration> syncMethods = classDecl.getBody().getStatements().stream()
-                    .filter(J.MethodDeclaration.class::isInstance)
-                    .map(J.MethodDeclaration.class::cast)
-                    .filter(method -> method.hasModifier(J.Modifier.Type.Synchronized))
-                    .toList();
-
-            if (!syncMethods.isEmpty()) {
-                for (J.MethodDeclaration methodDeclaration : syncMethods) {
-                    J.MethodDeclaration modifiedMethod = this.refactorSyncMethodWithReentrantLock(methodDeclaration);
-                    classDecl = this.refactorClassDeclarationDeclBody(classDecl, modifiedMethod);
-                }
+        @Override
+        public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, ExecutionContext executionContext) {
+            J.MethodDeclaration m = super.visitMethodDeclaration(method, executionContext);
+            J.ClassDeclaration owner = enclosingClass(getCursor());
+            if (owner == null || !m.hasModifier(J.Modifier.Type.Synchronized) || m.getBody() == null) {
+                return m;
             }
+            boolean isStatic = m.hasModifier(J.Modifier.Type.Static);
+            String lockName = lockName(owner.getSimpleName(), isStatic ? CLASS_LOCK_POSTFIX : OBJECT_LOCK_POSTFIX);
+            m = m.withModifiers(m.getModifiers().stream()
+                    .filter(modifier -> modifier.getType() != J.Modifier.Type.Synchronized)
+                    .collect(Collectors.toList()));
+            J.Block originalBody = m.getBody();
+            m = JavaTemplate.builder("#{}.lock();\ntry {\n} finally {\n    #{}.unlock();\n}")
+                    .contextSensitive()
+                    .imports(REENTRANT_LOCK)
+                    .build()
+                    .apply(cursorOf(m), m.getCoordinates().replaceBody(), lockName, lockName);
+            return m.withBody(moveInto(m.getBody(), originalBody, executionContext));
+        }
+
+        @Override
+        public J.Block visitBlock(J.Block block, ExecutionContext executionContext) {
+            J.Block b = super.visitBlock(block, executionContext);
+            return b.withStatements(b.getStatements().stream()
+                    .map(statement -> statement instanceof J.Synchronized
+                            ? refactorSyncBlock((J.Synchronized) statement, new Cursor(getCursor(), statement), executionContext)
+                            : statement)
+                    .collect(Collectors.toList()));
+        }
 
-            //TODO: refactor synchronized blocks
+        /**
+         * Replaces {@code synch} with a block locking the lock of its monitor, or returns it as is if its monitor is
+         * not supported.
+         */
+        private Statement refactorSyncBlock(J.Synchronized synch, Cursor cursor, ExecutionContext executionContext) {
+            J.ClassDeclaration owner = enclosingClass(cursor);
+            Monitor monitor = monitorOf(synch.getLock().getTree(), cursor);
+            if (owner == null || monitor == null) {
+                return synch;
+            }
+            String lockExpression;
+            // The lock of a component is declared in another class, which the template only sees through a stub.
+            String componentStub = null;
+            switch (monitor.getKind()) {
+                case THIS:
+                    lockExpression = lockName(owner.getSimpleName(), OBJECT_LOCK_POSTFIX);
+                    break;
+                case FIELD:
+                    if (locks.projectTypes.contains(monitor.getType().getFullyQualifiedName())) {
+                        String lockName = lockName(simpleName(monitor.getType()), OBJECT_LOCK_POSTFIX);
+                        lockExpression = monitor.getName() + "." + lockName;
+                        componentStub = stubOf(monitor.getType(), "public ReentrantLock " + lockName + ";");
+                    } else {
+                        lockExpression = lockName(monitor.getName(), FIELD_LOCK_POSTFIX);
+                    }
+                    break;
+                default:
+                    if (!locks.projectTypes.contains(monitor.getType().getFullyQualifiedName())) {
+                        return synch;
+                    }
+                    String lockName = lockName(simpleName(monitor.getType()), CLASS_LOCK_POSTFIX);
+                    lockExpression = monitor.getName() + "." + lockName;
+                    componentStub = stubOf(monitor.getType(), "public static ReentrantLock " + lockName + ";");
+            }
+            JavaTemplate.Builder template = JavaTemplate.builder("{\n    #{}.lock();\n    try {\n    } finally {\n        #{}.unlock();\n    }\n}")
+                    .contextSensitive()
+                    .imports(REENTRANT_LOCK);
+            if (componentStub != null) {
+                template.javaParser(JavaParser.fromJavaVersion().dependsOn(componentStub));
+            }
+            J.Block block = template.build()
+                    .apply(cursor, synch.getCoordinates().replace(), lockExpression, lockExpression);
+            return moveInto(block, synch.getBody(), executionContext).withPrefix(synch.getPrefix());
+        }
 
-            return classDecl;
+        /**
+         * Moves the statements of {@code body} into the {@code try} block of {@code lockAndUnlock}.
+         */
+        private J.Block moveInto(J.Block lockAndUnlock, J.Block body, ExecutionContext executionContext) {
+            J.Block block = lockAndUnlock.withStatements(lockAndUnlock.getStatements().stream()
+                    .map(statement -> statement instanceof J.Try
+                            ? ((J.Try) statement).withBody(((J.Try) statement).getBody().withStatements(body.getStatements()))
+                            : statement instanceof J.Block ? moveInto((J.Block) statement, body, executionContext)
+                            : statement)
+                    .collect(Collectors.toList()));
+            return autoFormat(block, executionContext, getCursor());
+        }
 
+        private Cursor cursorOf(J tree) {
+            return new Cursor(getCursor().getParentOrThrow(), tree);
         }
 
-        private J.MethodDeclaration refactorSyncMethodWithReentrantLock(J.MethodDeclaration methodDeclaration) {
-            //TODO: add reentrantLock
-            List<J.Modifier> modifiers = methodDeclaration.getModifiers().stream()
-                    .filter(modifier -> modifier.getType() != J.Modifier.Type.Synchronized)
+        /**
+         * The lock fields {@code classDecl} needs and does not have yet, as declarations.
+         */
+        private List<String> missingLockFields(J.ClassDeclaration classDecl) {
+            String type = classDecl.getType().getFullyQualifiedName();
+            List<String> fields = new ArrayList<>();
+            if (locks.classLocks.contains(type) || locks.classMonitors.contains(type)) {
+                fields.add((locks.classMonitors.contains(type) ? "public" : "private") + " static ReentrantLock "
+                        + lockName(classDecl.getSimpleName(), CLASS_LOCK_POSTFIX) + " = new ReentrantLock();");
+            }
+            if (locks.objectLocks.contains(type) || locks.componentTypes.contains(type)) {
+                fields.add((locks.componentTypes.contains(type) ? "public" : "private") + " ReentrantLock "
+                        + lockName(classDecl.getSimpleName(), OBJECT_LOCK_POSTFIX) + " = new ReentrantLock();");
+            }
+            for (Monitor monitor : locks.fieldMonitors.getOrDefault(type, new HashMap<>()).values()) {
+                if (!locks.projectTypes.contains(monitor.getType().getFullyQualifiedName())) {
+                    fields.add("private " + (monitor.isStatic() ? "static " : "") + "ReentrantLock "
+                            + lockName(monitor.getName(), FIELD_LOCK_POSTFIX) + " = new ReentrantLock();");
+                }
+            }
+            Set<String> declared = new HashSet<>();
+            for (Statement statement : classDecl.getBody().getStatements()) {
+                if (statement instanceof J.VariableDeclarations) {
+                    ((J.VariableDeclarations) statement).getVariables().forEach(variable -> declared.add(variable.getSimpleName()));
+                }
+            }
+            return fields.stream()
+                    .filter(field -> !declared.contains(field.substring(field.indexOf("ReentrantLock ") + "ReentrantLock ".length(), field.indexOf(" ="))))
                     .collect(Collectors.toList());
-            return methodDeclaration.withModifiers(modifiers);
         }
+    }
 
-        private J.ClassDeclaration refactorClassDeclarationDeclBody(J.ClassDeclaration classDecl, J.MethodDeclaration modifiedMethod) {
-            J.Block body = classDecl.getBody();
-            List<Statement> statements = body.getStatements();
-            int index = statements.indexOf(modifiedMethod);
-            statements.remove(index);
-            statements.add(index, modifiedMethod);
-            J.Block newBody = body.withStatements(statements);
-            return classDecl.withBody(newBody);
+    private static String lockName(String name, String postfix) {
+        return name.substring(0, 1).toLowerCase() + name.substring(1) + postfix;
+    }
+
+    private static String simpleName(JavaType.FullyQualified type) {
+        String className = type.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * The source of a stand-in for {@code type} that only declares {@code lockField}, in the nested classes and the
+     * package of {@code type}.
+     */
+    private static String stubOf(JavaType.FullyQualified type, String lockField) {
+        String stub = "public class " + simpleName(type) + " {\n" + lockField + "\n}";
+        for (JavaType.FullyQualified outer = type.getOwningClass(); outer != null; outer = outer.getOwningClass()) {
+            stub = "public class " + simpleName(outer) + " {\npublic static " + stub + "\n}";
         }
+        String packageName = type.getPackageName();
+        return (packageName.isEmpty() ? "" : "package " + packageName + ";\n")
+                + "import " + REENTRANT_LOCK + ";\n" + stub;
+    }
 
+    private static boolean isTest(J.ClassDeclaration classDecl) {
+        String name = classDecl.getSimpleName();
+        return name.endsWith("Tests") || name.endsWith("Test");
+    }
+
+    /**
+     * The class whose instance {@code this} is at {@code cursor}, or {@code null} inside an anonymous class or a
+     * test class.
+     */
+    private static J.ClassDeclaration enclosingClass(Cursor cursor) {
+        Iterator<Object> path = cursor.getPath();
+        while (path.hasNext()) {
+            Object tree = path.next();
+            if (tree instanceof J.NewClass && ((J.NewClass) tree).getBody() != null) {
+                return null;
+            }
+            if (tree instanceof J.ClassDeclaration) {
+                J.ClassDeclaration classDecl = (J.ClassDeclaration) tree;
+                return classDecl.getType() == null || isTest(classDecl) ? null : classDecl;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The monitor {@code lock}, found at {@code cursor}, stands for, or {@code null} if it is neither {@code this}, a
+     * field nor a class literal.
+     */
+    private static Monitor monitorOf(Expression lock, Cursor cursor) {
+        if (lock instanceof J.Identifier) {
+            J.Identifier identifier = (J.Identifier) lock;
+            if (identifier.getSimpleName().equals("this")) {
+                return new Monitor(MonitorKind.THIS, "this", null, false);
+            }
+            JavaType.Variable field = identifier.getFieldType();
+            JavaType.FullyQualified type = TypeUtils.asFullyQualified(identifier.getType());
+            if (field != null && field.getOwner() instanceof JavaType.FullyQualified && type != null) {
+                return new Monitor(MonitorKind.FIELD, identifier.getSimpleName(), type, field.hasFlags(Flag.Static));
+            }
+        } else if (lock instanceof J.FieldAccess && ((J.FieldAccess) lock).getSimpleName().equals("class")) {
+            Expression target = ((J.FieldAccess) lock).getTarget();
+            JavaType.FullyQualified type = TypeUtils.asFullyQualified(target.getType());
+            if (type != null) {
+                return new Monitor(MonitorKind.CLASS, target.printTrimmed(cursor), type, true);
+            }
+        }
+        return null;
     }
 }
@@ -25,14 +25,327 @@ public class ReplaceSyncBlockWithReentrantLockRecipeTest implements RewriteTest
                                 """,
                         """
                                     import java.util.List;
+                                    import java.util.concurrent.locks.ReentrantLock;
+
                                     class FooBar {
+                                        private ReentrantLock fooBarObjectLock = new ReentrantLock();
                                         private void hi() {
+                                            fooBarObjectLock.lock();
+                                            try {
+                                                System.out.println("hi");
+                                            } finally {
+                                                fooBarObjectLock.unlock();
+                                            }
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
+
+    @Test
+    void testClassHasStaticSynchronizedMethod() {
+        rewriteRun(
+                java(
+                        """
+                                    class Foo {
+                                        private static synchronized void hi() {
                                             System.out.println("hi");
                                         }
                                     }
+                                """,
+                        """
+                                    import java.util.concurrent.locks.ReentrantLock;
+
+                                    class Foo {
+                                        private static ReentrantLock fooClassLock = new ReentrantLock();
+                                        private static void hi() {
+                                            fooClassLock.lock();
+                                            try {
+                                                System.out.println("hi");
+                                            } finally {
+                                                fooClassLock.unlock();
+                                            }
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
+
+    @Test
+    void testClassHasSyncBlockUsingThisReference() {
+        rewriteRun(
+                java(
+                        """
+                                    class Foo {
+                                        private void hi() {
+                                            synchronized (this) {
+                                                System.out.println("hi");
+                                                System.out.println("still inside");
+                                            }
+                                            System.out.println("outside");
+                                        }
+                                    }
+                                """,
+                        """
+                                    import java.util.concurrent.locks.ReentrantLock;
+
+                                    class Foo {
+                                        private ReentrantLock fooObjectLock = new ReentrantLock();
+                                        private void hi() {
+                                            {
+                                                fooObjectLock.lock();
+                                                try {
+                                                    System.out.println("hi");
+                                                    System.out.println("still inside");
+                                                } finally {
+                                                    fooObjectLock.unlock();
+                                                }
+                                            }
+                                            System.out.println("outside");
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
+
+    @Test
+    void testClassHasSyncBlockUsingObject() {
+        rewriteRun(
+                java(
+                        """
+                                    class Foo {
+                                        private Object object;
+                                        private void hi() {
+                                            synchronized (object) {
+                                                System.out.println("hi");
+                                            }
+                                        }
+                                    }
+                                """,
+                        """
+                                    import java.util.concurrent.locks.ReentrantLock;
+
+                                    class Foo {
+                                        private ReentrantLock objectLock = new ReentrantLock();
+                                        private Object object;
+                                        private void hi() {
+                                            {
+                                                objectLock.lock();
+                                                try {
+                                                    System.out.println("hi");
+                                                } finally {
+                                                    objectLock.unlock();
+                                                }
+                                            }
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
+
+    @Test
+    void testClassHasSyncBlockUsingStaticObject() {
+        rewriteRun(
+                java(
+                        """
+                                    class Foo {
+                                        private static Object object;
+                                        private static void hi() {
+                                            synchronized (object) {
+                                                System.out.println("hi");
+                                            }
+                                        }
+                                    }
+                                """,
+                        """
+                                    import java.util.concurrent.locks.ReentrantLock;
+
+                                    class Foo {
+                                        private static ReentrantLock objectLock = new ReentrantLock();
+                                        private static Object object;
+                                        private static void hi() {
+                                            {
+                                                objectLock.lock();
+                                                try {
+                                                    System.out.println("hi");
+                                                } finally {
+                                                    objectLock.unlock();
+                                                }
+                                            }
+                                        }
+                                    }
                                 """
                 )
         );
     }
 
+    @Test
+    void testClassHasSyncBlockUsingComponent() {
+        rewriteRun(
+                java(
+                        """
+                                    class Boo {
+                                    }
+                                """,
+                        """
+                                    import java.util.concurrent.locks.ReentrantLock;
+
+                                    class Boo {
+                                        public ReentrantLock booObjectLock = new ReentrantLock();
+                                    }
+                                """
+                ),
+                java(
+                        """
+                                    class Foo {
+                                        private Boo boo;
+                                        private void hi() {
+                                            synchronized (boo) {
+                                                System.out.println("hi");
+                                            }
+                                        }
+                                    }
+                                """,
+                        """
+                                    class Foo {
+                                        private Boo boo;
+                                        private void hi() {
+                                            {
+                                                boo.booObjectLock.lock();
+                                                try {
+                                                    System.out.println("hi");
+                                                } finally {
+                                                    boo.booObjectLock.unlock();
+                                                }
+                                            }
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
+
+    @Test
+    void testClassHasSyncBlockUsingClass() {
+        rewriteRun(
+                java(
+                        """
+                                    class Boo {
+                                    }
+                                """,
+                        """
+                                    import java.util.concurrent.locks.ReentrantLock;
+
+                                    class Boo {
+                                        public static ReentrantLock booClassLock = new ReentrantLock();
+                                    }
+                                """
+                ),
+                java(
+                        """
+                                    class Foo {
+                                        private void hi() {
+                                            synchronized (Boo.class) {
+                                                System.out.println("hi");
+                                            }
+                                        }
+                                    }
+                                """,
+                        """
+                                    class Foo {
+                                        private void hi() {
+                                            {
+                                                Boo.booClassLock.lock();
+                                                try {
+                                                    System.out.println("hi");
+                                                } finally {
+                                                    Boo.booClassLock.unlock();
+                                                }
+                                            }
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
+
+    @Test
+    void testComponentWithSynchronizedMethodSharesItsPublicLock() {
+        rewriteRun(
+                java(
+                        """
+                                    class Boo {
+                                        public synchronized void hi() {
+                                            System.out.println("hi");
+                                        }
+                                    }
+                                """,
+                        """
+                                    import java.util.concurrent.locks.ReentrantLock;
+
+                                    class Boo {
+                                        public ReentrantLock booObjectLock = new ReentrantLock();
+                                        public void hi() {
+                                            booObjectLock.lock();
+                                            try {
+                                                System.out.println("hi");
+                                            } finally {
+                                                booObjectLock.unlock();
+                                            }
+                                        }
+                                    }
+                                """
+                ),
+                java(
+                        """
+                                    class Foo {
+                                        private static Boo boo;
+                                        private void hi() {
+                                            if (boo != null) {
+                                                synchronized (boo) {
+                                                    boo.hi();
+                                                }
+                                            }
+                                        }
+                                    }
+                                """,
+                        """
+                                    class Foo {
+                                        private static Boo boo;
+                                        private void hi() {
+                                            if (boo != null) {
+                                                {
+                                                    boo.booObjectLock.lock();
+                                                    try {
+                                                        boo.hi();
+                                                    } finally {
+                                                        boo.booObjectLock.unlock();
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
+
+    @Test
+    void testTestClassIsNotRefactored() {
+        rewriteRun(
+                java(
+                        """
+                                    class FooTest {
+                                        private synchronized void hi() {
+                                            System.out.println("hi");
+                                        }
+                                    }
+                                """
+                )
+        );
+    }
 }
@@ -0,0 +1,173 @@
+package org.eddiecho.virtualthread.runtime;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@code ReentrantLock} that records how long threads wait for it and hold it, which the JVM reports for monitors
+ * ({@code jdk.JavaMonitorEnter}) but not for locks. It is a drop-in replacement: fields keep the type
+ * {@code ReentrantLock}.
+ * <p>
+ * Unless {@link LockInstrumentation} is enabled, every method goes straight to {@code ReentrantLock}. Otherwise
+ * outermost acquisitions are counted in the {@link LockStatistics} of the lock's name, and for sampled ones the wait
+ * time, the queue length and the hold time are measured and emitted as {@link LockWaitEvent} and
+ * {@link LockHoldEvent} if they last longer than the events' thresholds. Reentrant acquisitions are not measured, and
+ * neither is {@code tryLock()}, which never waits.
+ */
+public class InstrumentedReentrantLock extends ReentrantLock {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    // Not serializable, looked up again by name when the lock is deserialized.
+    private transient LockStatistics statistics;
+
+    // Only accessed by the thread holding the lock: when the sampled outermost hold started, or 0 if not sampled. A
+    // deserialized lock is not held, like a deserialized ReentrantLock, so neither is kept.
+    private transient long holdStart;
+    private transient LockHoldEvent holdEvent;
+
+    /**
+     * @param name the declaring class and the monitor the lock replaces, e.g. {@code com.example.Foo.this}; the
+     *             statistics of the locks with the same name are combined
+     */
+    public InstrumentedReentrantLock(String name) {
+        this(name, false);
+    }
+
+    public InstrumentedReentrantLock(String name, boolean fair) {
+        super(fair);
+        this.name = name;
+        this.statistics = LockInstrumentation.ENABLED ? LockStatistics.of(name) : null;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        statistics = LockInstrumentation.ENABLED ? LockStatistics.of(name) : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void lock() {
+        if (!LockInstrumentation.ENABLED || isHeldByCurrentThread()) {
+            super.lock();
+            return;
+        }
+        boolean contended = isLocked();
+        if (!LockInstrumentation.sample()) {
+            super.lock();
+            statistics.acquired(contended);
+            return;
+        }
+        int queueLength = getQueueLength();
+        LockWaitEvent event = new LockWaitEvent();
+        event.begin();
+        long start = System.nanoTime();
+        super.lock();
+        acquired(contended, start, queueLength, event);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (!LockInstrumentation.ENABLED || isHeldByCurrentThread()) {
+            super.lockInterruptibly();
+            return;
+        }
+        boolean contended = isLocked();
+        if (!LockInstrumentation.sample()) {
+            super.lockInterruptibly();
+            statistics.acquired(contended);
+            return;
+        }
+        int queueLength = getQueueLength();
+        LockWaitEvent event = new LockWaitEvent();
+        event.begin();
+        long start = System.nanoTime();
+        super.lockInterruptibly();
+        acquired(contended, start, queueLength, event);
+    }
+
+    @Override
+    public boolean tryLock() {
+        boolean reentrant = LockInstrumentation.ENABLED && isHeldByCurrentThread();
+        boolean acquired = super.tryLock();
+        if (acquired && LockInstrumentation.ENABLED && !reentrant) {
+            statistics.acquired(false);
+            startHold(LockInstrumentation.sample());
+        }
+        return acquired;
+    }
+
+    @Override
+    public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!LockInstrumentation.ENABLED || isHeldByCurrentThread()) {
+            return super.tryLock(timeout, unit);
+        }
+        boolean contended = isLocked();
+        if (!LockInstrumentation.sample()) {
+            boolean acquired = super.tryLock(timeout, unit);
+            if (acquired) {
+                statistics.acquired(contended);
+            }
+            return acquired;
+        }
+        int queueLength = getQueueLength();
+        LockWaitEvent event = new LockWaitEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean acquired = super.tryLock(timeout, unit);
+        if (acquired) {
+            acquired(contended, start, queueLength, event);
+        }
+        return acquired;
+    }
+
+    @Override
+    public void unlock() {
+        if (!LockInstrumentation.ENABLED || getHoldCount() != 1) {
+            super.unlock();
+            return;
+        }
+        long start = holdStart;
+        LockHoldEvent event = holdEvent;
+        holdStart = 0;
+        holdEvent = null;
+        super.unlock();
+        if (start != 0) {
+            statistics.held(System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.lockName = name;
+                event.commit();
+            }
+        }
+    }
+
+    private void acquired(boolean contended, long start, int queueLength, LockWaitEvent event) {
+        statistics.acquired(contended);
+        statistics.waited(System.nanoTime() - start, queueLength);
+        if (contended && event.shouldCommit()) {
+            event.lockName = name;
+            event.queueLength = queueLength;
+            event.commit();
+        }
+        startHold(true);
+    }
+
+    private void startHold(boolean sampled) {
+        if (sampled) {
+            holdEvent = new LockHoldEvent();
+            holdEvent.begin();
+            holdStart = System.nanoTime();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[" + name + "]";
+    }
+}
@@ -0,0 +1,21 @@
+package org.eddiecho.virtualthread.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A sampled hold of an {@link InstrumentedReentrantLock}, from its outermost acquisition to its release.
+ */
+@Name("virtualthread.locks.LockHold")
+@Label("Lock Hold")
+@Category({"Virtual Thread Refactor Helper", "Locks"})
+@Description("Holding an instrumented ReentrantLock, including the time spent awaiting its conditions")
+@Threshold("20 ms")
+public class LockHoldEvent extends jdk.jfr.Event {
+
+    @Label("Lock")
+    String lockName;
+}
@@ -0,0 +1,62 @@
+package org.eddiecho.virtualthread.runtime;
+
+import jdk.jfr.FlightRecorder;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Settings of the {@link InstrumentedReentrantLock}s, read once from system properties:
+ * <ul>
+ *     <li>{@value #ENABLED_PROPERTY}: {@code true} to instrument the locks. Otherwise they behave and cost like a
+ *     plain {@code ReentrantLock}, apart from one branch on a constant.</li>
+ *     <li>{@value #SAMPLING_PROPERTY}: measure the wait and hold times of one acquisition in {@code N}, chosen at
+ *     random. Defaults to 1, every acquisition. Acquisitions are counted in any case.</li>
+ * </ul>
+ * When instrumentation is enabled, the statistics of every lock are emitted as a periodic
+ * {@link LockStatisticsEvent}.
+ */
+public final class LockInstrumentation {
+
+    public static final String ENABLED_PROPERTY = "virtualthread.locks.instrumentation";
+    public static final String SAMPLING_PROPERTY = "virtualthread.locks.sampling";
+
+    static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+    static final int SAMPLING = Math.max(1, Integer.getInteger(SAMPLING_PROPERTY, 1));
+
+    static {
+        if (ENABLED) {
+            FlightRecorder.addPeriodicEvent(LockStatisticsEvent.class, LockInstrumentation::emitStatistics);
+        }
+    }
+
+    private LockInstrumentation() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static int getSampling() {
+        return SAMPLING;
+    }
+
+    static boolean sample() {
+        return SAMPLING == 1 || ThreadLocalRandom.current().nextInt(SAMPLING) == 0;
+    }
+
+    private static void emitStatistics() {
+        for (LockStatistics statistics : LockStatistics.all()) {
+            LockStatistics.Snapshot snapshot = statistics.snapshot();
+            LockStatisticsEvent event = new LockStatisticsEvent();
+            event.lockName = snapshot.name();
+            event.acquisitions = snapshot.acquisitions();
+            event.contendedAcquisitions = snapshot.contendedAcquisitions();
+            event.sampledAcquisitions = snapshot.sampledAcquisitions();
+            event.waitTime = snapshot.waitNanos();
+            event.sampledHolds = snapshot.sampledHolds();
+            event.holdTime = snapshot.holdNanos();
+            event.maxQueueLength = snapshot.maxQueueLength();
+            event.commit();
+        }
+    }
+}
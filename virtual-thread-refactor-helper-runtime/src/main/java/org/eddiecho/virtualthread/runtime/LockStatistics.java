@@ -0,0 +1,116 @@
+package org.eddiecho.virtualthread.runtime;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the {@link InstrumentedReentrantLock}s sharing a name, e.g. the object locks of all instances of a
+ * class. Counters are {@link LongAdder}s, so threads updating them concurrently do not contend on them. Wait and hold
+ * times are only measured for sampled acquisitions, see {@link LockInstrumentation}.
+ */
+public final class LockStatistics {
+
+    private static final ConcurrentMap<String, LockStatistics> STATISTICS_BY_NAME = new ConcurrentHashMap<>();
+
+    /**
+     * @param acquisitions          outermost acquisitions, reentrant ones are not counted
+     * @param contendedAcquisitions acquisitions that found the lock held by another thread
+     * @param sampledAcquisitions   acquisitions whose wait time was measured
+     * @param waitNanos             total wait time of the sampled acquisitions
+     * @param sampledHolds          holds whose time was measured
+     * @param holdNanos             total time between the sampled outermost acquisitions and their release, including
+     *                              the time spent awaiting a condition of the lock
+     * @param maxQueueLength        longest queue of threads waiting for the lock seen by a sampled acquisition
+     */
+    public record Snapshot(String name, long acquisitions, long contendedAcquisitions, long sampledAcquisitions,
+                           long waitNanos, long sampledHolds, long holdNanos, long maxQueueLength) {
+
+        public double averageWaitNanos() {
+            return sampledAcquisitions == 0 ? 0 : (double) waitNanos / sampledAcquisitions;
+        }
+
+        public double averageHoldNanos() {
+            return sampledHolds == 0 ? 0 : (double) holdNanos / sampledHolds;
+        }
+    }
+
+    private final String name;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder sampledAcquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder sampledHolds = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final LongAccumulator maxQueueLength = new LongAccumulator(Math::max, 0);
+
+    private LockStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The statistics of the locks named {@code name}.
+     */
+    public static LockStatistics of(String name) {
+        return STATISTICS_BY_NAME.computeIfAbsent(name, LockStatistics::new);
+    }
+
+    /**
+     * The statistics of every lock name used so far, by name.
+     */
+    public static List<LockStatistics> all() {
+        List<LockStatistics> statistics = new ArrayList<>(STATISTICS_BY_NAME.values());
+        statistics.sort(Comparator.comparing(LockStatistics::getName));
+        return statistics;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void acquired(boolean contended) {
+        acquisitions.increment();
+        if (contended) {
+            contendedAcquisitions.increment();
+        }
+    }
+
+    void waited(long nanos, int queueLength) {
+        sampledAcquisitions.increment();
+        waitNanos.add(nanos);
+        maxQueueLength.accumulate(queueLength);
+    }
+
+    void held(long nanos) {
+        sampledHolds.increment();
+        holdNanos.add(nanos);
+    }
+
+    /**
+     * The current counters. They are read one after the other, so a snapshot taken while the locks are used may mix
+     * counts from slightly different moments.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(name, acquisitions.sum(), contendedAcquisitions.sum(), sampledAcquisitions.sum(),
+                waitNanos.sum(), sampledHolds.sum(), holdNanos.sum(), maxQueueLength.get());
+    }
+
+    /**
+     * Resets the counters of every lock name, e.g. after a warm-up.
+     */
+    public static void resetAll() {
+        for (LockStatistics statistics : STATISTICS_BY_NAME.values()) {
+            statistics.acquisitions.reset();
+            statistics.contendedAcquisitions.reset();
+            statistics.sampledAcquisitions.reset();
+            statistics.waitNanos.reset();
+            statistics.sampledHolds.reset();
+            statistics.holdNanos.reset();
+            statistics.maxQueueLength.reset();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.eddiecho.virtualthread.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The counters of the {@link InstrumentedReentrantLock}s of one name since the start or the last
+ * {@link LockStatistics#resetAll()}, see {@link LockStatistics.Snapshot}.
+ */
+@Name("virtualthread.locks.LockStatistics")
+@Label("Lock Statistics")
+@Category({"Virtual Thread Refactor Helper", "Locks"})
+@Description("Counters of the instrumented ReentrantLocks of one name")
+@Period("1 s")
+@StackTrace(false)
+public class LockStatisticsEvent extends jdk.jfr.Event {
+
+    @Label("Lock")
+    String lockName;
+
+    @Label("Acquisitions")
+    long acquisitions;
+
+    @Label("Contended Acquisitions")
+    long contendedAcquisitions;
+
+    @Label("Sampled Acquisitions")
+    long sampledAcquisitions;
+
+    @Label("Wait Time")
+    @Description("Total wait time of the sampled acquisitions")
+    @Timespan
+    long waitTime;
+
+    @Label("Sampled Holds")
+    long sampledHolds;
+
+    @Label("Hold Time")
+    @Description("Total time the sampled holds kept the lock")
+    @Timespan
+    long holdTime;
+
+    @Label("Max Queue Length")
+    long maxQueueLength;
+}
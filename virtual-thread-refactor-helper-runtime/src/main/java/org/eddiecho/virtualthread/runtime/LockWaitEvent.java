@@ -0,0 +1,26 @@
+package org.eddiecho.virtualthread.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A sampled acquisition of an {@link InstrumentedReentrantLock} that found the lock held by another thread, the
+ * counterpart of {@code jdk.JavaMonitorEnter}.
+ */
+@Name("virtualthread.locks.LockWait")
+@Label("Lock Wait")
+@Category({"Virtual Thread Refactor Helper", "Locks"})
+@Description("Waiting to acquire an instrumented ReentrantLock held by another thread")
+@Threshold("20 ms")
+public class LockWaitEvent extends jdk.jfr.Event {
+
+    @Label("Lock")
+    String lockName;
+
+    @Label("Queue Length")
+    @Description("Threads waiting for the lock when the acquisition started")
+    int queueLength;
+}
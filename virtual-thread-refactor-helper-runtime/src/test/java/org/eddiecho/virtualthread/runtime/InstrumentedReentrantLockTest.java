@@ -0,0 +1,117 @@
+package org.eddiecho.virtualthread.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Instrumentation is enabled for the tests in the pom.
+public class InstrumentedReentrantLockTest {
+
+    @Test
+    void testLocksOfTheSameNameShareTheirStatistics() {
+        InstrumentedReentrantLock first = new InstrumentedReentrantLock("Foo.this");
+        InstrumentedReentrantLock second = new InstrumentedReentrantLock("Foo.this");
+        first.lock();
+        first.unlock();
+        second.lock();
+        second.unlock();
+
+        LockStatistics.Snapshot snapshot = LockStatistics.of("Foo.this").snapshot();
+        assertEquals(2, snapshot.acquisitions());
+        assertEquals(0, snapshot.contendedAcquisitions());
+        assertEquals(2, snapshot.sampledAcquisitions());
+        assertEquals(2, snapshot.sampledHolds());
+    }
+
+    @Test
+    void testReentrantAcquisitionsAreNotCounted() {
+        InstrumentedReentrantLock lock = new InstrumentedReentrantLock("Reentrant.this");
+        lock.lock();
+        lock.lock();
+        assertTrue(lock.tryLock());
+        lock.unlock();
+        lock.unlock();
+        assertTrue(lock.isHeldByCurrentThread());
+        lock.unlock();
+
+        LockStatistics.Snapshot snapshot = LockStatistics.of("Reentrant.this").snapshot();
+        assertEquals(1, snapshot.acquisitions());
+        assertEquals(1, snapshot.sampledHolds());
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    void testContendedAcquisitionRecordsWaitAndHoldTimes() throws InterruptedException {
+        InstrumentedReentrantLock lock = new InstrumentedReentrantLock("Contended.class");
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                locked.countDown();
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+        lock.lock();
+        lock.unlock();
+        holder.join();
+
+        LockStatistics.Snapshot snapshot = LockStatistics.of("Contended.class").snapshot();
+        assertEquals(2, snapshot.acquisitions());
+        assertEquals(1, snapshot.contendedAcquisitions());
+        assertTrue(snapshot.waitNanos() >= TimeUnit.MILLISECONDS.toNanos(10), "waited " + snapshot.waitNanos() + " ns");
+        assertTrue(snapshot.holdNanos() >= TimeUnit.MILLISECONDS.toNanos(50), "held " + snapshot.holdNanos() + " ns");
+    }
+
+    @Test
+    void testConditionsWorkAndTheirAwaitTimeCountsAsHeld() throws InterruptedException {
+        InstrumentedReentrantLock lock = new InstrumentedReentrantLock("Condition.this");
+        Condition ready = lock.newCondition();
+        lock.lock();
+        try {
+            assertFalse(ready.await(20, TimeUnit.MILLISECONDS));
+        } finally {
+            lock.unlock();
+        }
+
+        LockStatistics.Snapshot snapshot = LockStatistics.of("Condition.this").snapshot();
+        assertEquals(1, snapshot.sampledHolds());
+        assertTrue(snapshot.holdNanos() >= TimeUnit.MILLISECONDS.toNanos(20), "held " + snapshot.holdNanos() + " ns");
+    }
+
+    @Test
+    void testFailedTimedAcquisitionIsNotCounted() throws InterruptedException {
+        InstrumentedReentrantLock lock = new InstrumentedReentrantLock("Timeout.this");
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+        assertFalse(lock.tryLock(10, TimeUnit.MILLISECONDS));
+        release.countDown();
+        holder.join();
+
+        assertEquals(1, LockStatistics.of("Timeout.this").snapshot().acquisitions());
+    }
+}